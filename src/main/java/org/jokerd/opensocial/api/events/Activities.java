@@ -26,6 +26,11 @@ public class Activities extends Service {
         private static IJsonValueFactory<Collection<Activity>> COLLECTION_FACTORY = Collection
             .getCollectionFactory(Activity.FACTORY);
 
+        /**
+         * The JSON-RPC method name of this call
+         */
+        public final static String METHOD = "activities.get";
+
         /**
          * @param activities
          * @return a list of resulting collection
@@ -89,6 +94,14 @@ public class Activities extends Service {
             return getRequest().getValue("groupId", GroupId.FACTORY);
         }
 
+        /**
+         * Returns the {@link #METHOD} name.
+         */
+        @Override
+        public String getRpcMethodName() {
+            return METHOD;
+        }
+
         /**
          * User-Id or Array<User-Id> User ID(s) of the person whose activities
          * are to be returned. Defaults to "@me", indicating the currently
@@ -178,4 +191,16 @@ public class Activities extends Service {
         }
     }
 
+    /**
+     * The name of this service
+     */
+    public final static String NAME = "activities";
+
+    /**
+     * 
+     */
+    public Activities() {
+        super(NAME);
+    }
+
 }
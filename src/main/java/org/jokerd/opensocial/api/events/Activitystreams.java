@@ -26,6 +26,11 @@ public class Activitystreams extends Service {
         private static IJsonValueFactory<Collection<ActivityEntry>> COLLECTION_FACTORY = Collection
             .getCollectionFactory(ActivityEntry.FACTORY);
 
+        /**
+         * The JSON-RPC method name of this call
+         */
+        public final static String METHOD = "activitystreams.get";
+
         /**
          * @param activities
          * @return a list of resulting collection
@@ -89,6 +94,14 @@ public class Activitystreams extends Service {
             return getRequest().getValue("groupId", GroupId.FACTORY);
         }
 
+        /**
+         * Returns the {@link #METHOD} name.
+         */
+        @Override
+        public String getRpcMethodName() {
+            return METHOD;
+        }
+
         /**
          * User-Id or Array<User-Id> User ID(s) of the person whose activities
          * are to be returned. Defaults to "@me", indicating the currently
@@ -178,4 +191,16 @@ public class Activitystreams extends Service {
         }
     }
 
+    /**
+     * The name of this service
+     */
+    public final static String NAME = "activitystreams";
+
+    /**
+     * 
+     */
+    public Activitystreams() {
+        super(NAME);
+    }
+
 }
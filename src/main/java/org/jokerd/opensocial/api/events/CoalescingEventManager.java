@@ -0,0 +1,365 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.events;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jokerd.opensocial.api.events.Service.ServiceCall;
+import org.jokerd.opensocial.api.model.DataObject;
+import org.jokerd.opensocial.api.model.UserId;
+import org.ubimix.commons.events.IEventListener;
+import org.ubimix.commons.events.IEventManager;
+import org.ubimix.commons.json.JsonObject;
+import org.ubimix.commons.json.rpc.RpcError;
+
+/**
+ * An event manager which does not execute identical calls concurrently. If a
+ * call is fired while an equal call (a call with the same method name and
+ * the same parameters) is still in progress then the new call is not sent
+ * to the underlying event manager; it waits for the first call and gets the
+ * same result. This manager could wrap client and server event managers.
+ * <p>
+ * Only read-only calls are coalesced; by default these are calls with method
+ * names ending with ".get" with absolute user identifiers (see
+ * {@link #getKey(ServiceCall)}). Waiting calls share an immutable snapshot
+ * of the result of the first call (see {@link DataObject#freeze()}).
+ * </p>
+ * <p>
+ * Results of equal requests could depend on the caller (for example on the
+ * viewer's access rights), so only calls made in the same security context
+ * are coalesced. The context of each call is identified by the
+ * {@link IContextKeyProvider} given to the constructor. Server-side managers
+ * should use the identity of the viewer and of the application as the
+ * context key; managers used by only one user (for example on the client)
+ * could use the {@link #SINGLE_CONTEXT} provider.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class CoalescingEventManager implements IEventManager {
+
+    /**
+     * Returns keys of security contexts of calls.
+     */
+    public interface IContextKeyProvider {
+
+        /**
+         * Returns the key of the security context of the given call or
+         * <code>null</code> if the context is unknown. Calls with unknown
+         * contexts are not coalesced.
+         * 
+         * @param call the call
+         * @return the key of the security context of the call
+         */
+        String getContextKey(ServiceCall call);
+
+    }
+
+    /**
+     * A call in progress and calls waiting for its result.
+     */
+    private static class Flight {
+
+        private boolean fDone;
+
+        private final ServiceCall fLeader;
+
+        private final List<ServiceCall> fWaiters = new ArrayList<ServiceCall>();
+
+        private final List<IEventListener<ServiceCall>> fWaitingListeners = new ArrayList<IEventListener<ServiceCall>>();
+
+        public Flight(ServiceCall leader) {
+            fLeader = leader;
+        }
+
+        /**
+         * Adds a waiting call. Returns <code>false</code> if the flight is
+         * already finished.
+         */
+        public synchronized boolean attach(
+            ServiceCall call,
+            IEventListener<ServiceCall> listener) {
+            if (fDone) {
+                return false;
+            }
+            fWaiters.add(call);
+            fWaitingListeners.add(listener);
+            return true;
+        }
+
+        /**
+         * Marks this flight as finished and copies the result of the leading
+         * call to all waiting calls.
+         */
+        public void finish() {
+            synchronized (this) {
+                if (fDone) {
+                    return;
+                }
+                fDone = true;
+            }
+            RpcError error = fLeader.getResultError();
+            Set<Throwable> errors = fLeader.getErrors();
+            Object result = error == null && !fWaiters.isEmpty()
+                ? freezeResult(fLeader.getResult())
+                : null;
+            for (int i = 0; i < fWaiters.size(); i++) {
+                ServiceCall call = fWaiters.get(i);
+                if (errors != null) {
+                    for (Throwable t : errors) {
+                        call.onError(t);
+                    }
+                }
+                if (error != null) {
+                    call.setError(error);
+                } else {
+                    call.reply(result);
+                }
+                IEventListener<ServiceCall> listener = fWaitingListeners.get(i);
+                if (listener != null) {
+                    listener.handleEvent(call);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * This provider returns the same context key for all calls. It should be
+     * used only by event managers making calls on behalf of one user.
+     */
+    public final static IContextKeyProvider SINGLE_CONTEXT = new IContextKeyProvider() {
+        public String getContextKey(ServiceCall call) {
+            return "";
+        }
+    };
+
+    private final static String USER_ID = "userId";
+
+    /**
+     * Returns an immutable snapshot of the given result shared by waiting
+     * calls (see {@link DataObject#freeze()}).
+     */
+    private static Object freezeResult(Object result) {
+        if (result instanceof DataObject) {
+            return ((DataObject) result).freeze();
+        }
+        Object json = result instanceof JsonObject
+            ? ((JsonObject) result).getJsonObject()
+            : result;
+        if (json instanceof Map<?, ?>) {
+            return new DataObject(json).freeze();
+        }
+        return result;
+    }
+
+    /**
+     * Returns <code>true</code> if the given user identifier depends on the
+     * security context of the call: it is one of the reserved identifiers
+     * ("@me", "@owner", "@viewer") or it is not defined and the default
+     * "@me" value is used.
+     */
+    private static boolean isContextRelative(Object userId) {
+        if (userId instanceof List<?>) {
+            List<?> list = (List<?>) userId;
+            if (list.isEmpty()) {
+                return true;
+            }
+            for (Object item : list) {
+                if (isContextRelative(item)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (userId instanceof JsonObject) {
+            userId = ((JsonObject) userId).getJsonObject();
+        }
+        if (userId == null) {
+            return true;
+        }
+        UserId id = UserId.valueOf(userId.toString());
+        return id == UserId.ME || id == UserId.OWNER || id == UserId.VIEWER;
+    }
+
+    private final IContextKeyProvider fContextKeyProvider;
+
+    private final IEventManager fEventManager;
+
+    private final ConcurrentMap<String, Flight> fFlights = new ConcurrentHashMap<String, Flight>();
+
+    /**
+     * @param eventManager the event manager executing calls
+     * @param contextKeyProvider returns keys of security contexts of calls;
+     *        only calls with the same context key are coalesced
+     */
+    public CoalescingEventManager(
+        IEventManager eventManager,
+        IContextKeyProvider contextKeyProvider) {
+        if (contextKeyProvider == null) {
+            throw new IllegalArgumentException(
+                "The context key provider is not defined");
+        }
+        fEventManager = eventManager;
+        fContextKeyProvider = contextKeyProvider;
+    }
+
+    public <E> void addListener(
+        Class<E> type,
+        IEventListener<? super E> listener) {
+        fEventManager.addListener(type, listener);
+    }
+
+    public <E> void fireEvent(
+        E event,
+        final IEventListener<? super E> callback) {
+        String key = event instanceof ServiceCall
+            ? getKey((ServiceCall) event)
+            : null;
+        if (key == null) {
+            fEventManager.fireEvent(event, callback);
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        IEventListener<ServiceCall> listener = (IEventListener<ServiceCall>) callback;
+        ServiceCall call = (ServiceCall) event;
+        final Flight flight = new Flight(call);
+        while (true) {
+            Flight prev = fFlights.putIfAbsent(key, flight);
+            if (prev == null) {
+                break;
+            }
+            if (prev.attach(call, listener)) {
+                return;
+            }
+            // The previous flight is finished but not removed yet
+            fFlights.remove(key, prev);
+        }
+        final String flightKey = key;
+        try {
+            fEventManager.fireEvent(event, new IEventListener<E>() {
+                public void handleEvent(E e) {
+                    finish(flightKey, flight);
+                    if (callback != null) {
+                        callback.handleEvent(e);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            call.onError(e);
+            throw e;
+        } finally {
+            // Synchronous managers could return without calling callbacks
+            if (call.isReplied() || call.hasErrors()) {
+                finish(flightKey, flight);
+            }
+        }
+    }
+
+    private void finish(String key, Flight flight) {
+        fFlights.remove(key, flight);
+        flight.finish();
+    }
+
+    /**
+     * Returns the number of calls in progress.
+     */
+    public int getInFlightCount() {
+        return fFlights.size();
+    }
+
+    /**
+     * Returns the key identifying equal calls or <code>null</code> if the
+     * given call should not be coalesced. The key contains the method name,
+     * the key of the security context of the call and the canonical form of
+     * the request: fields of objects are sorted by names. Calls without a
+     * context key are not coalesced. Calls with user identifiers relative to
+     * the security context ("@me", "@owner", "@viewer" or the default "@me"
+     * value) are not coalesced as well.
+     * 
+     * @param call the call
+     * @return a key of the call or <code>null</code>
+     */
+    protected String getKey(ServiceCall call) {
+        String methodName = call.getRpcMethodName();
+        if (!methodName.endsWith(".get")) {
+            return null;
+        }
+        Object request = call.getRequest().getJsonObject();
+        Object userId = request instanceof Map<?, ?>
+            ? ((Map<?, ?>) request).get(USER_ID)
+            : null;
+        if (isContextRelative(userId)) {
+            return null;
+        }
+        String contextKey = fContextKeyProvider.getContextKey(call);
+        if (contextKey == null) {
+            return null;
+        }
+        StringBuilder buf = new StringBuilder(methodName);
+        buf.append(':');
+        writeString(contextKey, buf);
+        buf.append(':');
+        writeCanonical(request, buf);
+        return buf.toString();
+    }
+
+    private void writeCanonical(Object value, StringBuilder buf) {
+        if (value instanceof JsonObject) {
+            value = ((JsonObject) value).getJsonObject();
+        }
+        if (value instanceof Map<?, ?>) {
+            Map<String, Object> sorted = new TreeMap<String, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            buf.append('{');
+            boolean first = true;
+            for (Map.Entry<String, Object> entry : sorted.entrySet()) {
+                if (!first) {
+                    buf.append(',');
+                }
+                first = false;
+                writeString(entry.getKey(), buf);
+                buf.append(':');
+                writeCanonical(entry.getValue(), buf);
+            }
+            buf.append('}');
+        } else if (value instanceof List<?>) {
+            buf.append('[');
+            boolean first = true;
+            for (Object item : (List<?>) value) {
+                if (!first) {
+                    buf.append(',');
+                }
+                first = false;
+                writeCanonical(item, buf);
+            }
+            buf.append(']');
+        } else if (value instanceof String) {
+            writeString((String) value, buf);
+        } else {
+            buf.append(value);
+        }
+    }
+
+    private void writeString(String str, StringBuilder buf) {
+        buf.append('"');
+        for (int i = 0; i < str.length(); i++) {
+            char ch = str.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                buf.append('\\');
+            }
+            buf.append(ch);
+        }
+        buf.append('"');
+    }
+
+}
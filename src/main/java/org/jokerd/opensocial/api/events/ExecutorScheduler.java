@@ -0,0 +1,32 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.events;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jokerd.opensocial.api.events.ServiceCallBatcher.IScheduler;
+
+/**
+ * A scheduler running tasks using a JDK executor. This class is not
+ * available on the client side.
+ * 
+ * @author kotelnikov
+ */
+public class ExecutorScheduler implements IScheduler {
+
+    private final ScheduledExecutorService fExecutor;
+
+    /**
+     * @param executor the executor running scheduled tasks
+     */
+    public ExecutorScheduler(ScheduledExecutorService executor) {
+        fExecutor = executor;
+    }
+
+    public void schedule(Runnable task, long delay) {
+        fExecutor.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+}
@@ -4,8 +4,10 @@
 package org.jokerd.opensocial.api.events;
 
 import java.util.List;
+import java.util.Map;
 
 import org.jokerd.opensocial.api.model.Collection;
+import org.jokerd.opensocial.api.model.FieldMask;
 import org.jokerd.opensocial.api.model.GroupId;
 import org.jokerd.opensocial.api.model.Person;
 import org.jokerd.opensocial.api.model.UserId;
@@ -18,12 +20,17 @@ public class People extends Service {
 
     public static class Get extends ServiceCall {
 
+        /**
+         * The JSON-RPC method name of this call
+         */
+        public final static String METHOD = "people.get";
+
         public Get() {
             this(UserId.ME);
         }
 
         public Get(String userId) {
-            setUserId(new UserId(userId));
+            setUserId(UserId.valueOf(userId));
             setEscapeType("htmlEscape");
         }
 
@@ -39,6 +46,15 @@ public class People extends Service {
             return getRequest().getList("fields", JsonValue.STRING_FACTORY);
         }
 
+        /**
+         * Returns the mask of requested Person fields (see
+         * {@link #setFields(String...)}). If no fields were requested then
+         * this method returns the {@link FieldMask#ALL} mask.
+         */
+        public FieldMask getFieldMask() {
+            return FieldMask.compile(Person.SCHEMA, getFieldIds());
+        }
+
         public GroupId getGroupId() {
             return getRequest().getValue("groupId", GroupId.FACTORY);
         }
@@ -52,6 +68,14 @@ public class People extends Service {
             return getResultObject(Person.FACTORY);
         }
 
+        /**
+         * Returns the {@link #METHOD} name.
+         */
+        @Override
+        public String getRpcMethodName() {
+            return METHOD;
+        }
+
         public UserId getUserId() {
             return getRequest().getValue("userId", UserId.FACTORY);
         }
@@ -97,7 +121,29 @@ public class People extends Service {
             return this;
         }
 
+        /**
+         * Sets the resulting list of people. Entries contain only fields
+         * requested by this call (see {@link #getFieldMask()}).
+         */
         public void setResultPeople(Collection<Person> peopleList) {
+            FieldMask mask = getFieldMask();
+            if (!mask.isAll() && peopleList != null) {
+                Object json = peopleList.getJsonObject();
+                if (json instanceof Map<?, ?>) {
+                    Map<?, ?> map = (Map<?, ?>) json;
+                    Collection<Person> copy = new Collection<Person>(
+                        Person.FACTORY);
+                    for (Map.Entry<?, ?> entry : map.entrySet()) {
+                        String key = String.valueOf(entry.getKey());
+                        Object value = entry.getValue();
+                        if ("entry".equals(key)) {
+                            value = mask.project(value);
+                        }
+                        copy.setValue(key, value);
+                    }
+                    peopleList = copy;
+                }
+            }
             reply(peopleList);
         }
 
@@ -108,8 +154,12 @@ public class People extends Service {
             setResultPeople(collection);
         }
 
+        /**
+         * Sets the resulting person. The result contains only fields
+         * requested by this call (see {@link #getFieldMask()}).
+         */
         public void setResultPerson(Person person) {
-            reply(person);
+            reply(getFieldMask().project(person, Person.FACTORY));
         }
 
         /**
@@ -139,10 +189,16 @@ public class People extends Service {
 
     }
 
+    /**
+     * The name of this service
+     */
+    public final static String NAME = "people";
+
     /**
      * 
      */
     public People() {
+        super(NAME);
     }
 
 }
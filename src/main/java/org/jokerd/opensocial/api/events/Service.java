@@ -16,43 +16,91 @@ public class Service {
      */
     public static abstract class ServiceCall extends RpcCall {
 
+        /**
+         * The method name of this call; it is computed when it is requested
+         * for the first time by calls which do not override the
+         * {@link #getRpcMethodName()} method.
+         */
+        private String fRpcMethodName;
+
         public ServiceCall() {
             super(new RpcRequest());
         }
 
+        /**
+         * Returns the JSON-RPC method name of this call (like "people.get").
+         * Calls defined in this package override this method and return a
+         * constant defined by their class, so the name is not computed for
+         * each call. Other calls compute the name from their class once per
+         * instance.
+         * 
+         * @see Service#getRpcName(Class)
+         */
+        public String getRpcMethodName() {
+            if (fRpcMethodName == null) {
+                fRpcMethodName = getRpcName(getClass());
+            }
+            return fRpcMethodName;
+        }
+
     }
 
+    /**
+     * Returns the JSON-RPC method name for the given class. The name is built
+     * from the simple names of the class and of its enclosing classes with
+     * lower-cased first letters; for example the name of the
+     * <code>People.Get</code> class is "people.get". Characters of the class
+     * name are scanned once, without splitting the name.
+     * 
+     * @param cls the class of a call or of a service
+     * @return the method name for the given class
+     */
     protected static String getRpcName(Class<?> cls) {
-        String methodName = cls.getName();
-        int idx = methodName.lastIndexOf('.');
-        if (idx > 0) {
-            methodName = methodName.substring(idx + 1);
-        }
-        StringBuilder buf = new StringBuilder();
-        String[] array = methodName.split("[$]");
-        for (String segment : array) {
-            if (buf.length() > 0) {
-                buf.append('.');
-            }
-            if (segment.length() > 0) {
-                buf.append(Character.toLowerCase(segment.charAt(0)));
-                buf.append(segment.substring(1));
+        String className = cls.getName();
+        int idx = className.lastIndexOf('.');
+        StringBuilder buf = new StringBuilder(className.length() - idx);
+        boolean first = true;
+        for (int i = idx + 1; i < className.length(); i++) {
+            char ch = className.charAt(i);
+            if (ch == '$') {
+                if (buf.length() > 0) {
+                    buf.append('.');
+                }
+                first = true;
+            } else {
+                buf.append(first ? Character.toLowerCase(ch) : ch);
+                first = false;
             }
         }
-        methodName = buf.toString();
-        return methodName;
+        return buf.toString();
     }
 
     /**
-     * 
+     * The name of this service
+     */
+    private final String fName;
+
+    /**
+     * Creates a service named by its class (see {@link #getRpcName(Class)}).
      */
     public Service() {
+        fName = getRpcName(getClass());
     }
 
+    /**
+     * @param name the name of this service; services defined in this package
+     *        give a name constant shared by all their instances
+     */
+    protected Service(String name) {
+        fName = name;
+    }
+
+    /**
+     * Returns the name of this service (like "people").
+     */
     @Override
     public String toString() {
-        Class<? extends Service> cls = getClass();
-        return getRpcName(cls);
+        return fName;
     }
 
 }
@@ -0,0 +1,268 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jokerd.opensocial.api.events.Service.ServiceCall;
+import org.ubimix.commons.events.IEventListener;
+import org.ubimix.commons.events.IEventManager;
+import org.ubimix.commons.json.JsonObject;
+import org.ubimix.commons.json.rpc.RpcError;
+
+/**
+ * Processes JSON-RPC batches on the server side. Each request of a batch is
+ * transformed into a {@link ServiceCall} object using a
+ * {@link ServiceCallRegistry} and fired in the server event manager; requests
+ * are processed in parallel by the given executor. A response is created when
+ * the event manager notifies the callback of the call, so the event manager
+ * could handle calls synchronously or asynchronously. Responses are returned
+ * in the order of requests and contain identifiers of requests, so they could
+ * be routed back to calls by the {@link ServiceCallBatcher} class. Requests
+ * which are not handled in the specified time get timeout errors, so a lost
+ * callback does not block the batch forever.
+ * 
+ * @author kotelnikov
+ */
+public class ServiceBatchProcessor {
+
+    /**
+     * Responses of a batch being processed. Each response is set only once;
+     * the latch is released when all responses are set.
+     */
+    private static class Batch {
+
+        private final CountDownLatch fLatch;
+
+        private final List<?> fRequests;
+
+        private final Object[] fResponses;
+
+        public Batch(List<?> requests) {
+            fRequests = requests;
+            fResponses = new Object[requests.size()];
+            fLatch = new CountDownLatch(fResponses.length);
+        }
+
+        /**
+         * Sets the response for the specified request. Repeated responses
+         * (for example, if a callback is notified twice) are ignored.
+         */
+        public void complete(int index, Map<String, Object> response) {
+            synchronized (this) {
+                if (fResponses[index] != null) {
+                    return;
+                }
+                fResponses[index] = response;
+            }
+            fLatch.countDown();
+        }
+
+        /**
+         * Sets timeout errors for all requests without responses. Responses
+         * set after this method are ignored.
+         */
+        public synchronized void expire() {
+            for (int i = 0; i < fResponses.length; i++) {
+                if (fResponses[i] == null) {
+                    fResponses[i] = newError(
+                        getId(i),
+                        RpcError.ERROR_INTERNAL,
+                        "Timeout");
+                }
+            }
+        }
+
+        /**
+         * Returns the identifier of the specified request.
+         */
+        public Object getId(int index) {
+            Object request = fRequests.get(index);
+            return request instanceof Map<?, ?>
+                ? ((Map<?, ?>) request).get(ServiceCallBatcher.ID)
+                : null;
+        }
+
+        public synchronized List<Object> getResponses() {
+            return new ArrayList<Object>(Arrays.asList(fResponses));
+        }
+
+    }
+
+    /**
+     * The default time (in milliseconds) given to all requests of a batch.
+     */
+    public final static long DEFAULT_TIMEOUT = 30 * 1000;
+
+    private static Map<String, Object> newError(
+        Object id,
+        int code,
+        String message) {
+        Map<String, Object> response = new LinkedHashMap<String, Object>();
+        response.put(ServiceCallBatcher.ID, id);
+        response.put(
+            ServiceCallBatcher.ERROR,
+            new RpcError(code, message).getJsonObject());
+        return response;
+    }
+
+    /**
+     * Creates the response for the given handled call.
+     */
+    private static Map<String, Object> newResponse(
+        Object id,
+        ServiceCall call) {
+        RpcError error = call.getResultError();
+        if (error != null) {
+            Map<String, Object> response = new LinkedHashMap<String, Object>();
+            response.put(ServiceCallBatcher.ID, id);
+            response.put(ServiceCallBatcher.ERROR, error.getJsonObject());
+            return response;
+        }
+        if (!call.isReplied()) {
+            return newError(id, RpcError.ERROR_INTERNAL, "No response");
+        }
+        Object result = call.getResult();
+        if (result instanceof JsonObject) {
+            result = ((JsonObject) result).getJsonObject();
+        }
+        Map<String, Object> response = new LinkedHashMap<String, Object>();
+        response.put(ServiceCallBatcher.ID, id);
+        response.put(ServiceCallBatcher.RESULT, result);
+        return response;
+    }
+
+    private final IEventManager fEventManager;
+
+    private final ExecutorService fExecutor;
+
+    private final ServiceCallRegistry fRegistry;
+
+    private final long fTimeout;
+
+    /**
+     * @param registry the registry used to create calls by method names
+     * @param eventManager the event manager notifying handlers of calls
+     * @param executor the executor used to process requests of batches
+     */
+    public ServiceBatchProcessor(
+        ServiceCallRegistry registry,
+        IEventManager eventManager,
+        ExecutorService executor) {
+        this(
+            registry,
+            eventManager,
+            executor,
+            DEFAULT_TIMEOUT,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param registry the registry used to create calls by method names
+     * @param eventManager the event manager notifying handlers of calls
+     * @param executor the executor used to process requests of batches
+     * @param timeout the maximal time given to all requests of a batch
+     * @param unit the unit of the timeout
+     */
+    public ServiceBatchProcessor(
+        ServiceCallRegistry registry,
+        IEventManager eventManager,
+        ExecutorService executor,
+        long timeout,
+        TimeUnit unit) {
+        fRegistry = registry;
+        fEventManager = eventManager;
+        fExecutor = executor;
+        fTimeout = unit.toMillis(timeout);
+    }
+
+    /**
+     * Processes one request of the batch. The response is set when the event
+     * manager notifies the callback of the call, so event managers could
+     * handle calls asynchronously.
+     */
+    private void handle(final Batch batch, final int index) {
+        Object request = batch.fRequests.get(index);
+        if (!(request instanceof Map<?, ?>)) {
+            batch.complete(index, newError(
+                null,
+                RpcError.ERROR_INVALID_PARAMS,
+                "A request object is expected"));
+            return;
+        }
+        Map<?, ?> map = (Map<?, ?>) request;
+        final Object id = map.get(ServiceCallBatcher.ID);
+        Object method = map.get(ServiceCallBatcher.METHOD);
+        Object params = map.get(ServiceCallBatcher.PARAMS);
+        if (params != null && !(params instanceof Map<?, ?>)) {
+            batch.complete(index, newError(
+                id,
+                RpcError.ERROR_INVALID_PARAMS,
+                "Parameters should be an object"));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, ?> p = (Map<String, ?>) params;
+        ServiceCall call = fRegistry.newCall(
+            method != null ? method.toString() : null,
+            p);
+        if (call == null) {
+            batch.complete(index, newError(
+                id,
+                RpcError.ERROR_METHOD_NOT_FOUND,
+                "Method not found: '" + method + "'"));
+            return;
+        }
+        fEventManager.fireEvent(call, new IEventListener<ServiceCall>() {
+            public void handleEvent(ServiceCall event) {
+                batch.complete(index, newResponse(id, event));
+            }
+        });
+    }
+
+    /**
+     * Processes all requests of the given batch in parallel. This method
+     * returns when all calls are handled or when the timeout is expired;
+     * calls could be handled asynchronously by the event manager. Requests
+     * which are not handled in time get timeout errors.
+     * 
+     * @param requests a list of JSON-RPC requests
+     * @return a list of responses in the order of requests
+     */
+    public List<Object> process(List<?> requests) {
+        final Batch batch = new Batch(requests);
+        for (int i = 0; i < requests.size(); i++) {
+            final int index = i;
+            fExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        handle(batch, index);
+                    } catch (RuntimeException e) {
+                        batch.complete(index, newError(
+                            batch.getId(index),
+                            RpcError.ERROR_INTERNAL,
+                            String.valueOf(e)));
+                    }
+                }
+            });
+        }
+        try {
+            if (!batch.fLatch.await(fTimeout, TimeUnit.MILLISECONDS)) {
+                batch.expire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        return batch.getResponses();
+    }
+
+}
@@ -0,0 +1,382 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.events;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jokerd.opensocial.api.events.Service.ServiceCall;
+import org.ubimix.commons.events.IEventListener;
+import org.ubimix.commons.json.JsonObject;
+import org.ubimix.commons.json.rpc.RpcError;
+
+/**
+ * Collects service calls and sends them as JSON-RPC batches (arrays of
+ * requests). A batch is sent when it contains the maximal number of calls or
+ * when the specified delay since the first call of the batch is expired.
+ * Each request of the batch gets an identifier; responses are routed back to
+ * calls by these identifiers and listeners of calls are notified as if calls
+ * were sent one by one.
+ * <p>
+ * Batches are processed on the server side by the
+ * {@link ServiceBatchProcessor} class.
+ * </p>
+ * <p>
+ * Delayed batches are sent by an {@link IScheduler}; this class does not
+ * depend on <code>java.util.concurrent</code>, so it could be used on the
+ * client side as well. The {@link ExecutorScheduler} class runs tasks using
+ * a JDK executor; in a browser a scheduler could be based on a GWT timer.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class ServiceCallBatcher {
+
+    /**
+     * Transports send batches of requests and return batches of responses.
+     */
+    public interface IBatchTransport {
+
+        /**
+         * Sends the given batch of requests.
+         * 
+         * @param requests a list of JSON-RPC requests
+         * @param callback the callback which should be notified when
+         *        responses are received
+         */
+        void send(List<Object> requests, IBatchCallback callback);
+
+    }
+
+    /**
+     * Schedulers run tasks after a delay.
+     */
+    public interface IScheduler {
+
+        /**
+         * Runs the given task once after the specified delay.
+         * 
+         * @param task the task to run
+         * @param delay the delay in milliseconds
+         */
+        void schedule(Runnable task, long delay);
+
+    }
+
+    /**
+     * Callbacks of this type receive responses for sent batches.
+     */
+    public interface IBatchCallback {
+
+        void onFailure(Throwable error);
+
+        void onResponse(List<?> responses);
+
+    }
+
+    /**
+     * Routes responses of a transport to calls of a batch. Calls are notified
+     * only once even if the transport reports both the response and the
+     * failure or reports the failure after throwing an exception.
+     */
+    private class BatchCallback implements IBatchCallback {
+
+        private final List<Entry> fBatch;
+
+        private boolean fCompleted;
+
+        public BatchCallback(List<Entry> batch) {
+            fBatch = batch;
+        }
+
+        /**
+         * Marks the batch as completed.
+         * 
+         * @return <code>true</code> if the batch was not completed yet
+         */
+        public synchronized boolean complete() {
+            if (fCompleted) {
+                return false;
+            }
+            fCompleted = true;
+            return true;
+        }
+
+        public void onFailure(Throwable error) {
+            if (complete()) {
+                ServiceCallBatcher.this.onFailure(fBatch, error);
+            }
+        }
+
+        public void onResponse(List<?> responses) {
+            if (complete()) {
+                ServiceCallBatcher.this.onResponse(fBatch, responses);
+            }
+        }
+
+    }
+
+    /**
+     * A call waiting for its response.
+     */
+    private static class Entry {
+
+        private final ServiceCall fCall;
+
+        private final String fId;
+
+        private final IEventListener<ServiceCall> fListener;
+
+        @SuppressWarnings("unchecked")
+        public <E extends ServiceCall> Entry(
+            String id,
+            E call,
+            IEventListener<? super E> listener) {
+            fId = id;
+            fCall = call;
+            fListener = (IEventListener<ServiceCall>) listener;
+        }
+
+        public void notifyListener() {
+            if (fListener != null) {
+                fListener.handleEvent(fCall);
+            }
+        }
+
+        public void setError(int code, String message) {
+            fCall.setError(new RpcError(code, message));
+        }
+
+    }
+
+    /**
+     * Sends the batch for which it was scheduled if this batch was not sent
+     * yet. Schedulers can not cancel tasks, so each task checks the number
+     * of its batch instead.
+     */
+    private class Flush implements Runnable {
+
+        private final long fBatchNumber;
+
+        public Flush(long batchNumber) {
+            fBatchNumber = batchNumber;
+        }
+
+        public void run() {
+            List<Entry> batch;
+            synchronized (ServiceCallBatcher.this) {
+                if (fBatchNumber != fBatchCount) {
+                    return;
+                }
+                batch = takePending();
+            }
+            send(batch);
+        }
+
+    }
+
+    /**
+     * The field containing the result of a call in OpenSocial responses.
+     */
+    public final static String DATA = "data";
+
+    public final static String ERROR = "error";
+
+    public final static String ID = "id";
+
+    public final static String METHOD = "method";
+
+    public final static String PARAMS = "params";
+
+    public final static String RESULT = "result";
+
+    /**
+     * The number of batches taken from the pending list; it is used to
+     * ignore outdated flush tasks.
+     */
+    private long fBatchCount;
+
+    private final long fDelay;
+
+    private boolean fFlushScheduled;
+
+    private long fLastId;
+
+    private final int fMaxSize;
+
+    private List<Entry> fPending = new ArrayList<Entry>();
+
+    private final IScheduler fScheduler;
+
+    private final IBatchTransport fTransport;
+
+    /**
+     * @param transport the transport used to send batches
+     * @param scheduler the scheduler used to send batches after the delay
+     * @param maxSize the maximal number of calls in one batch
+     * @param delay the maximal time (in milliseconds) between the first call
+     *        of a batch and sending of this batch
+     */
+    public ServiceCallBatcher(
+        IBatchTransport transport,
+        IScheduler scheduler,
+        int maxSize,
+        long delay) {
+        fTransport = transport;
+        fScheduler = scheduler;
+        fMaxSize = Math.max(1, maxSize);
+        fDelay = delay;
+    }
+
+    /**
+     * Sends all collected calls without waiting.
+     */
+    public void flush() {
+        List<Entry> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        send(batch);
+    }
+
+    /**
+     * Returns the raw JSON value of the given object.
+     */
+    private Object getJson(Object value) {
+        return value instanceof JsonObject
+            ? ((JsonObject) value).getJsonObject()
+            : value;
+    }
+
+    /**
+     * Returns the number of calls waiting to be sent.
+     */
+    public synchronized int getPendingCount() {
+        return fPending.size();
+    }
+
+    /**
+     * Notifies all calls of the given batch about the failure.
+     */
+    private void onFailure(List<Entry> batch, Throwable error) {
+        for (Entry entry : batch) {
+            entry.setError(
+                RpcError.ERROR_INTERNAL,
+                String.valueOf(error.getMessage()));
+            entry.notifyListener();
+        }
+    }
+
+    /**
+     * Routes the given responses to calls of the batch. Calls without
+     * responses get errors.
+     */
+    private void onResponse(List<Entry> batch, List<?> responses) {
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        for (Entry entry : batch) {
+            entries.put(entry.fId, entry);
+        }
+        for (Object response : responses) {
+            if (!(response instanceof Map<?, ?>)) {
+                continue;
+            }
+            Map<?, ?> map = (Map<?, ?>) response;
+            Object id = map.get(ID);
+            Entry entry = id != null ? entries.remove(id.toString()) : null;
+            if (entry == null) {
+                continue;
+            }
+            Object error = getJson(map.get(ERROR));
+            if (error instanceof Map<?, ?>) {
+                Map<?, ?> e = (Map<?, ?>) error;
+                Object code = e.get("code");
+                entry.setError(
+                    code instanceof Number
+                        ? ((Number) code).intValue()
+                        : RpcError.ERROR_INTERNAL,
+                    String.valueOf(e.get("message")));
+            } else if (map.containsKey(RESULT)) {
+                entry.fCall.reply(map.get(RESULT));
+            } else {
+                entry.fCall.reply(map.get(DATA));
+            }
+            entry.notifyListener();
+        }
+        for (Entry entry : entries.values()) {
+            entry.setError(RpcError.ERROR_INTERNAL, "No response");
+            entry.notifyListener();
+        }
+    }
+
+    private void send(List<Entry> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Object> requests = new ArrayList<Object>(batch.size());
+        for (Entry entry : batch) {
+            Map<String, Object> request = new LinkedHashMap<String, Object>();
+            request.put(
+                METHOD,
+                entry.fCall.getRpcMethodName());
+            request.put(ID, entry.fId);
+            request.put(PARAMS, entry.fCall
+                .getRequest()
+                .getJsonObject());
+            requests.add(request);
+        }
+        BatchCallback callback = new BatchCallback(batch);
+        try {
+            fTransport.send(requests, callback);
+        } catch (RuntimeException e) {
+            // Calls are not notified again if the batch was completed
+            callback.onFailure(e);
+        }
+    }
+
+    /**
+     * Adds the given call to the current batch. The listener is notified
+     * when the response for this call is received.
+     * 
+     * @param call the call to send
+     * @param listener the listener notified about the response; it could be
+     *        <code>null</code>
+     */
+    public <E extends ServiceCall> void send(
+        E call,
+        IEventListener<? super E> listener) {
+        List<Entry> batch = null;
+        Flush flush = null;
+        synchronized (this) {
+            String id = Long.toString(++fLastId);
+            fPending.add(new Entry(id, call, listener));
+            if (fPending.size() >= fMaxSize) {
+                batch = takePending();
+            } else if (!fFlushScheduled) {
+                fFlushScheduled = true;
+                flush = new Flush(fBatchCount);
+            }
+        }
+        if (batch != null) {
+            send(batch);
+        } else if (flush != null) {
+            fScheduler.schedule(flush, fDelay);
+        }
+    }
+
+    /**
+     * Returns collected calls and starts a new batch. This method should be
+     * called in a synchronized block.
+     */
+    private List<Entry> takePending() {
+        List<Entry> batch = fPending;
+        fPending = new ArrayList<Entry>();
+        fBatchCount++;
+        fFlushScheduled = false;
+        return batch;
+    }
+
+}
@@ -0,0 +1,206 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.events;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jokerd.opensocial.api.events.Service.ServiceCall;
+
+/**
+ * Maps JSON-RPC method names (like "people.get" or "activities.get") to
+ * {@link ServiceCall} classes and back. Registered calls are found by method
+ * names using a hash table, and new call objects are created by registered
+ * factories (see {@link #newCall(String)}), so incoming requests are routed
+ * without reflection and without building strings. This class is used on the
+ * server side only; it is not a part of the GWT module.
+ * <p>
+ * The {@link #getDefault()} registry contains all calls defined in this
+ * package.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class ServiceCallRegistry {
+
+    /**
+     * Factories of this type create new call objects.
+     */
+    public interface IServiceCallFactory<T extends ServiceCall> {
+
+        T newCall();
+
+    }
+
+    /**
+     * A registered call.
+     */
+    private static class Entry {
+
+        private final IServiceCallFactory<?> fFactory;
+
+        private final String fMethodName;
+
+        private final Class<? extends ServiceCall> fType;
+
+        public Entry(
+            String methodName,
+            Class<? extends ServiceCall> type,
+            IServiceCallFactory<?> factory) {
+            fMethodName = methodName;
+            fType = type;
+            fFactory = factory;
+        }
+
+    }
+
+    private final static ServiceCallRegistry DEFAULT = new ServiceCallRegistry();
+
+    static {
+        DEFAULT.register(
+            People.Get.METHOD,
+            People.Get.class,
+            new IServiceCallFactory<People.Get>() {
+                public People.Get newCall() {
+                    return new People.Get();
+                }
+            });
+        DEFAULT.register(
+            Activities.Get.METHOD,
+            Activities.Get.class,
+            new IServiceCallFactory<Activities.Get>() {
+                public Activities.Get newCall() {
+                    return new Activities.Get();
+                }
+            });
+        DEFAULT.register(
+            Activitystreams.Get.METHOD,
+            Activitystreams.Get.class,
+            new IServiceCallFactory<Activitystreams.Get>() {
+                public Activitystreams.Get newCall() {
+                    return new Activitystreams.Get();
+                }
+            });
+    }
+
+    /**
+     * Returns the registry containing all calls defined in this package.
+     */
+    public static ServiceCallRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the JSON-RPC method name for the given class; for example the
+     * name of the <code>People.Get</code> class is "people.get".
+     * 
+     * @param cls the class of a call or of a service
+     * @return the method name for the given class
+     */
+    public static String getMethodName(Class<?> cls) {
+        return Service.getRpcName(cls);
+    }
+
+    private final Map<String, Entry> fEntries = new ConcurrentHashMap<String, Entry>();
+
+    public ServiceCallRegistry() {
+    }
+
+    /**
+     * Returns the registered call class for the specified method or
+     * <code>null</code> if there is no such a method.
+     */
+    public Class<? extends ServiceCall> getCallType(String methodName) {
+        Entry entry = methodName != null ? fEntries.get(methodName) : null;
+        return entry != null ? entry.fType : null;
+    }
+
+    /**
+     * Returns names of all registered methods.
+     */
+    public List<String> getMethodNames() {
+        List<String> result = new ArrayList<String>();
+        for (Entry entry : fEntries.values()) {
+            result.add(entry.fMethodName);
+        }
+        return result;
+    }
+
+    /**
+     * Returns <code>true</code> if the specified method is registered.
+     */
+    public boolean isRegistered(String methodName) {
+        return methodName != null && fEntries.containsKey(methodName);
+    }
+
+    /**
+     * Creates a new call object for the specified method.
+     * 
+     * @param methodName the name of the method
+     * @return a new call object or <code>null</code> if the specified method
+     *         is not registered
+     */
+    public ServiceCall newCall(String methodName) {
+        Entry entry = methodName != null ? fEntries.get(methodName) : null;
+        return entry != null ? entry.fFactory.newCall() : null;
+    }
+
+    /**
+     * Creates a new call object for the specified method and copies the
+     * given parameters to the request of this call.
+     * 
+     * @param methodName the name of the method
+     * @param params parameters of the request
+     * @return a new call object or <code>null</code> if the specified method
+     *         is not registered
+     */
+    public ServiceCall newCall(String methodName, Map<String, ?> params) {
+        ServiceCall call = newCall(methodName);
+        if (call != null && params != null) {
+            for (Map.Entry<String, ?> param : params.entrySet()) {
+                call.getRequest().setValue(param.getKey(), param.getValue());
+            }
+        }
+        return call;
+    }
+
+    /**
+     * Registers the given call class under its method name (see
+     * {@link #getMethodName(Class)}).
+     * 
+     * @return this registry
+     */
+    public <T extends ServiceCall> ServiceCallRegistry register(
+        Class<T> type,
+        IServiceCallFactory<T> factory) {
+        return register(getMethodName(type), type, factory);
+    }
+
+    /**
+     * Registers the given call class under the specified method name.
+     * Previously registered calls with the same name are replaced.
+     * 
+     * @return this registry
+     */
+    public <T extends ServiceCall> ServiceCallRegistry register(
+        String methodName,
+        Class<T> type,
+        IServiceCallFactory<T> factory) {
+        fEntries.put(methodName, new Entry(methodName, type, factory));
+        return this;
+    }
+
+    /**
+     * Removes the specified method from this registry.
+     * 
+     * @return this registry
+     */
+    public ServiceCallRegistry unregister(String methodName) {
+        fEntries.remove(methodName);
+        return this;
+    }
+
+}
@@ -0,0 +1,114 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.ubimix.commons.json.JsonValue.IJsonValueFactory;
+
+/**
+ * The accessor cache of one {@link DataObject}. It keeps values returned by
+ * typed getters by field and factory, and counts hits and misses. Each
+ * object has its own cache, so counters are plain fields updated without
+ * synchronization; like the object itself the cache should not be accessed
+ * by many threads at the same time.
+ * 
+ * @author kotelnikov
+ */
+final class AccessorCache {
+
+    /**
+     * A cached value for a field. Entries for the same field but with
+     * different factories are chained.
+     */
+    static class Entry {
+
+        private final IJsonValueFactory<?> fFactory;
+
+        private final Entry fNext;
+
+        private final boolean fPlural;
+
+        private final Object fValue;
+
+        public Entry(
+            IJsonValueFactory<?> factory,
+            boolean plural,
+            Object value,
+            Entry next) {
+            fFactory = factory;
+            fPlural = plural;
+            fValue = value;
+            fNext = next;
+        }
+
+        public Object getValue() {
+            return fValue;
+        }
+
+    }
+
+    private final Map<String, Entry> fEntries = new HashMap<String, Entry>();
+
+    private long fHits;
+
+    private long fMisses;
+
+    public AccessorCache() {
+    }
+
+    /**
+     * Removes all cached values. Counters are not reset.
+     */
+    public void clear() {
+        fEntries.clear();
+    }
+
+    /**
+     * Returns the cached entry for the specified field and factory or
+     * <code>null</code> if there is no such an entry.
+     */
+    public Entry get(String key, IJsonValueFactory<?> factory, boolean plural) {
+        Entry entry = fEntries.get(key);
+        while (entry != null) {
+            if (entry.fFactory == factory && entry.fPlural == plural) {
+                fHits++;
+                return entry;
+            }
+            entry = entry.fNext;
+        }
+        fMisses++;
+        return null;
+    }
+
+    public long getHitCount() {
+        return fHits;
+    }
+
+    public long getMissCount() {
+        return fMisses;
+    }
+
+    /**
+     * Removes all cached values of the specified field.
+     */
+    public void invalidate(String key) {
+        fEntries.remove(key);
+    }
+
+    /**
+     * Stores the given value and returns the new entry.
+     */
+    public Entry put(
+        String key,
+        IJsonValueFactory<?> factory,
+        boolean plural,
+        Object value) {
+        Entry entry = new Entry(factory, plural, value, fEntries.get(key));
+        fEntries.put(key, entry);
+        return entry;
+    }
+
+}
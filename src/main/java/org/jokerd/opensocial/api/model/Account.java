@@ -25,6 +25,9 @@ public class Account extends DataObject {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(Account.class)
+        .add("domain", "userId", "username");
+
     /**
      * The top-most authoritative domain for this account, e.g. "twitter.com".
      * This is the Primary Sub-Field for this field, for the purposes of sorting
@@ -34,6 +37,16 @@ public class Account extends DataObject {
         return getValue("domain", DomainName.FACTORY);
     }
 
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new Account();
+    }
+
     /** A user ID associated with this account. */
     public UserId getUserId() {
         UserId userId = getValue("userId", UserId.FACTORY);
@@ -74,7 +87,7 @@ public class Account extends DataObject {
      * and filtering.
      */
     public Account setDomain(String value) {
-        return setDomain(new DomainName(value));
+        return setDomain(DomainName.valueOf(value));
     }
 
     public void setFullUserId(ObjectId value) {
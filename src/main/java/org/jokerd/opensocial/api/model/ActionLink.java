@@ -22,6 +22,9 @@ public class ActionLink extends DataObject {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(ActionLink.class)
+        .add("caption", "httpVerb", "target");
+
     /**
      * 
      */
@@ -52,6 +55,16 @@ public class ActionLink extends DataObject {
         return getString("httpVerb");
     }
 
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new ActionLink();
+    }
+
     /**
      * URL which represents the target web hook endpoint that can be invoked
      * using the specified HTTP verb.
@@ -73,6 +73,21 @@ public class Activity extends DataObject {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(Activity.class)
+        .add("appId", "body", "bodyId", "externalId", "id")
+        .addObject("mediaItems", MediaItem.FACTORY)
+        .addPrimitive("postedTime", "priority")
+        .add(
+            "streamFaviconUrl",
+            "streamSourceUrl",
+            "streamTitle",
+            "streamUrl",
+            "templateParams",
+            "title",
+            "titleId",
+            "url",
+            "userId");
+
     /**
      * Specifying the application that this activity is associated with.
      */
@@ -143,6 +158,16 @@ public class Activity extends DataObject {
         return this;
     }
 
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new Activity();
+    }
+
     /**
      * Specifying the URL for the stream's favicon.
      */
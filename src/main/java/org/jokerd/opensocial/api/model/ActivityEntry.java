@@ -97,6 +97,19 @@ public class ActivityEntry extends DataObject {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(ActivityEntry.class)
+        .addObject("actionLinks", ActionLink.FACTORY)
+        .addObject("actor", ActivityObject.FACTORY)
+        .add("content")
+        .addObject("generator", ActivityObject.FACTORY)
+        .addObject("icon", MediaLink.FACTORY)
+        .add("id")
+        .addObject("object", ActivityObject.FACTORY)
+        .addObject("provider", ActivityObject.FACTORY)
+        .add("published")
+        .addObject("target", ActivityObject.FACTORY)
+        .add("title", "updated", "url", "verb");
+
     /**
      * An "openSocial" namespaced array of actionLinks associated with this
      * Activity.
@@ -232,6 +245,26 @@ public class ActivityEntry extends DataObject {
         return getDate("published");
     }
 
+    /**
+     * Returns the publication date of this activity as the number of
+     * milliseconds since the epoch or {@link EpochDates#NO_DATE} if the date
+     * is not defined. The converted value is stored until this activity is
+     * modified.
+     */
+    public long getPublishedMillis() {
+        return getDateMillis("published");
+    }
+
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new ActivityEntry();
+    }
+
     /**
      * Describes the target of the activity. The precise meaning of the
      * activity's target is dependent on the activities verb, but will often be
@@ -275,6 +308,16 @@ public class ActivityEntry extends DataObject {
         return getDate("updated");
     }
 
+    /**
+     * Returns the modification date of this activity as the number of
+     * milliseconds since the epoch or {@link EpochDates#NO_DATE} if the date
+     * is not defined. The converted value is stored until this activity is
+     * modified.
+     */
+    public long getUpdatedMillis() {
+        return getDateMillis("updated");
+    }
+
     /**
      * An IRI identifying a resource providing an HTML representation of the
      * activity. An activity MAY contain a url property.
@@ -28,6 +28,24 @@ public class ActivityObject extends DataObject {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(ActivityObject.class)
+        .addObject("attachments", ActivityObject.FACTORY)
+        .addObject("author", ActivityObject.FACTORY)
+        .add(
+            "content",
+            "deliverTo:",
+            "displayName",
+            "downstreamDuplicates",
+            "id")
+        .addObject("image", MediaLink.FACTORY)
+        .add(
+            "objectType",
+            "published",
+            "summary",
+            "updated",
+            "upstreamDuplicates",
+            "url");
+
     /**
      * 
      */
@@ -152,6 +170,26 @@ public class ActivityObject extends DataObject {
         return getDate("published");
     }
 
+    /**
+     * Returns the publication date of this object as the number of
+     * milliseconds since the epoch or {@link EpochDates#NO_DATE} if the date
+     * is not defined. The converted value is stored until this object is
+     * modified.
+     */
+    public long getPublishedMillis() {
+        return getDateMillis("published");
+    }
+
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new ActivityObject();
+    }
+
     /**
      * Natural-language summarization of the object encoded as a single JSON
      * String containing HTML markup. Visual elements such as thumbnail images
@@ -169,6 +207,16 @@ public class ActivityObject extends DataObject {
         return getDate("updated");
     }
 
+    /**
+     * Returns the modification date of this object as the number of
+     * milliseconds since the epoch or {@link EpochDates#NO_DATE} if the date
+     * is not defined. The converted value is stored until this object is
+     * modified.
+     */
+    public long getUpdatedMillis() {
+        return getDateMillis("updated");
+    }
+
     /**
      * A JSON Array of one or more absolute IRI's [RFC3987] identifying objects
      * that duplicate this object's content. An object SHOULD contain an
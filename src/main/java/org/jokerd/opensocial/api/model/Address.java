@@ -19,6 +19,20 @@ public class Address extends DataObject {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(Address.class)
+        .add(
+            "building",
+            "country",
+            "floor",
+            "formatted",
+            "latitude",
+            "locality",
+            "longitude",
+            "postalCode",
+            "region",
+            "streetAddress",
+            "type");
+
     /**
      * The building identifier. Discussion [Issue-1132]
      */
@@ -84,6 +98,16 @@ public class Address extends DataObject {
         return getString("region");
     }
 
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new Address();
+    }
+
     /**
      * The full street address component, which may include house number, street
      * name, PO BOX, and multi-line extended street address information. This
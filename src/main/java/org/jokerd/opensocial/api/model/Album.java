@@ -16,6 +16,18 @@ public class Album extends DataObject {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(Album.class)
+        .add("caption", "description", "id")
+        .addObject("location", Address.FACTORY)
+        .addPrimitive("mediaItemCount")
+        .add(
+            "mediaMimeType",
+            "mediaType",
+            "owernId",
+            "ownerId",
+            "thumbnailUrl",
+            "title");
+
     /**
      * Returns the album's caption or title.
      */
@@ -79,6 +91,16 @@ public class Album extends DataObject {
         return getValue("ownerId", UserId.FACTORY);
     }
 
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new Album();
+    }
+
     /**
      * Returns the album cover's thumbnail URL as a string.
      */
@@ -23,6 +23,9 @@ public class AppData extends DataObject {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(AppData.class)
+        .add("key", "value");
+
     /**
      * A unique value with respect to the context it is being stored within
      * (typically a person).
@@ -31,6 +34,16 @@ public class AppData extends DataObject {
         return getString("key");
     }
 
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new AppData();
+    }
+
     /**
      * An arbitary string.
      */
@@ -26,6 +26,16 @@ public class Collection<T extends JsonObject> extends JsonObject {
         };
     }
 
+    public final static DataSchema SCHEMA = new DataSchema(Collection.class)
+        .add("entry")
+        .addPrimitive(
+            "itemsPerPage",
+            "startIndex",
+            "totalResults",
+            "filtered",
+            "sorted",
+            "updatedSince");
+
     private final IJsonValueFactory<T> fFactory;
 
     /**
@@ -35,6 +45,26 @@ public class Collection<T extends JsonObject> extends JsonObject {
         fFactory = factory;
     }
 
+    /**
+     * Replaces the underlying JSON objects of this collection and of all its
+     * entries by compact objects storing known fields in fixed slots.
+     * 
+     * @return this collection
+     * @see DataSchema
+     */
+    public Collection<T> compact() {
+        List<T> entries = getEntries();
+        if (!entries.isEmpty()) {
+            for (T entry : entries) {
+                if (entry instanceof DataObject) {
+                    ((DataObject) entry).compact();
+                }
+            }
+            setValue("entry", entries);
+        }
+        return DataSchema.compact(this, SCHEMA);
+    }
+
     /**
      * Array<Object> An array of objects, one for each item matching the
      * request. For consistency of parsing, if the request could possibly return
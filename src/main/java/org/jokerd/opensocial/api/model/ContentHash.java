@@ -0,0 +1,125 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.List;
+import java.util.Map;
+
+import org.ubimix.commons.json.JsonValue;
+
+/**
+ * Calculates 64-bit hashes of raw JSON values. Hashes of objects do not
+ * depend on the order of fields: the hash of an object is calculated from the
+ * sum of hashes of its fields, so it could be updated incrementally when
+ * individual fields are changed (see {@link DataObject#getContentHash()}).
+ * Equal values always have equal hashes. Hashes of immutable values
+ * ({@link FrozenMap} and {@link FrozenList}) are calculated only once.
+ * 
+ * @author kotelnikov
+ */
+class ContentHash {
+
+    private final static long LIST_SEED = 0x9E3779B97F4A7C15L;
+
+    private final static long MAP_SEED = 0xC2B2AE3D27D4EB4FL;
+
+    /**
+     * Returns the hash of a field with the specified name and the specified
+     * raw value.
+     */
+    public static long field(String key, Object value) {
+        return mix(string(key) * 31 + hash(value));
+    }
+
+    /**
+     * Returns the hash of the given raw JSON value.
+     */
+    public static long hash(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof FrozenMap) {
+            return ((FrozenMap) value).getContentHash();
+        }
+        if (value instanceof FrozenList) {
+            return ((FrozenList) value).getContentHash();
+        }
+        if (value instanceof JsonValue) {
+            value = ((JsonValue) value).getJsonObject();
+        }
+        if (value instanceof Map<?, ?>) {
+            long sum = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                sum += field(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            return map(sum);
+        }
+        if (value instanceof List<?>) {
+            return list((List<?>) value);
+        }
+        if (value instanceof String) {
+            return string((String) value);
+        }
+        return mix(value.hashCode());
+    }
+
+    /**
+     * Returns <code>true</code> if the given raw value can not be modified,
+     * so its hash could be stored.
+     */
+    public static boolean isImmutable(Object value) {
+        return !(value instanceof Map<?, ?>)
+            && !(value instanceof List<?>)
+            && !(value instanceof JsonValue)
+            || value instanceof FrozenMap
+            || value instanceof FrozenList;
+    }
+
+    /**
+     * Returns the hash of the given list.
+     */
+    public static long list(List<?> list) {
+        long hash = LIST_SEED;
+        for (Object item : list) {
+            hash = hash * 31 + hash(item);
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Returns the hash of an object with the specified sum of hashes of its
+     * fields (see {@link #field(String, Object)}).
+     */
+    public static long map(long sum) {
+        return mix(sum + MAP_SEED);
+    }
+
+    /**
+     * The finalization step of the MurmurHash3 64-bit hash function.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the given string.
+     */
+    private static long string(String str) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < str.length(); i++) {
+            hash ^= str.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    private ContentHash() {
+    }
+
+}
@@ -3,14 +3,209 @@
  */
 package org.jokerd.opensocial.api.model;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jokerd.opensocial.api.model.tmp.PluralField;
 import org.ubimix.commons.json.JsonObject;
+import org.ubimix.commons.json.JsonValue;
 import org.ubimix.commons.json.ext.FormattedDate;
 
 /**
+ * Base class for all model objects.
+ * <p>
+ * Typed getters of model objects re-create wrappers for raw JSON values on
+ * each call. Objects read many times (for example in rendering loops) can
+ * activate a per-instance accessor cache using the
+ * {@link #setCacheEnabled(boolean)} method. When the cache is active the
+ * values returned by the {@link #getValue(String, IJsonValueFactory)} and
+ * {@link #getPluralFields(String, IJsonValueFactory)} methods are stored by
+ * field and factory and are returned again by subsequent calls. Cached values
+ * are invalidated by modification methods of this class and when the
+ * underlying JSON object is replaced. Note that the cached values are shared
+ * between callers. The {@link #clearCache()} method should be called when the
+ * underlying JSON object is modified directly. Each cache counts its hits and
+ * misses (see {@link #getCacheHitCount()} and {@link #getCacheMissCount()}).
+ * </p>
+ * <p>
+ * Objects could also be initialized with UTF-8 bytes of their JSON
+ * representation (see {@link #setJsonBytes(byte[], int, int)}). Such lazy
+ * objects build an index of their top-level fields on first access and parse
+ * only values of fields requested by getters. The whole object is parsed
+ * transparently before the first modification and when its full JSON
+ * representation is required ({@link #getJsonObject()}, {@link #toString()},
+ * {@link #equals(Object)}).
+ * </p>
+ * <p>
+ * The {@link #freeze()} method returns an immutable snapshot of an object.
+ * Snapshots can be shared between threads without locking and copying.
+ * Nested objects and arrays of snapshots are immutable as well, so they are
+ * shared by all snapshots and by all objects created from them with the
+ * {@link #thaw()} method. Thawed objects copy nested values only when they
+ * are accessed for the first time (copy-on-write).
+ * </p>
+ * <p>
+ * Each object maintains a 64-bit hash of its content (see
+ * {@link #getContentHash()}) which does not depend on the order of fields.
+ * Hashes of fields with immutable values (strings, numbers, frozen objects and
+ * arrays) are stored and updated by the {@link #setValue(String, Object)} and
+ * {@link #removeValue(String)} methods; hashes of modifiable nested objects
+ * and arrays are calculated on each call, because these values could be
+ * modified through other objects. So the hash is cheap only for frozen
+ * objects and for objects without modifiable nested values. The
+ * {@link #equals(Object)} method compares such hashes before comparing the
+ * content of objects. Nested objects do not notify their parents about
+ * changes, so this fast path is used only for snapshots (see
+ * {@link #freeze()}) and for thawed copies which did not access their
+ * nested values. Modifiable objects with nested values (like people and
+ * activity entries) are always compared field by field; objects compared
+ * many times should be frozen first. The {@link #hashCode()} method is not
+ * based on this hash: it is inherited from {@link JsonValue}, so data
+ * objects and other JSON values with the same content have the same hash
+ * code.
+ * </p>
+ * 
  * @author kotelnikov
  */
 public class DataObject extends JsonObject {
 
+    /**
+     * This factory returns raw JSON values as is.
+     */
+    public final static IJsonValueFactory<Object> RAW_FACTORY = new IJsonValueFactory<Object>() {
+        public Object newValue(Object object) {
+            return object;
+        }
+    };
+
+    /**
+     * The name of the sub-field marking primary values of plural fields
+     */
+    private final static String PRIMARY = "primary";
+
+    /**
+     * The schema of data objects without fixed fields
+     */
+    public final static DataSchema SCHEMA = new DataSchema(DataObject.class);
+
+    /**
+     * Returns an immutable copy of the given raw JSON value. Values which are
+     * already immutable are returned as is.
+     */
+    private static Object freezeValue(Object value) {
+        if (value instanceof FrozenMap || value instanceof FrozenList) {
+            return value;
+        }
+        if (value instanceof JsonObject) {
+            value = ((JsonObject) value).getJsonObject();
+        }
+        if (value instanceof Map<?, ?>) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            LinkedHashMap<String, Object> copy = new LinkedHashMap<String, Object>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                copy.put(
+                    String.valueOf(entry.getKey()),
+                    freezeValue(entry.getValue()));
+            }
+            return new FrozenMap(copy);
+        }
+        if (value instanceof List<?>) {
+            List<?> list = (List<?>) value;
+            Object[] array = new Object[list.size()];
+            int i = 0;
+            for (Object item : list) {
+                array[i++] = freezeValue(item);
+            }
+            return new FrozenList(array);
+        }
+        return value;
+    }
+
+    /**
+     * Returns <code>true</code> if the given raw value of a plural field is
+     * marked as primary.
+     * 
+     * @see PluralField.Value#getPrimary()
+     */
+    static boolean isPrimary(Object value) {
+        if (value instanceof JsonObject) {
+            value = ((JsonObject) value).getJsonObject();
+        }
+        if (!(value instanceof Map<?, ?>)) {
+            return false;
+        }
+        // The field is read directly to avoid wrappers in loops over elements
+        Object primary = ((Map<?, ?>) value).get(PRIMARY);
+        if (primary instanceof Boolean) {
+            return ((Boolean) primary).booleanValue();
+        }
+        return primary != null && "true".equalsIgnoreCase(primary.toString());
+    }
+
+    /**
+     * Returns a modifiable copy of the given frozen value. Only the value
+     * itself and frozen elements of arrays are copied; nested values are
+     * copied later when they are accessed.
+     */
+    private static Object thawValue(Object value) {
+        if (value instanceof FrozenMap) {
+            return new LinkedHashMap<String, Object>((FrozenMap) value);
+        }
+        if (value instanceof FrozenList) {
+            List<Object> list = new ArrayList<Object>();
+            for (Object item : (FrozenList) value) {
+                list.add(thawValue(item));
+            }
+            return list;
+        }
+        return value;
+    }
+
+    /**
+     * Cached values; this field is <code>null</code> if the cache is not
+     * active for this object.
+     */
+    private AccessorCache fCache;
+
+    /**
+     * Dates converted to milliseconds since the epoch
+     */
+    private volatile DateCache fDates;
+
+    /**
+     * This flag is <code>true</code> if this object is an immutable snapshot.
+     */
+    private boolean fFrozen;
+
+    /**
+     * Modification stamps of fields used by plural field views; it is
+     * created when a view requests a stamp for the first time.
+     */
+    private FieldStamps fFieldStamps;
+
+    /**
+     * The stored content hash of this object.
+     */
+    private FieldHashes fHashes = new FieldHashes();
+
+    /**
+     * The state of lazy objects; it is <code>null</code> if this object is
+     * already parsed.
+     */
+    private LazyFields fLazy;
+
+    /**
+     * This counter is incremented each time when a field of this object is
+     * modified.
+     */
+    protected int fModCount;
+
     /**
      * 
      */
@@ -24,31 +219,729 @@ public class DataObject extends JsonObject {
         super(object);
     }
 
+    /**
+     * Removes all values stored in the accessor cache of this object.
+     */
+    public void clearCache() {
+        if (fCache != null) {
+            fCache.clear();
+        }
+        fModCount++;
+        resetFieldStamps();
+    }
+
+    /**
+     * Adds the hash of the specified field to the stored hash of this object.
+     * This method should be called after the modification of the field if
+     * the {@link #removeFieldHash(String)} method returned <code>true</code>
+     * before this modification.
+     */
+    private void addFieldHash(String key, boolean valid) {
+        if (valid) {
+            fHashes.add(getRawMap(), key, fModCount);
+        }
+    }
+
+    @Override
+    public <T, C extends Collection<T>> C addValues(
+        String key,
+        C collection,
+        IJsonValueFactory<T> factory) {
+        load(key);
+        thawField(key);
+        return super.addValues(key, collection, factory);
+    }
+
+    /**
+     * Throws an exception if this object is frozen.
+     */
+    private void checkNotFrozen() {
+        if (fFrozen) {
+            throw new UnsupportedOperationException(
+                "Frozen objects can not be modified");
+        }
+    }
+
+    /**
+     * Replaces the underlying JSON object by a compact object storing known
+     * fields in fixed slots. Frozen objects are not changed.
+     * 
+     * @return this object
+     * @see DataSchema
+     */
+    public <T extends DataObject> T compact() {
+        if (fFrozen) {
+            @SuppressWarnings("unchecked")
+            T result = (T) this;
+            return result;
+        }
+        @SuppressWarnings("unchecked")
+        T result = (T) DataSchema.compact(this, getSchema());
+        return result;
+    }
+
+    /**
+     * Compares content hashes of objects before comparing their content if
+     * hashes of both objects could be calculated without walking through
+     * nested values. This is the case for frozen objects and for objects
+     * without modifiable nested values; other objects are compared field by
+     * field.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        inflate();
+        if (obj instanceof DataObject && obj != this) {
+            DataObject o = (DataObject) obj;
+            o.inflate();
+            if (hasStoredHash()
+                && o.hasStoredHash()
+                && getContentHash() != o.getContentHash()) {
+                return false;
+            }
+        }
+        return super.equals(obj);
+    }
+
+    /**
+     * Returns an immutable snapshot of this object. Modification methods of
+     * the returned object throw an {@link UnsupportedOperationException}; its
+     * nested objects and arrays can not be modified as well. Nested values
+     * which are already frozen (for example values of an object returned by
+     * the {@link #thaw()} method and not modified since) are shared with the
+     * snapshot. Frozen objects do not use the accessor cache, so they could
+     * be accessed by many threads simultaneously.
+     * 
+     * @return an immutable snapshot of this object or this object itself if
+     *         it is already frozen
+     */
+    public <T extends DataObject> T freeze() {
+        DataObject result = this;
+        if (!fFrozen) {
+            result = newCopy(freezeValue(getJsonObject()));
+            result.fFrozen = true;
+            result.fCache = null;
+        }
+        @SuppressWarnings("unchecked")
+        T r = (T) result;
+        return r;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defaultValue) {
+        load(key);
+        Object json = super.getJsonObject();
+        if (json instanceof SlotMap) {
+            SlotMap map = (SlotMap) json;
+            int p = map.getUnboxedSlot(key);
+            if (p >= 0 && map.isBoolean(p)) {
+                return map.booleanValue(p);
+            }
+        }
+        return super.getBoolean(key, defaultValue);
+    }
+
+    /**
+     * Returns the number of values returned from the accessor cache of this
+     * object since the cache was activated.
+     * 
+     * @see #setCacheEnabled(boolean)
+     */
+    public long getCacheHitCount() {
+        return fCache != null ? fCache.getHitCount() : 0;
+    }
+
+    /**
+     * Returns the number of values which were not found in the accessor
+     * cache of this object and were created using value factories.
+     * 
+     * @see #setCacheEnabled(boolean)
+     */
+    public long getCacheMissCount() {
+        return fCache != null ? fCache.getMissCount() : 0;
+    }
+
+    /**
+     * Returns a 64-bit hash of the content of this object. Objects with equal
+     * content have equal hashes independently of the order of their fields.
+     * This method does not walk through fields with immutable values (for
+     * example values of frozen objects), so it is cheap for frozen objects and
+     * for objects without nested modifiable values.
+     * 
+     * @return a 64-bit hash of the content of this object
+     * @see #freeze()
+     */
+    public long getContentHash() {
+        inflate();
+        Object json = super.getJsonObject();
+        if (json instanceof FrozenMap) {
+            return ((FrozenMap) json).getContentHash();
+        }
+        Map<?, ?> map = getRawMap();
+        fHashes.update(json, map, fModCount);
+        return fHashes.getHash(map);
+    }
+
     protected FormattedDate getDate(String field) {
         return getValue(field, FormattedDate.FACTORY);
     }
 
+    /**
+     * Returns the value of the specified date field as the number of
+     * milliseconds since the epoch. Converted values are stored and returned
+     * again until the object is modified, so this method could be used to
+     * compare and sort objects by dates.
+     * 
+     * @param field the name of the date field
+     * @return the number of milliseconds since the epoch or
+     *         {@link EpochDates#NO_DATE} if the field is not defined or if it
+     *         is not a valid date
+     * @see EpochDates
+     */
+    protected long getDateMillis(String field) {
+        DateCache dates = fDates;
+        int modCount = fModCount;
+        Object json = super.getJsonObject();
+        if (dates != null && dates.isValid(json, modCount)) {
+            int index = dates.indexOf(field);
+            if (index >= 0) {
+                return dates.getMillis(index);
+            }
+        } else {
+            dates = new DateCache(json, modCount);
+        }
+        long millis = EpochDates.toMillis(getRawValue(field));
+        fDates = dates.add(field, millis);
+        return millis;
+    }
+
+    @Override
+    public double getDouble(String key, double defaultValue) {
+        load(key);
+        Object json = super.getJsonObject();
+        if (json instanceof SlotMap) {
+            SlotMap map = (SlotMap) json;
+            int p = map.getUnboxedSlot(key);
+            if (p >= 0 && !map.isBoolean(p)) {
+                return map.doubleValue(p);
+            }
+        }
+        return super.getDouble(key, defaultValue);
+    }
+
+    /**
+     * Returns the modification stamp of the specified field. The stamp is
+     * changed each time when the field is modified.
+     * 
+     * @see FieldStamps
+     */
+    int getFieldStamp(String key) {
+        if (fFieldStamps == null) {
+            fFieldStamps = new FieldStamps(fModCount);
+        }
+        return fFieldStamps.get(key);
+    }
+
+    @Override
+    public int getInteger(String key, int defaultValue) {
+        load(key);
+        Object json = super.getJsonObject();
+        if (json instanceof SlotMap) {
+            SlotMap map = (SlotMap) json;
+            int p = map.getUnboxedSlot(key);
+            if (p >= 0 && !map.isBoolean(p)) {
+                return map.intValue(p);
+            }
+        }
+        return super.getInteger(key, defaultValue);
+    }
+
+    @Override
+    public Object getJsonObject() {
+        inflate();
+        return super.getJsonObject();
+    }
+
+    @Override
+    public Set<String> getKeys() {
+        LazyFields lazy = getLazyState();
+        if (lazy != null) {
+            try {
+                Set<String> keys = new LinkedHashSet<String>(lazy
+                    .getIndex()
+                    .getKeys());
+                keys.addAll(super.getKeys());
+                return Collections.unmodifiableSet(keys);
+            } catch (IllegalArgumentException e) {
+                inflate();
+            }
+        }
+        return super.getKeys();
+    }
+
+    /**
+     * Returns the lazy state of this object or <code>null</code> if this
+     * object is not lazy.
+     */
+    private LazyFields getLazyState() {
+        if (fLazy != null && fLazy.getObject() != super.getJsonObject()) {
+            // The JSON object was replaced
+            fLazy = null;
+        }
+        return fLazy;
+    }
+
+    @Override
+    public <T> List<T> getList(String key, IJsonValueFactory<T> factory) {
+        load(key);
+        thawField(key);
+        return super.getList(key, factory);
+    }
+
+    /**
+     * Returns the raw JSON array of the specified field which could be
+     * modified in place. A single value of the field is replaced by an array
+     * containing this value. The {@link #onFieldModified(String)} method
+     * should be called after each modification of the returned list.
+     */
+    List<Object> getModifiableList(String key) {
+        checkNotFrozen();
+        inflate();
+        thawField(key);
+        Object value = super.getValue(key, RAW_FACTORY);
+        if (!(value instanceof ArrayList<?>)) {
+            List<Object> list = new ArrayList<Object>();
+            if (value instanceof List<?>) {
+                list.addAll((List<?>) value);
+            } else if (value != null) {
+                list.add(value);
+            }
+            setValue(key, list);
+            value = super.getValue(key, RAW_FACTORY);
+        }
+        @SuppressWarnings("unchecked")
+        List<Object> result = (List<Object>) value;
+        return result;
+    }
+
+    @Override
+    public <T> T getObject(String key, IJsonValueFactory<T> factory) {
+        load(key);
+        thawField(key);
+        return super.getObject(key, factory);
+    }
+
+    /**
+     * Returns a live view of the specified plural field. Elements of the
+     * returned list are decoded on demand and all modifications of the list
+     * are written back to this object.
+     * 
+     * @see PluralFieldsView
+     */
     public <E> PluralFields<E> getPluralFields(
         String key,
         IJsonValueFactory<E> factory) {
-        return addValues(key, new PluralFieldsImpl<E>(), factory);
+        if (fCache == null) {
+            return new PluralFieldsView<E>(this, key, factory);
+        }
+        AccessorCache.Entry entry = fCache.get(key, factory, true);
+        if (entry == null) {
+            PluralFields<E> result = new PluralFieldsView<E>(
+                this,
+                key,
+                factory);
+            entry = fCache.put(key, factory, true, result);
+        }
+        @SuppressWarnings("unchecked")
+        PluralFields<E> result = (PluralFields<E>) entry.getValue();
+        return result;
+    }
+
+    /**
+     * Returns the underlying JSON object or <code>null</code> if it is not a
+     * map.
+     */
+    private Map<?, ?> getRawMap() {
+        Object json = super.getJsonObject();
+        return json instanceof Map<?, ?> ? (Map<?, ?>) json : null;
+    }
+
+    /**
+     * Returns the raw JSON value of the specified field bypassing the accessor
+     * cache.
+     */
+    Object getRawValue(String key) {
+        load(key);
+        thawField(key);
+        return super.getValue(key, RAW_FACTORY);
+    }
+
+    /**
+     * Returns the schema of fields of this object. Model classes return their
+     * own schemas declared in the static <code>SCHEMA</code> fields.
+     * 
+     * @see DataSchema
+     */
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    public String getString(String key) {
+        load(key);
+        return super.getString(key);
+    }
+
+    @Override
+    public <T> T getValue(String key, IJsonValueFactory<T> factory) {
+        load(key);
+        if (fCache == null) {
+            thawField(key);
+            return super.getValue(key, factory);
+        }
+        AccessorCache.Entry entry = fCache.get(key, factory, false);
+        if (entry == null) {
+            thawField(key);
+            T result = super.getValue(key, factory);
+            entry = fCache.put(key, factory, false, result);
+        }
+        @SuppressWarnings("unchecked")
+        T result = (T) entry.getValue();
+        return result;
+    }
+
+    /**
+     * Returns <code>true</code> if the content hash of this object could be
+     * calculated without walking through nested values.
+     */
+    boolean hasStoredHash() {
+        Object json = super.getJsonObject();
+        if (json instanceof FrozenMap) {
+            return true;
+        }
+        fHashes.update(json, getRawMap(), fModCount);
+        return fHashes.isComplete();
+    }
+
+    /**
+     * Returns the hash code of the JSON object of this object, as all other
+     * JSON values do; it is consistent with the {@link #equals(Object)}
+     * method. Frozen objects cache their hash codes.
+     * 
+     * @see #getContentHash()
+     */
+    @Override
+    public int hashCode() {
+        inflate();
+        return super.hashCode();
+    }
+
+    /**
+     * Parses all fields of lazy objects.
+     */
+    private void inflate() {
+        LazyFields lazy = getLazyState();
+        if (lazy == null) {
+            return;
+        }
+        fLazy = null;
+        JsonFieldIndex index;
+        try {
+            index = lazy.getIndex();
+        } catch (IllegalArgumentException e) {
+            setJsonObject(lazy.getText());
+            return;
+        }
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        for (String key : index.getKeys()) {
+            Object value = lazy.isLoaded(key) ? super.getValue(
+                key,
+                RAW_FACTORY) : index.getValue(key);
+            if (value != null) {
+                map.put(key, value);
+            }
+        }
+        for (String key : super.getKeys()) {
+            if (!map.containsKey(key)) {
+                map.put(key, super.getValue(key, RAW_FACTORY));
+            }
+        }
+        setJsonObject(map);
+    }
+
+    private void invalidate(String key) {
+        if (fCache != null) {
+            fCache.invalidate(key);
+        }
+        fModCount++;
+        if (fFieldStamps != null) {
+            fFieldStamps.update(key, fModCount);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the accessor cache is active for this
+     * object.
+     */
+    public boolean isCacheEnabled() {
+        return fCache != null;
+    }
+
+    /**
+     * Returns <code>true</code> if this object is an immutable snapshot.
+     * 
+     * @see #freeze()
+     */
+    public boolean isFrozen() {
+        return fFrozen;
+    }
+
+    /**
+     * Returns <code>true</code> if this object was initialized with JSON bytes
+     * and it was not fully parsed yet.
+     */
+    public boolean isLazy() {
+        return getLazyState() != null;
+    }
+
+    /**
+     * Copies the value of the specified field from the JSON bytes to the
+     * underlying JSON object.
+     */
+    private void load(String key) {
+        LazyFields lazy = getLazyState();
+        if (lazy == null || lazy.isLoaded(key)) {
+            return;
+        }
+        JsonFieldIndex index;
+        try {
+            index = lazy.getIndex();
+        } catch (IllegalArgumentException e) {
+            inflate();
+            return;
+        }
+        lazy.setLoaded(key);
+        Object value = index.getValue(key);
+        if (value != null) {
+            super.setValue(key, value);
+        }
+    }
+
+    /**
+     * Creates a copy of this object with the specified JSON object. The copy
+     * is created by the {@link #newInstance()} method, so it does not share
+     * any state with this object.
+     */
+    private DataObject newCopy(Object json) {
+        DataObject copy = newInstance();
+        if (copy.getClass() != getClass()) {
+            throw new IllegalStateException(getClass().getName()
+                + " does not override the newInstance() method");
+        }
+        copy.fCache = fCache != null ? new AccessorCache() : null;
+        copy.setJsonObject(json);
+        return copy;
+    }
+
+    /**
+     * Creates a new empty object of the same type as this one. This method
+     * is used by the {@link #freeze()} and {@link #thaw()} methods to create
+     * copies, so each subclass has to override it.
+     * 
+     * @return a new empty object of the same type
+     */
+    protected DataObject newInstance() {
+        return new DataObject();
     }
 
     public <E> PluralFields<E> newPluralFields() {
         return new PluralFieldsImpl<E>();
     }
 
+    /**
+     * Notifies this object that the value of the specified field was modified
+     * in place (see {@link #getModifiableList(String)}).
+     */
+    void onFieldModified(String key) {
+        boolean hashed = removeFieldHash(key);
+        invalidate(key);
+        addFieldHash(key, hashed);
+    }
+
+    @Override
+    public JsonObject removeValue(String name) {
+        checkNotFrozen();
+        inflate();
+        boolean hashed = removeFieldHash(name);
+        invalidate(name);
+        JsonObject result = super.removeValue(name);
+        addFieldHash(name, hashed);
+        return result;
+    }
+
+    /**
+     * Removes the hash of the specified field from the stored hash of this
+     * object. This method should be called before modification of the field.
+     * 
+     * @return <code>true</code> if the stored hash is valid and it should be
+     *         updated after the modification of the field
+     */
+    private boolean removeFieldHash(String key) {
+        return fHashes.remove(
+            super.getJsonObject(),
+            getRawMap(),
+            key,
+            fModCount);
+    }
+
+    /**
+     * Sets the same modification stamp for all fields. This method is called
+     * when the object could be modified without notifications about
+     * individual fields.
+     */
+    private void resetFieldStamps() {
+        if (fFieldStamps != null) {
+            fFieldStamps.reset(fModCount);
+        }
+    }
+
+    /**
+     * Activates or deactivates the accessor cache for this object. The cache
+     * is never activated for frozen objects.
+     * 
+     * @param enabled if this flag is <code>true</code> then values returned by
+     *        typed getters are cached
+     * @return this object
+     */
+    public DataObject setCacheEnabled(boolean enabled) {
+        if (enabled && !fFrozen) {
+            if (fCache == null) {
+                fCache = new AccessorCache();
+            }
+        } else {
+            fCache = null;
+        }
+        return this;
+    }
+
     protected void setDate(String field, FormattedDate date) {
         setValue(field, date);
     }
 
+    /**
+     * Initializes this object with UTF-8 bytes of its JSON representation.
+     * 
+     * @param bytes UTF-8 bytes of a JSON object
+     * @return this object
+     * @see #setJsonBytes(byte[], int, int)
+     */
+    public <T extends DataObject> T setJsonBytes(byte[] bytes) {
+        return setJsonBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Initializes this object with UTF-8 bytes of its JSON representation.
+     * Bytes are not parsed by this method. Fields are parsed only when they
+     * are requested. The given array should not be modified while this object
+     * is lazy.
+     * 
+     * @param bytes the array containing UTF-8 bytes of a JSON object
+     * @param offset the position of the first byte of the object
+     * @param length the number of bytes in the object
+     * @return this object
+     */
+    public <T extends DataObject> T setJsonBytes(
+        byte[] bytes,
+        int offset,
+        int length) {
+        checkNotFrozen();
+        setJsonObject(new LinkedHashMap<String, Object>());
+        fLazy = new LazyFields(bytes, offset, length, super.getJsonObject());
+        @SuppressWarnings("unchecked")
+        T result = (T) this;
+        return result;
+    }
+
+    /**
+     * Replaces the underlying JSON object. Values stored in the accessor cache
+     * are removed.
+     */
+    @Override
+    public <T extends JsonValue> T setJsonObject(Object object) {
+        checkNotFrozen();
+        T result = super.setJsonObject(object);
+        clearCache();
+        return result;
+    }
+
     @Override
     public JsonObject setValue(String name, Object value) {
+        checkNotFrozen();
+        inflate();
+        boolean hashed = removeFieldHash(name);
+        invalidate(name);
+        JsonObject result;
         if (value == null) {
-            return super.removeValue(name);
+            result = super.removeValue(name);
         } else {
-            return super.setValue(name, value);
+            result = super.setValue(name, value);
         }
+        addFieldHash(name, hashed);
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> JsonObject setValues(String key, T... values) {
+        checkNotFrozen();
+        inflate();
+        boolean hashed = removeFieldHash(key);
+        invalidate(key);
+        JsonObject result = super.setValues(key, values);
+        addFieldHash(key, hashed);
+        return result;
+    }
+
+    /**
+     * Returns a modifiable copy of this frozen object. Nested values are
+     * shared with the frozen object and they are copied only when they are
+     * accessed, so the cost of this method does not depend on the size of
+     * the object.
+     * 
+     * @return a modifiable copy of this object or this object itself if it is
+     *         not frozen
+     */
+    public <T extends DataObject> T thaw() {
+        DataObject result = this;
+        if (fFrozen) {
+            result = newCopy(thawValue(super.getJsonObject()));
+        }
+        @SuppressWarnings("unchecked")
+        T r = (T) result;
+        return r;
+    }
+
+    /**
+     * Replaces the frozen value of the specified field by a modifiable copy.
+     * Values of frozen objects and of objects wrapping frozen values are not
+     * changed.
+     */
+    private void thawField(String key) {
+        if (fFrozen || super.getJsonObject() instanceof FrozenMap) {
+            return;
+        }
+        Object value = super.getValue(key, RAW_FACTORY);
+        if (value instanceof FrozenMap || value instanceof FrozenList) {
+            boolean hashed = removeFieldHash(key);
+            invalidate(key);
+            super.setValue(key, thawValue(value));
+            addFieldHash(key, hashed);
+        }
+    }
+
+    @Override
+    public String toString() {
+        inflate();
+        return super.toString();
     }
 
 }
@@ -0,0 +1,451 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ubimix.commons.json.JsonObject;
+import org.ubimix.commons.json.JsonValue.IJsonValueFactory;
+
+/**
+ * A schema describes the fixed set of fields of a model class. Each model
+ * class declares its schema explicitly in the static <code>SCHEMA</code> field
+ * and returns it from the {@link DataObject#getSchema()} method. Schemas of
+ * subclasses extend schemas of their parents:
+ * 
+ * <pre>
+ * public final static DataSchema SCHEMA = new DataSchema(MediaLink.class)
+ *     .add("mediaItemId", "url")
+ *     .addPrimitive("duration", "height", "width");
+ * </pre>
+ * <p>
+ * Primitive fields are fields with numeric or boolean values. Fields with
+ * nested model objects (or arrays of such objects) are declared with the
+ * factory of these objects; schemas of nested objects are requested from
+ * objects created by this factory when they are used for the first time, so
+ * schemas could refer to classes which are not initialized yet (including
+ * their own class).
+ * </p>
+ * <p>
+ * Schemas also list required fields of model classes (see
+ * {@link #require(String...)}); they are the same as fields declared by the
+ * {@link RequiredField} annotations, but they are available without
+ * reflection.
+ * </p>
+ * <p>
+ * Schemas are used to create compact JSON objects (see
+ * {@link #compact(JsonObject, DataSchema)}) storing values of known fields in
+ * fixed slots and values of primitive fields without boxing. Fields which are
+ * not known by the schema are stored in an additional map. Schemas are
+ * immutable; methods adding fields return new schemas.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class DataSchema {
+
+    /**
+     * Replaces the JSON object of the given model object by a compact JSON
+     * object defined by the given schema. Nested objects are converted as
+     * well if their types are declared by the schema.
+     * 
+     * @param object the object to compact
+     * @param schema the schema of the object
+     * @return the given object
+     */
+    public static <T extends JsonObject> T compact(
+        T object,
+        DataSchema schema) {
+        Object json = object.getJsonObject();
+        if (!(json instanceof SlotMap)) {
+            SlotMap map = schema.newMap(json);
+            if (map != null) {
+                object.setJsonObject(map);
+                if (object instanceof DataObject) {
+                    ((DataObject) object).clearCache();
+                }
+            }
+        }
+        return object;
+    }
+
+    /**
+     * Returns the schema of objects created by the given factory or
+     * <code>null</code> if the factory does not create data objects.
+     */
+    public static DataSchema getSchema(IJsonValueFactory<?> factory) {
+        Object value = factory.newValue(new LinkedHashMap<String, Object>());
+        return value instanceof DataObject
+            ? ((DataObject) value).getSchema()
+            : null;
+    }
+
+    /**
+     * Schemas of nested objects; they are resolved on demand using factories
+     * of nested objects.
+     */
+    private final DataSchema[] fChildSchemas;
+
+    private final IJsonValueFactory<?>[] fFactories;
+
+    private final Map<String, Integer> fIndex = new HashMap<String, Integer>();
+
+    private final String[] fNames;
+
+    private final int fPrimitiveCount;
+
+    /**
+     * Positions of unboxed values of fields; -1 for non-primitive fields.
+     */
+    private final int[] fPrimitiveSlots;
+
+    /**
+     * Names of required fields.
+     */
+    private final String[] fRequired;
+
+    /**
+     * The signature of this schema including signatures of schemas of nested
+     * objects; it is calculated on the first request.
+     */
+    private Integer fSignature;
+
+    private final Class<?> fType;
+
+    /**
+     * Creates a new schema without fields.
+     * 
+     * @param type the model class described by this schema
+     */
+    public DataSchema(Class<?> type) {
+        this(
+            type,
+            new String[0],
+            new int[0],
+            new IJsonValueFactory<?>[0],
+            new String[0]);
+    }
+
+    /**
+     * Creates a new schema containing all fields of the given parent schema.
+     * 
+     * @param type the model class described by this schema
+     * @param parent the schema of the parent class
+     */
+    public DataSchema(Class<?> type, DataSchema parent) {
+        this(
+            type,
+            parent.fNames,
+            parent.fPrimitiveSlots,
+            parent.fFactories,
+            parent.fRequired);
+    }
+
+    private DataSchema(
+        Class<?> type,
+        String[] names,
+        int[] primitiveSlots,
+        IJsonValueFactory<?>[] factories,
+        String[] required) {
+        fType = type;
+        fNames = names;
+        fFactories = factories;
+        fRequired = required;
+        fChildSchemas = new DataSchema[names.length];
+        fPrimitiveSlots = new int[names.length];
+        int primitiveCount = 0;
+        for (int i = 0; i < names.length; i++) {
+            fPrimitiveSlots[i] = primitiveSlots[i] >= 0 ? primitiveCount++ : -1;
+            fIndex.put(names[i], i);
+        }
+        fPrimitiveCount = primitiveCount;
+    }
+
+    /**
+     * Returns a new schema containing fields of this schema and the specified
+     * fields with non-primitive values.
+     * 
+     * @param names names of the fields to add
+     * @return a new schema
+     */
+    public DataSchema add(String... names) {
+        DataSchema schema = this;
+        for (String name : names) {
+            schema = schema.with(name, false, null);
+        }
+        return schema;
+    }
+
+    /**
+     * Returns a new schema containing fields of this schema and the specified
+     * field with model objects or arrays of model objects.
+     * 
+     * @param name the name of the field to add
+     * @param factory the factory of model objects stored in this field
+     * @return a new schema
+     */
+    public DataSchema addObject(String name, IJsonValueFactory<?> factory) {
+        return with(name, false, factory);
+    }
+
+    /**
+     * Returns a new schema containing fields of this schema and the specified
+     * fields with numeric or boolean values.
+     * 
+     * @param names names of the fields to add
+     * @return a new schema
+     */
+    public DataSchema addPrimitive(String... names) {
+        DataSchema schema = this;
+        for (String name : names) {
+            schema = schema.with(name, true, null);
+        }
+        return schema;
+    }
+
+    /**
+     * Converts the given raw JSON value of a field into a compact form if the
+     * type of the field is known.
+     */
+    private Object compactValue(int slot, Object value) {
+        DataSchema schema = getChildSchema(slot);
+        if (schema == null) {
+            return value;
+        }
+        if (value instanceof List<?>) {
+            List<?> list = (List<?>) value;
+            List<Object> result = new ArrayList<Object>(list.size());
+            for (Object item : list) {
+                SlotMap map = schema.newMap(item);
+                result.add(map != null ? map : item);
+            }
+            return result;
+        }
+        SlotMap map = schema.newMap(value);
+        return map != null ? map : value;
+    }
+
+    /**
+     * Returns the schema of model objects stored in the specified field (or
+     * in arrays stored in this field) or <code>null</code> if the type of the
+     * field values is unknown.
+     */
+    public DataSchema getChildSchema(int index) {
+        DataSchema schema = fChildSchemas[index];
+        if (schema == null && fFactories[index] != null) {
+            schema = getSchema(fFactories[index]);
+            // Schemas are immutable, so they could be set by many threads
+            fChildSchemas[index] = schema;
+        }
+        return schema;
+    }
+
+    /**
+     * Returns the number of fields known by this schema.
+     */
+    public int getFieldCount() {
+        return fNames.length;
+    }
+
+    /**
+     * Returns the position of the specified field in this schema or -1 if the
+     * field is unknown.
+     * 
+     * @param name the name of the field
+     */
+    public int getFieldIndex(Object name) {
+        Integer index = fIndex.get(name);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Returns the name of the field with the specified position.
+     */
+    public String getFieldName(int index) {
+        return fNames[index];
+    }
+
+    /**
+     * Returns the list of all fields known by this schema.
+     */
+    public List<String> getFieldNames() {
+        return Collections.unmodifiableList(Arrays.asList(fNames));
+    }
+
+    /**
+     * Returns the number of primitive fields.
+     */
+    int getPrimitiveCount() {
+        return fPrimitiveCount;
+    }
+
+    /**
+     * Returns the position of the unboxed value of the specified field or -1
+     * if the field is not primitive.
+     */
+    int getPrimitiveSlot(int index) {
+        return fPrimitiveSlots[index];
+    }
+
+    /**
+     * Returns names of required fields of the model class.
+     */
+    public List<String> getRequiredFields() {
+        return Collections.unmodifiableList(Arrays.asList(fRequired));
+    }
+
+    /**
+     * Returns a hash of names of fields of this schema and of signatures of
+     * schemas of nested objects. Schemas with the same signature define the
+     * same positions of fields, including fields of nested objects. Nested
+     * schemas are resolved when the signature is requested for the first
+     * time.
+     */
+    public int getSignature() {
+        Integer signature = fSignature;
+        if (signature == null) {
+            signature = getSignature(new ArrayList<DataSchema>());
+            // The value is always the same, so it could be set by many threads
+            fSignature = signature;
+        }
+        return signature;
+    }
+
+    /**
+     * Calculates the signature of this schema. Schemas referring to schemas
+     * which are already on the given path (recursive structures, like
+     * activity objects with nested activity objects) use the position of the
+     * referenced schema on the path instead of its signature.
+     * 
+     * @param path schemas containing this one
+     */
+    private int getSignature(List<DataSchema> path) {
+        for (int i = 0; i < path.size(); i++) {
+            if (path.get(i) == this) {
+                return -1 - i;
+            }
+        }
+        path.add(this);
+        int signature = 1;
+        for (int i = 0; i < fNames.length; i++) {
+            signature = 31 * signature + fNames[i].hashCode();
+            DataSchema schema = getChildSchema(i);
+            signature = 31 * signature
+                + (schema != null ? schema.getSignature(path) : 0);
+        }
+        path.remove(path.size() - 1);
+        return signature;
+    }
+
+    /**
+     * Returns the model class described by this schema.
+     */
+    public Class<?> getType() {
+        return fType;
+    }
+
+    /**
+     * Returns <code>true</code> if the specified field is primitive, so its
+     * numeric or boolean values are stored unboxed.
+     */
+    public boolean isPrimitive(int index) {
+        return fPrimitiveSlots[index] >= 0;
+    }
+
+    /**
+     * Creates a new empty compact JSON object.
+     */
+    public Map<String, Object> newMap() {
+        return new SlotMap(this);
+    }
+
+    /**
+     * Creates a compact copy of the given raw JSON object. Returns
+     * <code>null</code> if the given value is not a JSON object.
+     */
+    SlotMap newMap(Object json) {
+        if (json instanceof SlotMap) {
+            return (SlotMap) json;
+        }
+        if (!(json instanceof Map<?, ?>)) {
+            return null;
+        }
+        SlotMap result = new SlotMap(this);
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) json).entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            Object value = entry.getValue();
+            int slot = getFieldIndex(key);
+            if (slot >= 0) {
+                value = compactValue(slot, value);
+            }
+            result.put(key, value);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new schema containing fields of this schema and marking the
+     * specified fields as required.
+     * 
+     * @param names names of required fields
+     * @return a new schema
+     */
+    public DataSchema require(String... names) {
+        Set<String> required = new LinkedHashSet<String>(Arrays
+            .asList(fRequired));
+        required.addAll(Arrays.asList(names));
+        return new DataSchema(
+            fType,
+            fNames,
+            fPrimitiveSlots,
+            fFactories,
+            required.toArray(new String[required.size()]));
+    }
+
+    @Override
+    public String toString() {
+        return fType.getName() + Arrays.toString(fNames);
+    }
+
+    /**
+     * Returns a new schema containing fields of this schema and the given
+     * field. If this schema already contains a field with the same name then
+     * the declaration of this field is replaced.
+     */
+    private DataSchema with(
+        String name,
+        boolean primitive,
+        IJsonValueFactory<?> factory) {
+        int index = getFieldIndex(name);
+        int len = fNames.length;
+        int size = index < 0 ? len + 1 : len;
+        if (index < 0) {
+            index = len;
+        }
+        String[] names = new String[size];
+        System.arraycopy(fNames, 0, names, 0, len);
+        int[] primitiveSlots = new int[size];
+        System.arraycopy(fPrimitiveSlots, 0, primitiveSlots, 0, len);
+        IJsonValueFactory<?>[] factories = new IJsonValueFactory<?>[size];
+        System.arraycopy(fFactories, 0, factories, 0, len);
+        names[index] = name;
+        primitiveSlots[index] = primitive ? 0 : -1;
+        factories[index] = factory;
+        return new DataSchema(
+            fType,
+            names,
+            primitiveSlots,
+            factories,
+            fRequired);
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+/**
+ * Dates of a {@link DataObject} already converted to milliseconds (see
+ * {@link DataObject#getDateMillis(String)}). A cache is valid only for the
+ * JSON object and the modification counter used to create it. Instances of
+ * this class are never modified, so they could be shared by threads reading
+ * frozen objects; new values are added by creating new caches.
+ * 
+ * @author kotelnikov
+ */
+final class DateCache {
+
+    private final String[] fFields;
+
+    private final Object fJson;
+
+    private final long[] fMillis;
+
+    private final int fModCount;
+
+    /**
+     * Creates an empty cache.
+     * 
+     * @param json the JSON object of the data object
+     * @param modCount the modification counter of the data object
+     */
+    public DateCache(Object json, int modCount) {
+        this(json, modCount, new String[0], new long[0]);
+    }
+
+    private DateCache(
+        Object json,
+        int modCount,
+        String[] fields,
+        long[] millis) {
+        fJson = json;
+        fModCount = modCount;
+        fFields = fields;
+        fMillis = millis;
+    }
+
+    /**
+     * Returns a new cache containing all values of this cache and the given
+     * value.
+     */
+    public DateCache add(String field, long millis) {
+        int len = fFields.length;
+        String[] fields = new String[len + 1];
+        long[] values = new long[len + 1];
+        System.arraycopy(fFields, 0, fields, 0, len);
+        System.arraycopy(fMillis, 0, values, 0, len);
+        fields[len] = field;
+        values[len] = millis;
+        return new DateCache(fJson, fModCount, fields, values);
+    }
+
+    /**
+     * Returns the stored value with the specified position.
+     */
+    public long getMillis(int index) {
+        return fMillis[index];
+    }
+
+    /**
+     * Returns the position of the specified field or -1 if its value is not
+     * stored.
+     */
+    public int indexOf(String field) {
+        for (int i = 0; i < fFields.length; i++) {
+            if (fFields[i].equals(field)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns <code>true</code> if this cache was created for the given state
+     * of a data object.
+     */
+    public boolean isValid(Object json, int modCount) {
+        return fJson == json && fModCount == modCount;
+    }
+
+}
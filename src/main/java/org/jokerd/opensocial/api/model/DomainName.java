@@ -10,6 +10,11 @@ import org.ubimix.commons.json.JsonValue.IJsonValueFactory;
  * The Domain-Name is an optional data type that containers may use to uniquely
  * identify themselves. It is recommended that they use a registered domain name
  * where possible.
+ * <p>
+ * Domain names are shared by a huge number of object identifiers so the
+ * {@link #valueOf(String)} method and the {@link #FACTORY} return canonical
+ * instances kept in a pool.
+ * </p>
  * 
  * @author kotelnikov
  */
@@ -20,10 +25,57 @@ public class DomainName {
         @Override
         public DomainName newValue(Object object) {
             String str = JsonValue.STRING_FACTORY.newValue(object);
-            return new DomainName(str);
+            return valueOf(str);
         }
     };
 
+    /**
+     * Returns the canonical instance of the domain with the specified name.
+     * All calls with the same name return the same instance while it is
+     * referenced by the application.
+     * 
+     * @param domainName the name of the domain
+     * @return the canonical instance of the domain
+     */
+    public static DomainName valueOf(String domainName) {
+        String encoded = LocalIdEncoder.getInstance().encode(domainName);
+        return valueOfEncoded(encoded);
+    }
+
+    /**
+     * Returns the canonical instance of the domain with the specified name
+     * already encoded with the {@link LocalIdEncoder}.
+     */
+    static DomainName valueOfEncoded(String encoded) {
+        DomainName result = DomainNamePool.get(encoded, 0, encoded.length());
+        if (result == null) {
+            result = DomainNamePool.intern(new DomainName(encoded, true));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the canonical instance of the domain with the name defined by
+     * the specified segment of the given character sequence. If the segment
+     * does not require encoding and the domain is already in the pool then
+     * this method does not create any new strings.
+     */
+    static DomainName valueOf(CharSequence value, int start, int end) {
+        LocalIdEncoder encoder = LocalIdEncoder.getInstance();
+        String str;
+        if (encoder.isSafe(value, start, end)) {
+            DomainName result = DomainNamePool.get(value, start, end);
+            if (result != null) {
+                return result;
+            }
+            str = value.subSequence(start, end).toString();
+        } else {
+            str = value.subSequence(start, end).toString();
+            str = encoder.encode(str);
+        }
+        return valueOfEncoded(str);
+    }
+
     protected final String fDomainName;
 
     public DomainName(DomainName domainName) {
@@ -34,7 +86,19 @@ public class DomainName {
      * @param domainName
      */
     public DomainName(String domainName) {
-        fDomainName = LocalIdEncoder.getInstance().encode(domainName);
+        this(domainName, false);
+    }
+
+    /**
+     * @param domainName the name of the domain
+     * @param encoded if this flag is <code>true</code> then the given name is
+     *        already encoded with the {@link LocalIdEncoder} and it is used as
+     *        is
+     */
+    protected DomainName(String domainName, boolean encoded) {
+        fDomainName = encoded ? domainName : LocalIdEncoder
+            .getInstance()
+            .encode(domainName);
     }
 
     @Override
@@ -62,6 +126,16 @@ public class DomainName {
         return fDomainName.hashCode();
     }
 
+    /**
+     * Returns the canonical instance equal to this domain name.
+     * 
+     * @return the canonical instance of this domain
+     * @see #valueOf(String)
+     */
+    public final DomainName intern() {
+        return DomainNamePool.intern(this);
+    }
+
     @Override
     public final String toString() {
         return fDomainName;
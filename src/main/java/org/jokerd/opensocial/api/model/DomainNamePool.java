@@ -0,0 +1,98 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+/**
+ * The pool of canonical {@link DomainName} instances. Instances are kept in a
+ * {@link WeakValuePool} so domains which are not used anymore are removed by
+ * the garbage collector.
+ * <p>
+ * This class is not translated by GWT: weak references and concurrent maps
+ * are not available on the client side. The GWT module provides its own
+ * version of this class in the "super" source folder.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+final class DomainNamePool {
+
+    /**
+     * Keys of the pool. They allow to compare segments of parsed identifiers
+     * with pooled names without creating substrings.
+     */
+    private static class Key {
+
+        private final int fEnd;
+
+        private final int fHash;
+
+        private final CharSequence fSequence;
+
+        private final int fStart;
+
+        public Key(CharSequence sequence, int start, int end) {
+            fSequence = sequence;
+            fStart = start;
+            fEnd = end;
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + sequence.charAt(i);
+            }
+            fHash = hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key o = (Key) obj;
+            int len = fEnd - fStart;
+            if (fHash != o.fHash || len != o.fEnd - o.fStart) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                if (fSequence.charAt(fStart + i) != o.fSequence.charAt(o.fStart
+                    + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return fHash;
+        }
+
+    }
+
+    private final static WeakValuePool<DomainName> POOL = new WeakValuePool<DomainName>();
+
+    /**
+     * Returns the pooled domain with the encoded name defined by the
+     * specified segment of the given sequence or <code>null</code> if there
+     * is no such a domain in the pool.
+     */
+    static DomainName get(CharSequence value, int start, int end) {
+        return POOL.get(new Key(value, start, end));
+    }
+
+    /**
+     * Returns the canonical instance equal to the given domain name. If there
+     * is no such an instance in the pool yet then the given domain is added
+     * to the pool and returned.
+     */
+    static DomainName intern(DomainName domainName) {
+        String str = domainName.toString();
+        return POOL.intern(new Key(str, 0, str.length()), domainName);
+    }
+
+    private DomainNamePool() {
+    }
+
+}
@@ -0,0 +1,221 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+/**
+ * Converts ISO-8601 date strings (like "2011-02-10T15:04:55Z" or
+ * "2011-02-10T15:04:55.123+01:00") into milliseconds since the epoch and
+ * back. This class does not use calendars or date format objects, so it can
+ * be used to convert big numbers of dates.
+ * 
+ * @author kotelnikov
+ */
+public class EpochDates {
+
+    /**
+     * This value is returned by parsing methods for strings which are not
+     * valid dates.
+     */
+    public final static long NO_DATE = Long.MIN_VALUE;
+
+    private final static long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Returns the number of days since the epoch for the specified date.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yoe = year - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     * Formats the given time as an ISO-8601 UTC date string.
+     * 
+     * @param millis the number of milliseconds since the epoch
+     * @param withMillis if this flag is <code>true</code> then milliseconds
+     *        are added to the formatted string
+     * @return a formatted date like "2011-02-10T15:04:55Z" or
+     *         "2011-02-10T15:04:55.123Z"
+     */
+    public static String format(long millis, boolean withMillis) {
+        long days = floorDiv(millis, MILLIS_PER_DAY);
+        int time = (int) (millis - days * MILLIS_PER_DAY);
+        // Civil date from days (see daysFromCivil)
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        StringBuilder buf = new StringBuilder(24);
+        if (year < 0 || year > 9999) {
+            buf.append(year);
+        } else {
+            pad(buf, (int) year, 4);
+        }
+        buf.append('-');
+        pad(buf, month, 2);
+        buf.append('-');
+        pad(buf, day, 2);
+        buf.append('T');
+        pad(buf, time / 3600000, 2);
+        buf.append(':');
+        pad(buf, (time / 60000) % 60, 2);
+        buf.append(':');
+        pad(buf, (time / 1000) % 60, 2);
+        if (withMillis) {
+            buf.append('.');
+            pad(buf, time % 1000, 3);
+        }
+        buf.append('Z');
+        return buf.toString();
+    }
+
+    private static long floorDiv(long x, long y) {
+        long r = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            r--;
+        }
+        return r;
+    }
+
+    private static int getNumber(CharSequence str, int pos, int len) {
+        int result = 0;
+        for (int i = pos; i < pos + len; i++) {
+            char ch = str.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return -1;
+            }
+            result = result * 10 + (ch - '0');
+        }
+        return result;
+    }
+
+    private static void pad(StringBuilder buf, int value, int len) {
+        String str = Integer.toString(value);
+        for (int i = str.length(); i < len; i++) {
+            buf.append('0');
+        }
+        buf.append(str);
+    }
+
+    /**
+     * Parses the given ISO-8601 date. Supported formats are "yyyy-MM-dd",
+     * "yyyy-MM-ddTHH:mm", "yyyy-MM-ddTHH:mm:ss" with optional fractions of
+     * seconds and optional time zones ("Z", "+hh:mm", "+hhmm" or "+hh").
+     * Dates without time zones are considered as UTC dates.
+     * 
+     * @param str the string to parse
+     * @return the number of milliseconds since the epoch or {@link #NO_DATE}
+     *         if the given string is not a valid date
+     */
+    public static long parse(CharSequence str) {
+        if (str == null) {
+            return NO_DATE;
+        }
+        int len = str.length();
+        if (len < 10 || str.charAt(4) != '-' || str.charAt(7) != '-') {
+            return NO_DATE;
+        }
+        int year = getNumber(str, 0, 4);
+        int month = getNumber(str, 5, 2);
+        int day = getNumber(str, 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return NO_DATE;
+        }
+        long millis = daysFromCivil(year, month, day) * MILLIS_PER_DAY;
+        int pos = 10;
+        if (pos < len && (str.charAt(pos) == 'T' || str.charAt(pos) == ' ')) {
+            if (len < pos + 6 || str.charAt(pos + 3) != ':') {
+                return NO_DATE;
+            }
+            int hours = getNumber(str, pos + 1, 2);
+            int minutes = getNumber(str, pos + 4, 2);
+            if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+                return NO_DATE;
+            }
+            millis += hours * 3600000L + minutes * 60000L;
+            pos += 6;
+            if (pos < len && str.charAt(pos) == ':') {
+                int seconds = len >= pos + 3 ? getNumber(str, pos + 1, 2) : -1;
+                if (seconds < 0 || seconds > 60) {
+                    return NO_DATE;
+                }
+                millis += seconds * 1000L;
+                pos += 3;
+                if (pos < len && str.charAt(pos) == '.') {
+                    pos++;
+                    int start = pos;
+                    int fraction = 0;
+                    int scale = 100;
+                    while (pos < len) {
+                        char ch = str.charAt(pos);
+                        if (ch < '0' || ch > '9') {
+                            break;
+                        }
+                        fraction += (ch - '0') * scale;
+                        scale /= 10;
+                        pos++;
+                    }
+                    if (pos == start) {
+                        return NO_DATE;
+                    }
+                    millis += fraction;
+                }
+            }
+            if (pos < len) {
+                char ch = str.charAt(pos);
+                if (ch == 'Z') {
+                    pos++;
+                } else if (ch == '+' || ch == '-') {
+                    int offsetHours = len >= pos + 3
+                        ? getNumber(str, pos + 1, 2)
+                        : -1;
+                    if (offsetHours < 0) {
+                        return NO_DATE;
+                    }
+                    pos += 3;
+                    int offsetMinutes = 0;
+                    if (pos < len && str.charAt(pos) == ':') {
+                        pos++;
+                    }
+                    if (pos < len) {
+                        offsetMinutes = len >= pos + 2 ? getNumber(
+                            str,
+                            pos,
+                            2) : -1;
+                        if (offsetMinutes < 0) {
+                            return NO_DATE;
+                        }
+                        pos += 2;
+                    }
+                    long offset = offsetHours * 3600000L + offsetMinutes
+                        * 60000L;
+                    millis += ch == '+' ? -offset : offset;
+                }
+            }
+        }
+        return pos == len ? millis : NO_DATE;
+    }
+
+    /**
+     * Returns the number of milliseconds since the epoch for the given date
+     * object or {@link #NO_DATE} if the date is <code>null</code> or if it
+     * can not be parsed.
+     * 
+     * @param date the date to convert
+     */
+    public static long toMillis(Object date) {
+        return date != null ? parse(date.toString()) : NO_DATE;
+    }
+
+}
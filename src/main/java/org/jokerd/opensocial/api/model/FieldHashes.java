@@ -0,0 +1,152 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The stored content hash of a modifiable {@link DataObject} (see
+ * {@link DataObject#getContentHash()}). It keeps the sum of hashes of fields
+ * with immutable values, which is adjusted when individual fields are
+ * modified, and the names of fields with modifiable values. Values of these
+ * fields could be changed through other objects without notifications, so
+ * their hashes are calculated on each call. The stored hash is valid only for
+ * the JSON object and the modification counter used to calculate it.
+ * 
+ * @author kotelnikov
+ */
+final class FieldHashes {
+
+    /**
+     * Names of fields with modifiable values.
+     */
+    private List<String> fFields;
+
+    /**
+     * The modification counter of the object corresponding to the stored
+     * hash.
+     */
+    private int fModCount = -1;
+
+    /**
+     * The JSON object corresponding to the stored hash.
+     */
+    private Object fObject;
+
+    /**
+     * The sum of hashes of fields with immutable values.
+     */
+    private long fSum;
+
+    /**
+     * Adds the hash of the specified field to the stored hash. This method
+     * should be called after the modification of the field if the
+     * {@link #remove(Object, Map, String, int)} method returned
+     * <code>true</code> before this modification.
+     * 
+     * @param map the modified JSON object
+     * @param key the name of the modified field
+     * @param modCount the modification counter of the object after the
+     *        modification
+     */
+    public void add(Map<?, ?> map, String key, int modCount) {
+        if (map != null && map.containsKey(key)) {
+            Object value = map.get(key);
+            if (ContentHash.isImmutable(value)) {
+                fSum += ContentHash.field(key, value);
+            } else {
+                fFields.add(key);
+            }
+        }
+        fModCount = modCount;
+    }
+
+    /**
+     * Returns the content hash of the given JSON object. The stored hash
+     * should be up to date (see {@link #update(Object, Map, int)}).
+     */
+    public long getHash(Map<?, ?> map) {
+        long sum = fSum;
+        if (!fFields.isEmpty()) {
+            for (String key : fFields) {
+                sum += ContentHash.field(key, map.get(key));
+            }
+        }
+        return ContentHash.map(sum);
+    }
+
+    /**
+     * Returns <code>true</code> if the hash could be calculated without
+     * walking through nested values. The stored hash should be up to date
+     * (see {@link #update(Object, Map, int)}).
+     */
+    public boolean isComplete() {
+        return fFields.isEmpty();
+    }
+
+    /**
+     * Removes the hash of the specified field from the stored hash. This
+     * method should be called before the modification of the field.
+     * 
+     * @param json the JSON object of the data object
+     * @param map the JSON object as a map
+     * @param key the name of the field to modify
+     * @param modCount the modification counter of the object before the
+     *        modification
+     * @return <code>true</code> if the stored hash is valid and it should be
+     *         updated after the modification of the field
+     */
+    public boolean remove(
+        Object json,
+        Map<?, ?> map,
+        String key,
+        int modCount) {
+        if (fModCount != modCount || fObject != json) {
+            return false;
+        }
+        if (map != null && map.containsKey(key)) {
+            Object value = map.get(key);
+            if (ContentHash.isImmutable(value)) {
+                fSum -= ContentHash.field(key, value);
+            } else {
+                fFields.remove(key);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Re-calculates the stored hash if the given JSON object was replaced or
+     * modified without notifications about individual fields.
+     * 
+     * @param json the JSON object of the data object
+     * @param map the JSON object as a map
+     * @param modCount the current modification counter of the object
+     */
+    public void update(Object json, Map<?, ?> map, int modCount) {
+        if (fModCount == modCount && fObject == json) {
+            return;
+        }
+        long sum = 0;
+        List<String> fields = new ArrayList<String>();
+        if (map != null) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                String key = String.valueOf(entry.getKey());
+                Object value = entry.getValue();
+                if (ContentHash.isImmutable(value)) {
+                    sum += ContentHash.field(key, value);
+                } else {
+                    fields.add(key);
+                }
+            }
+        }
+        fSum = sum;
+        fFields = fields;
+        fObject = json;
+        fModCount = modCount;
+    }
+
+}
@@ -0,0 +1,397 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.ubimix.commons.json.JsonObject;
+import org.ubimix.commons.json.JsonValue.IJsonValueFactory;
+
+/**
+ * A set of requested fields of a model class (see
+ * {@link org.jokerd.opensocial.api.events.People.Get#setFields(String...)}).
+ * Field names are compiled into a bit set over positions of fields defined by
+ * the {@link DataSchema} of the class, so membership checks do not compare
+ * strings. Nested fields are requested using dotted paths like
+ * "name.givenName" or "addresses.locality"; masks of nested objects are
+ * returned by the {@link #getChild(Object)} method. Required fields of the
+ * class (see {@link DataSchema#getRequiredFields()}) are always included. The
+ * special "@all" field name selects all fields.
+ * <p>
+ * Compiled masks are cached, but only if all requested fields are known by
+ * schemas; the cache keeps a limited number of the most recently used masks,
+ * so arbitrary field lists sent by clients do not fill the memory.
+ * </p>
+ * <p>
+ * Masks are used to serialize only requested fields (see
+ * {@link org.jokerd.opensocial.api.model.io.JsonStreamWriter}) and to skip
+ * unrequested fields when objects are parsed (see
+ * {@link org.jokerd.opensocial.api.model.io.JsonStreamReader}).
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class FieldMask {
+
+    /**
+     * The key of cached masks.
+     */
+    private static class MaskKey {
+
+        private final Set<String> fFields;
+
+        private final DataSchema fSchema;
+
+        public MaskKey(DataSchema schema, Set<String> fields) {
+            fSchema = schema;
+            fFields = fields;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof MaskKey)) {
+                return false;
+            }
+            MaskKey o = (MaskKey) obj;
+            return fSchema == o.fSchema && fFields.equals(o.fFields);
+        }
+
+        @Override
+        public int hashCode() {
+            return fSchema.hashCode() * 31 + fFields.hashCode();
+        }
+
+    }
+
+    /**
+     * This mask includes all fields.
+     */
+    public final static FieldMask ALL = new FieldMask(null);
+
+    /**
+     * The name of the field selecting all fields
+     */
+    public final static String ALL_FIELDS = "@all";
+
+    /**
+     * The maximal number of cached masks.
+     */
+    private final static int CACHE_SIZE = 256;
+
+    /**
+     * Recently used masks; access to this map is synchronized on the map
+     * itself.
+     */
+    private final static Map<MaskKey, FieldMask> MASKS = new LinkedHashMap<MaskKey, FieldMask>(
+        16,
+        0.75f,
+        true) {
+        private final static long serialVersionUID = 2876302155417095283L;
+
+        @Override
+        protected boolean removeEldestEntry(
+            Map.Entry<MaskKey, FieldMask> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Compiles a mask for the given class. Masks of known fields are cached,
+     * so this method could be called for each request.
+     * 
+     * @param schema the schema of the model class
+     * @param fields names of requested fields; nested fields are defined
+     *        using dotted paths
+     * @return a mask including the specified fields
+     */
+    public static FieldMask compile(
+        DataSchema schema,
+        Iterable<String> fields) {
+        TreeSet<String> set = new TreeSet<String>();
+        if (fields != null) {
+            for (String field : fields) {
+                if (field == null) {
+                    continue;
+                }
+                field = field.trim();
+                if (ALL_FIELDS.equals(field)) {
+                    return ALL;
+                }
+                if (field.length() > 0) {
+                    set.add(field);
+                }
+            }
+        }
+        if (set.isEmpty()) {
+            return ALL;
+        }
+        if (!isKnown(schema, set)) {
+            return newMask(schema, set);
+        }
+        MaskKey key = new MaskKey(schema, set);
+        FieldMask mask;
+        synchronized (MASKS) {
+            mask = MASKS.get(key);
+        }
+        if (mask == null) {
+            mask = newMask(schema, set);
+            synchronized (MASKS) {
+                FieldMask prev = MASKS.get(key);
+                if (prev != null) {
+                    mask = prev;
+                } else {
+                    MASKS.put(key, mask);
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @see #compile(DataSchema, Iterable)
+     */
+    public static FieldMask compile(DataSchema schema, String... fields) {
+        return compile(schema, Arrays.asList(fields));
+    }
+
+    /**
+     * Returns <code>true</code> if all segments of all given dotted paths are
+     * fields known by the given schema and by schemas of nested objects.
+     */
+    private static boolean isKnown(DataSchema schema, Iterable<String> fields) {
+        for (String field : fields) {
+            DataSchema current = schema;
+            for (String name : field.split("\\.")) {
+                int index = current != null ? current.getFieldIndex(name) : -1;
+                if (index < 0) {
+                    return false;
+                }
+                current = current.getChildSchema(index);
+            }
+        }
+        return true;
+    }
+
+    private static FieldMask newMask(
+        DataSchema schema,
+        Iterable<String> fields) {
+        Map<String, List<String>> paths = new LinkedHashMap<String, List<String>>();
+        if (schema != null) {
+            for (String field : schema.getRequiredFields()) {
+                paths.put(field, null);
+            }
+        }
+        for (String field : fields) {
+            int idx = field.indexOf('.');
+            String name = idx > 0 ? field.substring(0, idx) : field;
+            String path = idx > 0 ? field.substring(idx + 1) : null;
+            if (path == null || path.length() == 0) {
+                // The whole value is requested
+                paths.put(name, null);
+            } else if (!paths.containsKey(name)) {
+                List<String> list = new ArrayList<String>();
+                list.add(path);
+                paths.put(name, list);
+            } else {
+                List<String> list = paths.get(name);
+                if (list != null) {
+                    list.add(path);
+                }
+            }
+        }
+        FieldMask mask = new FieldMask(schema);
+        for (Map.Entry<String, List<String>> entry : paths.entrySet()) {
+            String name = entry.getKey();
+            List<String> list = entry.getValue();
+            FieldMask child = ALL;
+            if (list != null) {
+                DataSchema childSchema = null;
+                int index = mask.getIndex(name);
+                if (index >= 0) {
+                    childSchema = mask.fSchema.getChildSchema(index);
+                }
+                child = compile(childSchema, list);
+            }
+            mask.add(name, child);
+        }
+        return mask;
+    }
+
+    /**
+     * Masks of nested objects for requested fields; if a field is requested
+     * without sub-fields then the corresponding value is {@link #ALL}.
+     */
+    private FieldMask[] fChildren;
+
+    /**
+     * Requested fields which are not known by the schema.
+     */
+    private Map<String, FieldMask> fExtra;
+
+    /**
+     * Positions of requested fields in the schema
+     */
+    private final BitSet fFields = new BitSet();
+
+    private final DataSchema fSchema;
+
+    private FieldMask(DataSchema schema) {
+        fSchema = schema;
+        fChildren = new FieldMask[schema != null ? schema.getFieldCount() : 0];
+    }
+
+    private void add(String name, FieldMask child) {
+        int index = getIndex(name);
+        if (index >= 0) {
+            fFields.set(index);
+            fChildren[index] = child;
+        } else {
+            if (fExtra == null) {
+                fExtra = new HashMap<String, FieldMask>();
+            }
+            fExtra.put(name, child);
+        }
+    }
+
+    /**
+     * Returns the mask for values of the specified field. If the whole field
+     * is requested then this method returns the {@link #ALL} mask.
+     * 
+     * @param key the name of the field
+     * @return a mask for values of the specified field or <code>null</code> if
+     *         this field is not included in this mask
+     */
+    public FieldMask getChild(Object key) {
+        if (isAll()) {
+            return ALL;
+        }
+        int index = getIndex(key);
+        if (index >= 0) {
+            return fChildren[index];
+        }
+        return fExtra != null ? fExtra.get(key) : null;
+    }
+
+    private int getIndex(Object key) {
+        return fSchema != null ? fSchema.getFieldIndex(key) : -1;
+    }
+
+    /**
+     * Returns <code>true</code> if the specified field is included in this
+     * mask.
+     * 
+     * @param key the name of the field
+     */
+    public boolean includes(Object key) {
+        if (isAll()) {
+            return true;
+        }
+        int index = getIndex(key);
+        if (index >= 0) {
+            return fFields.get(index);
+        }
+        return fExtra != null && fExtra.containsKey(key);
+    }
+
+    /**
+     * Returns <code>true</code> if this mask includes all fields.
+     */
+    public boolean isAll() {
+        return this == ALL;
+    }
+
+    /**
+     * Returns a copy of the given raw JSON value containing only fields
+     * included in this mask. Values of arrays are filtered individually. If
+     * this mask includes all fields then the given value itself is returned.
+     * 
+     * @param value a raw JSON value
+     * @return a filtered copy of the given value
+     */
+    public Object project(Object value) {
+        if (isAll()) {
+            return value;
+        }
+        if (value instanceof Map<?, ?>) {
+            Map<String, Object> result = new LinkedHashMap<String, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                FieldMask child = getChild(entry.getKey());
+                if (child != null) {
+                    result.put(
+                        String.valueOf(entry.getKey()),
+                        child.project(entry.getValue()));
+                }
+            }
+            return result;
+        }
+        if (value instanceof List<?>) {
+            List<?> list = (List<?>) value;
+            List<Object> result = new ArrayList<Object>(list.size());
+            for (Object item : list) {
+                result.add(project(item));
+            }
+            return result;
+        }
+        return value;
+    }
+
+    /**
+     * Returns a new model object containing only fields of the given object
+     * included in this mask.
+     * 
+     * @param object the object to filter
+     * @param factory the factory used to create the resulting object
+     * @return a filtered copy of the given object
+     */
+    public <T extends JsonObject> T project(
+        T object,
+        IJsonValueFactory<T> factory) {
+        if (isAll() || object == null) {
+            return object;
+        }
+        return factory.newValue(project(object.getJsonObject()));
+    }
+
+    @Override
+    public String toString() {
+        if (isAll()) {
+            return ALL_FIELDS;
+        }
+        StringBuilder buf = new StringBuilder();
+        buf.append('[');
+        for (int i = fFields.nextSetBit(0); i >= 0; i = fFields
+            .nextSetBit(i + 1)) {
+            toString(buf, fSchema.getFieldName(i), fChildren[i]);
+        }
+        if (fExtra != null) {
+            for (Map.Entry<String, FieldMask> entry : fExtra.entrySet()) {
+                toString(buf, entry.getKey(), entry.getValue());
+            }
+        }
+        buf.append(']');
+        return buf.toString();
+    }
+
+    private void toString(StringBuilder buf, String name, FieldMask child) {
+        if (buf.length() > 1) {
+            buf.append(',');
+        }
+        buf.append(name);
+        if (!child.isAll()) {
+            buf.append(child);
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Modification stamps of individual fields of a {@link DataObject}. A stamp
+ * is the value of the modification counter of the object after the last
+ * modification of the field. Fields which were not modified since the last
+ * reset of stamps have the same base stamp. Plural field views (see
+ * {@link PluralFieldsView}) use stamps to find out whether their own field
+ * was changed, so modifications of other fields do not discard their decoded
+ * elements.
+ * 
+ * @author kotelnikov
+ */
+final class FieldStamps {
+
+    private int fBase;
+
+    private final Map<String, Integer> fStamps = new HashMap<String, Integer>();
+
+    /**
+     * @param base the stamp of all fields which are not modified yet
+     */
+    public FieldStamps(int base) {
+        fBase = base;
+    }
+
+    public int get(String key) {
+        Integer stamp = fStamps.get(key);
+        return stamp != null ? stamp : fBase;
+    }
+
+    /**
+     * Sets the same stamp for all fields. This method is called when the
+     * object could be changed without notifications about individual fields.
+     */
+    public void reset(int base) {
+        fStamps.clear();
+        fBase = base;
+    }
+
+    public void update(String key, int stamp) {
+        fStamps.put(key, stamp);
+    }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * An immutable JSON array used by frozen {@link DataObject}s.
+ * 
+ * @author kotelnikov
+ * @see FrozenMap
+ */
+class FrozenList extends AbstractList<Object> implements RandomAccess {
+
+    private final Object[] fArray;
+
+    private long fContentHash;
+
+    /**
+     * This flag is <code>true</code> when the content hash is calculated.
+     * Races are harmless: all threads calculate the same value.
+     */
+    private volatile boolean fContentHashed;
+
+    private int fHashCode;
+
+    /**
+     * @param array a new array which is not referenced by other objects
+     */
+    public FrozenList(Object[] array) {
+        fArray = array;
+    }
+
+    @Override
+    public Object get(int index) {
+        return fArray[index];
+    }
+
+    /**
+     * Returns the 64-bit hash of this array.
+     * 
+     * @see ContentHash
+     */
+    public long getContentHash() {
+        if (!fContentHashed) {
+            fContentHash = ContentHash.list(this);
+            fContentHashed = true;
+        }
+        return fContentHash;
+    }
+
+    @Override
+    public int hashCode() {
+        // Races are harmless: all threads calculate the same value
+        int hashCode = fHashCode;
+        if (hashCode == 0) {
+            hashCode = super.hashCode();
+            fHashCode = hashCode;
+        }
+        return hashCode;
+    }
+
+    @Override
+    public int size() {
+        return fArray.length;
+    }
+
+}
@@ -0,0 +1,88 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable JSON object used by frozen {@link DataObject}s. Frozen values
+ * are never modified, so they are shared between snapshots and between
+ * threads without copying.
+ * 
+ * @author kotelnikov
+ * @see DataObject#freeze()
+ */
+class FrozenMap extends AbstractMap<String, Object> {
+
+    private final Set<Map.Entry<String, Object>> fEntries;
+
+    private long fContentHash;
+
+    /**
+     * This flag is <code>true</code> when the content hash is calculated.
+     * Races are harmless: all threads calculate the same value.
+     */
+    private volatile boolean fContentHashed;
+
+    private int fHashCode;
+
+    private final Map<String, Object> fMap;
+
+    /**
+     * @param map a new map which is not referenced by other objects
+     */
+    public FrozenMap(LinkedHashMap<String, Object> map) {
+        fMap = map;
+        fEntries = Collections.unmodifiableMap(map).entrySet();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return fMap.containsKey(key);
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return fEntries;
+    }
+
+    @Override
+    public Object get(Object key) {
+        return fMap.get(key);
+    }
+
+    /**
+     * Returns the 64-bit hash of this object.
+     * 
+     * @see ContentHash
+     */
+    public long getContentHash() {
+        if (!fContentHashed) {
+            fContentHash = ContentHash.hash(fMap);
+            fContentHashed = true;
+        }
+        return fContentHash;
+    }
+
+    @Override
+    public int hashCode() {
+        // Races are harmless: all threads calculate the same value
+        int hashCode = fHashCode;
+        if (hashCode == 0) {
+            hashCode = fMap.hashCode();
+            fHashCode = hashCode;
+        }
+        return hashCode;
+    }
+
+    @Override
+    public int size() {
+        return fMap.size();
+    }
+
+}
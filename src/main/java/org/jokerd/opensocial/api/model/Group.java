@@ -19,6 +19,12 @@ public class Group extends ActivityObject {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(
+        Group.class,
+        ActivityObject.SCHEMA)
+        .add("description", "title")
+        .require("id", "title");
+
     public Group() {
         setObjectType("group");
     }
@@ -40,6 +46,16 @@ public class Group extends ActivityObject {
         return id;
     }
 
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new Group();
+    }
+
     /**
      * Returns the group's title.
      */
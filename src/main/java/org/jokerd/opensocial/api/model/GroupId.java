@@ -3,6 +3,8 @@
  */
 package org.jokerd.opensocial.api.model;
 
+import java.util.Map;
+
 import org.ubimix.commons.json.JsonValue;
 import org.ubimix.commons.json.JsonValue.IJsonValueFactory;
 
@@ -16,7 +18,7 @@ public class GroupId extends ObjectId {
     public static IJsonValueFactory<GroupId> FACTORY = new IJsonValueFactory<GroupId>() {
         public GroupId newValue(Object object) {
             String str = JsonValue.STRING_FACTORY.newValue(object);
-            return new GroupId(str);
+            return valueOf(str);
         }
     };
 
@@ -24,6 +26,27 @@ public class GroupId extends ObjectId {
 
     public final static GroupId SELF = new GroupId("@self");
 
+    private final static Map<String, GroupId> RESERVED = newReservedMap(new GroupId[] {
+        ALL,
+        FRIENDS,
+        SELF });
+
+    /**
+     * Returns a group identifier corresponding to the given string. For the
+     * reserved values ("@all", "@friends", "@self") this method returns the
+     * canonical constants.
+     * 
+     * @param id the string representation of the identifier
+     * @return a group identifier corresponding to the given string
+     */
+    public static GroupId valueOf(String id) {
+        GroupId result = RESERVED.get(id);
+        if (result == null) {
+            result = new GroupId(id);
+        }
+        return result;
+    }
+
     public GroupId(DomainName domainName, String localId) {
         super(domainName, localId);
     }
@@ -0,0 +1,517 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ubimix.commons.json.JsonObject;
+
+/**
+ * An index of top-level fields of a JSON object serialized as UTF-8 bytes.
+ * This index keeps positions of field values in the original byte array and
+ * parses individual values only when they are requested. It is used by lazy
+ * {@link DataObject}s.
+ * <p>
+ * Values are parsed directly from bytes. Numbers are created by the
+ * {@link JsonNumbers} class, so values of lazy objects are equal to values of
+ * parsed objects. Values which
+ * are not strict JSON (for example single-quoted strings) are parsed by the
+ * lenient parser of the library.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+class JsonFieldIndex {
+
+    /**
+     * Reads JSON values from UTF-8 bytes. Methods of this class throw an
+     * {@link IllegalArgumentException} if bytes are not well-formed JSON.
+     */
+    private static class ValueReader {
+
+        private final byte[] fBytes;
+
+        private final int fEnd;
+
+        private int fPos;
+
+        public ValueReader(byte[] bytes, int start, int end) {
+            fBytes = bytes;
+            fPos = start;
+            fEnd = end;
+        }
+
+        public void expect(char ch) {
+            if (fPos >= fEnd || fBytes[fPos] != ch) {
+                throw newError(fPos);
+            }
+            fPos++;
+        }
+
+        private boolean next(char ch) {
+            skipSpaces();
+            if (fPos < fEnd && fBytes[fPos] == ch) {
+                fPos++;
+                return true;
+            }
+            return false;
+        }
+
+        private List<Object> readArray() {
+            List<Object> list = new ArrayList<Object>();
+            fPos++;
+            if (next(']')) {
+                return list;
+            }
+            do {
+                list.add(readValue());
+            } while (next(','));
+            skipSpaces();
+            expect(']');
+            return list;
+        }
+
+        private void readEscape(StringBuilder buf) {
+            if (fPos >= fEnd) {
+                throw newError(fPos);
+            }
+            byte ch = fBytes[fPos++];
+            switch (ch) {
+                case '"':
+                case '\\':
+                case '/':
+                    buf.append((char) ch);
+                    break;
+                case 'b':
+                    buf.append('\b');
+                    break;
+                case 'f':
+                    buf.append('\f');
+                    break;
+                case 'n':
+                    buf.append('\n');
+                    break;
+                case 'r':
+                    buf.append('\r');
+                    break;
+                case 't':
+                    buf.append('\t');
+                    break;
+                case 'u':
+                    if (fPos + 4 > fEnd) {
+                        throw newError(fPos);
+                    }
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit((char) fBytes[fPos++], 16);
+                        if (digit < 0) {
+                            throw newError(fPos - 1);
+                        }
+                        code = (code << 4) | digit;
+                    }
+                    buf.append((char) code);
+                    break;
+                default:
+                    throw newError(fPos - 1);
+            }
+        }
+
+        private Object readNumber() {
+            int start = fPos;
+            while (fPos < fEnd && JsonNumbers.isNumberChar(fBytes[fPos])) {
+                fPos++;
+            }
+            if (fPos == start) {
+                throw newError(start);
+            }
+            try {
+                return JsonNumbers.valueOf(toAscii(fBytes, start, fPos));
+            } catch (NumberFormatException e) {
+                throw newError(start);
+            }
+        }
+
+        private Map<String, Object> readObject() {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            fPos++;
+            if (next('}')) {
+                return map;
+            }
+            do {
+                skipSpaces();
+                expect('"');
+                String key = readString();
+                skipSpaces();
+                expect(':');
+                map.put(key, readValue());
+            } while (next(','));
+            skipSpaces();
+            expect('}');
+            return map;
+        }
+
+        /**
+         * Reads a string; the current position should point to the first byte
+         * after the opening quote.
+         */
+        public String readString() {
+            int start = fPos;
+            while (fPos < fEnd) {
+                byte ch = fBytes[fPos];
+                if (ch == '"') {
+                    return toAscii(fBytes, start, fPos++);
+                }
+                if (ch == '\\' || ch < 0) {
+                    break;
+                }
+                fPos++;
+            }
+            StringBuilder buf = new StringBuilder(fPos - start + 16);
+            buf.append(toAscii(fBytes, start, fPos));
+            while (fPos < fEnd) {
+                byte ch = fBytes[fPos];
+                if (ch == '"') {
+                    fPos++;
+                    return buf.toString();
+                }
+                if (ch == '\\') {
+                    fPos++;
+                    readEscape(buf);
+                } else {
+                    fPos = appendChar(fBytes, fPos, fEnd, buf);
+                }
+            }
+            throw newError(fPos);
+        }
+
+        /**
+         * Reads a value; the current position should point to the first byte
+         * of the value.
+         */
+        public Object readValue() {
+            skipSpaces();
+            if (fPos >= fEnd) {
+                throw newError(fPos);
+            }
+            switch (fBytes[fPos]) {
+                case '{':
+                    return readObject();
+                case '[':
+                    return readArray();
+                case '"':
+                    fPos++;
+                    return readString();
+                case 't':
+                    readWord("true");
+                    return Boolean.TRUE;
+                case 'f':
+                    readWord("false");
+                    return Boolean.FALSE;
+                case 'n':
+                    readWord("null");
+                    return null;
+                default:
+                    return readNumber();
+            }
+        }
+
+        private void readWord(String word) {
+            for (int i = 0; i < word.length(); i++) {
+                expect(word.charAt(i));
+            }
+        }
+
+        public void skipSpaces() {
+            while (fPos < fEnd) {
+                byte ch = fBytes[fPos];
+                if (ch != ' ' && ch != '\t' && ch != '\n' && ch != '\r') {
+                    break;
+                }
+                fPos++;
+            }
+        }
+
+        /**
+         * Skips a string; the current position should point to the first byte
+         * after the opening quote.
+         */
+        private void skipString() {
+            while (fPos < fEnd) {
+                byte ch = fBytes[fPos++];
+                if (ch == '\\') {
+                    fPos++;
+                } else if (ch == '"') {
+                    return;
+                }
+            }
+            throw newError(fPos);
+        }
+
+        /**
+         * Skips a value; the current position should point to the first byte
+         * of the value.
+         */
+        public void skipValue() {
+            if (fPos >= fEnd) {
+                throw newError(fPos);
+            }
+            byte ch = fBytes[fPos];
+            if (ch == '"') {
+                fPos++;
+                skipString();
+                return;
+            }
+            if (ch == '{' || ch == '[') {
+                int depth = 0;
+                while (fPos < fEnd) {
+                    ch = fBytes[fPos++];
+                    if (ch == '"') {
+                        skipString();
+                    } else if (ch == '{' || ch == '[') {
+                        depth++;
+                    } else if (ch == '}' || ch == ']') {
+                        depth--;
+                        if (depth == 0) {
+                            return;
+                        }
+                    }
+                }
+                throw newError(fPos);
+            }
+            int start = fPos;
+            while (fPos < fEnd) {
+                ch = fBytes[fPos];
+                if (ch == ','
+                    || ch == '}'
+                    || ch == ']'
+                    || ch == ' '
+                    || ch == '\t'
+                    || ch == '\n'
+                    || ch == '\r') {
+                    break;
+                }
+                fPos++;
+            }
+            if (fPos == start) {
+                throw newError(fPos);
+            }
+        }
+
+    }
+
+    /**
+     * Decodes one character from the given UTF-8 bytes and appends it to the
+     * buffer. Malformed sequences are replaced by the U+FFFD character.
+     * 
+     * @return the position of the next character
+     */
+    private static int appendChar(
+        byte[] bytes,
+        int pos,
+        int end,
+        StringBuilder buf) {
+        int b = bytes[pos++] & 0xFF;
+        int code;
+        int count;
+        if (b < 0x80) {
+            buf.append((char) b);
+            return pos;
+        } else if ((b & 0xE0) == 0xC0) {
+            code = b & 0x1F;
+            count = 1;
+        } else if ((b & 0xF0) == 0xE0) {
+            code = b & 0x0F;
+            count = 2;
+        } else if ((b & 0xF8) == 0xF0) {
+            code = b & 0x07;
+            count = 3;
+        } else {
+            buf.append('\uFFFD');
+            return pos;
+        }
+        for (int i = 0; i < count; i++) {
+            if (pos >= end || (bytes[pos] & 0xC0) != 0x80) {
+                buf.append('\uFFFD');
+                return pos;
+            }
+            code = (code << 6) | (bytes[pos++] & 0x3F);
+        }
+        if (code >= 0x10000) {
+            code -= 0x10000;
+            buf.append((char) (0xD800 + (code >> 10)));
+            buf.append((char) (0xDC00 + (code & 0x3FF)));
+        } else {
+            buf.append((char) code);
+        }
+        return pos;
+    }
+
+    private static IllegalArgumentException newError(int pos) {
+        return new IllegalArgumentException("Malformed JSON object. Position: "
+            + pos);
+    }
+
+    /**
+     * Parses the given JSON value using the lenient parser of the library.
+     */
+    static Object parseLenient(String value) {
+        JsonObject object = new JsonObject().setJsonObject("{\"v\":"
+            + value
+            + "}");
+        return object.getValue("v", DataObject.RAW_FACTORY);
+    }
+
+    private static String toAscii(byte[] bytes, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) bytes[start + i];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Decodes the given UTF-8 bytes. Malformed sequences are replaced by the
+     * U+FFFD character.
+     */
+    static String toString(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        StringBuilder buf = new StringBuilder(length);
+        int pos = offset;
+        while (pos < end) {
+            pos = appendChar(bytes, pos, end, buf);
+        }
+        return buf.toString();
+    }
+
+    private final byte[] fBytes;
+
+    /**
+     * Positions of the value ends; the n-th element corresponds to the n-th
+     * key.
+     */
+    private int[] fEnds = new int[16];
+
+    private final List<String> fKeys = new ArrayList<String>();
+
+    private final Map<String, Integer> fPositions = new HashMap<String, Integer>();
+
+    /**
+     * Positions of the value starts; the n-th element corresponds to the n-th
+     * key.
+     */
+    private int[] fStarts = new int[16];
+
+    /**
+     * Builds an index of the specified JSON object.
+     * 
+     * @param bytes UTF-8 representation of a JSON object
+     * @param offset the position of the first byte of the object
+     * @param length the number of bytes in the object
+     * @throws IllegalArgumentException if the given bytes do not contain a
+     *         well-formed JSON object
+     */
+    public JsonFieldIndex(byte[] bytes, int offset, int length) {
+        fBytes = bytes;
+        int end = offset + length;
+        ValueReader reader = new ValueReader(bytes, offset, end);
+        reader.skipSpaces();
+        reader.expect('{');
+        reader.skipSpaces();
+        if (reader.fPos < end && fBytes[reader.fPos] == '}') {
+            reader.fPos++;
+        } else {
+            while (true) {
+                reader.expect('"');
+                String key = reader.readString();
+                reader.skipSpaces();
+                reader.expect(':');
+                reader.skipSpaces();
+                int valueStart = reader.fPos;
+                reader.skipValue();
+                addField(key, valueStart, reader.fPos);
+                reader.skipSpaces();
+                if (reader.fPos < end && fBytes[reader.fPos] == ',') {
+                    reader.fPos++;
+                    reader.skipSpaces();
+                    continue;
+                }
+                reader.expect('}');
+                break;
+            }
+        }
+        reader.skipSpaces();
+        if (reader.fPos != end) {
+            throw newError(reader.fPos);
+        }
+    }
+
+    private void addField(String key, int start, int end) {
+        Integer position = fPositions.get(key);
+        int n;
+        if (position != null) {
+            n = position;
+        } else {
+            n = fKeys.size();
+            if (n == fStarts.length) {
+                int[] starts = new int[n * 2];
+                System.arraycopy(fStarts, 0, starts, 0, n);
+                fStarts = starts;
+                int[] ends = new int[n * 2];
+                System.arraycopy(fEnds, 0, ends, 0, n);
+                fEnds = ends;
+            }
+            fKeys.add(key);
+            fPositions.put(key, n);
+        }
+        fStarts[n] = start;
+        fEnds[n] = end;
+    }
+
+    /**
+     * Returns <code>true</code> if the indexed object contains the specified
+     * field.
+     */
+    public boolean contains(String key) {
+        return fPositions.containsKey(key);
+    }
+
+    /**
+     * Returns the list of field names in the order of their appearance in the
+     * indexed object.
+     */
+    public List<String> getKeys() {
+        return fKeys;
+    }
+
+    /**
+     * Parses and returns the raw JSON value of the specified field.
+     * 
+     * @param key the name of the field
+     * @return the raw value of the field or <code>null</code> if there is no
+     *         such field
+     */
+    public Object getValue(String key) {
+        Integer position = fPositions.get(key);
+        if (position == null) {
+            return null;
+        }
+        int start = fStarts[position];
+        int end = fEnds[position];
+        try {
+            ValueReader reader = new ValueReader(fBytes, start, end);
+            Object value = reader.readValue();
+            if (reader.fPos == end) {
+                return value;
+            }
+        } catch (IllegalArgumentException e) {
+            // Not a strict JSON value
+        }
+        return parseLenient(toString(fBytes, start, end - start));
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+/**
+ * Creates numbers of the same classes as numbers produced by the JSON parser
+ * of the library. All hand-written JSON readers of this project (lazy objects
+ * indexed by {@link JsonFieldIndex} and the streaming
+ * {@link org.jokerd.opensocial.api.model.io.JsonStreamReader}) use this class,
+ * so the same document gives equal values whatever reader parsed it.
+ * 
+ * @author kotelnikov
+ */
+public final class JsonNumbers {
+
+    private final static Class<?> DOUBLE_TYPE = getNumberType("1.5");
+
+    private final static Class<?> INT_TYPE = getNumberType("1");
+
+    private final static Class<?> LONG_TYPE = getNumberType("12345678901");
+
+    /**
+     * Returns the class of numbers produced by the JSON parser of the library
+     * for the given number.
+     */
+    private static Class<?> getNumberType(String number) {
+        Object value = JsonFieldIndex.parseLenient(number);
+        return value != null ? value.getClass() : null;
+    }
+
+    /**
+     * Returns <code>true</code> if the given character could be a part of a
+     * JSON number.
+     */
+    public static boolean isNumberChar(int ch) {
+        return ch >= '0' && ch <= '9'
+            || ch == '-'
+            || ch == '+'
+            || ch == '.'
+            || ch == 'e'
+            || ch == 'E';
+    }
+
+    /**
+     * Returns the number represented by the given JSON text. Numbers without
+     * fractions and exponents are returned as instances of the same classes
+     * as integers of the library; other numbers are returned as instances of
+     * the class of library decimals. If the library uses unknown number
+     * classes then the text is parsed by the library itself.
+     * 
+     * @param text the JSON text of a number
+     * @return the number
+     * @throws NumberFormatException if the given text is not a number
+     */
+    public static Number valueOf(String text) throws NumberFormatException {
+        boolean integral = true;
+        for (int i = 0; integral && i < text.length(); i++) {
+            char ch = text.charAt(i);
+            integral = ch != '.' && ch != 'e' && ch != 'E';
+        }
+        if (!integral) {
+            if (DOUBLE_TYPE == Double.class) {
+                return Double.valueOf(text);
+            }
+        } else {
+            long value = Long.parseLong(text);
+            Class<?> type = value == (int) value ? INT_TYPE : LONG_TYPE;
+            if (type == Integer.class) {
+                return Integer.valueOf((int) value);
+            }
+            if (type == Long.class) {
+                return Long.valueOf(value);
+            }
+            if (type == Double.class) {
+                return Double.valueOf(value);
+            }
+        }
+        Object value = JsonFieldIndex.parseLenient(text);
+        if (!(value instanceof Number)) {
+            throw new NumberFormatException("Bad number '" + text + "'");
+        }
+        return (Number) value;
+    }
+
+    private JsonNumbers() {
+    }
+
+}
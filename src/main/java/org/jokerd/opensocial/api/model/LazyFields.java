@@ -0,0 +1,86 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The state of a lazy {@link DataObject} initialized with JSON bytes. It keeps
+ * the bytes, the index of their top-level fields and the names of fields
+ * already copied to the underlying JSON object of the data object.
+ * 
+ * @author kotelnikov
+ */
+final class LazyFields {
+
+    private final byte[] fBytes;
+
+    private JsonFieldIndex fIndex;
+
+    private final int fLength;
+
+    /**
+     * Names of fields already copied to the underlying JSON object
+     */
+    private final Set<String> fLoaded = new HashSet<String>();
+
+    /**
+     * The underlying JSON object used to store loaded fields; if the JSON
+     * object of the data object is replaced then the lazy state is ignored.
+     */
+    private final Object fObject;
+
+    private final int fOffset;
+
+    public LazyFields(byte[] bytes, int offset, int length, Object object) {
+        fBytes = bytes;
+        fOffset = offset;
+        fLength = length;
+        fObject = object;
+    }
+
+    /**
+     * Returns the index of fields; this method throws an
+     * {@link IllegalArgumentException} if JSON bytes are not well-formed.
+     */
+    public JsonFieldIndex getIndex() {
+        if (fIndex == null) {
+            fIndex = new JsonFieldIndex(fBytes, fOffset, fLength);
+        }
+        return fIndex;
+    }
+
+    /**
+     * Returns the JSON object storing loaded fields.
+     */
+    public Object getObject() {
+        return fObject;
+    }
+
+    /**
+     * Returns the JSON bytes decoded as a string.
+     */
+    public String getText() {
+        return JsonFieldIndex.toString(fBytes, fOffset, fLength);
+    }
+
+    /**
+     * Returns <code>true</code> if the specified field was already copied to
+     * the underlying JSON object.
+     */
+    public boolean isLoaded(String key) {
+        return fLoaded.contains(key);
+    }
+
+    /**
+     * Marks the specified field as copied to the underlying JSON object.
+     * 
+     * @return <code>true</code> if the field was not marked yet
+     */
+    public boolean setLoaded(String key) {
+        return fLoaded.add(key);
+    }
+
+}
@@ -0,0 +1,256 @@
+/* ************************************************************************** *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership.
+ * 
+ * This file is licensed to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ * ************************************************************************** */
+package org.jokerd.opensocial.api.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * This encoder applies the same transformations as the {@link LocalIdEncoder}
+ * but it works directly with UTF-8 bytes. Encoded values are ASCII byte
+ * sequences which are exactly the same as the bytes of strings produced by the
+ * {@link LocalIdEncoder#encode(String)} method.
+ * 
+ * @author kotelnikov
+ */
+public class LocalIdByteEncoder {
+
+    private final static byte ESCAPE_SYMBOL = (byte) LocalIdEncoder.ESCAPE_SYMBOL;
+
+    private static LocalIdByteEncoder fInstance;
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * @return the instance
+     */
+    public static LocalIdByteEncoder getInstance() {
+        if (fInstance == null) {
+            fInstance = new LocalIdByteEncoder();
+        }
+        return fInstance;
+    }
+
+    /**
+     * Returns the maximal length of the encoded representation of a sequence
+     * with the specified number of bytes.
+     * 
+     * @param length the number of bytes to encode
+     * @return the maximal length of the encoded sequence
+     */
+    public static int getMaxEncodedLength(int length) {
+        return length * 3;
+    }
+
+    /**
+     * @param instance the instance to set
+     */
+    public static void setInstance(LocalIdByteEncoder instance) {
+        fInstance = instance;
+    }
+
+    protected LocalIdByteEncoder() {
+    }
+
+    /**
+     * Decodes the given array segment and writes results in the specified
+     * output array. The output array should have at least <code>length</code>
+     * free positions.
+     * 
+     * @param value the array containing the encoded value
+     * @param offset the position of the first byte to decode
+     * @param length the number of bytes to decode
+     * @param out the output array
+     * @param outOffset the position in the output array where the decoded
+     *        UTF-8 bytes should be written
+     * @return the number of bytes written in the output array
+     */
+    public int decode(
+        byte[] value,
+        int offset,
+        int length,
+        byte[] out,
+        int outOffset) {
+        int pos = outOffset;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            byte current = value[i];
+            if (current == ESCAPE_SYMBOL && i < end - 2) {
+                int hi = LocalIdEncoder.getHexValue(value[i + 1]);
+                int lo = LocalIdEncoder.getHexValue(value[i + 2]);
+                if (hi >= 0 && lo >= 0) {
+                    out[pos++] = (byte) ((hi << 4) | lo);
+                    i += 2;
+                    continue;
+                }
+            }
+            out[pos++] = current;
+        }
+        return pos - outOffset;
+    }
+
+    /**
+     * Decodes all remaining bytes of the source buffer and writes the
+     * resulting UTF-8 bytes to the target buffer. The positions of both
+     * buffers are moved forward.
+     * 
+     * @param src the buffer containing the encoded value
+     * @param dst the target buffer
+     * @throws java.nio.BufferOverflowException if there is insufficient space
+     *         in the target buffer
+     */
+    public void decode(ByteBuffer src, ByteBuffer dst) {
+        int end = src.limit();
+        for (int i = src.position(); i < end; i++) {
+            byte current = src.get(i);
+            if (current == ESCAPE_SYMBOL && i < end - 2) {
+                int hi = LocalIdEncoder.getHexValue(src.get(i + 1));
+                int lo = LocalIdEncoder.getHexValue(src.get(i + 2));
+                if (hi >= 0 && lo >= 0) {
+                    dst.put((byte) ((hi << 4) | lo));
+                    i += 2;
+                    continue;
+                }
+            }
+            dst.put(current);
+        }
+        src.position(end);
+    }
+
+    /**
+     * Encodes the given segment of UTF-8 bytes and writes results in the
+     * specified output array. The output array should have at least
+     * {@link #getMaxEncodedLength(int)} free positions.
+     * 
+     * @param value the array containing UTF-8 bytes to encode
+     * @param offset the position of the first byte to encode
+     * @param length the number of bytes to encode
+     * @param out the output array
+     * @param outOffset the position in the output array where the encoded
+     *        value should be written
+     * @return the number of bytes written in the output array
+     */
+    public int encode(
+        byte[] value,
+        int offset,
+        int length,
+        byte[] out,
+        int outOffset) {
+        int pos = outOffset;
+        for (int i = 0; i < length; i++) {
+            int ch = value[offset + i] & 0xFF;
+            if (LocalIdEncoder.isSafe(ch, i)) {
+                out[pos++] = (byte) ch;
+            } else {
+                out[pos++] = ESCAPE_SYMBOL;
+                out[pos++] = (byte) LocalIdEncoder.HEX[ch >>> 4];
+                out[pos++] = (byte) LocalIdEncoder.HEX[ch & 0xF];
+            }
+        }
+        return pos - outOffset;
+    }
+
+    /**
+     * Encodes all remaining UTF-8 bytes of the source buffer and writes the
+     * encoded value to the target buffer. The positions of both buffers are
+     * moved forward.
+     * 
+     * @param src the buffer containing UTF-8 bytes to encode
+     * @param dst the target buffer
+     * @throws java.nio.BufferOverflowException if there is insufficient space
+     *         in the target buffer
+     */
+    public void encode(ByteBuffer src, ByteBuffer dst) {
+        int start = src.position();
+        int end = src.limit();
+        for (int i = start; i < end; i++) {
+            int ch = src.get(i) & 0xFF;
+            if (LocalIdEncoder.isSafe(ch, i - start)) {
+                dst.put((byte) ch);
+            } else {
+                dst.put(ESCAPE_SYMBOL);
+                dst.put((byte) LocalIdEncoder.HEX[ch >>> 4]);
+                dst.put((byte) LocalIdEncoder.HEX[ch & 0xF]);
+            }
+        }
+        src.position(end);
+    }
+
+    /**
+     * Encodes the specified segment of the buffer and returns the result as a
+     * string. The encoded characters are written directly to the resulting
+     * character array without intermediate decoding of UTF-8 bytes.
+     */
+    private String encodeToString(ByteBuffer buf, int start, int end) {
+        char[] out = new char[getMaxEncodedLength(end - start)];
+        int pos = 0;
+        for (int i = start; i < end; i++) {
+            int ch = buf.get(i) & 0xFF;
+            if (LocalIdEncoder.isSafe(ch, i - start)) {
+                out[pos++] = (char) ch;
+            } else {
+                out[pos++] = LocalIdEncoder.ESCAPE_SYMBOL;
+                out[pos++] = LocalIdEncoder.HEX[ch >>> 4];
+                out[pos++] = LocalIdEncoder.HEX[ch & 0xF];
+            }
+        }
+        return new String(out, 0, pos);
+    }
+
+    /**
+     * Creates a new {@link ObjectId} from the remaining UTF-8 bytes of the
+     * given buffer. The bytes are interpreted exactly as the string passed to
+     * the {@link ObjectId#ObjectId(String)} constructor: the domain name (if
+     * any) is encoded directly from the buffer and the local identifier is
+     * used as is. The position of the buffer is moved to its limit.
+     * 
+     * @param buf the buffer containing the Object-Id
+     * @return a new object identifier
+     */
+    public ObjectId newObjectId(ByteBuffer buf) {
+        int start = buf.position();
+        int end = buf.limit();
+        int idx = -1;
+        for (int i = end - 1; i > start; i--) {
+            if (buf.get(i) == ':') {
+                idx = i;
+                break;
+            }
+        }
+        DomainName domainName = null;
+        int localStart = start;
+        if (idx > start) {
+            String domain = encodeToString(buf, start, idx);
+            domainName = DomainName.valueOfEncoded(domain);
+            localStart = idx + 1;
+        }
+        String localId = toString(buf, localStart, end);
+        buf.position(end);
+        return new ObjectId(domainName, localId, true);
+    }
+
+    private String toString(ByteBuffer buf, int start, int end) {
+        if (buf.hasArray()) {
+            return new String(buf.array(), buf.arrayOffset() + start, end
+                - start, UTF8);
+        }
+        ByteBuffer slice = buf.duplicate();
+        slice.limit(end).position(start);
+        return UTF8.decode(slice).toString();
+    }
+
+}
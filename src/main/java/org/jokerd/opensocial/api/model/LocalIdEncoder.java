@@ -16,15 +16,40 @@
  * ************************************************************************** */
 package org.jokerd.opensocial.api.model;
 
+import java.io.IOException;
+
 /**
+ * Encodes arbitrary strings into the Local-Id alphabet and back. All symbols
+ * which are not allowed in local identifiers are replaced by the "_XX"
+ * sequences where "XX" is the hexadecimal code of the corresponding UTF-8
+ * byte. Characters outside of the Basic Multilingual Plane (surrogate pairs)
+ * are encoded as four-byte UTF-8 sequences. See also {@link LocalIdByteEncoder}
+ * for the same transformation applied directly to UTF-8 bytes.
+ * <p>
+ * String-based methods return the given value as is when it does not require
+ * any transformation. Methods accepting {@link Appendable} or {@code char[]}
+ * targets write results directly to the given buffers without allocating
+ * intermediate objects.
+ * </p>
+ * 
  * @author kotelnikov
  */
 public class LocalIdEncoder {
 
-    private final static char ESCAPE_SYMBOL = '_';
+    final static char ESCAPE_SYMBOL = '_';
+
+    final static char[] HEX = "0123456789ABCDEF".toCharArray();
 
     private static LocalIdEncoder fInstance;
 
+    /**
+     * The maximal number of encoded characters corresponding to one source
+     * character (three escaped UTF-8 bytes).
+     */
+    private final static int MAX_ENCODED_CHAR_LENGTH = 9;
+
+    private final static int MIN_SUPPLEMENTARY_CODE_POINT = 0x10000;
+
     /**
      * @return the instance
      */
@@ -35,6 +60,67 @@ public class LocalIdEncoder {
         return fInstance;
     }
 
+    static int getHexValue(int ch) {
+        if (ch >= '0' && ch <= '9') {
+            return ch - '0';
+        }
+        if (ch >= 'A' && ch <= 'F') {
+            return ch - 'A' + 10;
+        }
+        if (ch >= 'a' && ch <= 'f') {
+            return ch - 'a' + 10;
+        }
+        return -1;
+    }
+
+    private static char getHighSurrogate(int codePoint) {
+        return (char) (((codePoint - MIN_SUPPLEMENTARY_CODE_POINT) >>> 10) + 0xD800);
+    }
+
+    private static char getLowSurrogate(int codePoint) {
+        return (char) (((codePoint - MIN_SUPPLEMENTARY_CODE_POINT) & 0x3FF) + 0xDC00);
+    }
+
+    /**
+     * Returns the maximal length of the encoded representation of a string
+     * with the specified number of characters. This value should be used to
+     * allocate output arrays for the
+     * {@link #encode(char[], int, int, char[], int)} method.
+     * 
+     * @param length the length of a string to encode
+     * @return the maximal length of the encoded string
+     */
+    public static int getMaxEncodedLength(int length) {
+        return length * MAX_ENCODED_CHAR_LENGTH;
+    }
+
+    /**
+     * Returns the number of UTF-8 bytes in the sequence started by the
+     * specified leading byte.
+     */
+    private static int getSequenceLength(int code) {
+        if (code >= 0xC2 && code <= 0xDF) {
+            return 2;
+        } else if (code >= 0xE0 && code <= 0xEF) {
+            return 3;
+        } else if (code >= 0xF0 && code <= 0xF4) {
+            return 4;
+        }
+        return 1;
+    }
+
+    /**
+     * Returns <code>true</code> if the specified character could be used as
+     * is at the given position of a local identifier.
+     */
+    static boolean isSafe(int ch, int pos) {
+        return (ch >= 'A' && ch <= 'Z')
+            || (ch >= 'a' && ch <= 'z')
+            || (pos > 0 && ch >= '0' && ch <= '9')
+            || ch == '.'
+            || ch == '-';
+    }
+
     /**
      * @param instance the instance to set
      */
@@ -45,103 +131,289 @@ public class LocalIdEncoder {
     protected LocalIdEncoder() {
     }
 
-    private void appendEscaped(StringBuffer buf, int ch) {
-        String str = Integer.toHexString(ch).toUpperCase();
+    private void appendEscaped(Appendable buf, int code) throws IOException {
         buf.append(ESCAPE_SYMBOL);
-        buf.append(str);
+        buf.append(HEX[(code >>> 4) & 0xF]);
+        buf.append(HEX[code & 0xF]);
+    }
+
+    private int appendEscaped(char[] buf, int pos, int code) {
+        buf[pos++] = ESCAPE_SYMBOL;
+        buf[pos++] = HEX[(code >>> 4) & 0xF];
+        buf[pos++] = HEX[code & 0xF];
+        return pos;
     }
 
     /**
-     * @param key the value to encode
-     * @return the URL-encoded string corresponding to the given value
+     * Decodes the given array segment and writes results in the specified
+     * output array. The decoded value is never longer than the encoded one so
+     * the output array should have at least <code>length</code> free
+     * positions.
+     * 
+     * @param value the array containing the encoded value
+     * @param offset the position of the first character to decode
+     * @param length the number of characters to decode
+     * @param out the output array
+     * @param outOffset the position in the output array where the decoded
+     *        value should be written
+     * @return the number of characters written in the output array
      */
-    public String decode(String value) {
-        StringBuffer buf = new StringBuffer();
-        if (value != null) {
-            char[] array = value.toCharArray();
-            int ch = 0;
-            int chPos = 0;
-            int chLen = 1;
-            for (int i = 0; i < array.length; i++) {
-                char currentByte = array[i];
-                if (currentByte == ESCAPE_SYMBOL) {
-                    if (i < array.length - 2) {
-                        String s = new String(array, i + 1, 2);
-                        int code = (char) Integer.parseInt(s, 16);
-                        i += 2;
-                        if (chPos == 0) {
-                            if (code >= 0x00 && code <= 0x7F) {
-                                chLen = 1;
-                                code &= (0xFF >>> 1);
-                            } else if (code >= 0xC2 && code <= 0xDF) {
-                                chLen = 2;
-                                code &= (0xFF >>> 3);
-                            } else if (code >= 0xE0 && code <= 0xEF) {
-                                chLen = 3;
-                                code &= (0xFF >>> 4);
-                            } else if (code >= 0xF0 && code <= 0xF4) {
-                                chLen = 4;
-                                code &= (0xFF >>> 5);
-                            }
-                        } else {
-                            code &= (0xFF >>> 2);
-                        }
-                        if (chPos == chLen - 1) {
-                            ch |= code;
-                        } else if (chPos == chLen - 2) {
-                            ch |= code << 6;
-                        } else if (chPos == chLen - 3) {
-                            ch |= code << 12;
-                        }
-                    }
+    public int decode(
+        char[] value,
+        int offset,
+        int length,
+        char[] out,
+        int outOffset) {
+        int pos = outOffset;
+        int end = offset + length;
+        int ch = 0;
+        int chPos = 0;
+        int chLen = 1;
+        for (int i = offset; i < end; i++) {
+            char current = value[i];
+            int code = -1;
+            if (current == ESCAPE_SYMBOL && i < end - 2) {
+                int hi = getHexValue(value[i + 1]);
+                int lo = getHexValue(value[i + 2]);
+                if (hi >= 0 && lo >= 0) {
+                    code = (hi << 4) | lo;
+                    i += 2;
+                }
+            }
+            if (code < 0) {
+                out[pos++] = current;
+                ch = 0;
+                chPos = 0;
+                continue;
+            }
+            if (chPos == 0) {
+                chLen = getSequenceLength(code);
+                ch = code & (0xFF >>> (chLen == 1 ? 1 : chLen + 1));
+            } else {
+                ch = (ch << 6) | (code & 0x3F);
+            }
+            chPos++;
+            if (chPos >= chLen) {
+                if (ch >= MIN_SUPPLEMENTARY_CODE_POINT) {
+                    out[pos++] = getHighSurrogate(ch);
+                    out[pos++] = getLowSurrogate(ch);
                 } else {
-                    ch = currentByte;
-                    chLen = 1;
+                    out[pos++] = (char) ch;
+                }
+                ch = 0;
+                chPos = 0;
+            }
+        }
+        return pos - outOffset;
+    }
+
+    /**
+     * Decodes the given value and appends results to the specified output.
+     * 
+     * @param value the value to decode
+     * @param out the output where the decoded value is written
+     * @throws IOException thrown by the underlying output
+     */
+    public void decode(CharSequence value, Appendable out) throws IOException {
+        int len = value.length();
+        int ch = 0;
+        int chPos = 0;
+        int chLen = 1;
+        for (int i = 0; i < len; i++) {
+            char current = value.charAt(i);
+            int code = -1;
+            if (current == ESCAPE_SYMBOL && i < len - 2) {
+                int hi = getHexValue(value.charAt(i + 1));
+                int lo = getHexValue(value.charAt(i + 2));
+                if (hi >= 0 && lo >= 0) {
+                    code = (hi << 4) | lo;
+                    i += 2;
                 }
-                chPos++;
-                if (chPos >= chLen) {
-                    buf.append((char) ch);
-                    ch = 0;
-                    chPos = 0;
+            }
+            if (code < 0) {
+                out.append(current);
+                ch = 0;
+                chPos = 0;
+                continue;
+            }
+            if (chPos == 0) {
+                chLen = getSequenceLength(code);
+                ch = code & (0xFF >>> (chLen == 1 ? 1 : chLen + 1));
+            } else {
+                ch = (ch << 6) | (code & 0x3F);
+            }
+            chPos++;
+            if (chPos >= chLen) {
+                if (ch >= MIN_SUPPLEMENTARY_CODE_POINT) {
+                    out.append(getHighSurrogate(ch));
+                    out.append(getLowSurrogate(ch));
+                } else {
+                    out.append((char) ch);
                 }
+                ch = 0;
+                chPos = 0;
             }
         }
+    }
+
+    /**
+     * @param value the value to decode
+     * @return the decoded string corresponding to the given value; if the
+     *         value does not contain escaped symbols then it is returned as is
+     */
+    public String decode(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(ESCAPE_SYMBOL) < 0) {
+            return value;
+        }
+        StringBuilder buf = new StringBuilder(value.length());
+        try {
+            decode(value, buf);
+        } catch (IOException e) {
+            // Should not be thrown by a StringBuilder
+            throw new IllegalStateException(e);
+        }
         return buf.toString();
     }
 
     /**
-     * @param encode
-     * @param escape
-     * @param key the value to encode
-     * @return the URL-encoded string corresponding to the given value
+     * Encodes the given array segment and writes results in the specified
+     * output array. The output array should have at least
+     * {@link #getMaxEncodedLength(int)} free positions.
+     * 
+     * @param value the array containing the value to encode
+     * @param offset the position of the first character to encode
+     * @param length the number of characters to encode
+     * @param out the output array
+     * @param outOffset the position in the output array where the encoded
+     *        value should be written
+     * @return the number of characters written in the output array
      */
-    public String encode(String value) {
-        StringBuffer buf = new StringBuffer();
-        if (value != null) {
-            char[] array = value.toCharArray();
-            for (int i = 0; i < array.length; i++) {
-                char ch = array[i];
-                if (ch < 128) {
-                    if ((ch >= 'A' && ch <= 'Z')
-                        || (ch >= 'a' && ch <= 'z')
-                        || (i > 0 && ch >= '0' && ch <= '9')
-                        || ch == '.'
-                        || ch == '-') {
-                        buf.append(ch);
-                    } else {
-                        appendEscaped(buf, ch);
-                    }
-                } else if ((ch > 127) && (ch < 2048)) {
-                    appendEscaped(buf, (ch >>> 6) | 192);
-                    appendEscaped(buf, (ch & 63) | 128);
+    public int encode(
+        char[] value,
+        int offset,
+        int length,
+        char[] out,
+        int outOffset) {
+        int pos = outOffset;
+        for (int i = 0; i < length; i++) {
+            char ch = value[offset + i];
+            if (ch < 128) {
+                if (isSafe(ch, i)) {
+                    out[pos++] = ch;
                 } else {
-                    appendEscaped(buf, (ch >>> 12) | 224);
-                    appendEscaped(buf, ((ch >>> 6) & 63) | 128);
-                    appendEscaped(buf, (ch & 63) | 128);
+                    pos = appendEscaped(out, pos, ch);
                 }
+            } else if (ch < 2048) {
+                pos = appendEscaped(out, pos, (ch >>> 6) | 192);
+                pos = appendEscaped(out, pos, (ch & 63) | 128);
+            } else if (Character.isHighSurrogate(ch)
+                && i < length - 1
+                && Character.isLowSurrogate(value[offset + i + 1])) {
+                i++;
+                int code = Character.toCodePoint(ch, value[offset + i]);
+                pos = appendEscaped(out, pos, (code >>> 18) | 240);
+                pos = appendEscaped(out, pos, ((code >>> 12) & 63) | 128);
+                pos = appendEscaped(out, pos, ((code >>> 6) & 63) | 128);
+                pos = appendEscaped(out, pos, (code & 63) | 128);
+            } else {
+                pos = appendEscaped(out, pos, (ch >>> 12) | 224);
+                pos = appendEscaped(out, pos, ((ch >>> 6) & 63) | 128);
+                pos = appendEscaped(out, pos, (ch & 63) | 128);
             }
         }
+        return pos - outOffset;
+    }
+
+    /**
+     * Encodes the given value and appends results to the specified output.
+     * 
+     * @param value the value to encode
+     * @param out the output where the encoded value is written
+     * @throws IOException thrown by the underlying output
+     */
+    public void encode(CharSequence value, Appendable out) throws IOException {
+        int len = value.length();
+        for (int i = 0; i < len; i++) {
+            char ch = value.charAt(i);
+            if (ch < 128) {
+                if (isSafe(ch, i)) {
+                    out.append(ch);
+                } else {
+                    appendEscaped(out, ch);
+                }
+            } else if (ch < 2048) {
+                appendEscaped(out, (ch >>> 6) | 192);
+                appendEscaped(out, (ch & 63) | 128);
+            } else if (Character.isHighSurrogate(ch)
+                && i < len - 1
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                i++;
+                int code = Character.toCodePoint(ch, value.charAt(i));
+                appendEscaped(out, (code >>> 18) | 240);
+                appendEscaped(out, ((code >>> 12) & 63) | 128);
+                appendEscaped(out, ((code >>> 6) & 63) | 128);
+                appendEscaped(out, (code & 63) | 128);
+            } else {
+                appendEscaped(out, (ch >>> 12) | 224);
+                appendEscaped(out, ((ch >>> 6) & 63) | 128);
+                appendEscaped(out, (ch & 63) | 128);
+            }
+        }
+    }
+
+    /**
+     * @param value the value to encode
+     * @return the encoded string corresponding to the given value; if the
+     *         value contains only allowed symbols then it is returned as is
+     */
+    public String encode(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (isSafe(value)) {
+            return value;
+        }
+        StringBuilder buf = new StringBuilder(value.length() * 3);
+        try {
+            encode(value, buf);
+        } catch (IOException e) {
+            // Should not be thrown by a StringBuilder
+            throw new IllegalStateException(e);
+        }
         return buf.toString();
     }
 
+    /**
+     * Returns <code>true</code> if the given value contains only symbols
+     * allowed in local identifiers and it can be used as is, without encoding.
+     * 
+     * @param value the value to check
+     * @return <code>true</code> if the given value does not require encoding
+     */
+    public boolean isSafe(CharSequence value) {
+        return isSafe(value, 0, value.length());
+    }
+
+    /**
+     * Returns <code>true</code> if the specified segment of the given value
+     * contains only symbols allowed in local identifiers and it can be used as
+     * is, without encoding.
+     * 
+     * @param value the value to check
+     * @param start the start position of the segment
+     * @param end the end position of the segment
+     * @return <code>true</code> if the segment does not require encoding
+     */
+    public boolean isSafe(CharSequence value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isSafe(value.charAt(i), i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
 }
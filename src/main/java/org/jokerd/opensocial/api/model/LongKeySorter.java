@@ -0,0 +1,179 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * Sorts lists of objects by primitive <code>long</code> keys (for example by
+ * dates converted to milliseconds, see {@link Message#UPDATED_KEY}). Keys are
+ * extracted only once for each object, so objects are not accessed while
+ * they are compared. The sort is stable: objects with equal keys keep their
+ * relative order. Big lists could be sorted using a pool of threads (see
+ * {@link ParallelLongKeySorter}).
+ * 
+ * @author kotelnikov
+ */
+public class LongKeySorter {
+
+    /**
+     * Returns sort keys of objects.
+     */
+    public interface ILongKey<T> {
+
+        long getKey(T value);
+
+    }
+
+    /**
+     * Lists shorter than this value are sorted by insertion.
+     */
+    private final static int INSERTION_SORT_SIZE = 32;
+
+    /**
+     * Extracts keys of objects in the given list. For the descending order
+     * all bits of keys are inverted; it reverses the order of keys without
+     * overflows.
+     */
+    static <T> long[] getKeys(
+        List<T> list,
+        ILongKey<? super T> key,
+        boolean descending) {
+        long[] keys = new long[list.size()];
+        int i = 0;
+        for (T value : list) {
+            long k = key.getKey(value);
+            keys[i++] = descending ? ~k : k;
+        }
+        return keys;
+    }
+
+    static int[] getPositions(int size) {
+        int[] positions = new int[size];
+        for (int i = 0; i < size; i++) {
+            positions[i] = i;
+        }
+        return positions;
+    }
+
+    private static void insertionSort(
+        long[] keys,
+        int[] positions,
+        int from,
+        int to) {
+        for (int i = from + 1; i < to; i++) {
+            long key = keys[i];
+            int pos = positions[i];
+            int j = i - 1;
+            while (j >= from && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                positions[j + 1] = positions[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            positions[j + 1] = pos;
+        }
+    }
+
+    /**
+     * Merges two sorted ranges [from, middle) and [middle, to) of the source
+     * arrays into the same range of the target arrays.
+     */
+    static void merge(
+        long[] keys,
+        int[] positions,
+        long[] targetKeys,
+        int[] targetPositions,
+        int from,
+        int middle,
+        int to) {
+        int i = from;
+        int j = middle;
+        int k = from;
+        while (i < middle && j < to) {
+            // The "<=" comparison keeps the sort stable
+            if (keys[i] <= keys[j]) {
+                targetKeys[k] = keys[i];
+                targetPositions[k++] = positions[i++];
+            } else {
+                targetKeys[k] = keys[j];
+                targetPositions[k++] = positions[j++];
+            }
+        }
+        int len = middle - i;
+        System.arraycopy(keys, i, targetKeys, k, len);
+        System.arraycopy(positions, i, targetPositions, k, len);
+        k += len;
+        len = to - j;
+        System.arraycopy(keys, j, targetKeys, k, len);
+        System.arraycopy(positions, j, targetPositions, k, len);
+    }
+
+    /**
+     * Sorts the range [from, to) of the given arrays. The same range of
+     * temporary arrays is used to merge sorted parts.
+     */
+    static void mergeSort(
+        long[] keys,
+        int[] positions,
+        long[] tmpKeys,
+        int[] tmpPositions,
+        int from,
+        int to) {
+        if (to - from <= INSERTION_SORT_SIZE) {
+            insertionSort(keys, positions, from, to);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(keys, positions, tmpKeys, tmpPositions, from, middle);
+        mergeSort(keys, positions, tmpKeys, tmpPositions, middle, to);
+        if (keys[middle - 1] <= keys[middle]) {
+            return;
+        }
+        merge(keys, positions, tmpKeys, tmpPositions, from, middle, to);
+        System.arraycopy(tmpKeys, from, keys, from, to - from);
+        System.arraycopy(tmpPositions, from, positions, from, to - from);
+    }
+
+    /**
+     * Puts objects of the given list in the specified order.
+     */
+    static <T> void reorder(List<T> list, int[] positions) {
+        Object[] values = list.toArray();
+        ListIterator<T> iterator = list.listIterator();
+        for (int pos : positions) {
+            iterator.next();
+            @SuppressWarnings("unchecked")
+            T value = (T) values[pos];
+            iterator.set(value);
+        }
+    }
+
+    /**
+     * Sorts the given list by keys of objects.
+     * 
+     * @param list the list to sort
+     * @param key returns sort keys of objects
+     * @param descending if this flag is <code>true</code> then objects with
+     *        bigger keys are placed first
+     */
+    public static <T> void sort(
+        List<T> list,
+        ILongKey<? super T> key,
+        boolean descending) {
+        int size = list.size();
+        if (size < 2) {
+            return;
+        }
+        long[] keys = getKeys(list, key, descending);
+        int[] positions = getPositions(size);
+        mergeSort(keys, positions, new long[size], new int[size], 0, size);
+        reorder(list, positions);
+    }
+
+    private LongKeySorter() {
+    }
+
+}
@@ -65,6 +65,19 @@ public class MediaItem extends DataObject {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(MediaItem.class)
+        .add(
+            "album_id",
+            "description",
+            "id",
+            "mime_type",
+            "thumbnailUrl",
+            "thumbnail_url",
+            "title",
+            "caption",
+            "type",
+            "url");
+
     public final static MediaItem.Type TYPE_AUDIO = new MediaItem.Type("audio");
 
     public final static MediaItem.Type TYPE_IMAGE = new MediaItem.Type("image");
@@ -99,6 +112,16 @@ public class MediaItem extends DataObject {
         return getString("mime_type");
     }
 
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new MediaItem();
+    }
+
     /**
      * Returns the URL of the media item's thumbnail image as a string.
      */
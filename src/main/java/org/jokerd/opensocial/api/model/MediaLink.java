@@ -19,6 +19,11 @@ public class MediaLink extends DataObject {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(MediaLink.class)
+        .addPrimitive("duration", "height")
+        .add("mediaItemId", "url")
+        .addPrimitive("width");
+
     /**
      * 
      */
@@ -62,6 +67,16 @@ public class MediaLink extends DataObject {
         return getString("mediaItemId");
     }
 
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new MediaLink();
+    }
+
     /**
      * The IRI of the media resource being linked. A media link MUST have a url
      * property. OpenSocial note: Many OpenSocial containers currently use Media
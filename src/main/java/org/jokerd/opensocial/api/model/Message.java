@@ -35,12 +35,16 @@ import org.ubimix.commons.json.ext.FormattedDate;
 // http://opensocial-resources.googlecode.com/svn/spec/2.0.1/Social-Data.xml#Message
 public class Message extends ActivityObject implements Comparable<Message> {
 
+    /**
+     * Orders messages by their modification dates; recently updated messages
+     * are placed first. Messages without dates are placed at the end.
+     */
     public static Comparator<? super Message> COMPARATOR = new Comparator<Message>() {
         @Override
         public int compare(Message o1, Message o2) {
-            FormattedDate first = o1.getUpdated();
-            FormattedDate second = o2.getUpdated();
-            return -first.compareTo(second);
+            long first = o1.getUpdatedMillis();
+            long second = o2.getUpdatedMillis();
+            return first < second ? 1 : first == second ? 0 : -1;
         }
     };
 
@@ -51,6 +55,42 @@ public class Message extends ActivityObject implements Comparable<Message> {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(
+        Message.class,
+        ActivityObject.SCHEMA)
+        .add(
+            "appUrl",
+            "body",
+            "bodyId",
+            "collectionIds",
+            "inReplyTo",
+            "recipients",
+            "replies",
+            "senderId",
+            "status",
+            "timeSent",
+            "title",
+            "titleId",
+            "type",
+            "urls");
+
+    /**
+     * Returns modification dates of messages. This key could be used to sort
+     * big lists of messages in the order defined by the {@link #COMPARATOR}:
+     * 
+     * <pre>
+     * LongKeySorter.sort(messages, Message.UPDATED_KEY, true);
+     * </pre>
+     * 
+     * @see LongKeySorter
+     */
+    public static LongKeySorter.ILongKey<Message> UPDATED_KEY = new LongKeySorter.ILongKey<Message>() {
+        @Override
+        public long getKey(Message value) {
+            return value.getUpdatedMillis();
+        }
+    };
+
     @Override
     public int compareTo(Message o) {
         return COMPARATOR.compare(this, o);
@@ -110,6 +150,16 @@ public class Message extends ActivityObject implements Comparable<Message> {
         return getList("replies", ObjectId.FACTORY);
     }
 
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new Message();
+    }
+
     /** Id of person who sent the message. */
     public UserId getSenderId() {
         return getValue("senderId", UserId.FACTORY);
@@ -125,6 +175,15 @@ public class Message extends ActivityObject implements Comparable<Message> {
         return getValue("timeSent", FormattedDate.FACTORY);
     }
 
+    /**
+     * Returns the time when this message was sent as the number of
+     * milliseconds since the epoch or {@link EpochDates#NO_DATE} if the time
+     * is not defined.
+     */
+    public long getTimeSentMillis() {
+        return getDateMillis("timeSent");
+    }
+
     /**
      * The title of the message. HTML attributes are allowed and are sanitized
      * by the container.
@@ -23,6 +23,15 @@ public class Name extends DataObject {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(Name.class)
+        .add(
+            "familyName ",
+            "formatted",
+            "givenName",
+            "middleName",
+            "honorificPrefix",
+            "honorificSuffix");
+
     /**
      * The family name of this PersonMin, or "Last Name" in most Western
      * languages (e.g. Smarr given the full name Mr. Joseph Robert Smarr, Esq.).
@@ -117,6 +126,16 @@ public class Name extends DataObject {
         return getString("middleName");
     }
 
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new Name();
+    }
+
     /**
      * The family name of this PersonMin, or "Last Name" in most Western
      * languages (e.g. Smarr given the full name Mr. Joseph Robert Smarr, Esq.).
@@ -3,9 +3,11 @@
  */
 package org.jokerd.opensocial.api.model;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -22,6 +24,13 @@ import org.ubimix.commons.json.JsonValue.IJsonValueFactory;
  * Local-Id = *( ALPHA / DIGIT / "_" / "." / "-" )
  * Global-Id   = Domain-Name ":" Local-Id
  * </pre>
+ * <p>
+ * Identifiers are used as keys in large maps so each instance keeps its local
+ * identifier in one compact byte array with a precomputed hash code. Domain
+ * names are resolved to canonical instances (see
+ * {@link DomainName#valueOf(String)}) and are not copied to identifiers. The
+ * full text of an identifier is created on demand and cached.
+ * </p>
  * 
  * @author kotelnikov
  */
@@ -44,10 +53,37 @@ public class ObjectId {
         return LocalIdEncoder.getInstance().encode(str);
     }
 
+    /**
+     * Returns a map of the given reserved identifiers with their string
+     * representations used as keys.
+     */
+    static <T extends ObjectId> Map<String, T> newReservedMap(T[] ids) {
+        Map<String, T> map = new HashMap<String, T>();
+        for (T id : ids) {
+            map.put(id.toString(), id);
+        }
+        return map;
+    }
+
     public static <T extends ObjectId> Map<DomainName, Set<T>> groupByDomains(
         Collection<T> ids) {
+        return groupByDomains(ids.iterator());
+    }
+
+    /**
+     * Groups identifiers returned by the given iterator by their domains. The
+     * iterator is consumed sequentially; see
+     * {@link org.jokerd.opensocial.api.model.index.DomainPartitioner} for a
+     * parallel version.
+     * 
+     * @param ids an iterator over identifiers to group
+     * @return a map of domains with the corresponding identifiers
+     */
+    public static <T extends ObjectId> Map<DomainName, Set<T>> groupByDomains(
+        Iterator<? extends T> ids) {
         Map<DomainName, Set<T>> domainNames = new HashMap<DomainName, Set<T>>();
-        for (T id : ids) {
+        while (ids.hasNext()) {
+            T id = ids.next();
             DomainName domainName = id.getDomainName();
             Set<T> set = domainNames.get(domainName);
             if (set == null) {
@@ -59,33 +95,148 @@ public class ObjectId {
         return domainNames;
     }
 
+    /**
+     * The local identifier where each character is stored as one byte. The
+     * domain name is not copied here: it is kept by the canonical
+     * {@link DomainName} instance. This field is <code>null</code> if the
+     * local identifier contains characters which can not be represented in
+     * Latin-1.
+     */
+    private final byte[] fBytes;
+
+    /**
+     * Canonical instance of the domain of this identifier.
+     */
     private final DomainName fDomainName;
 
-    private final String fLocalId;
+    /**
+     * The precomputed hash code of this identifier.
+     */
+    private final int fHash;
+
+    /**
+     * Lazily initialized local identifier. It is created from the compact
+     * representation on the first access and reused by all subsequent calls
+     * of the {@link #getLocalId()} method. If the local identifier contains
+     * characters outside of Latin-1 then this field is set by constructors.
+     */
+    private String fLocalId;
+
+    /**
+     * Lazily initialized decoded representation of the local identifier.
+     */
+    private String fLocalIdDecoded;
+
+    /**
+     * Lazily initialized full text of this identifier ("Domain-Name:Local-Id"
+     * or just "Local-Id") returned by the {@link #toString()} method.
+     */
+    private String fText;
+
+    /**
+     * Parses the given character sequence. The domain name is resolved to its
+     * canonical instance directly from the sequence, without intermediate
+     * substrings.
+     * 
+     * @param id the identifier to parse
+     */
+    public ObjectId(CharSequence id) {
+        int len = id.length();
+        int idx = -1;
+        for (int i = len - 1; i > 0; i--) {
+            if (id.charAt(i) == ':') {
+                idx = i;
+                break;
+            }
+        }
+        int localStart = 0;
+        if (idx > 0) {
+            fDomainName = DomainName.valueOf(id, 0, idx);
+            localStart = idx + 1;
+        } else {
+            fDomainName = null;
+        }
+        fBytes = toBytes(id, localStart, len);
+        if (fBytes == null) {
+            fLocalId = id.subSequence(localStart, len).toString();
+        }
+        fHash = newHash();
+    }
 
     public ObjectId(DomainName domainName, String localId) {
-        fDomainName = domainName;
-        fLocalId = encode(localId);
+        this(domainName, localId, false);
+    }
+
+    /**
+     * @param domainName the domain name of this identifier
+     * @param localId the local identifier
+     * @param raw if this flag is <code>true</code> then the local identifier
+     *        is used as is, without encoding
+     */
+    protected ObjectId(DomainName domainName, String localId, boolean raw) {
+        fDomainName = domainName != null ? domainName.intern() : null;
+        String local = raw ? localId : encode(localId);
+        fBytes = toBytes(local, 0, local.length());
+        if (fBytes == null) {
+            fLocalId = local;
+        }
+        fHash = newHash();
     }
 
     public ObjectId(ObjectId objectId) {
         fDomainName = objectId.fDomainName;
+        fBytes = objectId.fBytes;
+        fHash = objectId.fHash;
         fLocalId = objectId.fLocalId;
+        fLocalIdDecoded = objectId.fLocalIdDecoded;
+        fText = objectId.fText;
     }
 
     public ObjectId(String id) {
-        int idx = id.lastIndexOf(':');
-        if (idx > 0) {
-            fDomainName = new DomainName(id.substring(0, idx));
-            fLocalId = id.substring(idx + 1);
-        } else {
-            fDomainName = null;
-            fLocalId = id;
-        }
+        this((CharSequence) id);
     }
 
     public ObjectId(String domainName, String localId) {
-        this(new DomainName(domainName), localId);
+        this(DomainName.valueOf(domainName), localId);
+    }
+
+    /**
+     * Returns the Latin-1 representation of the specified segment of the
+     * given sequence or <code>null</code> if the segment contains characters
+     * outside of Latin-1.
+     */
+    private static byte[] toBytes(CharSequence localId, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            char ch = localId.charAt(i);
+            if (ch > 0xFF) {
+                return null;
+            }
+            bytes[i - start] = (byte) ch;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns a string containing the given domain name (if any) and Latin-1
+     * characters of the given local identifier.
+     */
+    private static String toString(String domain, byte[] bytes) {
+        int pos = 0;
+        char[] chars;
+        if (domain != null) {
+            int domainLen = domain.length();
+            chars = new char[domainLen + 1 + bytes.length];
+            domain.getChars(0, domainLen, chars, 0);
+            pos = domainLen;
+            chars[pos++] = ':';
+        } else {
+            chars = new char[bytes.length];
+        }
+        for (byte b : bytes) {
+            chars[pos++] = (char) (b & 0xFF);
+        }
+        return new String(chars);
     }
 
     @Override
@@ -97,13 +248,18 @@ public class ObjectId {
             return false;
         }
         ObjectId o = (ObjectId) obj;
-        return equals(fDomainName, o.fDomainName)
-            && equals(fLocalId, o.fLocalId);
-    }
-
-    private boolean equals(Object first, Object second) {
-        return first == null || second == null ? first == second : first
-            .equals(second);
+        if (fHash != o.fHash) {
+            return false;
+        }
+        if (fDomainName != null
+            ? !fDomainName.equals(o.fDomainName)
+            : o.fDomainName != null) {
+            return false;
+        }
+        // Local identifiers with characters outside of Latin-1 are always
+        // stored as strings, so equal identifiers have the same form
+        return fBytes != null ? Arrays.equals(fBytes, o.fBytes) : fLocalId
+            .equals(o.fLocalId);
     }
 
     public DomainName getDomainName() {
@@ -111,25 +267,66 @@ public class ObjectId {
     }
 
     public String getLocalId() {
-        return fLocalId;
+        String result = fLocalId;
+        if (result == null) {
+            result = toString(null, fBytes);
+            fLocalId = result;
+        }
+        return result;
     }
 
     public String getLocalIdDecoded() {
-        return decode(fLocalId);
+        String result = fLocalIdDecoded;
+        if (result == null) {
+            result = decode(getLocalId());
+            fLocalIdDecoded = result;
+        }
+        return result;
     }
 
     @Override
     public int hashCode() {
-        int a = fDomainName != null ? fDomainName.hashCode() : 0;
-        int b = fLocalId.hashCode();
-        return a ^ b;
+        return fHash;
     }
 
+    /**
+     * Calculates the hash code of this identifier. It is the same as the hash
+     * code of the full string representation of the identifier.
+     */
+    private int newHash() {
+        int hash = 0;
+        if (fDomainName != null) {
+            hash = 31 * fDomainName.toString().hashCode() + ':';
+        }
+        if (fBytes != null) {
+            for (byte b : fBytes) {
+                hash = 31 * hash + (b & 0xFF);
+            }
+        } else {
+            for (int i = 0; i < fLocalId.length(); i++) {
+                hash = 31 * hash + fLocalId.charAt(i);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the full text of this identifier. The text is created on the
+     * first call and reused by all subsequent calls.
+     */
     @Override
     public String toString() {
-        if (fDomainName == null) {
-            return fLocalId;
+        String result = fText;
+        if (result == null) {
+            if (fDomainName == null) {
+                result = getLocalId();
+            } else if (fBytes != null) {
+                result = toString(fDomainName.toString(), fBytes);
+            } else {
+                result = fDomainName + ":" + fLocalId;
+            }
+            fText = result;
         }
-        return fDomainName + ":" + fLocalId;
+        return result;
     }
 }
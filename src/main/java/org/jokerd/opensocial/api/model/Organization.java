@@ -20,6 +20,22 @@ public class Organization extends DataObject {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(Organization.class)
+        .addObject("address", Address.FACTORY)
+        .add(
+            "department",
+            "description",
+            "endDate",
+            "field",
+            "location",
+            "name",
+            "salary",
+            "startDate",
+            "subfield",
+            "title",
+            "type",
+            "webpage");
+
     /**
      * Address The physical address of this organization.
      */
@@ -85,6 +101,16 @@ public class Organization extends DataObject {
         return getString("salary");
     }
 
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new Organization();
+    }
+
     /**
      * Date or string The date this PersonMin joined this organization. This
      * value SHOULD be a valid Date if possible, but MAY be an unformatted
@@ -0,0 +1,164 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Sorts big lists of objects by primitive <code>long</code> keys using a pool
+ * of threads. Keys are extracted and compared exactly as by the
+ * {@link LongKeySorter} class, so both sorters return the same order. This
+ * class uses <code>java.util.concurrent</code> executors, so it is not a part
+ * of the GWT module.
+ * 
+ * @author kotelnikov
+ */
+public class ParallelLongKeySorter {
+
+    private static Callable<Object> newMergeTask(
+        final long[] keys,
+        final int[] positions,
+        final long[] targetKeys,
+        final int[] targetPositions,
+        final int from,
+        final int middle,
+        final int to) {
+        return new Callable<Object>() {
+            public Object call() throws Exception {
+                LongKeySorter.merge(
+                    keys,
+                    positions,
+                    targetKeys,
+                    targetPositions,
+                    from,
+                    middle,
+                    to);
+                return null;
+            }
+        };
+    }
+
+    private static Callable<Object> newSortTask(
+        final long[] keys,
+        final int[] positions,
+        final long[] tmpKeys,
+        final int[] tmpPositions,
+        final int from,
+        final int to) {
+        return new Callable<Object>() {
+            public Object call() throws Exception {
+                LongKeySorter.mergeSort(
+                    keys,
+                    positions,
+                    tmpKeys,
+                    tmpPositions,
+                    from,
+                    to);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Runs the given tasks and waits until all of them are finished.
+     */
+    private static void run(
+        ExecutorService executor,
+        List<Callable<Object>> tasks) {
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        try {
+            for (Callable<Object> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<Object> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Sorts the given list by keys of objects using a pool of threads. The
+     * list is split in chunks of the specified size; each chunk is sorted by
+     * a separate task and then sorted chunks are merged by pairs, also in
+     * parallel.
+     * 
+     * @param list the list to sort
+     * @param key returns sort keys of objects
+     * @param descending if this flag is <code>true</code> then objects with
+     *        bigger keys are placed first
+     * @param executor the executor used to run sorting tasks
+     * @param chunkSize the number of objects sorted by one task
+     */
+    public static <T> void sort(
+        List<T> list,
+        LongKeySorter.ILongKey<? super T> key,
+        boolean descending,
+        ExecutorService executor,
+        int chunkSize) {
+        int size = list.size();
+        if (size <= chunkSize || chunkSize < 2) {
+            LongKeySorter.sort(list, key, descending);
+            return;
+        }
+        long[] keys = LongKeySorter.getKeys(list, key, descending);
+        int[] positions = LongKeySorter.getPositions(size);
+        long[] tmpKeys = new long[size];
+        int[] tmpPositions = new int[size];
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int start = 0; start < size; start += chunkSize) {
+            tasks.add(newSortTask(
+                keys,
+                positions,
+                tmpKeys,
+                tmpPositions,
+                start,
+                Math.min(start + chunkSize, size)));
+        }
+        run(executor, tasks);
+        // Sorted chunks are merged from one pair of arrays into another one
+        long[] sourceKeys = keys;
+        int[] sourcePositions = positions;
+        for (int width = chunkSize; width < size; width *= 2) {
+            tasks.clear();
+            for (int from = 0; from < size; from += 2 * width) {
+                int middle = Math.min(from + width, size);
+                int to = Math.min(from + 2 * width, size);
+                tasks.add(newMergeTask(
+                    sourceKeys,
+                    sourcePositions,
+                    tmpKeys,
+                    tmpPositions,
+                    from,
+                    middle,
+                    to));
+            }
+            run(executor, tasks);
+            long[] k = sourceKeys;
+            sourceKeys = tmpKeys;
+            tmpKeys = k;
+            int[] p = sourcePositions;
+            sourcePositions = tmpPositions;
+            tmpPositions = p;
+        }
+        LongKeySorter.reorder(list, sourcePositions);
+    }
+
+    private ParallelLongKeySorter() {
+    }
+
+}
@@ -0,0 +1,457 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ubimix.commons.json.JsonObject;
+
+/**
+ * A list of changes transforming one version of a model object into another
+ * one. Patches are computed by the {@link #diff(JsonObject, JsonObject)}
+ * method and applied using the {@link #apply(JsonObject)} method. Patches are
+ * model objects themselves, so they could be serialized and sent or stored
+ * instead of full objects.
+ * <p>
+ * Nested objects are compared field by field. Arrays (for example plural
+ * fields like "emails" or "addresses") are compared element by element:
+ * elements which are not changed are not included in the patch, modified
+ * elements are compared recursively and only inserted elements are copied in
+ * the patch.
+ * </p>
+ * <p>
+ * Values of operations are deep copies: they are not shared with the objects
+ * used to compute the patch and with the objects modified by the patch.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class Patch extends DataObject {
+
+    public static IJsonValueFactory<Patch> FACTORY = new IJsonValueFactory<Patch>() {
+        public Patch newValue(Object object) {
+            return new Patch().setJsonObject(object);
+        }
+    };
+
+    public final static DataSchema SCHEMA = new DataSchema(Patch.class)
+        .addObject("operations", PatchOperation.FACTORY);
+
+    /**
+     * The maximal size of the matrix used to find common elements of arrays.
+     * Bigger arrays are compared element by element.
+     */
+    private final static int MAX_MATRIX_SIZE = 64 * 1024;
+
+    /**
+     * Returns a deep copy of the given raw JSON value. Nested JSON objects and
+     * arrays are copied recursively, other values are immutable and returned
+     * as is.
+     * 
+     * @param value the value to copy
+     * @return a modifiable copy of the given value
+     */
+    static Object copyValue(Object value) {
+        if (value instanceof JsonObject) {
+            value = ((JsonObject) value).getJsonObject();
+        }
+        if (value instanceof Map<?, ?>) {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(
+                    String.valueOf(entry.getKey()),
+                    copyValue(entry.getValue()));
+            }
+            return map;
+        }
+        if (value instanceof List<?>) {
+            List<?> list = (List<?>) value;
+            List<Object> copy = new ArrayList<Object>(list.size());
+            for (Object item : list) {
+                copy.add(copyValue(item));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * Computes the patch transforming the first object into the second one.
+     * 
+     * @param from the initial version of the object
+     * @param to the new version of the object
+     * @return a patch transforming the first object into the second one
+     */
+    public static Patch diff(JsonObject from, JsonObject to) {
+        List<PatchOperation> operations = new ArrayList<PatchOperation>();
+        diffValues("", getJson(from), getJson(to), operations);
+        Patch patch = new Patch();
+        patch.setOperations(operations);
+        return patch;
+    }
+
+    private static void diffLists(
+        String path,
+        List<?> from,
+        List<?> to,
+        List<PatchOperation> operations) {
+        int fromLen = from.size();
+        int toLen = to.size();
+        int prefix = 0;
+        while (prefix < fromLen
+            && prefix < toLen
+            && equal(from.get(prefix), to.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < fromLen - prefix
+            && suffix < toLen - prefix
+            && equal(from.get(fromLen - suffix - 1), to.get(toLen
+                - suffix
+                - 1))) {
+            suffix++;
+        }
+        int fromEnd = fromLen - suffix;
+        int toEnd = toLen - suffix;
+        int n = fromEnd - prefix;
+        int m = toEnd - prefix;
+        // Positions of matching elements (the longest common subsequence)
+        int[] fromMatches = {};
+        int[] toMatches = {};
+        if (n > 0 && m > 0 && (long) n * m <= MAX_MATRIX_SIZE) {
+            int[][] lengths = new int[n + 1][m + 1];
+            for (int i = n - 1; i >= 0; i--) {
+                for (int j = m - 1; j >= 0; j--) {
+                    if (equal(from.get(prefix + i), to.get(prefix + j))) {
+                        lengths[i][j] = lengths[i + 1][j + 1] + 1;
+                    } else {
+                        lengths[i][j] = Math.max(
+                            lengths[i + 1][j],
+                            lengths[i][j + 1]);
+                    }
+                }
+            }
+            int count = lengths[0][0];
+            fromMatches = new int[count];
+            toMatches = new int[count];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (k < count) {
+                if (equal(from.get(prefix + i), to.get(prefix + j))) {
+                    fromMatches[k] = prefix + i++;
+                    toMatches[k] = prefix + j++;
+                    k++;
+                } else if (lengths[i + 1][j] >= lengths[i][j + 1]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+        }
+        // The position in the modified array
+        int pos = prefix;
+        int i = prefix;
+        int j = prefix;
+        for (int k = 0; k <= fromMatches.length; k++) {
+            int fromNext = k < fromMatches.length ? fromMatches[k] : fromEnd;
+            int toNext = k < toMatches.length ? toMatches[k] : toEnd;
+            while (i < fromNext && j < toNext) {
+                diffValues(
+                    PatchOperation.appendPath(path, pos),
+                    from.get(i++),
+                    to.get(j++),
+                    operations);
+                pos++;
+            }
+            while (i < fromNext) {
+                operations.add(new PatchOperation(
+                    PatchOperation.REMOVE,
+                    PatchOperation.appendPath(path, pos),
+                    null));
+                i++;
+            }
+            while (j < toNext) {
+                operations.add(new PatchOperation(
+                    PatchOperation.ADD,
+                    PatchOperation.appendPath(path, pos),
+                    to.get(j++)));
+                pos++;
+            }
+            // Skip the matching element
+            i++;
+            j++;
+            pos++;
+        }
+    }
+
+    private static void diffMaps(
+        String path,
+        Map<?, ?> from,
+        Map<?, ?> to,
+        List<PatchOperation> operations) {
+        for (Object key : from.keySet()) {
+            if (!to.containsKey(key)) {
+                operations.add(new PatchOperation(
+                    PatchOperation.REMOVE,
+                    PatchOperation.appendPath(path, key),
+                    null));
+            }
+        }
+        for (Map.Entry<?, ?> entry : to.entrySet()) {
+            Object key = entry.getKey();
+            String fieldPath = PatchOperation.appendPath(path, key);
+            if (!from.containsKey(key)) {
+                operations.add(new PatchOperation(
+                    PatchOperation.ADD,
+                    fieldPath,
+                    entry.getValue()));
+            } else {
+                diffValues(fieldPath, from.get(key), entry.getValue(), operations);
+            }
+        }
+    }
+
+    private static void diffValues(
+        String path,
+        Object from,
+        Object to,
+        List<PatchOperation> operations) {
+        if (equal(from, to)) {
+            return;
+        }
+        if (from instanceof Map<?, ?> && to instanceof Map<?, ?>) {
+            diffMaps(path, (Map<?, ?>) from, (Map<?, ?>) to, operations);
+        } else if (from instanceof List<?> && to instanceof List<?>) {
+            diffLists(path, (List<?>) from, (List<?>) to, operations);
+        } else {
+            operations.add(new PatchOperation(
+                PatchOperation.REPLACE,
+                path,
+                to));
+        }
+    }
+
+    private static boolean equal(Object first, Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    private static Object getJson(JsonObject object) {
+        Object json = object != null ? object.getJsonObject() : null;
+        return json != null ? json : new LinkedHashMap<String, Object>();
+    }
+
+    private static int getPosition(
+        List<?> list,
+        String segment,
+        boolean insert) {
+        int size = list.size();
+        if (insert && "-".equals(segment)) {
+            return size;
+        }
+        try {
+            int pos = Integer.parseInt(segment);
+            if (pos >= 0 && (pos < size || insert && pos == size)) {
+                return pos;
+            }
+        } catch (NumberFormatException e) {
+            // Handled below
+        }
+        throw new IllegalArgumentException("Bad array index: '"
+            + segment
+            + "'");
+    }
+
+    public Patch() {
+    }
+
+    /**
+     * Adds a new operation to this patch.
+     * 
+     * @return this patch
+     */
+    public Patch addOperation(PatchOperation operation) {
+        List<PatchOperation> operations = new ArrayList<PatchOperation>(
+            getOperations());
+        operations.add(operation);
+        return setOperations(operations);
+    }
+
+    /**
+     * Applies this patch to the given object. Top-level fields are changed
+     * using the {@link JsonObject#setValue(String, Object)} and
+     * {@link JsonObject#removeValue(String)} methods. Nested objects and
+     * arrays are copied before modification, so values shared with other
+     * objects are not changed. Each value is copied only once. Values of
+     * operations are copied as well, so the modified object does not share
+     * them with this patch or with other objects modified by it.
+     * 
+     * @param target the object to modify
+     * @return the modified object
+     * @throws IllegalArgumentException if an operation of this patch can not
+     *         be applied to the given object
+     */
+    public <T extends JsonObject> T apply(T target) {
+        // Nested values copied by this method
+        Map<Object, Boolean> copies = new IdentityHashMap<Object, Boolean>();
+        // New values of modified top-level fields
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        Set<String> removed = new LinkedHashSet<String>();
+        for (PatchOperation operation : getOperations()) {
+            String op = operation.getOp();
+            String[] segments = PatchOperation.splitPath(operation.getPath());
+            String key = segments[0];
+            if (segments.length == 1) {
+                if (PatchOperation.REMOVE.equals(op)) {
+                    values.remove(key);
+                    removed.add(key);
+                } else {
+                    values.put(key, copyValue(operation.getValue()));
+                    removed.remove(key);
+                }
+                continue;
+            }
+            Object value;
+            if (values.containsKey(key)) {
+                value = values.get(key);
+            } else if (removed.contains(key)) {
+                value = null;
+            } else {
+                value = target.getValue(key, RAW_FACTORY);
+            }
+            value = copy(value, copies);
+            values.put(key, value);
+            removed.remove(key);
+            Object parent = value;
+            for (int i = 1; i < segments.length - 1; i++) {
+                Object child = getChild(parent, segments[i]);
+                Object copy = copy(child, copies);
+                if (copy != child) {
+                    setChild(parent, segments[i], copy);
+                }
+                parent = copy;
+            }
+            String last = segments[segments.length - 1];
+            if (PatchOperation.ADD.equals(op)) {
+                if (parent instanceof List<?>) {
+                    @SuppressWarnings("unchecked")
+                    List<Object> list = (List<Object>) parent;
+                    list.add(
+                        getPosition(list, last, true),
+                        copyValue(operation.getValue()));
+                } else {
+                    setChild(parent, last, copyValue(operation.getValue()));
+                }
+            } else if (PatchOperation.REMOVE.equals(op)) {
+                if (parent instanceof List<?>) {
+                    List<?> list = (List<?>) parent;
+                    list.remove(getPosition(list, last, false));
+                } else {
+                    getMap(parent).remove(last);
+                }
+            } else if (PatchOperation.REPLACE.equals(op)) {
+                setChild(parent, last, copyValue(operation.getValue()));
+            } else {
+                throw new IllegalArgumentException("Unknown operation: '"
+                    + op
+                    + "'");
+            }
+        }
+        for (String key : removed) {
+            target.removeValue(key);
+        }
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            target.setValue(entry.getKey(), entry.getValue());
+        }
+        return target;
+    }
+
+    /**
+     * Returns a modifiable copy of the given JSON object or array. Values
+     * already copied are returned as is.
+     */
+    private Object copy(Object value, Map<Object, Boolean> copies) {
+        if (value == null || copies.containsKey(value)) {
+            return value;
+        }
+        Object copy;
+        if (value instanceof Map<?, ?>) {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            copy = map;
+        } else if (value instanceof List<?>) {
+            copy = new ArrayList<Object>((List<?>) value);
+        } else {
+            throw new IllegalArgumentException(
+                "A JSON object or an array is expected");
+        }
+        copies.put(copy, Boolean.TRUE);
+        return copy;
+    }
+
+    private Object getChild(Object parent, String segment) {
+        if (parent instanceof List<?>) {
+            List<?> list = (List<?>) parent;
+            return list.get(getPosition(list, segment, false));
+        }
+        return getMap(parent).get(segment);
+    }
+
+    private Map<String, Object> getMap(Object value) {
+        if (!(value instanceof Map<?, ?>)) {
+            throw new IllegalArgumentException("A JSON object is expected");
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> map = (Map<String, Object>) value;
+        return map;
+    }
+
+    /**
+     * Returns the list of operations of this patch.
+     */
+    public List<PatchOperation> getOperations() {
+        return getList("operations", PatchOperation.FACTORY);
+    }
+
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new Patch();
+    }
+
+    /**
+     * Returns <code>true</code> if this patch does not contain operations.
+     */
+    public boolean isEmpty() {
+        return getOperations().isEmpty();
+    }
+
+    private void setChild(Object parent, String segment, Object value) {
+        if (parent instanceof List<?>) {
+            @SuppressWarnings("unchecked")
+            List<Object> list = (List<Object>) parent;
+            list.set(getPosition(list, segment, false), value);
+        } else {
+            getMap(parent).put(segment, value);
+        }
+    }
+
+    public Patch setOperations(List<PatchOperation> operations) {
+        setValue("operations", operations);
+        return this;
+    }
+
+}
@@ -0,0 +1,142 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+/**
+ * One operation of a {@link Patch}. Operations have the same structure as
+ * operations defined by the JSON Patch format (RFC 6902): each operation has
+ * a type ("add", "remove" or "replace"), a path to the modified value in the
+ * JSON Pointer format (for example "/name/givenName" or "/emails/1") and an
+ * optional new value.
+ * 
+ * @author kotelnikov
+ */
+public class PatchOperation extends DataObject {
+
+    /**
+     * Adds a new field to an object or inserts a new element in an array.
+     */
+    public final static String ADD = "add";
+
+    public static IJsonValueFactory<PatchOperation> FACTORY = new IJsonValueFactory<PatchOperation>() {
+        public PatchOperation newValue(Object object) {
+            return new PatchOperation().setJsonObject(object);
+        }
+    };
+
+    public final static DataSchema SCHEMA = new DataSchema(PatchOperation.class)
+        .add("op", "path", "value");
+
+    /**
+     * Removes a field from an object or an element from an array.
+     */
+    public final static String REMOVE = "remove";
+
+    /**
+     * Replaces the value of a field or of an array element.
+     */
+    public final static String REPLACE = "replace";
+
+    /**
+     * Appends the given path segment to the path in the JSON Pointer format.
+     */
+    static String appendPath(String path, Object segment) {
+        String str = String.valueOf(segment);
+        StringBuilder buf = new StringBuilder(path.length() + str.length() + 1);
+        buf.append(path);
+        buf.append('/');
+        for (int i = 0; i < str.length(); i++) {
+            char ch = str.charAt(i);
+            if (ch == '~') {
+                buf.append("~0");
+            } else if (ch == '/') {
+                buf.append("~1");
+            } else {
+                buf.append(ch);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Splits the given path in the JSON Pointer format into segments.
+     */
+    static String[] splitPath(String path) {
+        if (path == null || path.length() == 0 || path.charAt(0) != '/') {
+            throw new IllegalArgumentException("Bad path: '" + path + "'");
+        }
+        String[] segments = path.substring(1).split("/", -1);
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.indexOf('~') >= 0) {
+                segments[i] = segment.replace("~1", "/").replace("~0", "~");
+            }
+        }
+        return segments;
+    }
+
+    public PatchOperation() {
+    }
+
+    /**
+     * Creates a new operation. The given value is copied, so later changes
+     * of the value do not change the operation.
+     */
+    public PatchOperation(String op, String path, Object value) {
+        setOp(op);
+        setPath(path);
+        if (!REMOVE.equals(op)) {
+            setValue(Patch.copyValue(value));
+        }
+    }
+
+    /**
+     * The type of this operation: {@link #ADD}, {@link #REMOVE} or
+     * {@link #REPLACE}.
+     */
+    public String getOp() {
+        return getString("op");
+    }
+
+    /**
+     * The path to the modified value in the JSON Pointer format.
+     */
+    public String getPath() {
+        return getString("path");
+    }
+
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new PatchOperation();
+    }
+
+    /**
+     * The raw JSON value used by {@link #ADD} and {@link #REPLACE}
+     * operations.
+     */
+    public Object getValue() {
+        return getValue("value", RAW_FACTORY);
+    }
+
+    public PatchOperation setOp(String op) {
+        setValue("op", op);
+        return this;
+    }
+
+    public PatchOperation setPath(String path) {
+        setValue("path", path);
+        return this;
+    }
+
+    public PatchOperation setValue(Object value) {
+        setValue("value", value);
+        return this;
+    }
+
+}
@@ -70,6 +70,68 @@ public class Person extends PersonMin {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(
+        Person.class,
+        PersonMin.SCHEMA)
+        .add("aboutMe)")
+        .addObject("accounts", Account.FACTORY)
+        .add("activities")
+        .addObject("addresses", Address.FACTORY)
+        .addPrimitive("age")
+        .addObject("alternateNames", Name.FACTORY)
+        .add("anniversary")
+        .addObject("appData", AppData.FACTORY)
+        .add("birthday", "bodyType)", "books", "cars", "children   ")
+        .addPrimitive("connected")
+        .add(
+            "contactPreference",
+            "dn",
+            "drinker)",
+            "emails",
+            "ethnicity",
+            "fashion",
+            "food",
+            "gender",
+            "happiestWhen",
+            "hasApp",
+            "heroes",
+            "humor",
+            "ims",
+            "interests",
+            "jobInterests",
+            "languagesSpoken",
+            "livingArrangement",
+            "location",
+            "lookingFor",
+            "movies",
+            "music")
+        .addObject("nativeName", Name.FACTORY)
+        .add("networkPresence", "note", "orgIdentifier")
+        .addObject("organizations  ", Organization.FACTORY)
+        .add("pets", "phoneNumbers", "photos", "politicalViews")
+        .addObject("preferredName", Name.FACTORY)
+        .add(
+            "preferredUsername",
+            "profileSong",
+            "profileUrl",
+            "profileVideo",
+            "quotes",
+            "relationshipStatus",
+            "relationships",
+            "religion",
+            "romance",
+            "scaredOf",
+            "sexualOrientation",
+            "smoker",
+            "sports",
+            "status",
+            "tags",
+            "turnOffs",
+            "turnOns",
+            "tvShows",
+            "urls",
+            "utcOffset");
+
     /**
      * List of alternative names. These may include known aliases, maiden-names,
      * nicknames, acceptable alternative forms of the same name (e.g. "James",
@@ -464,6 +526,16 @@ public class Person extends PersonMin {
         return getString("scaredOf");
     }
 
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new Person();
+    }
+
     /** PersonMin's sexual orientation. */
     public String getSexualOrientation() {
         return getString("sexualOrientation");
@@ -45,6 +45,24 @@ public class PersonMin extends ActivityObject {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(
+        PersonMin.class,
+        ActivityObject.SCHEMA)
+        .add("nickname")
+        .addObject("name", Name.FACTORY)
+        .add("thumbnailUrl")
+        .require("id", "displayName");
+
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new PersonMin();
+    }
+
     public static PersonMin newValue(Object o) {
         return FACTORY.newValue(o);
     }
@@ -10,4 +10,10 @@ import java.util.List;
  */
 public interface PluralFields<E> extends List<E> {
 
+    /**
+     * Returns the primary or preferred value of this field (the value marked
+     * as primary="true") or <code>null</code> if there is no such value.
+     */
+    E getPrimary();
+
 }
@@ -5,6 +5,8 @@ package org.jokerd.opensocial.api.model;
 
 import java.util.ArrayList;
 
+import org.ubimix.commons.json.JsonObject;
+
 /**
  * @author kotelnikov
  */
@@ -19,4 +21,17 @@ public class PluralFieldsImpl<T> extends ArrayList<T>
     public PluralFieldsImpl() {
     }
 
+    /**
+     * @see org.jokerd.opensocial.api.model.PluralFields#getPrimary()
+     */
+    public T getPrimary() {
+        for (T value : this) {
+            if (value instanceof JsonObject
+                && DataObject.isPrimary(((JsonObject) value).getJsonObject())) {
+                return value;
+            }
+        }
+        return null;
+    }
+
 }
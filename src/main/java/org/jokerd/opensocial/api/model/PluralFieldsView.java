@@ -0,0 +1,281 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.ubimix.commons.json.JsonValue;
+import org.ubimix.commons.json.JsonValue.IJsonValueFactory;
+
+/**
+ * A live view of a plural field of a {@link DataObject}. Elements of this list
+ * are decoded from the underlying JSON array only when they are accessed.
+ * Modifications of this list are written directly to the JSON array of the
+ * object; only the modified position is re-decoded, so a field built with N
+ * calls of the {@link #add(Object)} method costs O(N). Changes of the field
+ * made directly in the object or by other views are visible in this view,
+ * while changes of other fields do not discard decoded elements.
+ * <p>
+ * The position of the primary element is kept between calls of the
+ * {@link #getPrimary()} method. It is checked on each call, so elements
+ * marked or unmarked as primary through their wrappers are taken into
+ * account; the list is scanned again only if the kept element is not
+ * primary anymore or if there is no primary element.
+ * </p>
+ * 
+ * @author kotelnikov
+ * @param <E> the type of elements
+ */
+public class PluralFieldsView<E> extends AbstractList<E>
+    implements
+    PluralFields<E> {
+
+    /**
+     * Returns the raw JSON representation of the given element.
+     */
+    private static Object toRaw(Object element) {
+        if (element instanceof JsonValue) {
+            return ((JsonValue) element).getJsonObject();
+        }
+        if (element == null
+            || element instanceof String
+            || element instanceof Number
+            || element instanceof Boolean) {
+            return element;
+        }
+        return element.toString();
+    }
+
+    /**
+     * Already decoded elements; positions of elements which are not decoded
+     * yet contain <code>null</code>.
+     */
+    private final List<Object> fDecoded = new ArrayList<Object>();
+
+    private final IJsonValueFactory<E> fFactory;
+
+    private final String fKey;
+
+    /**
+     * The modification counter of the object corresponding to the current
+     * state of this view; -1 if the view is not loaded yet.
+     */
+    private int fModCount = -1;
+
+    private final DataObject fObject;
+
+    /**
+     * The position of the primary element; -1 if there is no such element and
+     * -2 if it was not calculated yet.
+     */
+    private int fPrimaryIndex;
+
+    /**
+     * Raw elements of the underlying JSON array
+     */
+    private List<?> fRaw = Collections.emptyList();
+
+    /**
+     * The modification stamp of the field corresponding to the current state
+     * of this view.
+     */
+    private int fStamp;
+
+    /**
+     * The raw value of the field corresponding to the current state of this
+     * view.
+     */
+    private Object fValue;
+
+    /**
+     * @param object the object containing the field
+     * @param key the name of the field
+     * @param factory the factory used to decode elements of the field
+     */
+    public PluralFieldsView(
+        DataObject object,
+        String key,
+        IJsonValueFactory<E> factory) {
+        fObject = object;
+        fKey = key;
+        fFactory = factory;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        refresh();
+        if (index < 0 || index > fRaw.size()) {
+            throw new IndexOutOfBoundsException("Index: "
+                + index
+                + ", Size: "
+                + fRaw.size());
+        }
+        List<Object> list = getModifiableList();
+        Object raw = toRaw(element);
+        list.add(index, raw);
+        fDecoded.add(index, element);
+        if (fPrimaryIndex >= index) {
+            fPrimaryIndex++;
+        } else if (fPrimaryIndex == -1 && DataObject.isPrimary(raw)) {
+            fPrimaryIndex = index;
+        }
+        fObject.onFieldModified(fKey);
+        sync();
+        modCount++;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fRaw.size()) {
+            throw new IndexOutOfBoundsException("Index: "
+                + index
+                + ", Size: "
+                + fRaw.size());
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (!isEmpty()) {
+            fObject.removeValue(fKey);
+            modCount++;
+        }
+    }
+
+    @Override
+    public E get(int index) {
+        refresh();
+        checkIndex(index);
+        @SuppressWarnings("unchecked")
+        E result = (E) fDecoded.get(index);
+        if (result == null) {
+            result = fFactory.newValue(fRaw.get(index));
+            fDecoded.set(index, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the raw list of the field which could be modified in place.
+     * The view is re-loaded if the object replaced the value of the field by
+     * a modifiable list.
+     */
+    private List<Object> getModifiableList() {
+        List<Object> list = fObject.getModifiableList(fKey);
+        if (list != fRaw) {
+            load(list);
+        }
+        return list;
+    }
+
+    /**
+     * @see org.jokerd.opensocial.api.model.PluralFields#getPrimary()
+     */
+    public E getPrimary() {
+        refresh();
+        int index = fPrimaryIndex;
+        if (index >= 0 && DataObject.isPrimary(fRaw.get(index))) {
+            return get(index);
+        }
+        fPrimaryIndex = -1;
+        for (int i = 0; i < fRaw.size(); i++) {
+            if (DataObject.isPrimary(fRaw.get(i))) {
+                fPrimaryIndex = i;
+                break;
+            }
+        }
+        return fPrimaryIndex >= 0 ? get(fPrimaryIndex) : null;
+    }
+
+    /**
+     * Resets the state of this view for the given raw value of the field.
+     */
+    private void load(Object value) {
+        if (value instanceof List<?>) {
+            fRaw = (List<?>) value;
+        } else if (value != null) {
+            fRaw = Collections.singletonList(value);
+        } else {
+            fRaw = Collections.emptyList();
+        }
+        fValue = value;
+        fDecoded.clear();
+        for (int i = 0; i < fRaw.size(); i++) {
+            fDecoded.add(null);
+        }
+        fPrimaryIndex = -2;
+    }
+
+    /**
+     * Re-loads the raw JSON array if the field was changed.
+     */
+    private void refresh() {
+        if (fModCount == fObject.fModCount) {
+            return;
+        }
+        Object value = fObject.getRawValue(fKey);
+        int stamp = fObject.getFieldStamp(fKey);
+        if (fModCount < 0 || value != fValue || stamp != fStamp) {
+            load(value);
+        }
+        fStamp = stamp;
+        fModCount = fObject.fModCount;
+    }
+
+    @Override
+    public E remove(int index) {
+        E result = get(index);
+        List<Object> list = getModifiableList();
+        list.remove(index);
+        fDecoded.remove(index);
+        if (fPrimaryIndex == index) {
+            fPrimaryIndex = -2;
+        } else if (fPrimaryIndex > index) {
+            fPrimaryIndex--;
+        }
+        if (list.isEmpty()) {
+            fObject.removeValue(fKey);
+        } else {
+            fObject.onFieldModified(fKey);
+            sync();
+        }
+        modCount++;
+        return result;
+    }
+
+    @Override
+    public E set(int index, E element) {
+        E result = get(index);
+        List<Object> list = getModifiableList();
+        Object raw = toRaw(element);
+        list.set(index, raw);
+        fDecoded.set(index, element);
+        if (DataObject.isPrimary(raw)) {
+            fPrimaryIndex = index;
+        } else if (fPrimaryIndex == index) {
+            fPrimaryIndex = -2;
+        }
+        fObject.onFieldModified(fKey);
+        sync();
+        return result;
+    }
+
+    @Override
+    public int size() {
+        refresh();
+        return fRaw.size();
+    }
+
+    /**
+     * Marks this view as corresponding to the current state of the object
+     * after a modification made by this view.
+     */
+    private void sync() {
+        fStamp = fObject.getFieldStamp(fKey);
+        fModCount = fObject.fModCount;
+    }
+
+}
@@ -9,6 +9,11 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
+ * Declares required fields of a model class. The same fields should be
+ * declared by the schema of the class (see
+ * {@link DataSchema#require(String...)}), so they are available without
+ * reflection.
+ * 
  * @author kotelnikov
  */
 @Target(ElementType.TYPE)
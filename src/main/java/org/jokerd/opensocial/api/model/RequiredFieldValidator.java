@@ -0,0 +1,336 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.ubimix.commons.json.JsonObject;
+import org.ubimix.commons.json.JsonValue.IJsonValueFactory;
+
+/**
+ * Checks that model objects contain all required fields declared by their
+ * schemas (see {@link DataSchema#getRequiredFields()}); these are the fields
+ * of the {@link RequiredField} annotations of model classes and of their
+ * parent classes. Validators are created only once per schema (see
+ * {@link #getValidator(DataSchema)}). A field is considered as missing if it
+ * is not defined, if its value is <code>null</code> or if it is an empty
+ * string.
+ * <p>
+ * Violations are reported as {@link Violation} objects instead of
+ * exceptions, so a whole list of objects (for example the entries of a
+ * {@link Collection}) could be validated in one pass (see
+ * {@link #validate(List)} and
+ * {@link #validate(List, ExecutorService, int)}). Raw JSON values could be
+ * validated before model objects are created (see
+ * {@link #newFactory(IJsonValueFactory, IViolationListener)}).
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class RequiredFieldValidator {
+
+    /**
+     * Listeners of this type are notified about rejected objects.
+     */
+    public interface IViolationListener {
+
+        void onViolation(Violation violation);
+
+    }
+
+    /**
+     * Describes an object which does not contain some required fields.
+     */
+    public static class Violation {
+
+        private final int fIndex;
+
+        private final List<String> fMissingFields;
+
+        private final Object fObject;
+
+        public Violation(int index, Object object, List<String> missingFields) {
+            fIndex = index;
+            fObject = object;
+            fMissingFields = Collections.unmodifiableList(missingFields);
+        }
+
+        /**
+         * Returns the position of the object in the validated list or -1 if
+         * the object was not validated as a part of a list.
+         */
+        public int getIndex() {
+            return fIndex;
+        }
+
+        /**
+         * Returns the list of missing required fields.
+         */
+        public List<String> getMissingFields() {
+            return fMissingFields;
+        }
+
+        /**
+         * Returns the invalid object. It is a model object or a raw JSON
+         * value if the violation was found while parsing.
+         */
+        public Object getObject() {
+            return fObject;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + fIndex + "] missing fields: " + fMissingFields;
+        }
+
+    }
+
+    /**
+     * This validator is used for classes without required fields.
+     */
+    private final static RequiredFieldValidator EMPTY = new RequiredFieldValidator(
+        new String[0]);
+
+    /**
+     * Validators of schemas; schemas are weak keys, so this map does not keep
+     * model classes (and their class loaders) in memory. Access to this map
+     * is synchronized on the map itself.
+     */
+    private final static Map<DataSchema, RequiredFieldValidator> VALIDATORS = new WeakHashMap<DataSchema, RequiredFieldValidator>();
+
+    /**
+     * Returns the validator for the given schema.
+     * 
+     * @param schema the schema of a model class
+     * @return a validator checking required fields of the schema
+     */
+    public static RequiredFieldValidator getValidator(DataSchema schema) {
+        List<String> fields = schema.getRequiredFields();
+        if (fields.isEmpty()) {
+            return EMPTY;
+        }
+        synchronized (VALIDATORS) {
+            RequiredFieldValidator validator = VALIDATORS.get(schema);
+            if (validator == null) {
+                validator = new RequiredFieldValidator(fields
+                    .toArray(new String[fields.size()]));
+                VALIDATORS.put(schema, validator);
+            }
+            return validator;
+        }
+    }
+
+    private static boolean isMissing(Object value) {
+        return value == null
+            || (value instanceof String && ((String) value).length() == 0);
+    }
+
+    private final String[] fFields;
+
+    private RequiredFieldValidator(String[] fields) {
+        fFields = fields;
+    }
+
+    /**
+     * Returns the list of missing required fields of the given raw JSON
+     * object or <code>null</code> if all required fields are defined.
+     */
+    private List<String> check(Map<?, ?> map) {
+        List<String> missing = null;
+        for (String field : fFields) {
+            if (isMissing(map.get(field))) {
+                if (missing == null) {
+                    missing = new ArrayList<String>();
+                }
+                missing.add(field);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Returns the list of missing required fields of the given object or
+     * <code>null</code> if all required fields are defined. Values are read
+     * field by field, so lazy objects are not parsed entirely.
+     */
+    private List<String> check(JsonObject object) {
+        List<String> missing = null;
+        for (String field : fFields) {
+            if (isMissing(object.getValue(field, DataObject.RAW_FACTORY))) {
+                if (missing == null) {
+                    missing = new ArrayList<String>();
+                }
+                missing.add(field);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Returns names of required fields.
+     */
+    public List<String> getRequiredFields() {
+        return Collections.unmodifiableList(Arrays.asList(fFields));
+    }
+
+    /**
+     * Returns <code>true</code> if the given object contains all required
+     * fields.
+     */
+    public boolean isValid(JsonObject object) {
+        return object != null && check(object) == null;
+    }
+
+    /**
+     * Returns a factory which checks raw JSON values before creating model
+     * objects. For invalid values the returned factory notifies the given
+     * listener and returns <code>null</code>, so invalid objects are rejected
+     * while parsing.
+     * 
+     * @param factory the factory used to create valid objects
+     * @param listener the listener notified about rejected values; it could
+     *        be <code>null</code>
+     * @return a validating factory
+     */
+    public <T> IJsonValueFactory<T> newFactory(
+        final IJsonValueFactory<T> factory,
+        final IViolationListener listener) {
+        if (fFields.length == 0) {
+            return factory;
+        }
+        return new IJsonValueFactory<T>() {
+            public T newValue(Object object) {
+                Violation violation = validateValue(-1, object);
+                if (violation != null) {
+                    if (listener != null) {
+                        listener.onViolation(violation);
+                    }
+                    return null;
+                }
+                return factory.newValue(object);
+            }
+        };
+    }
+
+    /**
+     * Validates all entries of the given collection.
+     * 
+     * @see #validate(List)
+     */
+    public List<Violation> validate(Collection<?> collection) {
+        return validate(collection.getEntries());
+    }
+
+    /**
+     * Validates all objects in the given list in one pass.
+     * 
+     * @param objects the objects to validate
+     * @return the list of violations ordered by positions of objects; this
+     *         list is empty if all objects are valid
+     */
+    public List<Violation> validate(List<? extends JsonObject> objects) {
+        return validate(objects, 0, objects.size());
+    }
+
+    /**
+     * Validates the given objects using a pool of threads. Objects are split
+     * in chunks of the specified size; each chunk is validated by a separate
+     * task.
+     * 
+     * @param objects the objects to validate
+     * @param executor the executor used to run validation tasks
+     * @param chunkSize the number of objects validated by one task
+     * @return the list of violations ordered by positions of objects
+     */
+    public List<Violation> validate(
+        final List<? extends JsonObject> objects,
+        ExecutorService executor,
+        int chunkSize) {
+        int size = objects.size();
+        if (fFields.length == 0) {
+            return Collections.emptyList();
+        }
+        if (size <= chunkSize) {
+            return validate(objects);
+        }
+        List<Future<List<Violation>>> futures = new ArrayList<Future<List<Violation>>>();
+        for (int start = 0; start < size; start += chunkSize) {
+            final int from = start;
+            final int to = Math.min(start + chunkSize, size);
+            futures.add(executor.submit(new Callable<List<Violation>>() {
+                public List<Violation> call() throws Exception {
+                    return validate(objects, from, to);
+                }
+            }));
+        }
+        List<Violation> result = new ArrayList<Violation>();
+        try {
+            for (Future<List<Violation>> future : futures) {
+                result.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<List<Violation>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return result;
+    }
+
+    private List<Violation> validate(
+        List<? extends JsonObject> objects,
+        int from,
+        int to) {
+        List<Violation> result = new ArrayList<Violation>();
+        if (fFields.length == 0) {
+            return result;
+        }
+        for (int i = from; i < to; i++) {
+            JsonObject object = objects.get(i);
+            List<String> missing = object != null
+                ? check(object)
+                : Arrays.asList(fFields);
+            if (missing != null) {
+                result.add(new Violation(i, object, missing));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Validates the given raw JSON value.
+     * 
+     * @param index the position of the value in a list or -1
+     * @param value the raw JSON value to check
+     * @return a violation or <code>null</code> if the value is valid
+     */
+    public Violation validateValue(int index, Object value) {
+        if (fFields.length == 0) {
+            return null;
+        }
+        if (value instanceof JsonObject) {
+            List<String> missing = check((JsonObject) value);
+            return missing != null ? new Violation(index, value, missing) : null;
+        }
+        if (!(value instanceof Map<?, ?>)) {
+            return new Violation(index, value, Arrays.asList(fFields));
+        }
+        List<String> missing = check((Map<?, ?>) value);
+        return missing != null ? new Violation(index, value, missing) : null;
+    }
+
+}
@@ -0,0 +1,422 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A JSON object storing values of fields known by a {@link DataSchema} in
+ * fixed slots. Numeric and boolean values of primitive fields are stored
+ * unboxed; typed getters of {@link DataObject} read them without boxing.
+ * Methods of this map (including iterations used to serialize objects) box
+ * values temporarily and do not keep boxed values, so slots stay unboxed.
+ * Values of unknown fields are stored in an additional map created on
+ * demand.
+ * 
+ * @author kotelnikov
+ */
+class SlotMap extends AbstractMap<String, Object> {
+
+    private class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+
+        private Iterator<Map.Entry<String, Object>> fExtraIterator;
+
+        private String fLastKey;
+
+        private int fNext;
+
+        private int fPos = -1;
+
+        public EntryIterator() {
+            fNext = findNext(0);
+        }
+
+        private int findNext(int pos) {
+            int len = fValues.length;
+            while (pos < len && !isSet(pos)) {
+                pos++;
+            }
+            return pos;
+        }
+
+        private Iterator<Map.Entry<String, Object>> getExtraIterator() {
+            if (fExtraIterator == null && fExtra != null) {
+                fExtraIterator = fExtra.entrySet().iterator();
+            }
+            return fExtraIterator;
+        }
+
+        public boolean hasNext() {
+            if (fNext < fValues.length) {
+                return true;
+            }
+            Iterator<Map.Entry<String, Object>> iterator = getExtraIterator();
+            return iterator != null && iterator.hasNext();
+        }
+
+        public Map.Entry<String, Object> next() {
+            if (fNext < fValues.length) {
+                fPos = fNext;
+                fNext = findNext(fNext + 1);
+                fLastKey = fSchema.getFieldName(fPos);
+                return new SlotEntry(fPos);
+            }
+            Iterator<Map.Entry<String, Object>> iterator = getExtraIterator();
+            if (iterator == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, Object> entry = iterator.next();
+            fPos = -1;
+            fLastKey = entry.getKey();
+            return entry;
+        }
+
+        public void remove() {
+            if (fLastKey == null) {
+                throw new IllegalStateException();
+            }
+            if (fPos >= 0) {
+                clearSlot(fPos);
+            } else {
+                fExtraIterator.remove();
+            }
+            fLastKey = null;
+        }
+    }
+
+    private class SlotEntry implements Map.Entry<String, Object> {
+
+        private final int fSlot;
+
+        public SlotEntry(int slot) {
+            fSlot = slot;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry<?, ?>)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) obj;
+            Object value = getValue();
+            return getKey().equals(e.getKey())
+                && (value == null ? e.getValue() == null : value.equals(e
+                    .getValue()));
+        }
+
+        public String getKey() {
+            return fSchema.getFieldName(fSlot);
+        }
+
+        public Object getValue() {
+            return getSlot(fSlot);
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return getKey().hashCode() ^ (value != null ? value.hashCode() : 0);
+        }
+
+        public Object setValue(Object value) {
+            Object prev = getSlot(fSlot);
+            setSlot(fSlot, value);
+            return prev;
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    private final static byte BOOLEAN = 5;
+
+    private final static byte DOUBLE = 3;
+
+    private final static byte FLOAT = 4;
+
+    private final static byte INTEGER = 1;
+
+    private final static byte LONG = 2;
+
+    /**
+     * This object is stored in slots with <code>null</code> values.
+     */
+    private final static Object NULL = new Object();
+
+    /**
+     * Values of unknown fields
+     */
+    private Map<String, Object> fExtra;
+
+    /**
+     * Unboxed values of primitive fields
+     */
+    private final long[] fPrimitives;
+
+    private final DataSchema fSchema;
+
+    private int fSize;
+
+    /**
+     * Types of unboxed values; 0 if the corresponding slot does not contain
+     * an unboxed value.
+     */
+    private final byte[] fTypes;
+
+    /**
+     * Values of known fields
+     */
+    private final Object[] fValues;
+
+    public SlotMap(DataSchema schema) {
+        fSchema = schema;
+        fValues = new Object[schema.getFieldCount()];
+        int count = schema.getPrimitiveCount();
+        fPrimitives = new long[count];
+        fTypes = new byte[count];
+    }
+
+    /**
+     * Returns the specified unboxed boolean value.
+     */
+    boolean booleanValue(int p) {
+        return fPrimitives[p] != 0;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < fValues.length; i++) {
+            fValues[i] = null;
+        }
+        for (int i = 0; i < fTypes.length; i++) {
+            fTypes[i] = 0;
+        }
+        fExtra = null;
+        fSize = 0;
+    }
+
+    private void clearSlot(int slot) {
+        if (isSet(slot)) {
+            fValues[slot] = null;
+            int p = fSchema.getPrimitiveSlot(slot);
+            if (p >= 0) {
+                fTypes[p] = 0;
+            }
+            fSize--;
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int slot = fSchema.getFieldIndex(key);
+        if (slot >= 0) {
+            return isSet(slot);
+        }
+        return fExtra != null && fExtra.containsKey(key);
+    }
+
+    /**
+     * Returns the specified unboxed numeric value converted to a double.
+     */
+    double doubleValue(int p) {
+        long bits = fPrimitives[p];
+        switch (fTypes[p]) {
+            case DOUBLE:
+                return Double.longBitsToDouble(bits);
+            case FLOAT:
+                return Float.intBitsToFloat((int) bits);
+            default:
+                return bits;
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public void clear() {
+                SlotMap.this.clear();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return SlotMap.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Object get(Object key) {
+        int slot = fSchema.getFieldIndex(key);
+        if (slot >= 0) {
+            return getSlot(slot);
+        }
+        return fExtra != null ? fExtra.get(key) : null;
+    }
+
+    private Object getSlot(int slot) {
+        Object value = fValues[slot];
+        if (value != null) {
+            return value != NULL ? value : null;
+        }
+        int p = fSchema.getPrimitiveSlot(slot);
+        if (p < 0) {
+            return null;
+        }
+        long bits = fPrimitives[p];
+        switch (fTypes[p]) {
+            case INTEGER:
+                value = Integer.valueOf((int) bits);
+                break;
+            case LONG:
+                value = Long.valueOf(bits);
+                break;
+            case DOUBLE:
+                value = Double.valueOf(Double.longBitsToDouble(bits));
+                break;
+            case FLOAT:
+                value = Float.valueOf(Float.intBitsToFloat((int) bits));
+                break;
+            case BOOLEAN:
+                value = Boolean.valueOf(bits != 0);
+                break;
+            default:
+                return null;
+        }
+        // The boxed value is not kept: the slot stays unboxed
+        return value;
+    }
+
+    /**
+     * Returns the position of the unboxed value of the specified field or -1
+     * if the value of this field is not stored unboxed.
+     * 
+     * @see #intValue(int)
+     * @see #doubleValue(int)
+     * @see #booleanValue(int)
+     */
+    int getUnboxedSlot(Object key) {
+        int slot = fSchema.getFieldIndex(key);
+        if (slot < 0) {
+            return -1;
+        }
+        int p = fSchema.getPrimitiveSlot(slot);
+        return p >= 0 && fTypes[p] != 0 ? p : -1;
+    }
+
+    /**
+     * Returns the specified unboxed numeric value converted to an integer.
+     */
+    int intValue(int p) {
+        long bits = fPrimitives[p];
+        switch (fTypes[p]) {
+            case DOUBLE:
+                return (int) Double.longBitsToDouble(bits);
+            case FLOAT:
+                return (int) Float.intBitsToFloat((int) bits);
+            default:
+                return (int) bits;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the specified unboxed value is a boolean.
+     */
+    boolean isBoolean(int p) {
+        return fTypes[p] == BOOLEAN;
+    }
+
+    private boolean isSet(int slot) {
+        if (fValues[slot] != null) {
+            return true;
+        }
+        int p = fSchema.getPrimitiveSlot(slot);
+        return p >= 0 && fTypes[p] != 0;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int slot = fSchema.getFieldIndex(key);
+        if (slot >= 0) {
+            Object prev = getSlot(slot);
+            setSlot(slot, value);
+            return prev;
+        }
+        if (fExtra == null) {
+            fExtra = new LinkedHashMap<String, Object>();
+        }
+        int size = fExtra.size();
+        Object prev = fExtra.put(key, value);
+        fSize += fExtra.size() - size;
+        return prev;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int slot = fSchema.getFieldIndex(key);
+        if (slot >= 0) {
+            Object prev = getSlot(slot);
+            clearSlot(slot);
+            return prev;
+        }
+        if (fExtra == null || !fExtra.containsKey(key)) {
+            return null;
+        }
+        fSize--;
+        return fExtra.remove(key);
+    }
+
+    private void setSlot(int slot, Object value) {
+        if (!isSet(slot)) {
+            fSize++;
+        }
+        int p = fSchema.getPrimitiveSlot(slot);
+        if (p >= 0) {
+            byte type = 0;
+            long bits = 0;
+            if (value instanceof Integer) {
+                type = INTEGER;
+                bits = ((Integer) value).intValue();
+            } else if (value instanceof Long) {
+                type = LONG;
+                bits = ((Long) value).longValue();
+            } else if (value instanceof Double) {
+                type = DOUBLE;
+                bits = Double.doubleToRawLongBits((Double) value);
+            } else if (value instanceof Float) {
+                type = FLOAT;
+                bits = Float.floatToRawIntBits((Float) value);
+            } else if (value instanceof Boolean) {
+                type = BOOLEAN;
+                bits = ((Boolean) value).booleanValue() ? 1 : 0;
+            }
+            fTypes[p] = type;
+            fPrimitives[p] = bits;
+            if (type != 0) {
+                fValues[slot] = null;
+                return;
+            }
+        }
+        fValues[slot] = value != null ? value : NULL;
+    }
+
+    @Override
+    public int size() {
+        return fSize;
+    }
+
+}
@@ -3,6 +3,8 @@
  */
 package org.jokerd.opensocial.api.model;
 
+import java.util.Map;
+
 import org.ubimix.commons.json.JsonValue;
 import org.ubimix.commons.json.JsonValue.IJsonValueFactory;
 
@@ -23,7 +25,7 @@ public class UserId extends ObjectId {
         @Override
         public UserId newValue(Object object) {
             String str = JsonValue.STRING_FACTORY.newValue(object);
-            return new UserId(str);
+            return valueOf(str);
         }
     };
 
@@ -38,7 +40,7 @@ public class UserId extends ObjectId {
      * The user that owns the current page. For example, if Alice is viewing
      * Bob's profile page, then Bob is the owner.
      */
-    public final static UserId OWNER = new UserId("@owner ");
+    public final static UserId OWNER = new UserId("@owner");
 
     /**
      * The user than is logged in an viewing the current page. For example, if
@@ -46,6 +48,27 @@ public class UserId extends ObjectId {
      */
     public final static UserId VIEWER = new UserId("@viewer");
 
+    private final static Map<String, UserId> RESERVED = newReservedMap(new UserId[] {
+        ME,
+        OWNER,
+        VIEWER });
+
+    /**
+     * Returns a user identifier corresponding to the given string. For the
+     * reserved values ("@me", "@owner", "@viewer") this method returns the
+     * canonical constants.
+     * 
+     * @param id the string representation of the identifier
+     * @return a user identifier corresponding to the given string
+     */
+    public static UserId valueOf(String id) {
+        UserId result = RESERVED.get(id);
+        if (result == null) {
+            result = new UserId(id);
+        }
+        return result;
+    }
+
     public UserId(DomainName domainName, String localId) {
         super(domainName, localId);
     }
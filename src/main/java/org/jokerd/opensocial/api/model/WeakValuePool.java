@@ -0,0 +1,113 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A thread-safe pool of canonical instances. Values are referenced weakly so
+ * instances which are not used anymore are automatically removed from the
+ * pool by the garbage collector.
+ * 
+ * @author kotelnikov
+ * @param <T> the type of pooled values
+ */
+public class WeakValuePool<T> {
+
+    /**
+     * Weak references to pooled values. Each reference keeps the key of the
+     * corresponding entry to remove it from the pool when the value is
+     * collected.
+     */
+    private static class ValueReference<T> extends WeakReference<T> {
+
+        private final Object fKey;
+
+        public ValueReference(Object key, T value, ReferenceQueue<T> queue) {
+            super(value, queue);
+            fKey = key;
+        }
+
+    }
+
+    private final ConcurrentMap<Object, ValueReference<T>> fMap = new ConcurrentHashMap<Object, ValueReference<T>>();
+
+    private final ReferenceQueue<T> fQueue = new ReferenceQueue<T>();
+
+    /**
+     * 
+     */
+    public WeakValuePool() {
+    }
+
+    /**
+     * Removes from the pool all entries with collected values.
+     */
+    @SuppressWarnings("unchecked")
+    protected void expunge() {
+        ValueReference<T> ref;
+        while ((ref = (ValueReference<T>) fQueue.poll()) != null) {
+            fMap.remove(ref.fKey, ref);
+        }
+    }
+
+    /**
+     * Returns the canonical value corresponding to the specified key or
+     * <code>null</code> if there is no such a value in the pool.
+     * 
+     * @param key the key of the value
+     * @return the canonical value corresponding to the key
+     */
+    public T get(Object key) {
+        ValueReference<T> ref = fMap.get(key);
+        return ref != null ? ref.get() : null;
+    }
+
+    /**
+     * Returns the canonical value for the specified key. If the pool does not
+     * contain a value for this key yet then the given value is stored and
+     * returned as the canonical one.
+     * 
+     * @param key the key of the value
+     * @param value the value to store in the pool if there is no canonical
+     *        value for the key yet
+     * @return the canonical value corresponding to the key
+     */
+    public T intern(Object key, T value) {
+        expunge();
+        T result = get(key);
+        if (result != null) {
+            return result;
+        }
+        ValueReference<T> ref = new ValueReference<T>(key, value, fQueue);
+        while (true) {
+            ValueReference<T> prev = fMap.putIfAbsent(key, ref);
+            if (prev == null) {
+                return value;
+            }
+            result = prev.get();
+            if (result != null) {
+                return result;
+            }
+            if (fMap.replace(key, prev, ref)) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries in this pool. Some of them could reference
+     * already collected values.
+     * 
+     * @return the number of entries in this pool
+     */
+    public int size() {
+        expunge();
+        return fMap.size();
+    }
+
+}
@@ -4,6 +4,7 @@
 package org.jokerd.opensocial.api.model.ext;
 
 import org.jokerd.opensocial.api.model.DataObject;
+import org.jokerd.opensocial.api.model.DataSchema;
 
 /**
  * @author kotelnikov
@@ -17,6 +18,19 @@ public class OAuthInfo extends DataObject {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(OAuthInfo.class)
+        .add(
+            "accessSecret",
+            "accessToken",
+            "accessTokenURL",
+            "callbackUrl",
+            "consumerKey",
+            "consumerSecret",
+            "requestSecret",
+            "requestToken",
+            "requestTokenURL",
+            "userAuthorizationURL");
+
     /**
      * 
      */
@@ -71,6 +85,16 @@ public class OAuthInfo extends DataObject {
         return getString("requestTokenURL");
     }
 
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new OAuthInfo();
+    }
+
     public String getUserAuthorizationURL() {
         return getString("userAuthorizationURL");
     }
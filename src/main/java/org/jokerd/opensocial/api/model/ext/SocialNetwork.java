@@ -1,6 +1,7 @@
 package org.jokerd.opensocial.api.model.ext;
 
 import org.jokerd.opensocial.api.model.DataObject;
+import org.jokerd.opensocial.api.model.DataSchema;
 import org.jokerd.opensocial.api.model.DomainName;
 
 /**
@@ -17,6 +18,11 @@ public class SocialNetwork extends DataObject {
         }
     };
 
+    public final static DataSchema SCHEMA = new DataSchema(SocialNetwork.class)
+        .add("domain", "iconUrl", "name")
+        .addObject("oauth", OAuthInfo.FACTORY)
+        .add("smallIconUrl");
+
     public SocialNetwork() {
         super();
     }
@@ -27,7 +33,7 @@ public class SocialNetwork extends DataObject {
     }
 
     public SocialNetwork(String domain) {
-        this(new DomainName(domain));
+        this(DomainName.valueOf(domain));
     }
 
     /**
@@ -66,6 +72,16 @@ public class SocialNetwork extends DataObject {
         return getObject("oauth", OAuthInfo.FACTORY);
     }
 
+    @Override
+    public DataSchema getSchema() {
+        return SCHEMA;
+    }
+
+    @Override
+    protected DataObject newInstance() {
+        return new SocialNetwork();
+    }
+
     /**
      * Returns an URL of a small icon corresponding to this network.
      * 
@@ -63,14 +63,28 @@ public class TagCloud extends DataObject {
         return result;
     }
 
+    /**
+     * Returns a mutable copy of tags and weights of this cloud.
+     */
+    public TagWeights getTagWeights() {
+        return new TagWeights(this);
+    }
+
     public int getWeight(Tag tag) {
         return getInteger(tag.toString(), -1);
     }
 
+    @Override
+    protected DataObject newInstance() {
+        return new TagCloud();
+    }
+
     public TagCloud setStringTags(Map<String, Integer> map) {
-        Set<Tag> tags = getTags();
-        for (Tag tag : tags) {
-            removeValue(tag.toString());
+        // Only tags which are not in the new map are removed
+        for (String tag : new ArrayList<String>(getKeys())) {
+            if (!map.containsKey(tag)) {
+                removeValue(tag);
+            }
         }
         for (Map.Entry<String, Integer> entry : map.entrySet()) {
             addTag(entry.getKey(), entry.getValue());
@@ -85,9 +99,10 @@ public class TagCloud extends DataObject {
     }
 
     public TagCloud setTags(Map<Tag, Integer> map) {
-        Set<Tag> tags = getTags();
-        for (Tag tag : tags) {
-            removeValue(tag.toString());
+        for (String tag : new ArrayList<String>(getKeys())) {
+            if (!map.containsKey(new Tag(tag))) {
+                removeValue(tag);
+            }
         }
         for (Map.Entry<Tag, Integer> entry : map.entrySet()) {
             addTag(entry.getKey(), entry.getValue());
@@ -95,4 +110,23 @@ public class TagCloud extends DataObject {
         return this;
     }
 
+    /**
+     * Replaces tags of this cloud by tags of the given object.
+     * 
+     * @return this cloud
+     */
+    public TagCloud setTagWeights(TagWeights weights) {
+        for (String tag : new ArrayList<String>(getKeys())) {
+            if (!weights.contains(tag)) {
+                removeValue(tag);
+            }
+        }
+        weights.visit(new TagWeights.ITagVisitor() {
+            public void visit(String tag, int weight) {
+                addTag(tag, weight);
+            }
+        });
+        return this;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,311 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.ext;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Counts tags added by many threads. Recently added tags are counted in
+ * several independent stripes; each stripe is a {@link TagWeights} object
+ * protected by its own lock. Like the striped counters of
+ * <code>LongAdder</code>, each thread uses its "own" stripe and moves to
+ * another one when the stripe is busy, so threads do not wait for each other
+ * even if they add the same popular tags. Tags of a batch (see
+ * {@link #addAll(Iterable)}) are added to one stripe at once, so a snapshot
+ * contains either all tags of a batch or none of them.
+ * <p>
+ * Stripes are periodically folded into one common object: when a stripe
+ * contains more than the specified number of distinct tags (see
+ * {@link #TagCloudAccumulator(int, int)}) and when a snapshot is taken. So
+ * the same tag is stored by many stripes only until the next folding, and
+ * the memory used by stripes does not grow with the number of tags. Writers
+ * never wait for folding: a full stripe is replaced by an empty one and put
+ * in a queue, and the queue is folded by the first thread which gets the
+ * fold lock without waiting.
+ * </p>
+ * <p>
+ * Snapshots (see {@link #getTagWeights()} and {@link #toTagCloud(int)}) and
+ * the {@link #drain()} method lock stripes one by one, only to replace their
+ * objects by empty ones, so writers are not stopped by snapshots. Snapshots
+ * contain either all tags of a batch or none of them, but they are not cuts
+ * across stripes: tags added while a snapshot is taken could be included in
+ * it or left for the next one.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class TagCloudAccumulator {
+
+    private static class Stripe extends ReentrantLock {
+
+        private final static long serialVersionUID = -5472934051932715186L;
+
+        private TagWeights fWeights = new TagWeights();
+
+    }
+
+    /**
+     * The number of distinct tags in a stripe by default; bigger stripes are
+     * folded into the common object.
+     */
+    private final static int DEFAULT_FOLD_SIZE = 1024;
+
+    /**
+     * Indexes of stripes used by threads. Indexes are changed when stripes
+     * are busy.
+     */
+    private final static ThreadLocal<int[]> PROBES = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            int h = (int) Thread.currentThread().getId() * 0x9e3779b9;
+            return new int[] { h ^ (h >>> 16) };
+        }
+    };
+
+    /**
+     * Weights folded from stripes; access to this object is guarded by the
+     * {@link #fFoldLock} lock. Stripe locks are never held while this lock
+     * is acquired.
+     */
+    private TagWeights fFolded = new TagWeights();
+
+    private final ReentrantLock fFoldLock = new ReentrantLock();
+
+    private final int fFoldSize;
+
+    /**
+     * Full stripe objects waiting to be folded.
+     */
+    private final ConcurrentLinkedQueue<TagWeights> fFull = new ConcurrentLinkedQueue<TagWeights>();
+
+    private final Stripe[] fStripes;
+
+    /**
+     * Creates an accumulator with two stripes per available processor.
+     */
+    public TagCloudAccumulator() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param stripes the number of stripes; it is rounded up to a power of
+     *        two
+     */
+    public TagCloudAccumulator(int stripes) {
+        this(stripes, DEFAULT_FOLD_SIZE);
+    }
+
+    /**
+     * @param stripes the number of stripes; it is rounded up to a power of
+     *        two
+     * @param foldSize the maximal number of distinct tags in a stripe; bigger
+     *        stripes are folded into the common object
+     */
+    public TagCloudAccumulator(int stripes, int foldSize) {
+        fFoldSize = foldSize;
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        fStripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            fStripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Adds one occurrence of the given tag.
+     */
+    public void add(String tag) {
+        add(tag, 1);
+    }
+
+    /**
+     * Adds the specified weight to the given tag.
+     */
+    public void add(String tag, int weight) {
+        Stripe stripe = lockStripe();
+        try {
+            stripe.fWeights.add(tag, weight);
+            takeIfFull(stripe);
+        } finally {
+            stripe.unlock();
+        }
+        foldFull();
+    }
+
+    /**
+     * Adds one occurrence of each tag of the given batch (for example tags or
+     * interests of a person). Tags of the batch are added atomically.
+     */
+    public void addAll(Iterable<String> tags) {
+        Stripe stripe = lockStripe();
+        try {
+            for (String tag : tags) {
+                if (tag != null) {
+                    stripe.fWeights.increment(tag);
+                }
+            }
+            takeIfFull(stripe);
+        } finally {
+            stripe.unlock();
+        }
+        foldFull();
+    }
+
+    /**
+     * Adds weights of all tags of the given cloud.
+     */
+    public void addAll(TagCloud cloud) {
+        addAll(cloud.getTagWeights());
+    }
+
+    /**
+     * Adds weights of all tags of the given object. Weights are added
+     * atomically.
+     */
+    public void addAll(TagWeights weights) {
+        Stripe stripe = lockStripe();
+        try {
+            stripe.fWeights.merge(weights);
+            takeIfFull(stripe);
+        } finally {
+            stripe.unlock();
+        }
+        foldFull();
+    }
+
+    /**
+     * Removes all counted tags and returns them (see {@link #fold(boolean)}).
+     * 
+     * @return weights of all tags counted since the previous call of this
+     *         method
+     */
+    public TagWeights drain() {
+        return fold(true);
+    }
+
+    /**
+     * Folds all counted tags into the common object. Stripes are locked one
+     * by one and their objects are replaced by empty ones; replaced objects
+     * are folded after that, when no stripe is locked.
+     * 
+     * @param drain if this flag is <code>true</code> then counted tags are
+     *        removed from this accumulator
+     * @return weights of all tags counted before the stripes were replaced
+     */
+    private TagWeights fold(boolean drain) {
+        TagWeights[] stripes = new TagWeights[fStripes.length];
+        for (int i = 0; i < fStripes.length; i++) {
+            Stripe stripe = fStripes[i];
+            stripe.lock();
+            try {
+                stripes[i] = stripe.fWeights;
+                stripe.fWeights = new TagWeights();
+            } finally {
+                stripe.unlock();
+            }
+        }
+        TagWeights result;
+        fFoldLock.lock();
+        try {
+            foldQueue();
+            for (TagWeights weights : stripes) {
+                fFolded.merge(weights);
+            }
+            result = fFolded;
+            if (drain) {
+                fFolded = new TagWeights();
+            } else {
+                result = new TagWeights(result.size()).merge(result);
+            }
+        } finally {
+            fFoldLock.unlock();
+        }
+        // Stripes queued while the lock was held
+        foldFull();
+        return result;
+    }
+
+    /**
+     * Folds queued stripe objects if the fold lock is free. If the lock is
+     * held by another thread then this thread does not wait: queued objects
+     * are folded by the lock owner or by the next writer.
+     */
+    private void foldFull() {
+        while (!fFull.isEmpty() && fFoldLock.tryLock()) {
+            try {
+                foldQueue();
+            } finally {
+                fFoldLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Folds all queued stripe objects. The fold lock should be held by the
+     * current thread.
+     */
+    private void foldQueue() {
+        TagWeights weights;
+        while ((weights = fFull.poll()) != null) {
+            fFolded.merge(weights);
+        }
+    }
+
+    /**
+     * Returns a copy of weights of all counted tags (see
+     * {@link #fold(boolean)}).
+     */
+    public TagWeights getTagWeights() {
+        return fold(false);
+    }
+
+    /**
+     * Locks and returns the stripe of the current thread. If the stripe is
+     * locked by another thread then the next stripe is tried; after a full
+     * round this method waits for the last tried stripe.
+     */
+    private Stripe lockStripe() {
+        int[] probe = PROBES.get();
+        int mask = fStripes.length - 1;
+        int index = probe[0];
+        for (int i = 0; i < fStripes.length; i++) {
+            Stripe stripe = fStripes[index & mask];
+            if (stripe.tryLock()) {
+                probe[0] = index;
+                return stripe;
+            }
+            index++;
+        }
+        probe[0] = index;
+        Stripe stripe = fStripes[index & mask];
+        stripe.lock();
+        return stripe;
+    }
+
+    /**
+     * Replaces the object of the given stripe by an empty one and queues it
+     * for folding if it is too big. The stripe should be locked by the
+     * current thread.
+     */
+    private void takeIfFull(Stripe stripe) {
+        if (stripe.fWeights.size() > fFoldSize) {
+            fFull.add(stripe.fWeights);
+            stripe.fWeights = new TagWeights();
+        }
+    }
+
+    /**
+     * Returns a tag cloud containing the specified number of the most
+     * popular tags.
+     * 
+     * @see TagWeights#toTagCloud(int)
+     */
+    public TagCloud toTagCloud(int count) {
+        return getTagWeights().toTagCloud(count);
+    }
+
+}
@@ -0,0 +1,688 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.ext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jokerd.opensocial.api.model.DataObject;
+import org.jokerd.opensocial.api.model.LongKeySorter;
+import org.ubimix.commons.json.JsonObject;
+import org.ubimix.commons.json.JsonValue;
+
+/**
+ * An approximate tag cloud for unbounded streams of tags. This object uses a
+ * fixed amount of memory: a Count-Min sketch estimates weights of all tags
+ * and a Space-Saving summary keeps the specified number of the heaviest tags.
+ * Weights of tags are never underestimated; the error of the estimated
+ * weight of each tag is returned by the {@link #getError(String)} method and
+ * the global error bound is returned by the {@link #getErrorBound()} method.
+ * <p>
+ * Instances of this class are not thread-safe and do not use locks. Each
+ * ingesting thread should use its own sketch (see {@link #newSketch()});
+ * sketches of threads or of different nodes are combined using the
+ * {@link #merge(TagSketch)} method. Sketches are mergeable only if they have
+ * the same width, depth and seed.
+ * </p>
+ * <p>
+ * Sketches are sent between nodes as JSON objects (see {@link #toJson()} and
+ * {@link #fromJson(JsonObject)}) containing the size of the sketch, its seed,
+ * counters of the Count-Min sketch and all monitored tags with their weights
+ * and errors, so restored sketches could be merged as the original ones.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class TagSketch {
+
+    /**
+     * An entry of the Space-Saving summary; entries are used only while
+     * sketches are merged.
+     */
+    private static class Entry {
+
+        private final long fError;
+
+        private final String fTag;
+
+        private final long fWeight;
+
+        public Entry(String tag, long weight, long error) {
+            fTag = tag;
+            fWeight = weight;
+            fError = error;
+        }
+
+    }
+
+    /**
+     * The seed used by default; sketches with the same seed are mergeable
+     * across nodes.
+     */
+    public final static long DEFAULT_SEED = 0x5bd1e9955bd1e995L;
+
+    private final static LongKeySorter.ILongKey<Entry> ENTRY_WEIGHT = new LongKeySorter.ILongKey<Entry>() {
+        public long getKey(Entry value) {
+            return value.fWeight;
+        }
+    };
+
+    /**
+     * Restores a sketch from its JSON representation (see {@link #toJson()}).
+     * 
+     * @param json the JSON representation of a sketch
+     * @return a new sketch
+     * @throws IllegalArgumentException if the given object is not a valid
+     *         representation of a sketch
+     */
+    public static TagSketch fromJson(JsonObject json) {
+        int width = (int) getLong(json, "width");
+        long seed;
+        try {
+            seed = Long.parseLong(json.getString("seed"));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad seed of the sketch");
+        }
+        TagSketch sketch = new TagSketch(
+            (int) getLong(json, "capacity"),
+            width,
+            (int) getLong(json, "depth"),
+            seed);
+        long[] counts = getLongs(json, "counts");
+        List<String> tags = json.getList("tags", JsonValue.STRING_FACTORY);
+        long[] weights = getLongs(json, "weights");
+        long[] errors = getLongs(json, "errors");
+        if (sketch.fWidth != width
+            || counts.length != sketch.fCounts.length
+            || tags.size() > sketch.fCapacity
+            || weights.length != tags.size()
+            || errors.length != tags.size()) {
+            throw new IllegalArgumentException("Bad size of the sketch");
+        }
+        System.arraycopy(counts, 0, sketch.fCounts, 0, counts.length);
+        sketch.fTotal = getLong(json, "total");
+        sketch.fFloor = getLong(json, "floor");
+        for (int i = 0; i < tags.size(); i++) {
+            String tag = tags.get(i);
+            int hash = tag != null ? (int) (hash(tag, seed) >>> 32) : 0;
+            if (tag == null || sketch.find(tag, hash) >= 0) {
+                throw new IllegalArgumentException("Bad monitored tag " + tag);
+            }
+            int pos = sketch.fSize++;
+            sketch.fTags[pos] = tag;
+            sketch.fHashes[pos] = hash;
+            sketch.fWeights[pos] = weights[i];
+            sketch.fErrors[pos] = errors[i];
+            sketch.insertIndex(pos);
+            sketch.siftUp(pos);
+        }
+        return sketch;
+    }
+
+    private static long getLong(JsonObject json, String key) {
+        Object value = json.getValue(key, DataObject.RAW_FACTORY);
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("The '"
+                + key
+                + "' field of the sketch is not a number");
+        }
+        return ((Number) value).longValue();
+    }
+
+    private static long[] getLongs(JsonObject json, String key) {
+        Object value = json.getValue(key, DataObject.RAW_FACTORY);
+        List<?> list = value instanceof List<?>
+            ? (List<?>) value
+            : Collections.emptyList();
+        long[] result = new long[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            Object item = list.get(i);
+            if (!(item instanceof Number)) {
+                throw new IllegalArgumentException("The '"
+                    + key
+                    + "' field of the sketch contains a bad number");
+            }
+            result[i] = ((Number) item).longValue();
+        }
+        return result;
+    }
+
+    /**
+     * Returns a 64-bit hash of the given tag (FNV-1a mixed by the final step
+     * of MurmurHash3).
+     */
+    private static long hash(String tag, long seed) {
+        long h = 0xcbf29ce484222325L ^ seed;
+        for (int i = 0; i < tag.length(); i++) {
+            h ^= tag.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static int powerOfTwo(int value) {
+        int result = 1;
+        while (result < value) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    private final int fCapacity;
+
+    /**
+     * Counters of the Count-Min sketch; rows of counters are stored one after
+     * another.
+     */
+    private final long[] fCounts;
+
+    private final int fDepth;
+
+    /**
+     * Errors of weights of monitored tags.
+     */
+    private final long[] fErrors;
+
+    /**
+     * The upper bound of weights of tags not monitored by the Space-Saving
+     * summary defined by merged sketches.
+     */
+    private long fFloor;
+
+    /**
+     * Hash codes of monitored tags used by the index.
+     */
+    private final int[] fHashes;
+
+    /**
+     * An open-addressing index of monitored tags. Each slot contains the
+     * position of the tag in the heap plus one or 0 for empty slots.
+     */
+    private final int[] fIndex;
+
+    private final long fSeed;
+
+    private int fSize;
+
+    /**
+     * Positions of monitored tags in the index.
+     */
+    private final int[] fSlots;
+
+    /**
+     * Monitored tags organized in a min-heap by weights.
+     */
+    private final String[] fTags;
+
+    private long fTotal;
+
+    /**
+     * Weights of monitored tags.
+     */
+    private final long[] fWeights;
+
+    private final int fWidth;
+
+    /**
+     * Creates a sketch with a default size of the Count-Min sketch.
+     * 
+     * @param capacity the number of monitored tags
+     */
+    public TagSketch(int capacity) {
+        this(capacity, Math.max(1024, capacity * 8), 4, DEFAULT_SEED);
+    }
+
+    /**
+     * @param capacity the number of monitored tags
+     * @param width the number of counters in each row of the Count-Min
+     *        sketch; it is rounded up to a power of two. The error of
+     *        estimated weights is less than <code>e/width</code> of the total
+     *        weight of all tags.
+     * @param depth the number of rows of the Count-Min sketch; the error
+     *        bound is respected with the probability
+     *        <code>1 - exp(-depth)</code>.
+     * @param seed the seed of hash functions
+     */
+    public TagSketch(int capacity, int width, int depth, long seed) {
+        if (capacity < 1 || width < 1 || depth < 1) {
+            throw new IllegalArgumentException("Bad sketch size: capacity="
+                + capacity
+                + ", width="
+                + width
+                + ", depth="
+                + depth);
+        }
+        fCapacity = capacity;
+        fWidth = powerOfTwo(width);
+        fDepth = depth;
+        fSeed = seed;
+        fCounts = new long[fWidth * fDepth];
+        fTags = new String[capacity];
+        fWeights = new long[capacity];
+        fErrors = new long[capacity];
+        fHashes = new int[capacity];
+        fSlots = new int[capacity];
+        fIndex = new int[powerOfTwo(capacity * 2)];
+    }
+
+    /**
+     * Adds one occurrence of the given tag.
+     */
+    public void add(String tag) {
+        add(tag, 1);
+    }
+
+    /**
+     * Adds the specified weight to the given tag.
+     * 
+     * @param tag the tag to add
+     * @param weight the weight to add; non-positive values are ignored
+     */
+    public void add(String tag, long weight) {
+        if (weight <= 0) {
+            return;
+        }
+        long h = hash(tag, fSeed);
+        long estimate = updateCounts(h, weight);
+        fTotal += weight;
+        int hash = (int) (h >>> 32);
+        int pos = find(tag, hash);
+        if (pos >= 0) {
+            fWeights[pos] += weight;
+            siftDown(pos);
+            return;
+        }
+        long value = Math.min(getMissingBound() + weight, estimate);
+        if (fSize < fCapacity) {
+            pos = fSize++;
+        } else if (value > fWeights[0]) {
+            // Replaces the lightest monitored tag
+            removeIndex(0);
+            pos = 0;
+        } else {
+            return;
+        }
+        fTags[pos] = tag;
+        fHashes[pos] = hash;
+        fWeights[pos] = value;
+        fErrors[pos] = value - weight;
+        insertIndex(pos);
+        siftUp(pos);
+        siftDown(pos);
+    }
+
+    private void checkCompatible(TagSketch sketch) {
+        if (sketch == this) {
+            throw new IllegalArgumentException(
+                "A sketch can not be merged with itself");
+        }
+        if (sketch.fWidth != fWidth
+            || sketch.fDepth != fDepth
+            || sketch.fSeed != fSeed) {
+            throw new IllegalArgumentException(
+                "Sketches with different sizes or seeds can not be merged");
+        }
+    }
+
+    /**
+     * Returns the minimal counter of the Count-Min sketch for the given hash.
+     */
+    private long estimate(long h) {
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        int mask = fWidth - 1;
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < fDepth; i++) {
+            int idx = i * fWidth + ((h1 + i * h2) & mask);
+            min = Math.min(min, fCounts[idx]);
+        }
+        return min;
+    }
+
+    /**
+     * Returns the position of the given tag in the heap or -1 if this tag is
+     * not monitored.
+     */
+    private int find(String tag, int hash) {
+        int mask = fIndex.length - 1;
+        int slot = hash & mask;
+        while (true) {
+            int pos = fIndex[slot] - 1;
+            if (pos < 0) {
+                return -1;
+            }
+            if (fHashes[pos] == hash && fTags[pos].equals(tag)) {
+                return pos;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the number of monitored tags.
+     */
+    public int getCapacity() {
+        return fCapacity;
+    }
+
+    /**
+     * Returns the maximal difference between the estimated weight of the
+     * given tag and its real weight.
+     * 
+     * @see #getWeight(String)
+     */
+    public long getError(String tag) {
+        int pos = find(tag, (int) (hash(tag, fSeed) >>> 32));
+        return pos >= 0 ? fErrors[pos] : getWeight(tag);
+    }
+
+    /**
+     * Returns the error bound of the Count-Min sketch:
+     * <code>e/width * total</code>. Estimated weights exceed real weights by
+     * less than this value with the probability <code>1 - exp(-depth)</code>.
+     */
+    public long getErrorBound() {
+        return (long) Math.ceil(Math.E / fWidth * fTotal);
+    }
+
+    /**
+     * Returns the upper bound of weights of tags which are not monitored.
+     */
+    private long getMissingBound() {
+        return fSize < fCapacity ? fFloor : Math.max(fFloor, fWeights[0]);
+    }
+
+    /**
+     * Returns the specified number of the heaviest tags ordered by their
+     * estimated weights (bigger weights first); tags with equal weights are
+     * ordered alphabetically.
+     */
+    public List<String> getTopTags(int count) {
+        List<Integer> positions = getTopPositions(count);
+        List<String> result = new ArrayList<String>(positions.size());
+        for (int pos : positions) {
+            result.add(fTags[pos]);
+        }
+        return result;
+    }
+
+    private List<Integer> getTopPositions(int count) {
+        List<Integer> positions = new ArrayList<Integer>(fSize);
+        for (int i = 0; i < fSize; i++) {
+            positions.add(i);
+        }
+        Collections.sort(positions, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                long a = fWeights[o1];
+                long b = fWeights[o2];
+                if (a != b) {
+                    return a > b ? -1 : 1;
+                }
+                return fTags[o1].compareTo(fTags[o2]);
+            }
+        });
+        count = Math.max(0, Math.min(count, fSize));
+        return positions.subList(0, count);
+    }
+
+    /**
+     * Returns the total weight of all added tags.
+     */
+    public long getTotal() {
+        return fTotal;
+    }
+
+    /**
+     * Returns the estimated weight of the given tag. The estimated weight is
+     * never less than the real weight of the tag.
+     */
+    public long getWeight(String tag) {
+        long h = hash(tag, fSeed);
+        int pos = find(tag, (int) (h >>> 32));
+        if (pos >= 0) {
+            return fWeights[pos];
+        }
+        return Math.min(estimate(h), getMissingBound());
+    }
+
+    private void insertIndex(int pos) {
+        int mask = fIndex.length - 1;
+        int slot = fHashes[pos] & mask;
+        while (fIndex[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        fIndex[slot] = pos + 1;
+        fSlots[pos] = slot;
+    }
+
+    /**
+     * Adds all tags of the given sketch to this one. Monitored tags of both
+     * sketches are combined and the heaviest of them are kept.
+     * 
+     * @param sketch the sketch to merge; it should have the same width, depth
+     *        and seed
+     * @return this sketch
+     * @throws IllegalArgumentException if the given sketch is not compatible
+     *         with this one
+     */
+    public TagSketch merge(TagSketch sketch) {
+        checkCompatible(sketch);
+        for (int i = 0; i < fCounts.length; i++) {
+            fCounts[i] += sketch.fCounts[i];
+        }
+        fTotal += sketch.fTotal;
+        long missing = getMissingBound();
+        long otherMissing = sketch.getMissingBound();
+        List<Entry> entries = new ArrayList<Entry>(fSize + sketch.fSize);
+        for (int i = 0; i < fSize; i++) {
+            int pos = sketch.find(fTags[i], fHashes[i]);
+            long weight = fWeights[i];
+            long error = fErrors[i];
+            if (pos >= 0) {
+                weight += sketch.fWeights[pos];
+                error += sketch.fErrors[pos];
+            } else {
+                weight += otherMissing;
+                error += otherMissing;
+            }
+            entries.add(newEntry(fTags[i], weight, error));
+        }
+        for (int i = 0; i < sketch.fSize; i++) {
+            String tag = sketch.fTags[i];
+            if (find(tag, sketch.fHashes[i]) < 0) {
+                entries.add(newEntry(
+                    tag,
+                    sketch.fWeights[i] + missing,
+                    sketch.fErrors[i] + missing));
+            }
+        }
+        LongKeySorter.sort(entries, ENTRY_WEIGHT, true);
+        fSize = 0;
+        Arrays.fill(fIndex, 0);
+        for (Entry entry : entries) {
+            if (fSize == fCapacity) {
+                break;
+            }
+            int pos = fSize++;
+            fTags[pos] = entry.fTag;
+            fHashes[pos] = (int) (hash(entry.fTag, fSeed) >>> 32);
+            fWeights[pos] = entry.fWeight;
+            fErrors[pos] = entry.fError;
+            insertIndex(pos);
+            siftUp(pos);
+        }
+        fFloor = missing + otherMissing;
+        return this;
+    }
+
+    /**
+     * Creates a merged entry; its weight is limited by the estimation of the
+     * Count-Min sketch.
+     */
+    private Entry newEntry(String tag, long weight, long error) {
+        long lowerBound = weight - error;
+        weight = Math.min(weight, estimate(hash(tag, fSeed)));
+        return new Entry(tag, weight, Math.max(0, weight - lowerBound));
+    }
+
+    /**
+     * Returns a new empty sketch which could be merged with this one.
+     */
+    public TagSketch newSketch() {
+        return new TagSketch(fCapacity, fWidth, fDepth, fSeed);
+    }
+
+    /**
+     * Removes the tag at the specified position of the heap from the index.
+     * Following tags of the same cluster are moved back, so lookups do not
+     * stop on the removed slot.
+     */
+    private void removeIndex(int pos) {
+        int mask = fIndex.length - 1;
+        int empty = fSlots[pos];
+        int next = (empty + 1) & mask;
+        while (fIndex[next] != 0) {
+            int p = fIndex[next] - 1;
+            int home = fHashes[p] & mask;
+            boolean move = empty <= next
+                ? home <= empty || home > next
+                : home <= empty && home > next;
+            if (move) {
+                fIndex[empty] = fIndex[next];
+                fSlots[p] = empty;
+                empty = next;
+            }
+            next = (next + 1) & mask;
+        }
+        fIndex[empty] = 0;
+    }
+
+    private void siftDown(int pos) {
+        while (true) {
+            int child = pos * 2 + 1;
+            if (child >= fSize) {
+                break;
+            }
+            if (child + 1 < fSize && fWeights[child + 1] < fWeights[child]) {
+                child++;
+            }
+            if (fWeights[pos] <= fWeights[child]) {
+                break;
+            }
+            swap(pos, child);
+            pos = child;
+        }
+    }
+
+    private void siftUp(int pos) {
+        while (pos > 0) {
+            int parent = (pos - 1) / 2;
+            if (fWeights[parent] <= fWeights[pos]) {
+                break;
+            }
+            swap(pos, parent);
+            pos = parent;
+        }
+    }
+
+    private void swap(int i, int j) {
+        String tag = fTags[i];
+        fTags[i] = fTags[j];
+        fTags[j] = tag;
+        long weight = fWeights[i];
+        fWeights[i] = fWeights[j];
+        fWeights[j] = weight;
+        long error = fErrors[i];
+        fErrors[i] = fErrors[j];
+        fErrors[j] = error;
+        int hash = fHashes[i];
+        fHashes[i] = fHashes[j];
+        fHashes[j] = hash;
+        int slot = fSlots[i];
+        fSlots[i] = fSlots[j];
+        fSlots[j] = slot;
+        fIndex[fSlots[i]] = i + 1;
+        fIndex[fSlots[j]] = j + 1;
+    }
+
+    /**
+     * Returns the JSON representation of this sketch. The seed is stored as a
+     * string, so it is not rounded by parsers converting numbers to doubles.
+     * 
+     * @return a new JSON object
+     * @see #fromJson(JsonObject)
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.setValue("capacity", fCapacity);
+        json.setValue("width", fWidth);
+        json.setValue("depth", fDepth);
+        json.setValue("seed", Long.toString(fSeed));
+        json.setValue("total", fTotal);
+        json.setValue("floor", fFloor);
+        List<Long> counts = new ArrayList<Long>(fCounts.length);
+        for (long count : fCounts) {
+            counts.add(count);
+        }
+        json.setValue("counts", counts);
+        List<String> tags = new ArrayList<String>(fSize);
+        List<Long> weights = new ArrayList<Long>(fSize);
+        List<Long> errors = new ArrayList<Long>(fSize);
+        for (int i = 0; i < fSize; i++) {
+            tags.add(fTags[i]);
+            weights.add(fWeights[i]);
+            errors.add(fErrors[i]);
+        }
+        json.setValue("tags", tags);
+        json.setValue("weights", weights);
+        json.setValue("errors", errors);
+        return json;
+    }
+
+    /**
+     * Returns a tag cloud containing the specified number of the heaviest
+     * tags with their estimated weights. Errors of weights are returned by
+     * the {@link #getError(String)} method.
+     * 
+     * @param count the maximal number of tags in the cloud
+     * @return a new tag cloud
+     */
+    public TagCloud toTagCloud(int count) {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        for (int pos : getTopPositions(count)) {
+            map.put(fTags[pos], (int) Math.min(
+                fWeights[pos],
+                Integer.MAX_VALUE));
+        }
+        return TagCloud.FACTORY.newValue(map);
+    }
+
+    /**
+     * Updates counters of the Count-Min sketch and returns the new estimated
+     * weight.
+     */
+    private long updateCounts(long h, long weight) {
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        int mask = fWidth - 1;
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < fDepth; i++) {
+            int idx = i * fWidth + ((h1 + i * h2) & mask);
+            long value = fCounts[idx] += weight;
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+}
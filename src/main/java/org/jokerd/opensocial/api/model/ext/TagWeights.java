@@ -0,0 +1,436 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.ext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A mutable tag cloud used to count tags of big numbers of items. Tags and
+ * their weights are stored in an open-addressing hash table with primitive
+ * weights, so increments do not create objects. The most popular tags are
+ * selected using a bounded heap (see {@link #getTopTags(int)}) without sorting
+ * all tags. Weights could be loaded from and stored in the JSON form of the
+ * {@link TagCloud} class (see {@link #TagWeights(TagCloud)} and
+ * {@link #toTagCloud(int)}).
+ * <p>
+ * Instances of this class are not thread-safe.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class TagWeights {
+
+    /**
+     * Visitors of this type are used to iterate over tags and their weights.
+     */
+    public interface ITagVisitor {
+
+        void visit(String tag, int weight);
+
+    }
+
+    private final static int MIN_CAPACITY = 16;
+
+    /**
+     * Spreads bits of string hash codes (the final step of MurmurHash3).
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int tableSize(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Mixed hash codes of tags; these values are used to avoid string
+     * comparisons.
+     */
+    private int[] fHashes;
+
+    /**
+     * Tags; empty slots contain <code>null</code> values.
+     */
+    private String[] fTags;
+
+    private int fSize;
+
+    private int[] fWeights;
+
+    public TagWeights() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * @param expectedSize the expected number of tags
+     */
+    public TagWeights(int expectedSize) {
+        init(tableSize(expectedSize));
+    }
+
+    /**
+     * Creates a new instance containing all tags of the given cloud. Tags with
+     * negative weights are ignored.
+     */
+    public TagWeights(TagCloud cloud) {
+        this(cloud.getKeys().size());
+        for (String tag : cloud.getKeys()) {
+            int weight = cloud.getInteger(tag, -1);
+            if (weight >= 0) {
+                setWeight(tag, weight);
+            }
+        }
+    }
+
+    /**
+     * Adds the given value to the weight of the specified tag. Tags not
+     * contained in this object are added with the given weight.
+     * 
+     * @param tag the tag to change
+     * @param delta the value to add to the weight
+     * @return the new weight of the tag
+     */
+    public int add(String tag, int delta) {
+        int hash = mix(tag.hashCode());
+        int slot = find(tag, hash);
+        if (fTags[slot] != null) {
+            return fWeights[slot] += delta;
+        }
+        insert(slot, tag, hash, delta);
+        return delta;
+    }
+
+    /**
+     * Removes all tags.
+     */
+    public void clear() {
+        Arrays.fill(fTags, null);
+        fSize = 0;
+    }
+
+    /**
+     * Returns <code>true</code> if this object contains the specified tag.
+     */
+    public boolean contains(String tag) {
+        return fTags[find(tag, mix(tag.hashCode()))] != null;
+    }
+
+    /**
+     * Returns the slot containing the specified tag or the empty slot where
+     * this tag should be inserted.
+     */
+    private int find(String tag, int hash) {
+        int mask = fTags.length - 1;
+        int slot = hash & mask;
+        while (true) {
+            String str = fTags[slot];
+            if (str == null
+                || (fHashes[slot] == hash && (str == tag || str.equals(tag)))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the specified number of tags with the biggest weights. Tags are
+     * ordered by weights (bigger weights first); tags with equal weights are
+     * ordered alphabetically. Only the selected tags are sorted, so this
+     * method could be used with big clouds.
+     * 
+     * @param count the maximal number of returned tags
+     * @return a list of the most popular tags
+     */
+    public List<String> getTopTags(int count) {
+        int[] slots = getTopSlots(count);
+        List<String> result = new ArrayList<String>(slots.length);
+        for (int slot : slots) {
+            result.add(fTags[slot]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns slots of the specified number of tags with the biggest weights
+     * in the order defined by the {@link #getTopTags(int)} method.
+     */
+    private int[] getTopSlots(int count) {
+        count = Math.max(0, Math.min(count, fSize));
+        // A heap where the root is the "smallest" selected tag
+        int[] heap = new int[count];
+        int heapSize = 0;
+        if (count > 0) {
+            for (int slot = 0; slot < fTags.length; slot++) {
+                if (fTags[slot] == null) {
+                    continue;
+                }
+                if (heapSize < count) {
+                    heap[heapSize] = slot;
+                    siftUp(heap, heapSize++);
+                } else if (isBefore(slot, heap[0])) {
+                    heap[0] = slot;
+                    siftDown(heap, 0, heapSize);
+                }
+            }
+        }
+        // Extracts the smallest tags first, so the result is filled from the
+        // end
+        int[] result = new int[heapSize];
+        while (heapSize > 0) {
+            result[heapSize - 1] = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, 0, heapSize);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the weight of the specified tag or -1 if this object does not
+     * contain this tag.
+     */
+    public int getWeight(String tag) {
+        int slot = find(tag, mix(tag.hashCode()));
+        return fTags[slot] != null ? fWeights[slot] : -1;
+    }
+
+    /**
+     * Adds one to the weight of the specified tag.
+     * 
+     * @return the new weight of the tag
+     * @see #add(String, int)
+     */
+    public int increment(String tag) {
+        return add(tag, 1);
+    }
+
+    private void init(int capacity) {
+        fTags = new String[capacity];
+        fHashes = new int[capacity];
+        fWeights = new int[capacity];
+        fSize = 0;
+    }
+
+    private void insert(int slot, String tag, int hash, int weight) {
+        fTags[slot] = tag;
+        fHashes[slot] = hash;
+        fWeights[slot] = weight;
+        fSize++;
+        if (fSize * 2 > fTags.length) {
+            rehash(fTags.length * 2);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the tag in the first slot should be placed
+     * before the tag in the second slot.
+     */
+    private boolean isBefore(int first, int second) {
+        int a = fWeights[first];
+        int b = fWeights[second];
+        if (a != b) {
+            return a > b;
+        }
+        return fTags[first].compareTo(fTags[second]) < 0;
+    }
+
+    /**
+     * Returns <code>true</code> if this object does not contain tags.
+     */
+    public boolean isEmpty() {
+        return fSize == 0;
+    }
+
+    /**
+     * Adds weights of all tags of the given object to weights of tags of this
+     * object.
+     * 
+     * @param weights the weights to add
+     * @return this object
+     */
+    public TagWeights merge(TagWeights weights) {
+        String[] tags = weights.fTags;
+        for (int slot = 0; slot < tags.length; slot++) {
+            String tag = tags[slot];
+            if (tag != null) {
+                int hash = weights.fHashes[slot];
+                int pos = find(tag, hash);
+                if (fTags[pos] != null) {
+                    fWeights[pos] += weights.fWeights[slot];
+                } else {
+                    insert(pos, tag, hash, weights.fWeights[slot]);
+                }
+            }
+        }
+        return this;
+    }
+
+    private void rehash(int capacity) {
+        String[] tags = fTags;
+        int[] hashes = fHashes;
+        int[] weights = fWeights;
+        init(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < tags.length; i++) {
+            if (tags[i] != null) {
+                int slot = hashes[i] & mask;
+                while (fTags[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                fTags[slot] = tags[i];
+                fHashes[slot] = hashes[i];
+                fWeights[slot] = weights[i];
+                fSize++;
+            }
+        }
+    }
+
+    /**
+     * Removes the specified tag.
+     * 
+     * @return the weight of the removed tag or -1 if this object did not
+     *         contain this tag
+     */
+    public int remove(String tag) {
+        int slot = find(tag, mix(tag.hashCode()));
+        if (fTags[slot] == null) {
+            return -1;
+        }
+        int weight = fWeights[slot];
+        // Moves back the following tags of the same cluster, so lookups do not
+        // stop on the removed slot
+        int mask = fTags.length - 1;
+        int empty = slot;
+        int next = (slot + 1) & mask;
+        while (fTags[next] != null) {
+            int home = fHashes[next] & mask;
+            // Checks that the home slot is not in the (empty, next] range
+            boolean move = empty <= next
+                ? home <= empty || home > next
+                : home <= empty && home > next;
+            if (move) {
+                fTags[empty] = fTags[next];
+                fHashes[empty] = fHashes[next];
+                fWeights[empty] = fWeights[next];
+                empty = next;
+            }
+            next = (next + 1) & mask;
+        }
+        fTags[empty] = null;
+        fSize--;
+        return weight;
+    }
+
+    /**
+     * Sets the weight of the specified tag.
+     * 
+     * @return this object
+     */
+    public TagWeights setWeight(String tag, int weight) {
+        int hash = mix(tag.hashCode());
+        int slot = find(tag, hash);
+        if (fTags[slot] != null) {
+            fWeights[slot] = weight;
+        } else {
+            insert(slot, tag, hash, weight);
+        }
+        return this;
+    }
+
+    private void siftDown(int[] heap, int pos, int size) {
+        int slot = heap[pos];
+        while (true) {
+            int child = pos * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && isBefore(heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!isBefore(slot, heap[child])) {
+                break;
+            }
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = slot;
+    }
+
+    private void siftUp(int[] heap, int pos) {
+        int slot = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) / 2;
+            if (!isBefore(heap[parent], slot)) {
+                break;
+            }
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = slot;
+    }
+
+    /**
+     * Returns the number of tags.
+     */
+    public int size() {
+        return fSize;
+    }
+
+    /**
+     * Returns a new tag cloud containing all tags of this object.
+     * 
+     * @see #toTagCloud(int)
+     */
+    public TagCloud toTagCloud() {
+        return toTagCloud(fSize);
+    }
+
+    /**
+     * Returns a new tag cloud containing the specified number of the most
+     * popular tags. Tags are added to the cloud in the order defined by the
+     * {@link #getTopTags(int)} method.
+     * 
+     * @param count the maximal number of tags in the cloud
+     * @return a new tag cloud
+     */
+    public TagCloud toTagCloud(int count) {
+        int[] slots = getTopSlots(count);
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        for (int slot : slots) {
+            map.put(fTags[slot], fWeights[slot]);
+        }
+        return TagCloud.FACTORY.newValue(map);
+    }
+
+    @Override
+    public String toString() {
+        return toTagCloud().toString();
+    }
+
+    /**
+     * Calls the given visitor for each tag of this object. Tags are visited in
+     * an arbitrary order.
+     */
+    public void visit(ITagVisitor visitor) {
+        for (int slot = 0; slot < fTags.length; slot++) {
+            String tag = fTags[slot];
+            if (tag != null) {
+                visitor.visit(tag, fWeights[slot]);
+            }
+        }
+    }
+
+}
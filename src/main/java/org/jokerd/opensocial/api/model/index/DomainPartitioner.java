@@ -0,0 +1,464 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.index;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jokerd.opensocial.api.model.DomainName;
+import org.jokerd.opensocial.api.model.ObjectId;
+
+/**
+ * Partitions identifiers by their domains using a pool of threads. Input
+ * identifiers are read from an iterator by chunks, so the whole input is
+ * never materialized as one collection. Each chunk is processed by a
+ * separate task.
+ * <p>
+ * To group identifiers (see {@link #groupByDomains(Iterator)}) without a
+ * sequential merge phase, identifiers are distributed between shards by
+ * their hash codes. Each shard owns disjoint sets of identifiers for all
+ * domains and is filled under its own lock, so tasks insert identifiers in
+ * parallel. The set returned for a domain is a view over the sets of this
+ * domain in all shards. Shards are defined by hash codes of identifiers and
+ * not by domains, so one large domain is also filled in parallel.
+ * </p>
+ * <p>
+ * Instead of building a full map of domains this partitioner can also emit
+ * per-domain batches of a bounded size (see
+ * {@link #dispatch(Iterator, int, IBatchHandler)}) which could be sent to the
+ * corresponding social networks as soon as they are ready.
+ * </p>
+ * 
+ * @author kotelnikov
+ * @param <T> the type of identifiers
+ */
+public class DomainPartitioner<T extends ObjectId> {
+
+    /**
+     * Accumulates identifiers for one domain and returns full batches.
+     */
+    private static class Batch<T> {
+
+        private List<T> fList;
+
+        private final int fSize;
+
+        public Batch(int size) {
+            fSize = size;
+            fList = new ArrayList<T>(size);
+        }
+
+        /**
+         * Adds the given identifiers and returns the list of full batches
+         * (or <code>null</code> if there are no full batches yet).
+         */
+        public synchronized List<List<T>> addAll(List<T> ids) {
+            List<List<T>> result = null;
+            for (T id : ids) {
+                fList.add(id);
+                if (fList.size() >= fSize) {
+                    if (result == null) {
+                        result = new ArrayList<List<T>>();
+                    }
+                    result.add(fList);
+                    fList = new ArrayList<T>(fSize);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns the remaining identifiers.
+         */
+        public synchronized List<T> flush() {
+            List<T> result = fList;
+            fList = new ArrayList<T>(fSize);
+            return result;
+        }
+    }
+
+    /**
+     * Handlers of this type receive batches of identifiers with the same
+     * domain. Batches could be delivered from different threads at the same
+     * time.
+     */
+    public interface IBatchHandler<T> {
+
+        /**
+         * @param domain the domain of all identifiers in the batch; it is
+         *        <code>null</code> for local identifiers
+         * @param batch a list of identifiers
+         */
+        void onBatch(DomainName domain, List<T> batch);
+
+    }
+
+    /**
+     * Identifiers of one shard grouped by domains.
+     */
+    private static class Shard<T extends ObjectId> {
+
+        private final Map<DomainName, Set<T>> fSets = new HashMap<DomainName, Set<T>>();
+
+        public synchronized void addAll(List<T> ids) {
+            for (T id : ids) {
+                DomainName domain = id.getDomainName();
+                Set<T> set = fSets.get(domain);
+                if (set == null) {
+                    set = new HashSet<T>();
+                    fSets.put(domain, set);
+                }
+                set.add(id);
+            }
+        }
+
+    }
+
+    /**
+     * A set of identifiers of one domain made of disjoint parts. Each
+     * identifier could be stored only in the part defined by its hash code
+     * (see {@link DomainPartitioner#getShard(Object, int)}).
+     */
+    private static class ShardedSet<T> extends AbstractSet<T> {
+
+        private final List<Set<T>> fParts;
+
+        public ShardedSet(List<Set<T>> parts) {
+            fParts = parts;
+        }
+
+        @Override
+        public boolean add(T id) {
+            return getPart(id).add(id);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o != null && getPart(o).contains(o);
+        }
+
+        private Set<T> getPart(Object id) {
+            return fParts.get(getShard(id, fParts.size()));
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+
+                private Iterator<T> fIterator = fParts.get(0).iterator();
+
+                private Iterator<T> fLast;
+
+                private int fPart;
+
+                public boolean hasNext() {
+                    while (!fIterator.hasNext() && fPart < fParts.size() - 1) {
+                        fIterator = fParts.get(++fPart).iterator();
+                    }
+                    return fIterator.hasNext();
+                }
+
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    fLast = fIterator;
+                    return fIterator.next();
+                }
+
+                public void remove() {
+                    if (fLast == null) {
+                        throw new IllegalStateException();
+                    }
+                    fLast.remove();
+                    fLast = null;
+                }
+            };
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return o != null && getPart(o).remove(o);
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (Set<T> part : fParts) {
+                size += part.size();
+            }
+            return size;
+        }
+
+    }
+
+    /**
+     * The default number of identifiers read from the iterator for one task.
+     */
+    public final static int DEFAULT_CHUNK_SIZE = 4096;
+
+    /**
+     * Returns the index of the shard for the given identifier. The index is
+     * taken from the high bits of the mixed hash code, so it does not depend
+     * on the low bits used by hash sets of shards.
+     */
+    private static int getShard(Object id, int shards) {
+        int h = id.hashCode() * 0x9E3779B9;
+        return (int) (((h & 0xFFFFFFFFL) * shards) >>> 32);
+    }
+
+    /**
+     * Partitions the given list of identifiers by domains.
+     */
+    private static <T extends ObjectId> Map<DomainName, List<T>> partition(
+        List<T> chunk) {
+        Map<DomainName, List<T>> result = new HashMap<DomainName, List<T>>();
+        for (T id : chunk) {
+            DomainName domain = id.getDomainName();
+            List<T> list = result.get(domain);
+            if (list == null) {
+                list = new ArrayList<T>();
+                result.put(domain, list);
+            }
+            list.add(id);
+        }
+        return result;
+    }
+
+    private final int fChunkSize;
+
+    private final ExecutorService fExecutor;
+
+    private final int fMaxPendingChunks;
+
+    private final int fThreads;
+
+    /**
+     * @param executor the executor used to partition chunks of identifiers;
+     *        if it is <code>null</code> then all chunks are partitioned in
+     *        the calling thread
+     * @param threads the number of threads of the executor; it is used to
+     *        limit the number of chunks read from the iterator in advance
+     */
+    public DomainPartitioner(ExecutorService executor, int threads) {
+        this(executor, threads, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param executor the executor used to partition chunks of identifiers;
+     *        if it is <code>null</code> then all chunks are partitioned in
+     *        the calling thread
+     * @param threads the number of threads of the executor; it is used to
+     *        limit the number of chunks read from the iterator in advance
+     * @param chunkSize the number of identifiers partitioned by one task
+     */
+    public DomainPartitioner(
+        ExecutorService executor,
+        int threads,
+        int chunkSize) {
+        fExecutor = executor;
+        fThreads = Math.max(threads, 1);
+        fMaxPendingChunks = fThreads * 2;
+        fChunkSize = Math.max(chunkSize, 1);
+    }
+
+    /**
+     * Partitions identifiers by domains and sends them to the given handler
+     * in batches of at most <code>batchSize</code> identifiers. Full batches
+     * are delivered as soon as they are ready; the remaining identifiers are
+     * delivered when the iterator is exhausted. Duplicate identifiers are not
+     * removed.
+     * 
+     * @param ids an iterator over identifiers to dispatch
+     * @param batchSize the maximal size of batches
+     * @param handler the handler receiving batches
+     */
+    public void dispatch(
+        Iterator<? extends T> ids,
+        final int batchSize,
+        final IBatchHandler<T> handler) {
+        final ConcurrentMap<DomainName, Batch<T>> batches = new ConcurrentHashMap<DomainName, Batch<T>>();
+        // Concurrent maps do not accept null keys, so local identifiers are
+        // collected in a separate batch
+        final Batch<T> localBatch = new Batch<T>(batchSize);
+        run(ids, new IChunkTask<T>() {
+            @Override
+            public void run(List<T> chunk) {
+                Map<DomainName, List<T>> map = partition(chunk);
+                for (Map.Entry<DomainName, List<T>> entry : map.entrySet()) {
+                    DomainName domain = entry.getKey();
+                    Batch<T> batch = domain != null
+                        ? batches.get(domain)
+                        : localBatch;
+                    if (batch == null) {
+                        batch = new Batch<T>(batchSize);
+                        Batch<T> prev = batches.putIfAbsent(domain, batch);
+                        if (prev != null) {
+                            batch = prev;
+                        }
+                    }
+                    List<List<T>> full = batch.addAll(entry.getValue());
+                    if (full != null) {
+                        for (List<T> list : full) {
+                            handler.onBatch(domain, list);
+                        }
+                    }
+                }
+            }
+        });
+        for (Map.Entry<DomainName, Batch<T>> entry : batches.entrySet()) {
+            List<T> list = entry.getValue().flush();
+            if (!list.isEmpty()) {
+                handler.onBatch(entry.getKey(), list);
+            }
+        }
+        List<T> list = localBatch.flush();
+        if (!list.isEmpty()) {
+            handler.onBatch(null, list);
+        }
+    }
+
+    /**
+     * Groups identifiers returned by the given iterator by their domains.
+     * Identifiers are inserted into their final sets by parallel tasks; if an
+     * executor is used then sets of the returned map are views over the
+     * disjoint sets of all shards. These views support all set operations.
+     * 
+     * @param ids an iterator over identifiers to group
+     * @return a map of domains with the corresponding identifiers
+     * @see ObjectId#groupByDomains(Iterator)
+     */
+    public Map<DomainName, Set<T>> groupByDomains(Iterator<? extends T> ids) {
+        final int count = fExecutor != null ? fThreads : 1;
+        final List<Shard<T>> shards = new ArrayList<Shard<T>>(count);
+        for (int i = 0; i < count; i++) {
+            shards.add(new Shard<T>());
+        }
+        final AtomicInteger counter = new AtomicInteger();
+        run(ids, new IChunkTask<T>() {
+            @Override
+            public void run(List<T> chunk) {
+                List<List<T>> parts = new ArrayList<List<T>>(count);
+                for (int i = 0; i < count; i++) {
+                    parts.add(new ArrayList<T>());
+                }
+                for (T id : chunk) {
+                    parts.get(getShard(id, count)).add(id);
+                }
+                // Tasks start from different shards to avoid waiting for
+                // each other
+                int start = counter.getAndIncrement();
+                for (int i = 0; i < count; i++) {
+                    int shard = (start + i) % count;
+                    List<T> part = parts.get(shard);
+                    if (!part.isEmpty()) {
+                        shards.get(shard).addAll(part);
+                    }
+                }
+            }
+        });
+        if (count == 1) {
+            return shards.get(0).fSets;
+        }
+        Map<DomainName, List<Set<T>>> domains = new HashMap<DomainName, List<Set<T>>>();
+        for (int i = 0; i < count; i++) {
+            Map<DomainName, Set<T>> sets = shards.get(i).fSets;
+            for (Map.Entry<DomainName, Set<T>> entry : sets.entrySet()) {
+                List<Set<T>> parts = domains.get(entry.getKey());
+                if (parts == null) {
+                    parts = new ArrayList<Set<T>>(count);
+                    for (int j = 0; j < count; j++) {
+                        parts.add(null);
+                    }
+                    domains.put(entry.getKey(), parts);
+                }
+                parts.set(i, entry.getValue());
+            }
+        }
+        Map<DomainName, Set<T>> result = new HashMap<DomainName, Set<T>>();
+        for (Map.Entry<DomainName, List<Set<T>>> entry : domains.entrySet()) {
+            List<Set<T>> parts = entry.getValue();
+            for (int i = 0; i < count; i++) {
+                if (parts.get(i) == null) {
+                    parts.set(i, new HashSet<T>());
+                }
+            }
+            result.put(entry.getKey(), new ShardedSet<T>(parts));
+        }
+        return result;
+    }
+
+    /**
+     * Tasks of this type process chunks of identifiers.
+     */
+    private interface IChunkTask<T> {
+        void run(List<T> chunk);
+    }
+
+    /**
+     * Reads identifiers from the iterator by chunks and executes the given
+     * task for each chunk. This method returns when all chunks are processed.
+     */
+    private void run(Iterator<? extends T> ids, final IChunkTask<T> task) {
+        if (fExecutor == null) {
+            while (ids.hasNext()) {
+                task.run(readChunk(ids));
+            }
+            return;
+        }
+        final Semaphore semaphore = new Semaphore(fMaxPendingChunks);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            while (ids.hasNext()) {
+                final List<T> chunk = readChunk(ids);
+                semaphore.acquire();
+                futures.add(fExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            task.run(chunk);
+                        } finally {
+                            semaphore.release();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private List<T> readChunk(Iterator<? extends T> ids) {
+        List<T> chunk = new ArrayList<T>(fChunkSize);
+        while (chunk.size() < fChunkSize && ids.hasNext()) {
+            chunk.add(ids.next());
+        }
+        return chunk;
+    }
+
+}
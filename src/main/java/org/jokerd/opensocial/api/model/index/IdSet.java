@@ -0,0 +1,198 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.index;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.ubimix.commons.json.JsonObject;
+
+/**
+ * A set of model objects (persons, activities, messages, ...) where objects
+ * are identified by their "id" fields. Two objects with the same identifier
+ * are considered as the same object even if their other fields are different,
+ * so identifiers are compared instead of the full content of objects. Objects
+ * without identifiers are compared using their {@link Object#equals(Object)}
+ * methods. The iteration order is the insertion order.
+ * 
+ * @author kotelnikov
+ * @param <T> the type of objects
+ */
+public class IdSet<T extends JsonObject> extends AbstractSet<T> {
+
+    /**
+     * The name of the identifier field
+     */
+    private final static String ID = "id";
+
+    /**
+     * Returns the identifier of the given object or <code>null</code> if the
+     * object does not have an identifier.
+     */
+    private static String getId(Object object) {
+        if (!(object instanceof JsonObject)) {
+            return null;
+        }
+        return ((JsonObject) object).getString(ID);
+    }
+
+    private final Map<String, T> fById = new LinkedHashMap<String, T>();
+
+    /**
+     * Objects without identifiers
+     */
+    private final Set<T> fOthers = new LinkedHashSet<T>();
+
+    /**
+     * 
+     */
+    public IdSet() {
+    }
+
+    /**
+     * @param objects objects to add to this set
+     */
+    public IdSet(Iterable<? extends T> objects) {
+        for (T object : objects) {
+            add(object);
+        }
+    }
+
+    /**
+     * Adds the given object to this set if this set does not contain an
+     * object with the same identifier.
+     * 
+     * @return <code>true</code> if the object was added
+     */
+    @Override
+    public boolean add(T object) {
+        String id = getId(object);
+        if (id == null) {
+            return fOthers.add(object);
+        }
+        if (fById.containsKey(id)) {
+            return false;
+        }
+        fById.put(id, object);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        fById.clear();
+        fOthers.clear();
+    }
+
+    /**
+     * Returns <code>true</code> if this set contains an object with the same
+     * identifier as the given object.
+     */
+    @Override
+    public boolean contains(Object object) {
+        String id = getId(object);
+        if (id == null) {
+            return fOthers.contains(object);
+        }
+        return fById.containsKey(id);
+    }
+
+    /**
+     * Returns <code>true</code> if this set contains an object with the
+     * specified identifier.
+     */
+    public boolean containsId(String id) {
+        return fById.containsKey(id);
+    }
+
+    /**
+     * Returns the object with the specified identifier or <code>null</code>
+     * if there is no such object in this set.
+     */
+    public T get(String id) {
+        return fById.get(id);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+
+            private Iterator<T> fIterator = fById.values().iterator();
+
+            /**
+             * The iterator which returned the last element
+             */
+            private Iterator<T> fLast = fIterator;
+
+            private boolean fOthersStarted;
+
+            public boolean hasNext() {
+                if (fIterator.hasNext()) {
+                    return true;
+                }
+                if (!fOthersStarted) {
+                    fOthersStarted = true;
+                    fIterator = fOthers.iterator();
+                }
+                return fIterator.hasNext();
+            }
+
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                fLast = fIterator;
+                return fIterator.next();
+            }
+
+            public void remove() {
+                fLast.remove();
+            }
+        };
+    }
+
+    /**
+     * Adds the given object to this set and replaces the object with the same
+     * identifier.
+     * 
+     * @return the replaced object or <code>null</code>
+     */
+    public T put(T object) {
+        String id = getId(object);
+        if (id == null) {
+            fOthers.add(object);
+            return null;
+        }
+        return fById.put(id, object);
+    }
+
+    /**
+     * Removes the object with the same identifier as the given object.
+     */
+    @Override
+    public boolean remove(Object object) {
+        String id = getId(object);
+        if (id == null) {
+            return fOthers.remove(object);
+        }
+        return fById.remove(id) != null;
+    }
+
+    /**
+     * Removes and returns the object with the specified identifier.
+     */
+    public T removeId(String id) {
+        return fById.remove(id);
+    }
+
+    @Override
+    public int size() {
+        return fById.size() + fOthers.size();
+    }
+
+}
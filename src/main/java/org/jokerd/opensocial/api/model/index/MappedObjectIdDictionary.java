@@ -0,0 +1,152 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import org.jokerd.opensocial.api.model.DomainName;
+import org.jokerd.opensocial.api.model.LocalIdEncoder;
+import org.jokerd.opensocial.api.model.ObjectId;
+
+/**
+ * An {@link ObjectIdDictionary} persisted in a memory-mapped file. Ordinals of
+ * identifiers are preserved between restarts.
+ * <p>
+ * The file starts with a header containing a magic number and the number of
+ * stored identifiers. The header is followed by records written in the order
+ * of ordinals. Each record contains the length and UTF-8 bytes of the
+ * identifier. The counter in the header is updated after each record, so a
+ * partially written record is ignored when the file is re-opened.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class MappedObjectIdDictionary extends ObjectIdDictionary {
+
+    private final static int HEADER_SIZE = 8;
+
+    private final static int INITIAL_FILE_SIZE = 1024 * 1024;
+
+    private final static int MAGIC = 0x4F494431; // "OID1"
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    private MappedByteBuffer fBuffer;
+
+    private final FileChannel fChannel;
+
+    private final RandomAccessFile fFile;
+
+    /**
+     * Opens the dictionary stored in the specified file. If the file does not
+     * exist then it is created.
+     * 
+     * @param file the file containing the dictionary
+     * @throws IOException
+     */
+    public MappedObjectIdDictionary(File file) throws IOException {
+        fFile = new RandomAccessFile(file, "rw");
+        fChannel = fFile.getChannel();
+        boolean created = fChannel.size() == 0;
+        long size = Math.max(fChannel.size(), INITIAL_FILE_SIZE);
+        fBuffer = fChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (created) {
+            fBuffer.putInt(0, MAGIC);
+            fBuffer.putInt(4, 0);
+            fBuffer.position(HEADER_SIZE);
+        } else {
+            if (fBuffer.getInt(0) != MAGIC) {
+                close();
+                throw new IOException("Bad dictionary file format: " + file);
+            }
+            load();
+        }
+    }
+
+    /**
+     * Flushes all changes to the disk and closes the underlying file.
+     * 
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            fBuffer.force();
+            fChannel.close();
+            fFile.close();
+        }
+    }
+
+    /**
+     * Makes sure that the mapped region has enough space to write the
+     * specified number of bytes.
+     */
+    private void ensureCapacity(int len) {
+        int position = fBuffer.position();
+        if (fBuffer.capacity() - position >= len) {
+            return;
+        }
+        long size = fBuffer.capacity();
+        while (size - position < len) {
+            size *= 2;
+        }
+        try {
+            fBuffer = fChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            fBuffer.position(position);
+        } catch (IOException e) {
+            throw new IllegalStateException(
+                "Can not extend the dictionary file",
+                e);
+        }
+    }
+
+    /**
+     * Flushes all changes to the disk.
+     */
+    public void flush() {
+        synchronized (this) {
+            fBuffer.force();
+        }
+    }
+
+    /**
+     * Reads all records from the mapped file.
+     */
+    private void load() {
+        int count = fBuffer.getInt(4);
+        fBuffer.position(HEADER_SIZE);
+        for (int i = 0; i < count; i++) {
+            int len = fBuffer.getInt();
+            byte[] bytes = new byte[len];
+            fBuffer.get(bytes);
+            String str = new String(bytes, UTF8);
+            restore(new ObjectId(str));
+        }
+    }
+
+    @Override
+    protected void onAdd(ObjectId id, int ordinal) {
+        synchronized (this) {
+            // The domain part is stored decoded because it is encoded again
+            // by the ObjectId(String) constructor.
+            String str = id.getLocalId();
+            DomainName domainName = id.getDomainName();
+            if (domainName != null) {
+                String domain = LocalIdEncoder.getInstance().decode(
+                    domainName.toString());
+                str = domain + ":" + str;
+            }
+            byte[] bytes = str.getBytes(UTF8);
+            ensureCapacity(bytes.length + 4);
+            fBuffer.putInt(bytes.length);
+            fBuffer.put(bytes);
+            fBuffer.putInt(4, ordinal + 1);
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.index;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jokerd.opensocial.api.model.ObjectId;
+import org.ubimix.commons.json.JsonValue.IJsonValueFactory;
+
+/**
+ * An append-only dictionary associating object identifiers with dense integer
+ * ordinals. Ordinals are allocated sequentially starting from 0 so they could
+ * be used as indexes in primitive arrays and bit sets. Lookups in both
+ * directions are lock-free; only new identifiers are added under a lock.
+ * <p>
+ * To resolve identifiers while responses are parsed, the factories used by
+ * model objects can be replaced by the factories returned by the
+ * {@link #newFactory(IJsonValueFactory)} method:
+ * </p>
+ * 
+ * <pre>
+ * ObjectId.FACTORY = dictionary.newFactory(ObjectId.FACTORY);
+ * UserId.FACTORY = dictionary.newFactory(UserId.FACTORY);
+ * </pre>
+ * 
+ * @author kotelnikov
+ */
+public class ObjectIdDictionary {
+
+    private final static int DEFAULT_CAPACITY = 1024;
+
+    private volatile ObjectId[] fIds;
+
+    private final Object fLock = new Object();
+
+    private final ConcurrentMap<ObjectId, Integer> fOrdinals = new ConcurrentHashMap<ObjectId, Integer>();
+
+    private volatile int fSize;
+
+    /**
+     * 
+     */
+    public ObjectIdDictionary() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the initial capacity of this dictionary
+     */
+    public ObjectIdDictionary(int capacity) {
+        fIds = new ObjectId[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Returns the ordinal of the specified identifier. If this identifier is
+     * not in the dictionary yet then a new ordinal is allocated.
+     * 
+     * @param id the identifier to add
+     * @return the ordinal of the specified identifier
+     */
+    public int addId(ObjectId id) {
+        Integer ordinal = fOrdinals.get(id);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        synchronized (fLock) {
+            ordinal = fOrdinals.get(id);
+            if (ordinal == null) {
+                // The identifier is published only if it was accepted by
+                // onAdd, so a failed notification leaves no gaps in ordinals.
+                ordinal = fSize;
+                onAdd(id, ordinal);
+                append(id);
+            }
+        }
+        return ordinal;
+    }
+
+    /**
+     * Adds the given identifier at the end of the dictionary. This method
+     * should be called under the lock.
+     */
+    private int append(ObjectId id) {
+        int ordinal = fSize;
+        ObjectId[] ids = fIds;
+        if (ordinal == ids.length) {
+            ObjectId[] array = new ObjectId[ids.length * 2];
+            System.arraycopy(ids, 0, array, 0, ids.length);
+            ids = array;
+        }
+        ids[ordinal] = id;
+        fIds = ids;
+        fSize = ordinal + 1;
+        fOrdinals.put(id, ordinal);
+        return ordinal;
+    }
+
+    /**
+     * Returns the identifier corresponding to the specified ordinal.
+     * 
+     * @param ordinal the ordinal of the identifier
+     * @return the identifier with the specified ordinal or <code>null</code>
+     *         if there is no such an ordinal in this dictionary
+     */
+    public ObjectId getId(int ordinal) {
+        int size = fSize;
+        if (ordinal < 0 || ordinal >= size) {
+            return null;
+        }
+        return fIds[ordinal];
+    }
+
+    /**
+     * Returns the ordinal of the specified identifier or -1 if this identifier
+     * is not in the dictionary.
+     * 
+     * @param id the identifier
+     * @return the ordinal of the specified identifier or -1
+     */
+    public int getOrdinal(ObjectId id) {
+        Integer ordinal = fOrdinals.get(id);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    /**
+     * Returns a factory creating ordinals of identifiers. All identifiers
+     * created by the given factory are added to this dictionary.
+     * 
+     * @param factory the factory used to create identifiers
+     * @return a factory returning ordinals of identifiers
+     */
+    public IJsonValueFactory<Integer> newOrdinalFactory(
+        final IJsonValueFactory<? extends ObjectId> factory) {
+        return new IJsonValueFactory<Integer>() {
+            @Override
+            public Integer newValue(Object object) {
+                ObjectId id = factory.newValue(object);
+                return id != null ? addId(id) : null;
+            }
+        };
+    }
+
+    /**
+     * Returns a factory which adds all identifiers created by the given
+     * factory to this dictionary. The returned identifiers are canonical
+     * instances stored in the dictionary if they have the same type as newly
+     * created ones.
+     * 
+     * @param factory the factory used to create identifiers
+     * @return a new factory registering all identifiers in this dictionary
+     */
+    public <T extends ObjectId> IJsonValueFactory<T> newFactory(
+        final IJsonValueFactory<T> factory) {
+        return new IJsonValueFactory<T>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public T newValue(Object object) {
+                T id = factory.newValue(object);
+                if (id != null) {
+                    int ordinal = addId(id);
+                    ObjectId result = getId(ordinal);
+                    if (result != null && result.getClass() == id.getClass()) {
+                        id = (T) result;
+                    }
+                }
+                return id;
+            }
+        };
+    }
+
+    /**
+     * This method is called under the lock each time when a new identifier is
+     * added to the dictionary, before the identifier becomes visible. If this
+     * method throws an exception then the identifier is not added and its
+     * ordinal is given to the next new identifier. Subclasses could overload
+     * it to persist the content of the dictionary.
+     * 
+     * @param id the new identifier
+     * @param ordinal the ordinal of the new identifier
+     */
+    protected void onAdd(ObjectId id, int ordinal) {
+    }
+
+    /**
+     * Adds the given identifier without notification. This method is used by
+     * subclasses to restore the persisted content of the dictionary.
+     * 
+     * @param id the identifier to restore
+     * @return the ordinal of the restored identifier
+     */
+    protected int restore(ObjectId id) {
+        synchronized (fLock) {
+            Integer ordinal = fOrdinals.get(id);
+            return ordinal != null ? ordinal : append(id);
+        }
+    }
+
+    /**
+     * Returns the number of identifiers in this dictionary.
+     * 
+     * @return the number of identifiers in this dictionary
+     */
+    public int size() {
+        return fSize;
+    }
+
+}
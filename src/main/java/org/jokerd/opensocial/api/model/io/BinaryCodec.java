@@ -0,0 +1,540 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jokerd.opensocial.api.model.DataObject;
+import org.jokerd.opensocial.api.model.DataSchema;
+import org.jokerd.opensocial.api.model.EpochDates;
+import org.ubimix.commons.json.JsonValue;
+import org.ubimix.commons.json.JsonValue.IJsonValueFactory;
+
+/**
+ * A compact binary representation of JSON values of model objects.
+ * <p>
+ * Each value starts with a one-byte type tag. Integers and lengths are
+ * written as variable-length numbers. Names of fields declared by the
+ * {@link DataSchema} of a model object (and by schemas of its nested objects)
+ * are written as positions of these fields in the schema. Other field names
+ * are written only once per serialized value; subsequent occurrences of the
+ * same name are replaced by references to a dictionary of already written
+ * names. The signature of the schema of the top-level object (which includes
+ * signatures of schemas of all nested objects, see
+ * {@link DataSchema#getSignature()}) is stored with the value, so such values
+ * can be decoded only with the factory of the same model class. If a field
+ * is added to or moved in any schema used by the value (including schemas of
+ * nested objects) then the decoder reports an error instead of returning
+ * fields with wrong names; values stored for a long time should be encoded
+ * without schemas (see {@link #encodeValue(Object)}). Strings which are
+ * ISO-8601 UTC dates (like "2011-02-10T15:04:55Z") are stored as milliseconds
+ * since the epoch but only if the formatted date is exactly the same as the
+ * original string, so encoding is always lossless. Fields unknown to model
+ * classes are serialized as all other fields.
+ * </p>
+ * 
+ * @author kotelnikov
+ */
+public class BinaryCodec {
+
+    /**
+     * Decodes values from a byte array.
+     */
+    private static class Decoder {
+
+        private final byte[] fData;
+
+        private final List<String> fNames = new ArrayList<String>();
+
+        private int fPos;
+
+        public Decoder(byte[] data, int offset) {
+            fData = data;
+            fPos = offset;
+        }
+
+        private IOException newError(String msg) {
+            return new IOException(msg + ". Position: " + fPos);
+        }
+
+        private int readByte() throws IOException {
+            if (fPos >= fData.length) {
+                throw newError("Unexpected end of data");
+            }
+            return fData[fPos++] & 0xFF;
+        }
+
+        /**
+         * Reads a field name. References with values lower than the number of
+         * fields of the schema are positions of fields in the schema; other
+         * references point to the dictionary of already read names.
+         */
+        private String readName(DataSchema schema) throws IOException {
+            int code = readSize();
+            if ((code & 1) == 0) {
+                int id = code >>> 1;
+                if (schema != null) {
+                    if (id < schema.getFieldCount()) {
+                        return schema.getFieldName(id);
+                    }
+                    id -= schema.getFieldCount();
+                }
+                if (id >= fNames.size()) {
+                    throw newError("Unknown field name reference");
+                }
+                return fNames.get(id);
+            }
+            String name = readString(code >>> 1);
+            fNames.add(name);
+            return name;
+        }
+
+        private int readSize() throws IOException {
+            long size = readVarLong();
+            if (size < 0 || size > Integer.MAX_VALUE) {
+                throw newError("Bad size");
+            }
+            return (int) size;
+        }
+
+        private String readString(int len) throws IOException {
+            if (len < 0 || fPos + len > fData.length) {
+                throw newError("Bad string length");
+            }
+            String str = new String(fData, fPos, len, UTF8);
+            fPos += len;
+            return str;
+        }
+
+        public Object readValue(DataSchema schema) throws IOException {
+            int tag = readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case FALSE:
+                    return Boolean.FALSE;
+                case TRUE:
+                    return Boolean.TRUE;
+                case INTEGER: {
+                    long value = readZigZag();
+                    if (value == (int) value) {
+                        return Integer.valueOf((int) value);
+                    }
+                    return Long.valueOf(value);
+                }
+                case LONG:
+                    return Long.valueOf(readZigZag());
+                case DOUBLE: {
+                    long bits = 0;
+                    for (int i = 0; i < 8; i++) {
+                        bits = (bits << 8) | readByte();
+                    }
+                    return Double.valueOf(Double.longBitsToDouble(bits));
+                }
+                case STRING:
+                    return readString(readSize());
+                case DATE:
+                    return EpochDates.format(readZigZag(), false);
+                case DATE_MILLIS:
+                    return EpochDates.format(readZigZag(), true);
+                case OBJECT: {
+                    int size = readSize();
+                    Map<String, Object> map = new LinkedHashMap<String, Object>();
+                    for (int i = 0; i < size; i++) {
+                        String name = readName(schema);
+                        DataSchema childSchema = null;
+                        if (schema != null) {
+                            int index = schema.getFieldIndex(name);
+                            if (index >= 0) {
+                                childSchema = schema.getChildSchema(index);
+                            }
+                        }
+                        map.put(name, readValue(childSchema));
+                    }
+                    return map;
+                }
+                case ARRAY: {
+                    int size = readSize();
+                    List<Object> list = new ArrayList<Object>(Math.min(
+                        size,
+                        fData.length - fPos));
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue(schema));
+                    }
+                    return list;
+                }
+                default:
+                    throw newError("Unknown type tag " + tag);
+            }
+        }
+
+        private long readVarLong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw newError("Bad variable-length number");
+        }
+
+        private long readZigZag() throws IOException {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+    }
+
+    /**
+     * Encodes values in a byte array.
+     */
+    private static class Encoder {
+
+        private byte[] fBuffer = new byte[256];
+
+        private final Map<String, Integer> fNames = new HashMap<String, Integer>();
+
+        private int fPos;
+
+        private void ensureCapacity(int len) {
+            if (fPos + len > fBuffer.length) {
+                int size = Math.max(fBuffer.length * 2, fPos + len);
+                byte[] buffer = new byte[size];
+                System.arraycopy(fBuffer, 0, buffer, 0, fPos);
+                fBuffer = buffer;
+            }
+        }
+
+        public byte[] toByteArray() {
+            byte[] result = new byte[fPos];
+            System.arraycopy(fBuffer, 0, result, 0, fPos);
+            return result;
+        }
+
+        private void writeByte(int b) {
+            ensureCapacity(1);
+            fBuffer[fPos++] = (byte) b;
+        }
+
+        private void writeName(String name, int index, DataSchema schema) {
+            if (index >= 0) {
+                writeVarLong((long) index << 1);
+                return;
+            }
+            int base = schema != null ? schema.getFieldCount() : 0;
+            Integer id = fNames.get(name);
+            if (id != null) {
+                writeVarLong((long) (base + id) << 1);
+            } else {
+                fNames.put(name, fNames.size());
+                byte[] bytes = name.getBytes(UTF8);
+                writeVarLong(((long) bytes.length << 1) | 1);
+                writeBytes(bytes);
+            }
+        }
+
+        private void writeBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, fBuffer, fPos, bytes.length);
+            fPos += bytes.length;
+        }
+
+        private void writeString(String str) {
+            int len = str.length();
+            if (len == 20 || len == 24) {
+                long millis = EpochDates.parse(str);
+                if (millis != EpochDates.NO_DATE) {
+                    boolean withMillis = len == 24;
+                    if (str.equals(EpochDates.format(millis, withMillis))) {
+                        writeByte(withMillis ? DATE_MILLIS : DATE);
+                        writeZigZag(millis);
+                        return;
+                    }
+                }
+            }
+            byte[] bytes = str.getBytes(UTF8);
+            writeByte(STRING);
+            writeVarLong(bytes.length);
+            writeBytes(bytes);
+        }
+
+        public void writeValue(Object value, DataSchema schema) {
+            if (value instanceof JsonValue) {
+                value = ((JsonValue) value).getJsonObject();
+            }
+            if (value == null) {
+                writeByte(NULL);
+            } else if (value instanceof Map<?, ?>) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeByte(OBJECT);
+                writeVarLong(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    String name = String.valueOf(entry.getKey());
+                    int index = -1;
+                    DataSchema childSchema = null;
+                    if (schema != null) {
+                        index = schema.getFieldIndex(name);
+                        if (index >= 0) {
+                            childSchema = schema.getChildSchema(index);
+                        }
+                    }
+                    writeName(name, index, schema);
+                    writeValue(entry.getValue(), childSchema);
+                }
+            } else if (value instanceof List<?>) {
+                List<?> list = (List<?>) value;
+                writeByte(ARRAY);
+                writeVarLong(list.size());
+                for (Object item : list) {
+                    writeValue(item, schema);
+                }
+            } else if (value instanceof Boolean) {
+                writeByte(((Boolean) value).booleanValue() ? TRUE : FALSE);
+            } else if (value instanceof Integer
+                || value instanceof Short
+                || value instanceof Byte) {
+                writeByte(INTEGER);
+                writeZigZag(((Number) value).longValue());
+            } else if (value instanceof Long) {
+                long l = ((Long) value).longValue();
+                // Small long values are decoded as integers otherwise
+                writeByte(l == (int) l ? LONG : INTEGER);
+                writeZigZag(l);
+            } else if (value instanceof Number) {
+                writeByte(DOUBLE);
+                long bits = Double.doubleToRawLongBits(((Number) value)
+                    .doubleValue());
+                ensureCapacity(8);
+                for (int i = 56; i >= 0; i -= 8) {
+                    fBuffer[fPos++] = (byte) (bits >>> i);
+                }
+            } else {
+                writeString(value.toString());
+            }
+        }
+
+        private void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                fBuffer[fPos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            fBuffer[fPos++] = (byte) value;
+        }
+
+        private void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+    }
+
+    private final static int ARRAY = 10;
+
+    private final static int DATE = 8;
+
+    private final static int DATE_MILLIS = 9;
+
+    private final static int DOUBLE = 5;
+
+    private final static int FALSE = 1;
+
+    private static BinaryCodec fInstance;
+
+    private final static int INTEGER = 3;
+
+    private final static int LONG = 4;
+
+    private final static int NULL = 0;
+
+    private final static int OBJECT = 7;
+
+    private final static int STRING = 6;
+
+    private final static int TRUE = 2;
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The first byte of all encoded values.
+     */
+    private final static int VERSION = 2;
+
+    /**
+     * The version of values encoded without schemas and without schema
+     * signatures; such values are still accepted by the decoder.
+     */
+    private final static int VERSION_1 = 1;
+
+    /**
+     * Returns the identifier of the given schema written after the version of
+     * encoded values; 0 means that the value is encoded without schema.
+     */
+    private static long getSchemaId(DataSchema schema) {
+        return schema != null
+            ? (1L << 32) | (schema.getSignature() & 0xFFFFFFFFL)
+            : 0;
+    }
+
+    /**
+     * @return the instance
+     */
+    public static BinaryCodec getInstance() {
+        if (fInstance == null) {
+            fInstance = new BinaryCodec();
+        }
+        return fInstance;
+    }
+
+    /**
+     * @param instance the instance to set
+     */
+    public static void setInstance(BinaryCodec instance) {
+        fInstance = instance;
+    }
+
+    /**
+     * Decodes a raw JSON value from the given array.
+     * 
+     * @param data the encoded value
+     * @return a raw JSON value (a map, a list, a string, a number, a boolean
+     *         or <code>null</code>)
+     * @throws IOException if the given data is not a valid encoded value
+     */
+    public Object decode(byte[] data) throws IOException {
+        return decodeValue(data, null);
+    }
+
+    /**
+     * Decodes a model object from the given array.
+     * 
+     * @param data the encoded value
+     * @param factory the factory used to create the resulting object
+     * @return the decoded object
+     * @throws IOException if the given data is not a valid encoded value
+     */
+    public <T> T decode(byte[] data, IJsonValueFactory<T> factory)
+        throws IOException {
+        Object value = decodeValue(data, factory);
+        return value != null ? factory.newValue(value) : null;
+    }
+
+    /**
+     * Decodes a raw JSON value; field names written as positions in a schema
+     * are resolved using the schema of objects created by the given factory.
+     */
+    private Object decodeValue(byte[] data, IJsonValueFactory<?> factory)
+        throws IOException {
+        Decoder decoder = new Decoder(data, 0);
+        int version = decoder.readByte();
+        DataSchema schema = null;
+        if (version == VERSION) {
+            long schemaId = decoder.readVarLong();
+            if (schemaId != 0) {
+                schema = factory != null ? DataSchema.getSchema(factory) : null;
+                if (getSchemaId(schema) != schemaId) {
+                    throw new IOException(
+                        "The value was encoded with a different schema");
+                }
+            }
+        } else if (version != VERSION_1) {
+            throw new IOException("Unsupported version " + version);
+        }
+        return decoder.readValue(schema);
+    }
+
+    /**
+     * Encodes the given model object. Names of fields declared by the schema
+     * of {@link DataObject}s are written as positions in the schema, so the
+     * result should be decoded with the factory of the same class.
+     * 
+     * @param value the value to encode
+     * @return an array with the encoded value
+     */
+    public byte[] encode(JsonValue value) {
+        DataSchema schema = value instanceof DataObject
+            ? ((DataObject) value).getSchema()
+            : null;
+        return encode(value != null ? value.getJsonObject() : null, schema);
+    }
+
+    private byte[] encode(Object value, DataSchema schema) {
+        Encoder encoder = new Encoder();
+        encoder.writeByte(VERSION);
+        encoder.writeVarLong(getSchemaId(schema));
+        encoder.writeValue(value, schema);
+        return encoder.toByteArray();
+    }
+
+    /**
+     * Encodes the given raw JSON value.
+     * 
+     * @param value the value to encode
+     * @return an array with the encoded value
+     */
+    public byte[] encodeValue(Object value) {
+        return encode(value, null);
+    }
+
+    /**
+     * Reads one value written by the {@link #write(JsonValue, OutputStream)}
+     * method from the given stream.
+     * 
+     * @param in the input stream
+     * @param factory the factory used to create the resulting object
+     * @return the decoded object
+     * @throws IOException if the given data is not a valid encoded value
+     */
+    public <T> T read(InputStream in, IJsonValueFactory<T> factory)
+        throws IOException {
+        int len = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.read();
+            if (b < 0 || shift > 28) {
+                throw new IOException("Bad value length");
+            }
+            len |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        byte[] data = new byte[len];
+        int pos = 0;
+        while (pos < len) {
+            int r = in.read(data, pos, len - pos);
+            if (r < 0) {
+                throw new IOException("Unexpected end of stream");
+            }
+            pos += r;
+        }
+        return decode(data, factory);
+    }
+
+    /**
+     * Writes the given value prefixed by its length to the stream.
+     * 
+     * @param value the value to write
+     * @param out the output stream
+     */
+    public void write(JsonValue value, OutputStream out) throws IOException {
+        byte[] data = encode(value);
+        int len = data.length;
+        while ((len & ~0x7F) != 0) {
+            out.write((len & 0x7F) | 0x80);
+            len >>>= 7;
+        }
+        out.write(len);
+        out.write(data);
+    }
+
+}
@@ -0,0 +1,285 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.jokerd.opensocial.api.model.Collection;
+import org.jokerd.opensocial.api.model.FieldMask;
+import org.jokerd.opensocial.api.model.RequiredFieldValidator;
+import org.jokerd.opensocial.api.model.RequiredFieldValidator.IViolationListener;
+import org.jokerd.opensocial.api.model.RequiredFieldValidator.Violation;
+import org.ubimix.commons.json.JsonObject;
+import org.ubimix.commons.json.JsonValue.IJsonValueFactory;
+
+/**
+ * Reads a serialized {@link Collection} from a stream and returns its entries
+ * one by one. Only one entry is kept in memory at a time, so big pages of
+ * results could be processed in constant memory.
+ * <p>
+ * Fields of the collection (like "startIndex", "totalResults" or
+ * "itemsPerPage") are available before iteration if they precede the "entry"
+ * array in the stream. Fields following this array become available when all
+ * entries are read.
+ * </p>
+ * <p>
+ * Entries without required fields could be skipped while reading (see
+ * {@link #setValidator(RequiredFieldValidator, IViolationListener)}).
+ * </p>
+ * 
+ * @author kotelnikov
+ * @param <T> the type of entries
+ */
+public class CollectionReader<T extends JsonObject>
+    implements
+    Iterator<T>,
+    Closeable {
+
+    /**
+     * The name of the field containing the array of entries.
+     */
+    private final static String ENTRY = "entry";
+
+    /**
+     * This flag is <code>true</code> when the reader is inside of the entry
+     * array.
+     */
+    private boolean fEntries;
+
+    /**
+     * This flag is <code>true</code> when the end of the collection is
+     * reached.
+     */
+    private boolean fEnd;
+
+    /**
+     * The position of the next entry in the entry array
+     */
+    private int fEntryIndex;
+
+    /**
+     * This flag is <code>true</code> if no fields were read yet.
+     */
+    private boolean fFirst = true;
+
+    private final Collection<T> fHeader;
+
+    /**
+     * The mask of fields of entries
+     */
+    private final FieldMask fMask;
+
+    private T fNext;
+
+    private final JsonStreamReader fReader;
+
+    private boolean fStarted;
+
+    private RequiredFieldValidator fValidator;
+
+    private IViolationListener fViolationListener;
+
+    /**
+     * @param in the input stream with the UTF-8 JSON representation of a
+     *        collection
+     * @param factory the factory used to create entries
+     */
+    public CollectionReader(InputStream in, IJsonValueFactory<T> factory) {
+        this(new JsonStreamReader(in), factory);
+    }
+
+    /**
+     * @param in the input stream with the UTF-8 JSON representation of a
+     *        collection
+     * @param factory the factory used to create entries
+     * @param mask the mask of fields of entries; other fields are skipped
+     */
+    public CollectionReader(
+        InputStream in,
+        IJsonValueFactory<T> factory,
+        FieldMask mask) {
+        this(new JsonStreamReader(in), factory, mask);
+    }
+
+    /**
+     * @param reader the JSON reader positioned before a collection object
+     * @param factory the factory used to create entries
+     */
+    public CollectionReader(
+        JsonStreamReader reader,
+        IJsonValueFactory<T> factory) {
+        this(reader, factory, FieldMask.ALL);
+    }
+
+    /**
+     * @param reader the JSON reader positioned before a collection object
+     * @param factory the factory used to create entries
+     * @param mask the mask of fields of entries; other fields are skipped
+     */
+    public CollectionReader(
+        JsonStreamReader reader,
+        IJsonValueFactory<T> factory,
+        FieldMask mask) {
+        fReader = reader;
+        fHeader = new Collection<T>(factory);
+        fMask = mask;
+    }
+
+    public void close() throws IOException {
+        fReader.close();
+    }
+
+    /**
+     * Returns the collection containing all fields read from the stream except
+     * entries.
+     */
+    public Collection<T> getHeader() {
+        try {
+            start();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return fHeader;
+    }
+
+    /**
+     * @see Collection#getItemsPerPage()
+     */
+    public int getItemsPerPage() {
+        return getHeader().getItemsPerPage();
+    }
+
+    /**
+     * @see Collection#getStartIndex()
+     */
+    public int getStartIndex() {
+        return getHeader().getStartIndex();
+    }
+
+    /**
+     * @see Collection#getTotalResults()
+     */
+    public int getTotalResults() {
+        return getHeader().getTotalResults();
+    }
+
+    public boolean hasNext() {
+        if (fNext == null) {
+            try {
+                fNext = loadNext();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return fNext != null;
+    }
+
+    /**
+     * Reads the next entry from the stream.
+     */
+    private T loadNext() throws IOException {
+        start();
+        while (true) {
+            if (fEntries) {
+                Object value = fReader.readValue(fMask);
+                fEntries = fReader.readSeparator(']');
+                int index = fEntryIndex++;
+                if (fValidator != null) {
+                    Violation violation = fValidator.validateValue(index, value);
+                    if (violation != null) {
+                        if (fViolationListener != null) {
+                            fViolationListener.onViolation(violation);
+                        }
+                        continue;
+                    }
+                }
+                return fHeader.getFactory().newValue(value);
+            }
+            if (!readFields()) {
+                return null;
+            }
+        }
+    }
+
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T result = fNext;
+        fNext = null;
+        return result;
+    }
+
+    /**
+     * Reads fields of the collection until the beginning of the entry array
+     * or the end of the collection.
+     * 
+     * @return <code>true</code> if the reader is positioned at the beginning
+     *         of the entry array
+     */
+    private boolean readFields() throws IOException {
+        while (!fEnd) {
+            if (fFirst) {
+                fFirst = false;
+                if (fReader.peek() == '}') {
+                    fReader.expect('}');
+                    fEnd = true;
+                    break;
+                }
+            } else if (!fReader.readSeparator('}')) {
+                fEnd = true;
+                break;
+            }
+            String key = fReader.readKey();
+            if (ENTRY.equals(key) && fReader.peek() == '[') {
+                fReader.expect('[');
+                if (fReader.peek() == ']') {
+                    fReader.expect(']');
+                    continue;
+                }
+                fEntries = true;
+                return true;
+            }
+            fHeader.setValue(key, fReader.readValue());
+        }
+        return false;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Sets the validator used to check raw entries before they are returned.
+     * Invalid entries are skipped and reported to the given listener.
+     * 
+     * @param validator the validator of entries
+     * @param listener the listener notified about skipped entries; it could
+     *        be <code>null</code>
+     * @return this reader
+     */
+    public CollectionReader<T> setValidator(
+        RequiredFieldValidator validator,
+        IViolationListener listener) {
+        fValidator = validator;
+        fViolationListener = listener;
+        return this;
+    }
+
+    /**
+     * Reads the beginning of the collection and all fields preceding entries.
+     */
+    private void start() throws IOException {
+        if (!fStarted) {
+            fStarted = true;
+            fReader.expect('{');
+            readFields();
+        }
+    }
+
+}
@@ -0,0 +1,377 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jokerd.opensocial.api.model.FieldMask;
+import org.jokerd.opensocial.api.model.JsonNumbers;
+
+/**
+ * A pull parser reading JSON tokens from a character stream. It allows to
+ * read the structure of big JSON objects step by step and to parse only
+ * individual values (see {@link #readValue()}) as raw JSON objects (maps,
+ * lists, strings, numbers and booleans). Fields which are not included in a
+ * {@link FieldMask} could be skipped without creating the corresponding
+ * values (see {@link #readValue(FieldMask)}). Numbers are created by the
+ * {@link JsonNumbers} class, so they are equal to numbers of lazy and parsed
+ * objects.
+ * 
+ * @author kotelnikov
+ */
+public class JsonStreamReader implements Closeable {
+
+    private final static int BUFFER_SIZE = 8 * 1024;
+
+    private final char[] fBuffer = new char[BUFFER_SIZE];
+
+    private int fLen;
+
+    private int fPos;
+
+    private final Reader fReader;
+
+    /**
+     * The total number of characters read before the current buffer
+     */
+    private long fShift;
+
+    private final StringBuilder fString = new StringBuilder();
+
+    /**
+     * @param in the input stream with UTF-8 JSON text
+     */
+    public JsonStreamReader(InputStream in) {
+        this(new InputStreamReader(in, Charset.forName("UTF-8")));
+    }
+
+    /**
+     * @param reader the character stream with JSON text
+     */
+    public JsonStreamReader(Reader reader) {
+        fReader = reader;
+    }
+
+    public void close() throws IOException {
+        fReader.close();
+    }
+
+    /**
+     * Reads the expected character (after optional spaces).
+     * 
+     * @param ch the expected character
+     * @throws IOException if the next character is not the expected one
+     */
+    public void expect(char ch) throws IOException {
+        int next = peek();
+        if (next != ch) {
+            throw newError("'" + ch + "' is expected");
+        }
+        fPos++;
+    }
+
+    private boolean fill() throws IOException {
+        if (fPos < fLen) {
+            return true;
+        }
+        fShift += fLen;
+        fPos = 0;
+        fLen = 0;
+        while (fLen == 0) {
+            int len = fReader.read(fBuffer, 0, fBuffer.length);
+            if (len < 0) {
+                return false;
+            }
+            fLen = len;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of characters read from the stream.
+     */
+    public long getPosition() {
+        return fShift + fPos;
+    }
+
+    private IOException newError(String msg) {
+        return new IOException(msg + ". Position: " + getPosition());
+    }
+
+    /**
+     * Skips spaces and returns the next character without consuming it or -1
+     * if the end of the stream is reached.
+     */
+    public int peek() throws IOException {
+        while (fill()) {
+            char ch = fBuffer[fPos];
+            if (ch != ' ' && ch != '\t' && ch != '\n' && ch != '\r') {
+                return ch;
+            }
+            fPos++;
+        }
+        return -1;
+    }
+
+    private int read() throws IOException {
+        if (!fill()) {
+            throw newError("Unexpected end of stream");
+        }
+        return fBuffer[fPos++];
+    }
+
+    private List<Object> readArray(FieldMask mask) throws IOException {
+        expect('[');
+        List<Object> list = new ArrayList<Object>();
+        if (peek() == ']') {
+            fPos++;
+            return list;
+        }
+        while (true) {
+            list.add(readValue(mask));
+            if (!readSeparator(']')) {
+                return list;
+            }
+        }
+    }
+
+    private void readLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw newError("'" + literal + "' is expected");
+            }
+        }
+    }
+
+    private Number readNumber() throws IOException {
+        fString.setLength(0);
+        while (fill() && JsonNumbers.isNumberChar(fBuffer[fPos])) {
+            fString.append(fBuffer[fPos++]);
+        }
+        String str = fString.toString();
+        try {
+            return JsonNumbers.valueOf(str);
+        } catch (NumberFormatException e) {
+            throw newError("Bad number '" + str + "'");
+        }
+    }
+
+    /**
+     * Reads an object field name and the following colon.
+     * 
+     * @return the name of the field
+     */
+    public String readKey() throws IOException {
+        String key = readString();
+        expect(':');
+        return key;
+    }
+
+    private Map<String, Object> readObject(FieldMask mask) throws IOException {
+        expect('{');
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        if (peek() == '}') {
+            fPos++;
+            return map;
+        }
+        while (true) {
+            String key = readKey();
+            FieldMask child = mask.getChild(key);
+            if (child != null) {
+                map.put(key, readValue(child));
+            } else {
+                skipValue();
+            }
+            if (!readSeparator('}')) {
+                return map;
+            }
+        }
+    }
+
+    /**
+     * Reads a separator between elements of an object or of an array.
+     * 
+     * @param end the character closing the object or the array
+     * @return <code>true</code> if a comma was read and <code>false</code> if
+     *         the closing character was read
+     */
+    public boolean readSeparator(char end) throws IOException {
+        int ch = peek();
+        if (ch == ',') {
+            fPos++;
+            return true;
+        }
+        if (ch == end) {
+            fPos++;
+            return false;
+        }
+        throw newError("',' or '" + end + "' is expected");
+    }
+
+    /**
+     * Reads a string value.
+     */
+    public String readString() throws IOException {
+        expect('"');
+        fString.setLength(0);
+        while (true) {
+            int ch = read();
+            if (ch == '"') {
+                break;
+            }
+            if (ch == '\\') {
+                ch = read();
+                switch (ch) {
+                    case 'b':
+                        ch = '\b';
+                        break;
+                    case 'f':
+                        ch = '\f';
+                        break;
+                    case 'n':
+                        ch = '\n';
+                        break;
+                    case 'r':
+                        ch = '\r';
+                        break;
+                    case 't':
+                        ch = '\t';
+                        break;
+                    case 'u':
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(read(), 16);
+                            if (digit < 0) {
+                                throw newError("Bad unicode escape");
+                            }
+                            code = (code << 4) | digit;
+                        }
+                        ch = code;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            fString.append((char) ch);
+        }
+        return fString.toString();
+    }
+
+    /**
+     * Reads the next JSON value.
+     * 
+     * @return a raw JSON value: a map, a list, a string, a number, a boolean
+     *         or <code>null</code>
+     */
+    public Object readValue() throws IOException {
+        return readValue(FieldMask.ALL);
+    }
+
+    /**
+     * Reads the next JSON value. Fields of JSON objects which are not
+     * included in the specified mask are skipped. Elements of arrays are
+     * filtered using the same mask.
+     * 
+     * @param mask the mask of fields to read
+     * @return a raw JSON value: a map, a list, a string, a number, a boolean
+     *         or <code>null</code>
+     */
+    public Object readValue(FieldMask mask) throws IOException {
+        int ch = peek();
+        switch (ch) {
+            case '{':
+                return readObject(mask);
+            case '[':
+                return readArray(mask);
+            case '"':
+                return readString();
+            case 't':
+                readLiteral("true");
+                return Boolean.TRUE;
+            case 'f':
+                readLiteral("false");
+                return Boolean.FALSE;
+            case 'n':
+                readLiteral("null");
+                return null;
+            case -1:
+                throw newError("Unexpected end of stream");
+            default:
+                if (ch == '-' || (ch >= '0' && ch <= '9')) {
+                    return readNumber();
+                }
+                throw newError("Unexpected character '" + (char) ch + "'");
+        }
+    }
+
+    /**
+     * Skips the next JSON value without creating it.
+     */
+    public void skipValue() throws IOException {
+        int ch = peek();
+        if (ch == '"') {
+            skipString();
+        } else if (ch == '{' || ch == '[') {
+            int depth = 0;
+            while (true) {
+                ch = read();
+                if (ch == '"') {
+                    fPos--;
+                    skipString();
+                } else if (ch == '{' || ch == '[') {
+                    depth++;
+                } else if (ch == '}' || ch == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        break;
+                    }
+                }
+            }
+        } else if (ch == -1) {
+            throw newError("Unexpected end of stream");
+        } else {
+            int len = 0;
+            while (fill()) {
+                ch = fBuffer[fPos];
+                if (ch == ','
+                    || ch == '}'
+                    || ch == ']'
+                    || ch == ' '
+                    || ch == '\t'
+                    || ch == '\n'
+                    || ch == '\r') {
+                    break;
+                }
+                fPos++;
+                len++;
+            }
+            if (len == 0) {
+                throw newError("Unexpected character '" + (char) ch + "'");
+            }
+        }
+    }
+
+    private void skipString() throws IOException {
+        expect('"');
+        while (true) {
+            int ch = read();
+            if (ch == '"') {
+                break;
+            }
+            if (ch == '\\') {
+                read();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,335 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.jokerd.opensocial.api.model.FieldMask;
+import org.ubimix.commons.json.JsonValue;
+
+/**
+ * Serializes JSON values as UTF-8 bytes directly to an {@link OutputStream}
+ * or to a {@link WritableByteChannel}. This writer walks the JSON tree of
+ * model objects (for example a {@link org.jokerd.opensocial.api.model.Collection}
+ * of persons or activities) and never builds the full string representation
+ * of serialized values. Bytes are accumulated in an internal buffer which is
+ * flushed to the output each time when it is full, so the memory used by this
+ * writer does not depend on the size of serialized values. The buffer is
+ * re-used when the writer is re-initialized with a new output (see
+ * {@link #reset(OutputStream)}).
+ * 
+ * @author kotelnikov
+ */
+public class JsonStreamWriter implements Flushable, Closeable {
+
+    /**
+     * The default size of the internal buffer.
+     */
+    public final static int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    private final static byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+
+    private final static char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final static byte[] NULL = { 'n', 'u', 'l', 'l' };
+
+    private final static byte[] TRUE = { 't', 'r', 'u', 'e' };
+
+    private final byte[] fBuffer;
+
+    private ByteBuffer fByteBuffer;
+
+    private WritableByteChannel fChannel;
+
+    private OutputStream fOutput;
+
+    private int fPos;
+
+    /**
+     * @param out the output stream
+     */
+    public JsonStreamWriter(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param out the output stream
+     * @param bufferSize the size of the internal buffer
+     */
+    public JsonStreamWriter(OutputStream out, int bufferSize) {
+        fBuffer = new byte[Math.max(bufferSize, 16)];
+        fOutput = out;
+    }
+
+    /**
+     * @param channel the output channel
+     */
+    public JsonStreamWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param channel the output channel
+     * @param bufferSize the size of the internal buffer
+     */
+    public JsonStreamWriter(WritableByteChannel channel, int bufferSize) {
+        fBuffer = new byte[Math.max(bufferSize, 16)];
+        fByteBuffer = ByteBuffer.wrap(fBuffer);
+        fChannel = channel;
+    }
+
+    /**
+     * Flushes all buffered bytes and closes the underlying output.
+     */
+    public void close() throws IOException {
+        flush();
+        if (fOutput != null) {
+            fOutput.close();
+        }
+        if (fChannel != null) {
+            fChannel.close();
+        }
+    }
+
+    /**
+     * Writes all buffered bytes to the underlying output and flushes it.
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        if (fOutput != null) {
+            fOutput.flush();
+        }
+    }
+
+    /**
+     * Writes all buffered bytes to the underlying output.
+     */
+    private void flushBuffer() throws IOException {
+        if (fPos == 0) {
+            return;
+        }
+        if (fOutput != null) {
+            fOutput.write(fBuffer, 0, fPos);
+        } else {
+            fByteBuffer.clear();
+            fByteBuffer.limit(fPos);
+            while (fByteBuffer.hasRemaining()) {
+                fChannel.write(fByteBuffer);
+            }
+        }
+        fPos = 0;
+    }
+
+    /**
+     * Re-initializes this writer with a new output stream. Bytes buffered for
+     * the previous output are discarded.
+     * 
+     * @param out the new output stream
+     * @return this writer
+     */
+    public JsonStreamWriter reset(OutputStream out) {
+        fOutput = out;
+        fChannel = null;
+        fPos = 0;
+        return this;
+    }
+
+    /**
+     * Re-initializes this writer with a new output channel. Bytes buffered for
+     * the previous output are discarded.
+     * 
+     * @param channel the new output channel
+     * @return this writer
+     */
+    public JsonStreamWriter reset(WritableByteChannel channel) {
+        if (fByteBuffer == null) {
+            fByteBuffer = ByteBuffer.wrap(fBuffer);
+        }
+        fOutput = null;
+        fChannel = channel;
+        fPos = 0;
+        return this;
+    }
+
+    /**
+     * Serializes the given JSON object or array.
+     * 
+     * @param value the value to serialize
+     * @return this writer
+     */
+    public JsonStreamWriter write(JsonValue value) throws IOException {
+        return writeValue(value != null ? value.getJsonObject() : null);
+    }
+
+    /**
+     * Serializes only fields of the given JSON object included in the
+     * specified mask.
+     * 
+     * @param value the value to serialize
+     * @param mask the mask of serialized fields
+     * @return this writer
+     */
+    public JsonStreamWriter write(JsonValue value, FieldMask mask)
+        throws IOException {
+        return writeValue(value != null ? value.getJsonObject() : null, mask);
+    }
+
+    private void writeArray(List<?> list, FieldMask mask) throws IOException {
+        writeByte('[');
+        boolean first = true;
+        for (Object item : list) {
+            if (!first) {
+                writeByte(',');
+            }
+            first = false;
+            writeValue(item, mask);
+        }
+        writeByte(']');
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (fPos == fBuffer.length) {
+            flushBuffer();
+        }
+        fBuffer[fPos++] = (byte) b;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        for (byte b : bytes) {
+            writeByte(b);
+        }
+    }
+
+    private void writeObject(Map<?, ?> map, FieldMask mask) throws IOException {
+        writeByte('{');
+        boolean first = true;
+        Iterator<?> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) iterator.next();
+            FieldMask child = mask.getChild(entry.getKey());
+            if (child == null) {
+                continue;
+            }
+            if (!first) {
+                writeByte(',');
+            }
+            first = false;
+            writeString(String.valueOf(entry.getKey()));
+            writeByte(':');
+            writeValue(entry.getValue(), child);
+        }
+        writeByte('}');
+    }
+
+    private void writeString(CharSequence str) throws IOException {
+        writeByte('"');
+        int len = str.length();
+        for (int i = 0; i < len; i++) {
+            char ch = str.charAt(i);
+            if (ch < 0x80) {
+                if (ch == '"' || ch == '\\') {
+                    writeByte('\\');
+                    writeByte(ch);
+                } else if (ch < 0x20) {
+                    writeByte('\\');
+                    switch (ch) {
+                        case '\n':
+                            writeByte('n');
+                            break;
+                        case '\r':
+                            writeByte('r');
+                            break;
+                        case '\t':
+                            writeByte('t');
+                            break;
+                        default:
+                            writeByte('u');
+                            writeByte('0');
+                            writeByte('0');
+                            writeByte(HEX[ch >> 4]);
+                            writeByte(HEX[ch & 0xF]);
+                    }
+                } else {
+                    writeByte(ch);
+                }
+            } else if (ch < 0x800) {
+                writeByte(0xC0 | (ch >> 6));
+                writeByte(0x80 | (ch & 0x3F));
+            } else if (Character.isHighSurrogate(ch)
+                && i + 1 < len
+                && Character.isLowSurrogate(str.charAt(i + 1))) {
+                int code = Character.toCodePoint(ch, str.charAt(++i));
+                writeByte(0xF0 | (code >> 18));
+                writeByte(0x80 | ((code >> 12) & 0x3F));
+                writeByte(0x80 | ((code >> 6) & 0x3F));
+                writeByte(0x80 | (code & 0x3F));
+            } else {
+                writeByte(0xE0 | (ch >> 12));
+                writeByte(0x80 | ((ch >> 6) & 0x3F));
+                writeByte(0x80 | (ch & 0x3F));
+            }
+        }
+        writeByte('"');
+    }
+
+    /**
+     * Serializes the given raw JSON value.
+     * 
+     * @param value the value to serialize; it could be a map, a list, a
+     *        string, a number, a boolean or a {@link JsonValue}
+     * @return this writer
+     */
+    public JsonStreamWriter writeValue(Object value) throws IOException {
+        return writeValue(value, FieldMask.ALL);
+    }
+
+    /**
+     * Serializes the given raw JSON value. Only fields included in the
+     * specified mask are written for JSON objects; elements of arrays are
+     * filtered using the same mask.
+     * 
+     * @param value the value to serialize
+     * @param mask the mask of serialized fields
+     * @return this writer
+     */
+    public JsonStreamWriter writeValue(Object value, FieldMask mask)
+        throws IOException {
+        if (value instanceof JsonValue) {
+            value = ((JsonValue) value).getJsonObject();
+        }
+        if (value == null) {
+            writeBytes(NULL);
+        } else if (value instanceof Map<?, ?>) {
+            writeObject((Map<?, ?>) value, mask);
+        } else if (value instanceof List<?>) {
+            writeArray((List<?>) value, mask);
+        } else if (value instanceof Boolean) {
+            writeBytes(((Boolean) value).booleanValue() ? TRUE : FALSE);
+        } else if (value instanceof Number) {
+            Number number = (Number) value;
+            if ((number instanceof Double || number instanceof Float)
+                && (Double.isNaN(number.doubleValue()) || Double
+                    .isInfinite(number.doubleValue()))) {
+                writeBytes(NULL);
+            } else {
+                String str = number.toString();
+                for (int i = 0; i < str.length(); i++) {
+                    writeByte(str.charAt(i));
+                }
+            }
+        } else {
+            writeString(value.toString());
+        }
+        return this;
+    }
+
+}
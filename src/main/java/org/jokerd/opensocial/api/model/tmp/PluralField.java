@@ -52,6 +52,11 @@ public interface PluralField<E> extends List<PluralField.Value> {
             return getValue("value", factory);
         }
 
+        @Override
+        protected DataObject newInstance() {
+            return new Value();
+        }
+
     }
 
     /**
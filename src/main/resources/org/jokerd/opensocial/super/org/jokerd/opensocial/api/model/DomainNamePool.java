@@ -0,0 +1,37 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The GWT version of the pool of canonical {@link DomainName} instances.
+ * Weak references are not available on the client side, so domains are kept
+ * in a simple map; a client uses only a small number of domains.
+ * 
+ * @author kotelnikov
+ */
+final class DomainNamePool {
+
+    private final static Map<String, DomainName> POOL = new HashMap<String, DomainName>();
+
+    static DomainName get(CharSequence value, int start, int end) {
+        return POOL.get(value.subSequence(start, end).toString());
+    }
+
+    static DomainName intern(DomainName domainName) {
+        String key = domainName.toString();
+        DomainName result = POOL.get(key);
+        if (result == null) {
+            result = domainName;
+            POOL.put(key, result);
+        }
+        return result;
+    }
+
+    private DomainNamePool() {
+    }
+
+}
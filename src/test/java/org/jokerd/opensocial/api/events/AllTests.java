@@ -11,7 +11,10 @@ public class AllTests {
         suite.addTestSuite(ActivitesTest.class);
         suite.addTestSuite(ActivitystreamsTest.class);
         suite.addTestSuite(ActivityStreamTest.class);
+        suite.addTestSuite(CoalescingEventManagerTest.class);
         suite.addTestSuite(PeopleServiceTest.class);
+        suite.addTestSuite(ServiceCallBatcherTest.class);
+        suite.addTestSuite(ServiceCallRegistryTest.class);
         //$JUnit-END$
         return suite;
     }
@@ -0,0 +1,226 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.events;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jokerd.opensocial.api.model.DataObject;
+import org.jokerd.opensocial.api.model.GroupId;
+import org.jokerd.opensocial.api.model.Person;
+import org.jokerd.opensocial.api.model.UserId;
+import org.ubimix.commons.events.calls.CallListener;
+
+/**
+ * @author kotelnikov
+ */
+public class CoalescingEventManagerTest extends ServiceCallTest {
+
+    private CoalescingEventManager fCoalescingManager;
+
+    /**
+     * Viewers of calls; calls which are not in this map are made by the
+     * default viewer.
+     */
+    private Map<Service.ServiceCall, String> fViewers = new IdentityHashMap<Service.ServiceCall, String>();
+
+    private AtomicInteger fCounter = new AtomicInteger();
+
+    /**
+     * This latch is released when the first request is received
+     */
+    private CountDownLatch fStarted = new CountDownLatch(1);
+
+    /**
+     * The first request waits for this latch
+     */
+    private CountDownLatch fRelease = new CountDownLatch(1);
+
+    /**
+     * @param name
+     */
+    public CoalescingEventManagerTest(String name) {
+        super(name);
+    }
+
+    private People.Get newCall(String userId, String... fields) {
+        return new People.Get(userId).setFields(fields);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        fCoalescingManager = new CoalescingEventManager(
+            fClientEventManager,
+            new CoalescingEventManager.IContextKeyProvider() {
+                public String getContextKey(Service.ServiceCall call) {
+                    synchronized (fViewers) {
+                        return fViewers.containsKey(call)
+                            ? fViewers.get(call)
+                            : "viewer";
+                    }
+                }
+            });
+        fServerEventManager.addListener(
+            People.Get.class,
+            new CallListener<People.Get>() {
+                @Override
+                protected void handleRequest(People.Get event) {
+                    if (fCounter.incrementAndGet() == 1) {
+                        fStarted.countDown();
+                        try {
+                            fRelease.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    Person person = new Person();
+                    person.setValue("id", event.getUserId().toString());
+                    event.setResultPerson(person);
+                }
+            });
+    }
+
+    public void testCoalescing() throws Exception {
+        final List<Person> results = new ArrayList<Person>();
+        final CallListener<People.Get> listener;
+        listener = new CallListener<People.Get>() {
+            @Override
+            protected void handleResponse(People.Get event) {
+                synchronized (results) {
+                    results.add(event.getResultPerson());
+                }
+            }
+        };
+        Thread leader = new Thread() {
+            @Override
+            public void run() {
+                fCoalescingManager.fireEvent(
+                    newCall("example.org:a", "name", "gender"),
+                    listener);
+            }
+        };
+        leader.start();
+        assertTrue(fStarted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, fCoalescingManager.getInFlightCount());
+
+        // Identical calls are attached to the first one
+        List<People.Get> calls = new ArrayList<People.Get>();
+        for (int i = 0; i < 5; i++) {
+            People.Get call = newCall("example.org:a", "name", "gender");
+            calls.add(call);
+            fCoalescingManager.fireEvent(call, listener);
+            assertFalse(call.isReplied());
+        }
+        // Other calls are executed
+        People.Get other = newCall("example.org:b", "name", "gender");
+        fCoalescingManager.fireEvent(other, listener);
+        assertTrue(other.isReplied());
+        assertEquals(2, fCounter.get());
+        People.Get otherGroup = newCall("example.org:a", "name", "gender")
+            .setGroupId(GroupId.FRIENDS);
+        fCoalescingManager.fireEvent(otherGroup, null);
+        assertTrue(otherGroup.isReplied());
+        assertEquals(3, fCounter.get());
+
+        fRelease.countDown();
+        leader.join(5000);
+        assertEquals(0, fCoalescingManager.getInFlightCount());
+        assertEquals(3, fCounter.get());
+        assertEquals(7, results.size());
+        for (People.Get call : calls) {
+            assertTrue(call.isReplied());
+            assertEquals("example.org:a", call
+                .getResultPerson()
+                .getId()
+                .toString());
+            // Waiting calls share an immutable result
+            assertTrue(((DataObject) call.getResult()).isFrozen());
+        }
+        assertSame(calls.get(0).getResult(), calls.get(1).getResult());
+
+        // Finished calls are not reused
+        fCoalescingManager.fireEvent(
+            newCall("example.org:a", "name", "gender"),
+            null);
+        assertEquals(4, fCounter.get());
+    }
+
+    public void testContextRelativeIds() throws Exception {
+        fRelease.countDown();
+        CoalescingEventManager manager = fCoalescingManager;
+        assertNull(manager.getKey(new People.Get(UserId.ME)));
+        assertNull(manager.getKey(new People.Get(UserId.OWNER)));
+        assertNull(manager.getKey(new People.Get(UserId.VIEWER)));
+        assertNull(manager.getKey(newCall("@me", "name")));
+        People.Get call = new People.Get();
+        call.getRequest().removeValue("userId");
+        assertNull(manager.getKey(call));
+        assertNotNull(manager.getKey(newCall("example.org:a", "name")));
+    }
+
+    public void testContextKeys() throws Exception {
+        Thread leader = new Thread() {
+            @Override
+            public void run() {
+                fCoalescingManager.fireEvent(
+                    newCall("example.org:a", "name"),
+                    null);
+            }
+        };
+        leader.start();
+        assertTrue(fStarted.await(5, TimeUnit.SECONDS));
+
+        // Equal calls of other viewers are executed
+        People.Get call = newCall("example.org:a", "name");
+        synchronized (fViewers) {
+            fViewers.put(call, "other");
+        }
+        fCoalescingManager.fireEvent(call, null);
+        assertTrue(call.isReplied());
+        assertEquals(2, fCounter.get());
+
+        // Calls with unknown contexts are executed
+        call = newCall("example.org:a", "name");
+        synchronized (fViewers) {
+            fViewers.put(call, null);
+        }
+        assertNull(fCoalescingManager.getKey(call));
+        fCoalescingManager.fireEvent(call, null);
+        assertTrue(call.isReplied());
+        assertEquals(3, fCounter.get());
+
+        fRelease.countDown();
+        leader.join(5000);
+        assertEquals(0, fCoalescingManager.getInFlightCount());
+
+        try {
+            new CoalescingEventManager(fClientEventManager, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        CoalescingEventManager manager = new CoalescingEventManager(
+            fClientEventManager,
+            CoalescingEventManager.SINGLE_CONTEXT);
+        assertNotNull(manager.getKey(newCall("example.org:a", "name")));
+    }
+
+    public void testKeys() throws Exception {
+        fRelease.countDown();
+        CoalescingEventManager manager = fCoalescingManager;
+        assertEquals(
+            manager.getKey(newCall("example.org:a", "name")),
+            manager.getKey(newCall("example.org:a", "name")));
+        assertFalse(manager.getKey(newCall("example.org:a", "name")).equals(
+            manager.getKey(newCall("example.org:a", "gender"))));
+        assertTrue(manager.getKey(newCall("example.org:a")).startsWith(
+            "people.get:"));
+    }
+
+}
@@ -0,0 +1,357 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jokerd.opensocial.api.events.ServiceCallBatcher.IBatchCallback;
+import org.jokerd.opensocial.api.events.ServiceCallBatcher.IBatchTransport;
+import org.jokerd.opensocial.api.model.Person;
+import org.jokerd.opensocial.api.model.UserId;
+import org.ubimix.commons.events.IEventListener;
+import org.ubimix.commons.events.IEventManager;
+import org.ubimix.commons.events.calls.CallListener;
+import org.ubimix.commons.json.rpc.RpcError;
+
+/**
+ * @author kotelnikov
+ */
+public class ServiceCallBatcherTest extends ServiceCallTest {
+
+    private ExecutorService fExecutor;
+
+    private ServiceBatchProcessor fProcessor;
+
+    private ScheduledExecutorService fExecutorService;
+
+    private ExecutorScheduler fScheduler;
+
+    /**
+     * Sizes of sent batches
+     */
+    private List<Integer> fSizes = new ArrayList<Integer>();
+
+    private IBatchTransport fTransport = new IBatchTransport() {
+        public void send(List<Object> requests, IBatchCallback callback) {
+            synchronized (fSizes) {
+                fSizes.add(requests.size());
+            }
+            callback.onResponse(fProcessor.process(requests));
+        }
+    };
+
+    /**
+     * @param name
+     */
+    public ServiceCallBatcherTest(String name) {
+        super(name);
+    }
+
+    private People.Get newCall(String userId) {
+        return new People.Get(userId).setFields("displayName");
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        fExecutor = Executors.newFixedThreadPool(4);
+        fExecutorService = Executors.newSingleThreadScheduledExecutor();
+        fScheduler = new ExecutorScheduler(fExecutorService);
+        fProcessor = new ServiceBatchProcessor(
+            ServiceCallRegistry.getDefault(),
+            fServerEventManager,
+            fExecutor);
+        fServerEventManager.addListener(
+            People.Get.class,
+            new CallListener<People.Get>() {
+                @Override
+                protected void handleRequest(People.Get event) {
+                    UserId userId = event.getUserId();
+                    if ("example.org:unknown".equals(userId.toString())) {
+                        event.setError(new RpcError(
+                            RpcError.ERROR_INVALID_PARAMS,
+                            "A bad user ID"));
+                    } else {
+                        Person person = new Person();
+                        person.setValue("id", userId.toString());
+                        person.setValue("displayName", "User " + userId);
+                        event.setResultPerson(person);
+                    }
+                }
+            });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        fExecutor.shutdown();
+        fExecutorService.shutdown();
+    }
+
+    public void testAsyncEventManager() throws Exception {
+        // Calls are handled in other threads after fireEvent returns
+        IEventManager eventManager = new IEventManager() {
+            public <E> void addListener(
+                Class<E> type,
+                IEventListener<? super E> listener) {
+                fServerEventManager.addListener(type, listener);
+            }
+
+            public <E> void fireEvent(
+                final E event,
+                final IEventListener<? super E> callback) {
+                new Thread() {
+                    @Override
+                    public void run() {
+                        fServerEventManager.fireEvent(event, callback);
+                    }
+                }.start();
+            }
+        };
+        ServiceBatchProcessor processor = new ServiceBatchProcessor(
+            ServiceCallRegistry.getDefault(),
+            eventManager,
+            fExecutor);
+        List<Object> requests = new ArrayList<Object>();
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> request = new HashMap<String, Object>();
+            request.put(ServiceCallBatcher.ID, Integer.toString(i));
+            request.put(ServiceCallBatcher.METHOD, "people.get");
+            request.put(ServiceCallBatcher.PARAMS, newCall(
+                "example.org:" + i).getRequest().getJsonObject());
+            requests.add(request);
+        }
+        List<Object> responses = processor.process(requests);
+        assertEquals(3, responses.size());
+        for (int i = 0; i < 3; i++) {
+            Map<?, ?> response = (Map<?, ?>) responses.get(i);
+            assertEquals(Integer.toString(i), response
+                .get(ServiceCallBatcher.ID));
+            assertNull(response.get(ServiceCallBatcher.ERROR));
+            Map<?, ?> result = (Map<?, ?>) response
+                .get(ServiceCallBatcher.RESULT);
+            assertEquals("example.org:" + i, result.get("id"));
+        }
+    }
+
+    public void testBatchBySize() throws Exception {
+        ServiceCallBatcher batcher = new ServiceCallBatcher(
+            fTransport,
+            fScheduler,
+            3,
+            60 * 60 * 1000);
+        final List<String> names = new ArrayList<String>();
+        final List<Integer> errors = new ArrayList<Integer>();
+        CallListener<People.Get> listener = new CallListener<People.Get>() {
+            @Override
+            protected void handleResponse(People.Get event) {
+                RpcError error = event.getResultError();
+                if (error != null) {
+                    errors.add(error.getInteger("code", 0));
+                } else {
+                    names.add(event.getResultPerson().getDisplayName());
+                }
+            }
+        };
+        batcher.send(newCall("example.org:a"), listener);
+        batcher.send(newCall("example.org:unknown"), listener);
+        assertEquals(2, batcher.getPendingCount());
+        assertTrue(names.isEmpty());
+        batcher.send(newCall("example.org:b"), listener);
+        assertEquals(0, batcher.getPendingCount());
+        assertEquals(Arrays.asList(3), fSizes);
+        assertEquals(
+            Arrays.asList("User example.org:a", "User example.org:b"),
+            names);
+        assertEquals(Arrays.asList(RpcError.ERROR_INVALID_PARAMS), errors);
+
+        batcher.send(newCall("example.org:c"), listener);
+        batcher.flush();
+        assertEquals(Arrays.asList(3, 1), fSizes);
+        assertEquals(3, names.size());
+    }
+
+    public void testBatchByTime() throws Exception {
+        ServiceCallBatcher batcher = new ServiceCallBatcher(
+            fTransport,
+            fScheduler,
+            100,
+            20);
+        final CountDownLatch latch = new CountDownLatch(5);
+        final Person[] people = new Person[5];
+        for (int i = 0; i < people.length; i++) {
+            final int pos = i;
+            batcher.send(
+                newCall("example.org:" + i),
+                new CallListener<People.Get>() {
+                    @Override
+                    protected void handleResponse(People.Get event) {
+                        people[pos] = event.getResultPerson();
+                        latch.countDown();
+                    }
+                });
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(5), fSizes);
+        for (int i = 0; i < people.length; i++) {
+            assertEquals("example.org:" + i, people[i].getId().toString());
+        }
+    }
+
+    public void testProcessor() throws Exception {
+        List<Object> requests = new ArrayList<Object>();
+        Map<String, Object> request = new HashMap<String, Object>();
+        request.put(ServiceCallBatcher.ID, "1");
+        request.put(ServiceCallBatcher.METHOD, "people.update");
+        requests.add(request);
+        requests.add("x");
+        List<Object> responses = fProcessor.process(requests);
+        assertEquals(2, responses.size());
+        Map<?, ?> response = (Map<?, ?>) responses.get(0);
+        assertEquals("1", response.get(ServiceCallBatcher.ID));
+        Map<?, ?> error = (Map<?, ?>) response.get(ServiceCallBatcher.ERROR);
+        assertEquals(RpcError.ERROR_METHOD_NOT_FOUND, error.get("code"));
+        response = (Map<?, ?>) responses.get(1);
+        assertTrue(response.containsKey(ServiceCallBatcher.ERROR));
+        assertNull(response.get(ServiceCallBatcher.ID));
+    }
+
+    public void testProcessorTimeout() throws Exception {
+        // Calls of other users are never handled
+        IEventManager eventManager = new IEventManager() {
+            public <E> void addListener(
+                Class<E> type,
+                IEventListener<? super E> listener) {
+                fServerEventManager.addListener(type, listener);
+            }
+
+            public <E> void fireEvent(
+                E event,
+                IEventListener<? super E> callback) {
+                People.Get call = (People.Get) event;
+                if ("example.org:a".equals(call.getUserId().toString())) {
+                    fServerEventManager.fireEvent(event, callback);
+                }
+            }
+        };
+        ServiceBatchProcessor processor = new ServiceBatchProcessor(
+            ServiceCallRegistry.getDefault(),
+            eventManager,
+            fExecutor,
+            50,
+            TimeUnit.MILLISECONDS);
+        List<Object> requests = new ArrayList<Object>();
+        for (String userId : Arrays.asList("example.org:a", "example.org:b")) {
+            Map<String, Object> request = new HashMap<String, Object>();
+            request.put(ServiceCallBatcher.ID, userId);
+            request.put(ServiceCallBatcher.METHOD, "people.get");
+            request.put(ServiceCallBatcher.PARAMS, newCall(userId)
+                .getRequest()
+                .getJsonObject());
+            requests.add(request);
+        }
+        List<Object> responses = processor.process(requests);
+        assertEquals(2, responses.size());
+        Map<?, ?> response = (Map<?, ?>) responses.get(0);
+        assertNull(response.get(ServiceCallBatcher.ERROR));
+        assertNotNull(response.get(ServiceCallBatcher.RESULT));
+        response = (Map<?, ?>) responses.get(1);
+        assertEquals("example.org:b", response.get(ServiceCallBatcher.ID));
+        Map<?, ?> error = (Map<?, ?>) response.get(ServiceCallBatcher.ERROR);
+        assertEquals(RpcError.ERROR_INTERNAL, error.get("code"));
+        assertEquals("Timeout", error.get("message"));
+    }
+
+    public void testScheduler() throws Exception {
+        // Tasks are run manually, like timers of a single-threaded client
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        ServiceCallBatcher batcher = new ServiceCallBatcher(
+            fTransport,
+            new ServiceCallBatcher.IScheduler() {
+                public void schedule(Runnable task, long delay) {
+                    tasks.add(task);
+                }
+            },
+            2,
+            100);
+        batcher.send(newCall("example.org:a"), null);
+        batcher.send(newCall("example.org:b"), null);
+        batcher.send(newCall("example.org:c"), null);
+        assertEquals(Arrays.asList(2), fSizes);
+        assertEquals(2, tasks.size());
+
+        // The task of the sent batch does nothing
+        tasks.get(0).run();
+        assertEquals(Arrays.asList(2), fSizes);
+        assertEquals(1, batcher.getPendingCount());
+        tasks.get(1).run();
+        assertEquals(Arrays.asList(2, 1), fSizes);
+        assertEquals(0, batcher.getPendingCount());
+
+        // Flushed batches do not keep their tasks
+        batcher.send(newCall("example.org:d"), null);
+        batcher.flush();
+        tasks.get(2).run();
+        assertEquals(Arrays.asList(2, 1, 1), fSizes);
+    }
+
+    public void testTransportFailure() throws Exception {
+        ServiceCallBatcher batcher = new ServiceCallBatcher(
+            new IBatchTransport() {
+                public void send(
+                    List<Object> requests,
+                    IBatchCallback callback) {
+                    callback.onFailure(new Exception("Connection refused"));
+                }
+            },
+            fScheduler,
+            1,
+            1000);
+        People.Get call = newCall("example.org:a");
+        batcher.send(call, null);
+        assertNotNull(call.getResultError());
+        assertEquals(RpcError.ERROR_INTERNAL, call
+            .getResultError()
+            .getInteger("code", 0));
+    }
+
+    public void testTransportFailureAfterResponse() throws Exception {
+        ServiceCallBatcher batcher = new ServiceCallBatcher(
+            new IBatchTransport() {
+                public void send(
+                    List<Object> requests,
+                    IBatchCallback callback) {
+                    callback.onResponse(fProcessor.process(requests));
+                    callback.onFailure(new Exception("Closed"));
+                    throw new IllegalStateException("Closed");
+                }
+            },
+            fScheduler,
+            1,
+            1000);
+        final int[] count = { 0 };
+        People.Get call = newCall("example.org:a");
+        batcher.send(call, new CallListener<People.Get>() {
+            @Override
+            protected void handleResponse(People.Get event) {
+                count[0]++;
+            }
+        });
+        assertEquals(1, count[0]);
+        assertNull(call.getResultError());
+        assertEquals("example.org:a", call
+            .getResultPerson()
+            .getId()
+            .toString());
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.events;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.jokerd.opensocial.api.events.Service.ServiceCall;
+import org.jokerd.opensocial.api.model.UserId;
+
+/**
+ * @author kotelnikov
+ */
+public class ServiceCallRegistryTest extends TestCase {
+
+    public static class Local {
+
+        public static class Call extends ServiceCall {
+        }
+
+    }
+
+    /**
+     * @param name
+     */
+    public ServiceCallRegistryTest(String name) {
+        super(name);
+    }
+
+    public void testDefaultRegistry() throws Exception {
+        ServiceCallRegistry registry = ServiceCallRegistry.getDefault();
+        assertEquals(3, registry.getMethodNames().size());
+        assertSame(People.Get.class, registry.getCallType("people.get"));
+        assertSame(
+            Activities.Get.class,
+            registry.getCallType("activities.get"));
+        assertSame(
+            Activitystreams.Get.class,
+            registry.getCallType("activitystreams.get"));
+        assertNull(registry.getCallType("people.update"));
+        assertNull(registry.getCallType(null));
+        assertFalse(registry.isRegistered("unknown"));
+
+        ServiceCall call = registry.newCall("people.get");
+        assertTrue(call instanceof People.Get);
+        assertEquals("people.get", call.getRpcMethodName());
+        assertNotSame(call, registry.newCall("people.get"));
+        assertNull(registry.newCall("unknown"));
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("userId", "example.org:john");
+        People.Get get = (People.Get) registry.newCall("people.get", params);
+        assertEquals(UserId.valueOf("example.org:john"), get.getUserId());
+    }
+
+    public void testMethodNames() throws Exception {
+        assertEquals("people.get", ServiceCallRegistry
+            .getMethodName(People.Get.class));
+        People.Get call = new People.Get();
+        assertSame(People.Get.METHOD, call.getRpcMethodName());
+        assertSame(
+            call.getRpcMethodName(),
+            new People.Get().getRpcMethodName());
+        assertSame(
+            Activities.Get.METHOD,
+            new Activities.Get().getRpcMethodName());
+        assertEquals("people", new People().toString());
+        assertSame(People.NAME, new People().toString());
+        assertSame(Activitystreams.NAME, new Activitystreams().toString());
+        assertEquals(
+            "serviceCallRegistryTest.local.call",
+            ServiceCallRegistry.getMethodName(Local.Call.class));
+        assertEquals(
+            "activitystreams.get",
+            new Activitystreams.Get().getRpcMethodName());
+        // Constants are equal to names computed from classes
+        assertEquals(
+            ServiceCallRegistry.getMethodName(Activitystreams.Get.class),
+            Activitystreams.Get.METHOD);
+        assertEquals(
+            ServiceCallRegistry.getMethodName(Activities.class),
+            Activities.NAME);
+    }
+
+    public void testRegister() throws Exception {
+        ServiceCallRegistry registry = new ServiceCallRegistry();
+        registry.register(
+            Local.Call.class,
+            new ServiceCallRegistry.IServiceCallFactory<Local.Call>() {
+                public Local.Call newCall() {
+                    return new Local.Call();
+                }
+            });
+        registry.register(
+            "test.alias",
+            Local.Call.class,
+            new ServiceCallRegistry.IServiceCallFactory<Local.Call>() {
+                public Local.Call newCall() {
+                    return new Local.Call();
+                }
+            });
+        assertTrue(registry.isRegistered("serviceCallRegistryTest.local.call"));
+        assertTrue(registry.newCall("test.alias") instanceof Local.Call);
+        registry.unregister("test.alias");
+        assertNull(registry.newCall("test.alias"));
+        registry = ServiceCallRegistry.getDefault();
+        assertFalse(registry.isRegistered("test.alias"));
+    }
+
+}
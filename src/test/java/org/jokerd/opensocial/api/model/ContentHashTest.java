@@ -0,0 +1,163 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.ubimix.commons.json.JsonObject;
+
+/**
+ * @author kotelnikov
+ */
+public class ContentHashTest extends TestCase {
+
+    private final static String PERSON = "{"
+        + "'id':'example.org:john',"
+        + "'displayName':'John',"
+        + "'age':33,"
+        + "'name':{'givenName':'John','familyName':'Smith'},"
+        + "'tags':['a','b']"
+        + "}";
+
+    /**
+     * @param name
+     */
+    public ContentHashTest(String name) {
+        super(name);
+    }
+
+    private long getHash(String json) {
+        Person person = new Person().setJsonObject(json);
+        return person.getContentHash();
+    }
+
+    public void testEquals() throws Exception {
+        Person first = new Person().setJsonObject("{'id':'a:b','age':1}");
+        Person second = new Person().setJsonObject("{'age':1,'id':'a:b'}");
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        second.setAge(2);
+        assertFalse(first.equals(second));
+        assertFalse(second.equals(first));
+        second.setAge(1);
+        assertEquals(first, second);
+
+        // Hash codes are consistent with other JSON values
+        JsonObject json = new JsonObject()
+            .setJsonObject("{'id':'a:b','age':1}");
+        assertEquals(json, first);
+        assertEquals(first, json);
+        assertEquals(json.hashCode(), first.hashCode());
+        assertEquals(json.hashCode(), first.freeze().hashCode());
+        assertEquals(json.hashCode(), first.compact().hashCode());
+
+        Person person = new Person().setJsonObject(PERSON);
+        Person frozen = person.freeze();
+        Person copy = frozen.thaw();
+        assertEquals(frozen, copy);
+        copy.getName().setValue("givenName", "Bob");
+        assertFalse(frozen.equals(copy));
+        assertFalse(copy.equals(frozen));
+
+        Set<Person> set = new HashSet<Person>();
+        set.add(person);
+        assertTrue(set.contains(frozen));
+        assertFalse(set.contains(copy));
+        set.add(frozen);
+        assertEquals(1, set.size());
+    }
+
+    public void testFastPath() throws Exception {
+        // Modifiable nested values are hashed on each comparison
+        Person person = new Person().setJsonObject(PERSON);
+        assertFalse(person.hasStoredHash());
+
+        // Snapshots and thawed copies share hashes of nested values
+        Person frozen = person.freeze();
+        assertTrue(frozen.hasStoredHash());
+        Person copy = frozen.thaw();
+        copy.setAge(34);
+        assertTrue(copy.hasStoredHash());
+        Person other = person.freeze();
+        assertTrue(other.hasStoredHash());
+        assertFalse(copy.getContentHash() == frozen.getContentHash());
+        assertFalse(copy.equals(frozen));
+        assertFalse(frozen.equals(copy));
+        assertEquals(frozen, other);
+        copy.setAge(33);
+        assertTrue(copy.hasStoredHash());
+        assertEquals(frozen, copy);
+
+        // Access to a nested value makes it modifiable
+        copy.getName();
+        assertFalse(copy.hasStoredHash());
+        assertEquals(frozen, copy);
+    }
+
+    public void testHash() throws Exception {
+        long hash = getHash(PERSON);
+        assertEquals(hash, getHash(PERSON));
+        // The order of fields is not important
+        assertEquals(hash, getHash("{"
+            + "'tags':['a','b'],"
+            + "'name':{'familyName':'Smith','givenName':'John'},"
+            + "'age':33,"
+            + "'displayName':'John',"
+            + "'id':'example.org:john'"
+            + "}"));
+        // ...but the order of array elements is
+        assertFalse(hash == getHash(PERSON.replace("['a','b']", "['b','a']")));
+        assertFalse(hash == getHash(PERSON.replace("33", "34")));
+        assertFalse(hash == getHash(PERSON.replace("Smith", "Smyth")));
+        assertFalse(getHash("{'a':null}") == getHash("{}"));
+
+        Person person = new Person().setJsonObject(PERSON);
+        assertEquals(hash, person.freeze().getContentHash());
+        assertEquals(hash, person.compact().getContentHash());
+    }
+
+    public void testIncrementalUpdates() throws Exception {
+        Person person = new Person().setJsonObject(PERSON);
+        long hash = person.getContentHash();
+        person.setAge(40);
+        person.setDisplayName("Bob");
+        person.removeValue("tags");
+        assertEquals(getHash(person.toString()), person.getContentHash());
+        person.setAge(33);
+        person.setDisplayName("John");
+        JsonObject tags = new JsonObject().setJsonObject("{'t':['a','b']}");
+        person.setValue("tags", tags.getValue("t", DataObject.RAW_FACTORY));
+        assertEquals(hash, person.getContentHash());
+
+        // Nested values are modified directly
+        person.getName().setValue("givenName", "Bob");
+        assertFalse(hash == person.getContentHash());
+        person.getName().setValue("givenName", "John");
+        assertEquals(hash, person.getContentHash());
+
+        // The underlying object is modified directly
+        @SuppressWarnings("unchecked")
+        Map<String, Object> map = (Map<String, Object>) person.getJsonObject();
+        map.put("age", 12);
+        person.clearCache();
+        assertFalse(hash == person.getContentHash());
+        map.put("age", 33);
+        person.clearCache();
+        assertEquals(hash, person.getContentHash());
+
+        // Frozen values of thawed objects
+        Person copy = person.freeze().thaw();
+        assertEquals(hash, copy.getContentHash());
+        copy.getName().setValue("givenName", "Bob");
+        copy.getName().setValue("givenName", "John");
+        assertEquals(hash, copy.getContentHash());
+        copy.setAge(1);
+        assertFalse(hash == copy.getContentHash());
+    }
+
+}
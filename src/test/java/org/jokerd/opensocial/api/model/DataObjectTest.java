@@ -0,0 +1,257 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * @author kotelnikov
+ */
+public class DataObjectTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public DataObjectTest(String name) {
+        super(name);
+    }
+
+    public void testCache() throws Exception {
+        Person person = new Person();
+        person.setEmails("a@example.org", "b@example.org");
+        person.setDisplayName("John");
+        assertFalse(person.isCacheEnabled());
+        assertNotSame(person.getEmails(), person.getEmails());
+
+        person.setCacheEnabled(true);
+        assertTrue(person.isCacheEnabled());
+        assertEquals(0, person.getCacheMissCount());
+        List<String> emails = person.getEmails();
+        assertEquals(2, emails.size());
+        assertSame(emails, person.getEmails());
+        assertEquals(1, person.getCacheMissCount());
+        assertEquals(1, person.getCacheHitCount());
+
+        // Missing values are cached as well
+        assertNull(person.getAnniversary());
+        assertNull(person.getAnniversary());
+        assertEquals(2, person.getCacheHitCount());
+
+        person.setEmails("c@example.org");
+        List<String> newEmails = person.getEmails();
+        assertNotSame(emails, newEmails);
+        assertEquals(1, newEmails.size());
+        assertEquals("c@example.org", newEmails.get(0));
+
+        person.removeValue("emails");
+        assertTrue(person.getEmails().isEmpty());
+
+        person.setCacheEnabled(false);
+        person.setEmails("d@example.org");
+        assertEquals("d@example.org", person.getEmails().get(0));
+    }
+
+    public void testPluralFieldsInPlace() throws Exception {
+        Person person = new Person();
+        PluralFields<String> emails = person.getEmails();
+        for (int i = 0; i < 100; i++) {
+            emails.add("user" + i + "@example.org");
+        }
+        Map<?, ?> map = (Map<?, ?>) person.getJsonObject();
+        Object raw = map.get("emails");
+        emails.add("last@example.org");
+        emails.set(0, "first@example.org");
+        emails.remove(1);
+        // The same JSON array is modified
+        assertSame(raw, map.get("emails"));
+        assertEquals(100, person.getEmails().size());
+        assertEquals("first@example.org", person.getEmails().get(0));
+        assertEquals("user2@example.org", person.getEmails().get(1));
+
+        // Decoded elements of other fields are kept
+        person.setJsonObject("{'addresses':["
+            + "{'formatted':'A'},"
+            + "{'formatted':'B'}"
+            + "]}");
+        PluralFields<Address> addresses = person.getAddresses();
+        emails = person.getEmails();
+        Address address = addresses.get(0);
+        emails.add("a@example.org");
+        person.setDisplayName("John");
+        assertSame(address, addresses.get(0));
+
+        // Other views of the same field see the changes
+        PluralFields<Address> other = person.getAddresses();
+        Address c = new Address();
+        c.setFormatted("C");
+        other.add(c);
+        assertEquals(3, addresses.size());
+        assertEquals("A", addresses.get(0).getFormatted());
+        assertEquals("C", addresses.get(2).getFormatted());
+
+        // Primary elements changed through wrappers
+        assertNull(addresses.getPrimary());
+        addresses.get(1).setValue("primary", true);
+        assertEquals("B", addresses.getPrimary().getFormatted());
+        addresses.get(1).removeValue("primary");
+        c.setValue("primary", "true");
+        Address primary = addresses.getPrimary();
+        assertEquals("C", primary.getFormatted());
+        addresses.remove(0);
+        assertSame(primary, addresses.getPrimary());
+        assertSame(primary, addresses.get(1));
+
+        // Frozen objects can not be modified through views
+        Person frozen = person.freeze();
+        try {
+            frozen.getEmails().add("b@example.org");
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+
+    public void testPluralFieldsView() throws Exception {
+        Person person = new Person();
+        person.setEmails("a@example.org", "b@example.org");
+        PluralFields<String> emails = person.getEmails();
+        assertEquals(2, emails.size());
+        assertNull(emails.getPrimary());
+
+        // Modifications are written back to the object
+        emails.add("c@example.org");
+        assertEquals(3, person.getEmails().size());
+        assertEquals("c@example.org", person.getEmails().get(2));
+        emails.remove(0);
+        assertEquals("b@example.org", person.getEmails().get(0));
+        emails.set(0, "d@example.org");
+        assertEquals("d@example.org", person.getEmails().get(0));
+
+        // Changes of the object are visible in the view
+        person.setEmails("e@example.org");
+        assertEquals(1, emails.size());
+        assertEquals("e@example.org", emails.get(0));
+        emails.clear();
+        assertTrue(person.getEmails().isEmpty());
+        assertFalse(person.getKeys().contains("emails"));
+
+        person.setJsonObject("{'addresses':["
+            + "{'formatted':'A'},"
+            + "{'formatted':'B','primary':true},"
+            + "{'formatted':'C'}"
+            + "]}");
+        PluralFields<Address> addresses = person.getAddresses();
+        assertEquals(3, addresses.size());
+        Address primary = addresses.getPrimary();
+        assertNotNull(primary);
+        assertEquals("B", primary.getFormatted());
+        assertSame(primary, addresses.get(1));
+        addresses.remove(1);
+        assertNull(addresses.getPrimary());
+        assertEquals(2, person.getAddresses().size());
+        assertEquals("C", person.getAddresses().get(1).getFormatted());
+    }
+
+    public void testLazy() throws Exception {
+        String json = "{\"id\":\"example.org:john\", "
+            + "\"displayName\" : \"John \\\"Smith\\\"\","
+            + "\"name\":{\"formatted\":\"John Smith\",\"x\":[1,\"}\"]},"
+            + "\"age\":33,"
+            + "\"emails\":[\"a@example.org\",\"b@example.org\"],"
+            + "\"connected\":true,"
+            + "\"dn\":\"\u00e9t\u00e9\"}";
+        byte[] bytes = json.getBytes("UTF-8");
+        Person control = new Person().setJsonObject(json);
+
+        Person person = new Person().setJsonBytes(bytes);
+        assertTrue(person.isLazy());
+        assertEquals(control.getId(), person.getId());
+        assertEquals("John \"Smith\"", person.getDisplayName());
+        assertEquals("John Smith", person.getName().getFormattedName());
+        assertEquals(33, person.getAge());
+        assertTrue(person.getConnected());
+        assertEquals("\u00e9t\u00e9", person.getDn());
+        assertEquals(control.getEmails(), person.getEmails());
+        assertEquals(control.getKeys(), person.getKeys());
+        assertTrue(person.isLazy());
+
+        // Full parsing before modifications
+        Name name = person.getName();
+        person.setAge(34);
+        assertFalse(person.isLazy());
+        assertEquals(34, person.getAge());
+        assertSame(name.getJsonObject(), person.getName().getJsonObject());
+        control.setAge(34);
+        assertEquals(control, person);
+        assertEquals(control.toString(), person.toString());
+
+        person = new Person().setJsonBytes(bytes);
+        assertEquals(control.setAge(33), person);
+        assertFalse(person.isLazy());
+
+        // Malformed JSON bytes are parsed by the JSON parser
+        person = new Person().setJsonBytes("{'id':'example.org:john'}"
+            .getBytes("UTF-8"));
+        assertEquals(control.getId(), person.getId());
+        assertFalse(person.isLazy());
+    }
+
+    public void testLazyMutators() throws Exception {
+        byte[] bytes = "{\"id\":\"example.org:john\",\"age\":33}"
+            .getBytes("UTF-8");
+        Person person = new Person().setJsonBytes(bytes);
+        person.setValues("tags", "a", "b");
+        assertFalse(person.isLazy());
+        assertEquals("example.org:john", person.getId().toString());
+        assertEquals(33, person.getAge());
+        assertEquals(2, person.getTags().size());
+
+        person = new Person().setJsonBytes(bytes);
+        List<Object> ages = person.addValues(
+            "age",
+            new ArrayList<Object>(),
+            DataObject.RAW_FACTORY);
+        assertEquals(1, ages.size());
+        assertEquals(33, ((Number) ages.get(0)).intValue());
+
+        person.setCacheEnabled(true);
+        assertEquals(33, person.getAge());
+        assertNotNull(person.getId());
+        person.setJsonObject("{'id':'example.org:bob'}");
+        assertEquals("example.org:bob", person.getId().toString());
+        assertFalse(person.getKeys().contains("age"));
+    }
+
+    public void testLazyValues() throws Exception {
+        String json = "{\"s\":\"a\\\"b\\\\c\\/d\\n\\t\\u00e9\\ud83d\\ude00\","
+            + "\"u\":\"\u00e9t\u00e9 \u20ac \ud83d\ude00\","
+            + "\"i\":-12,\"l\":12345678901,\"d\":1.5e3,"
+            + "\"o\":{\"a\":[1, {\"b\" : null}, [] ,{}],\"c\":\"x\\\"}\"},"
+            + "\"n\":null,\"t\":true,\"f\":false,"
+            + "\"q\":['lenient']}";
+        Map<?, ?> control = (Map<?, ?>) new DataObject()
+            .setJsonObject(json)
+            .getJsonObject();
+        JsonFieldIndex index = new JsonFieldIndex(json.getBytes("UTF-8"), 0, json
+            .getBytes("UTF-8").length);
+        for (Object key : control.keySet()) {
+            assertEquals(key.toString(), control.get(key), index.getValue(key
+                .toString()));
+        }
+        assertEquals("a\"b\\c/d\n\t\u00e9\ud83d\ude00", index.getValue("s"));
+        assertEquals("\u00e9t\u00e9 \u20ac \ud83d\ude00", index.getValue("u"));
+        // Null values are not copied to inflated objects
+        Map<Object, Object> expected = new LinkedHashMap<Object, Object>(
+            control);
+        expected.remove("n");
+        assertEquals(expected, new DataObject()
+            .setJsonBytes(json.getBytes("UTF-8"))
+            .getJsonObject());
+    }
+
+}
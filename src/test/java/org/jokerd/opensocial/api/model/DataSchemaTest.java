@@ -0,0 +1,188 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.ubimix.commons.json.JsonObject;
+
+/**
+ * @author kotelnikov
+ */
+public class DataSchemaTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public DataSchemaTest(String name) {
+        super(name);
+    }
+
+    public void testCompact() throws Exception {
+        String json = "{"
+            + "'id':'example.org:john',"
+            + "'displayName':'John',"
+            + "'age':33,"
+            + "'connected':true,"
+            + "'name':{'formatted':'John Smith','extra':'x'},"
+            + "'addresses':[{'formatted':'A','primary':true},{'formatted':'B'}],"
+            + "'unknownField':{'a':'b'}"
+            + "}";
+        Person control = new Person().setJsonObject(json);
+        Person person = new Person().setJsonObject(json);
+        person.compact();
+        assertEquals(control, person);
+        // Known fields are serialized in the order defined by the schema
+        Person copy = new Person().setJsonObject(person.toString());
+        assertEquals(control, copy);
+        assertEquals(33, person.getAge());
+        assertTrue(person.getConnected());
+        assertEquals("John Smith", person.getName().getFormattedName());
+        assertEquals("A", person.getAddresses().getPrimary().getFormatted());
+        assertEquals(control.getKeys(), person.getKeys());
+
+        Object name = person.getName().getJsonObject();
+        assertTrue(name instanceof Map<?, ?>);
+        assertEquals("x", ((Map<?, ?>) name).get("extra"));
+        assertEquals(
+            name.getClass(),
+            person.getAddresses().get(0).getJsonObject().getClass());
+
+        person.setAge(34);
+        assertEquals(34, person.getAge());
+        person.setDisplayName(null);
+        assertNull(person.getString("displayName"));
+        person.removeValue("unknownField");
+        assertFalse(person.getKeys().contains("unknownField"));
+        control.setAge(34);
+        control.setDisplayName(null);
+        control.removeValue("unknownField");
+        assertEquals(control, person);
+    }
+
+    public void testSchema() throws Exception {
+        DataSchema schema = Person.SCHEMA;
+        assertSame(schema, new Person().getSchema());
+        assertSame(Person.class, schema.getType());
+        int age = schema.getFieldIndex("age");
+        assertTrue(age >= 0);
+        assertTrue(schema.isPrimitive(age));
+        int name = schema.getFieldIndex("displayName");
+        assertTrue(name >= 0);
+        assertFalse(schema.isPrimitive(name));
+        assertTrue(schema.getFieldNames().contains("emails"));
+        assertEquals(-1, schema.getFieldIndex("unknownField"));
+        assertSame(
+            Name.SCHEMA,
+            schema.getChildSchema(schema.getFieldIndex("name")));
+        assertSame(
+            Address.SCHEMA,
+            schema.getChildSchema(schema.getFieldIndex("addresses")));
+        assertNull(schema.getChildSchema(name));
+        // Dates are strings, not primitive fields
+        assertFalse(schema.isPrimitive(schema.getFieldIndex("published")));
+        assertFalse(schema.isPrimitive(schema.getFieldIndex("updated")));
+
+        // Parent fields and self references
+        schema = ActivityObject.SCHEMA;
+        assertTrue(Person.SCHEMA.getFieldNames().containsAll(
+            schema.getFieldNames()));
+        assertSame(
+            schema,
+            schema.getChildSchema(schema.getFieldIndex("attachments")));
+        schema = Message.SCHEMA;
+        assertFalse(schema.isPrimitive(schema.getFieldIndex("timeSent")));
+
+        schema = MediaLink.SCHEMA;
+        assertTrue(schema.isPrimitive(schema.getFieldIndex("width")));
+        assertTrue(schema.isPrimitive(schema.getFieldIndex("height")));
+        assertTrue(schema.isPrimitive(schema.getFieldIndex("duration")));
+
+        schema = Collection.SCHEMA;
+        assertTrue(schema.isPrimitive(schema.getFieldIndex("totalResults")));
+        assertTrue(schema.getFieldIndex("entry") >= 0);
+
+        // Schemas are immutable
+        schema = new DataSchema(Name.class).add("a");
+        assertNotSame(schema, schema.addPrimitive("b"));
+        assertEquals(1, schema.getFieldCount());
+        assertTrue(schema.addPrimitive("a").isPrimitive(0));
+        assertFalse(schema.isPrimitive(0));
+    }
+
+    public void testUnboxedReads() throws Exception {
+        Person person = new Person()
+            .setJsonObject("{'age':100000,'connected':true}");
+        person.compact();
+        Map<?, ?> map = (Map<?, ?>) person.getJsonObject();
+        assertEquals(100000, person.getAge());
+        assertTrue(person.getConnected());
+        assertEquals(100000.0, person.getDouble("age", 0));
+        Object age = map.get("age");
+        assertEquals(Integer.valueOf(100000), age);
+        // Boxed values are not kept by the map, even after an iteration
+        assertNotNull(person.toString());
+        assertNotSame(age, map.get("age"));
+        assertEquals(age, map.get("age"));
+        assertEquals(100000, person.getAge());
+        person.setAge(100001);
+        assertEquals(Integer.valueOf(100001), map.get("age"));
+        assertEquals(100001, person.getAge());
+        person.setValue("age", "12");
+        assertEquals(12, person.getAge());
+    }
+
+    public void testCollection() throws Exception {
+        Collection<Person> collection = Collection
+            .getCollectionFactory(Person.FACTORY)
+            .newValue(
+                "{'totalResults':2,'entry':[{'id':'a:b','age':3},{'id':'a:c'}]}");
+        Object control = new JsonObject().setJsonObject(collection.toString());
+        collection.compact();
+        assertEquals(control, new JsonObject().setJsonObject(collection
+            .toString()));
+        assertEquals(2, collection.getTotalResults());
+        assertEquals(3, collection.getEntries().get(0).getAge());
+        assertEquals(
+            Person.SCHEMA.newMap().getClass(),
+            collection.getEntries().get(1).getJsonObject().getClass());
+    }
+
+    public void testRequiredFields() throws Exception {
+        DataSchema[] schemas = {
+            Person.SCHEMA,
+            PersonMin.SCHEMA,
+            Group.SCHEMA,
+            ActivityObject.SCHEMA,
+            Message.SCHEMA };
+        // Schemas declare the same fields as annotations
+        for (DataSchema schema : schemas) {
+            Set<String> fields = new HashSet<String>();
+            for (Class<?> cls = schema.getType(); cls != null; cls = cls
+                .getSuperclass()) {
+                RequiredField annotation = cls
+                    .getAnnotation(RequiredField.class);
+                if (annotation != null) {
+                    fields.addAll(Arrays.asList(annotation.name()));
+                }
+            }
+            assertEquals(
+                schema.toString(),
+                fields,
+                new HashSet<String>(schema.getRequiredFields()));
+        }
+        DataSchema schema = new DataSchema(Name.class).require("a");
+        assertEquals(Arrays.asList("a"), schema.getRequiredFields());
+        assertEquals(
+            Arrays.asList("a"),
+            new DataSchema(Name.class, schema).add("b").getRequiredFields());
+        assertTrue(new DataSchema(Name.class).getRequiredFields().isEmpty());
+    }
+
+}
@@ -0,0 +1,73 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+/**
+ * @author kotelnikov
+ */
+public class EpochDatesTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public EpochDatesTest(String name) {
+        super(name);
+    }
+
+    public void testFormat() throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat(
+            "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        long[] times = {
+            0,
+            1,
+            -1,
+            951782400000L,
+            1297350295123L,
+            4102444799999L,
+            -2208988800000L };
+        for (long time : times) {
+            String str = format.format(new Date(time));
+            assertEquals(str, EpochDates.format(time, true));
+            assertEquals(time, EpochDates.parse(str));
+        }
+        for (long time = -5000000000000L; time < 5000000000000L; time += 86399997L) {
+            String str = EpochDates.format(time, true);
+            assertEquals(format.format(new Date(time)), str);
+            assertEquals(time, EpochDates.parse(str));
+        }
+        assertEquals("2011-02-10T15:04:55Z", EpochDates.format(
+            1297350295123L,
+            false));
+    }
+
+    public void testParse() throws Exception {
+        long time = 1297350295000L;
+        assertEquals(time, EpochDates.parse("2011-02-10T15:04:55Z"));
+        assertEquals(time, EpochDates.parse("2011-02-10T15:04:55"));
+        assertEquals(time, EpochDates.parse("2011-02-10T16:04:55+01:00"));
+        assertEquals(time, EpochDates.parse("2011-02-10T14:34:55-0030"));
+        assertEquals(time, EpochDates.parse("2011-02-10T17:04:55+02"));
+        assertEquals(time + 120, EpochDates.parse("2011-02-10T15:04:55.12Z"));
+        assertEquals(
+            time - 55000 - 4 * 60000 - 15 * 3600000,
+            EpochDates.parse("2011-02-10"));
+        assertEquals(time - 55000, EpochDates.parse("2011-02-10T15:04Z"));
+
+        assertEquals(EpochDates.NO_DATE, EpochDates.parse(null));
+        assertEquals(EpochDates.NO_DATE, EpochDates.parse(""));
+        assertEquals(EpochDates.NO_DATE, EpochDates.parse("2011-02-10T"));
+        assertEquals(EpochDates.NO_DATE, EpochDates.parse("2011-13-10"));
+        assertEquals(EpochDates.NO_DATE, EpochDates.parse("2011-02-10T25:00"));
+        assertEquals(EpochDates.NO_DATE, EpochDates.parse("2011-02-10T15:04X"));
+        assertEquals(EpochDates.NO_DATE, EpochDates.parse("hello world"));
+    }
+
+}
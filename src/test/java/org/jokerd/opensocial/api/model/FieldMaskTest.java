@@ -0,0 +1,188 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.jokerd.opensocial.api.events.People;
+import org.jokerd.opensocial.api.model.io.CollectionReader;
+import org.jokerd.opensocial.api.model.io.JsonStreamReader;
+import org.jokerd.opensocial.api.model.io.JsonStreamWriter;
+import org.ubimix.commons.json.JsonObject;
+
+/**
+ * @author kotelnikov
+ */
+public class FieldMaskTest extends TestCase {
+
+    private final static String PERSON = "{"
+        + "'id':'example.org:john',"
+        + "'displayName':'John',"
+        + "'age':33,"
+        + "'gender':'male',"
+        + "'name':{'formatted':'John Smith','givenName':'John',"
+        + "'familyName':'Smith'},"
+        + "'addresses':[{'formatted':'A','locality':'Paris','primary':true},"
+        + "{'formatted':'B','locality':'Lyon'}],"
+        + "'organizations':[{'name':'Org','title':'CEO'}],"
+        + "'tags':['a','b'],"
+        + "'custom':{'x':1,'y':[1,{'z':'t'}]}"
+        + "}";
+
+    /**
+     * @param name
+     */
+    public FieldMaskTest(String name) {
+        super(name);
+    }
+
+    private JsonObject newExpected(String json) {
+        return new JsonObject().setJsonObject(json);
+    }
+
+    public void testCache() throws Exception {
+        FieldMask mask = FieldMask.compile(Person.SCHEMA, "name.givenName");
+        assertSame(mask, FieldMask.compile(Person.SCHEMA, "name.givenName"));
+
+        // Masks with unknown fields are not cached
+        mask = FieldMask.compile(Person.SCHEMA, "unknown");
+        assertNotSame(mask, FieldMask.compile(Person.SCHEMA, "unknown"));
+        assertTrue(mask.includes("unknown"));
+        mask = FieldMask.compile(Person.SCHEMA, "name.unknown");
+        assertNotSame(mask, FieldMask.compile(Person.SCHEMA, "name.unknown"));
+        assertTrue(mask.getChild("name").includes("unknown"));
+        assertNotSame(
+            FieldMask.compile(null, "age"),
+            FieldMask.compile(null, "age"));
+    }
+
+    public void testCompile() throws Exception {
+        assertSame(FieldMask.ALL, FieldMask.compile(Person.SCHEMA));
+        assertSame(FieldMask.ALL, FieldMask.compile(Person.SCHEMA, "@all"));
+        assertSame(
+            FieldMask.ALL,
+            FieldMask.compile(Person.SCHEMA, "age", FieldMask.ALL_FIELDS));
+        FieldMask mask = FieldMask.compile(
+            Person.SCHEMA,
+            "age",
+            "name.givenName");
+        assertSame(
+            mask,
+            FieldMask.compile(Person.SCHEMA, "name.givenName", "age"));
+
+        // Required fields are always included
+        assertTrue(mask.includes("id"));
+        assertTrue(mask.includes("displayName"));
+        assertTrue(mask.includes("age"));
+        assertTrue(mask.includes("name"));
+        assertFalse(mask.includes("gender"));
+        assertFalse(mask.includes("custom"));
+        assertSame(FieldMask.ALL, mask.getChild("age"));
+        assertNull(mask.getChild("gender"));
+
+        FieldMask name = mask.getChild("name");
+        assertTrue(name.includes("givenName"));
+        assertFalse(name.includes("familyName"));
+
+        // The whole value wins over nested fields
+        mask = FieldMask.compile(Person.SCHEMA, "name.givenName", "name");
+        assertSame(FieldMask.ALL, mask.getChild("name"));
+    }
+
+    public void testProject() throws Exception {
+        Person person = new Person().setJsonObject(PERSON);
+        FieldMask mask = FieldMask.compile(
+            Person.SCHEMA,
+            "name.givenName",
+            "addresses.locality",
+            "organizations.title",
+            "custom.y");
+        Person result = mask.project(person, Person.FACTORY);
+        assertEquals(newExpected("{"
+            + "'id':'example.org:john',"
+            + "'displayName':'John',"
+            + "'name':{'givenName':'John'},"
+            + "'addresses':[{'locality':'Paris'},{'locality':'Lyon'}],"
+            + "'organizations':[{'title':'CEO'}],"
+            + "'custom':{'y':[1,{'z':'t'}]}"
+            + "}").getJsonObject(), result.getJsonObject());
+        assertEquals("John", result.getName().getGivenName());
+        assertEquals("Lyon", result.getAddresses().get(1).getLocality());
+        // The original object is not modified
+        assertEquals(new Person().setJsonObject(PERSON), person);
+        assertSame(person, FieldMask.ALL.project(person, Person.FACTORY));
+    }
+
+    public void testReadWrite() throws Exception {
+        Person person = new Person().setJsonObject(PERSON);
+        FieldMask mask = FieldMask.compile(
+            Person.SCHEMA,
+            "gender",
+            "name.givenName",
+            "addresses.formatted");
+        Object expected = mask.project(person.getJsonObject());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonStreamWriter writer = new JsonStreamWriter(out);
+        writer.write(person, mask).close();
+        byte[] bytes = out.toByteArray();
+        assertEquals(expected, newExpected(new String(bytes, "UTF-8"))
+            .getJsonObject());
+
+        out.reset();
+        writer.reset(out).write(person).close();
+        JsonStreamReader reader = new JsonStreamReader(
+            new ByteArrayInputStream(out.toByteArray()));
+        Object value = reader.readValue(mask);
+        assertEquals(expected, value);
+        assertEquals(-1, reader.peek());
+        assertFalse(((Map<?, ?>) value).containsKey("custom"));
+
+        String collection = "{'startIndex':1,'entry':["
+            + PERSON
+            + ","
+            + PERSON
+            + "],'totalResults':2}";
+        CollectionReader<Person> entries = new CollectionReader<Person>(
+            new ByteArrayInputStream(collection.replace('\'', '"').getBytes(
+                "UTF-8")),
+            Person.FACTORY,
+            mask);
+        int count = 0;
+        while (entries.hasNext()) {
+            assertEquals(expected, entries.next().getJsonObject());
+            count++;
+        }
+        assertEquals(2, count);
+        assertEquals(2, entries.getTotalResults());
+    }
+
+    public void testSkipValue() throws Exception {
+        JsonStreamReader reader = new JsonStreamReader(new ByteArrayInputStream(
+            "[\"a\\\"]}\", {\"b\":[1,{}]}, -1.5e3, true, null, 5]"
+                .getBytes("UTF-8")));
+        reader.expect('[');
+        for (int i = 0; i < 5; i++) {
+            reader.skipValue();
+            assertTrue(reader.readSeparator(']'));
+        }
+        assertEquals(5, reader.readValue());
+        assertFalse(reader.readSeparator(']'));
+    }
+
+    public void testServiceCall() throws Exception {
+        People.Get get = new People.Get();
+        assertTrue(get.getFieldMask().isAll());
+        get.setFields("gender", "name.givenName");
+        FieldMask mask = get.getFieldMask();
+        assertTrue(mask.includes("gender"));
+        assertFalse(mask.includes("age"));
+        assertTrue(mask.getChild("name").includes("givenName"));
+    }
+
+}
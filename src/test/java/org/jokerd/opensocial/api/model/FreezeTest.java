@@ -0,0 +1,194 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+/**
+ * @author kotelnikov
+ */
+public class FreezeTest extends TestCase {
+
+    private final static String PERSON = "{"
+        + "'id':'example.org:john',"
+        + "'displayName':'John',"
+        + "'age':33,"
+        + "'name':{'givenName':'John','familyName':'Smith'},"
+        + "'addresses':[{'formatted':'A','locality':'Paris','primary':true},"
+        + "{'formatted':'B','locality':'Lyon'}],"
+        + "'tags':['a','b']"
+        + "}";
+
+    /**
+     * @param name
+     */
+    public FreezeTest(String name) {
+        super(name);
+    }
+
+    private void checkFrozen(Person person) {
+        assertTrue(person.isFrozen());
+        try {
+            person.setAge(10);
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            person.removeValue("age");
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            person.setValues("tags", "c");
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            person.setJsonObject("{'id':'example.org:bob'}");
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            person.getName().setValue("givenName", "Bob");
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            person.getAddresses().get(0).setValue("locality", "Rome");
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            person.getTags().add("c");
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        person.setCacheEnabled(true);
+        assertFalse(person.isCacheEnabled());
+    }
+
+    public void testConcurrentAccess() throws Exception {
+        Person person = new Person().setJsonObject(PERSON);
+        final Person frozen = person.freeze();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        int count = 0;
+                        for (int j = 0; j < 1000; j++) {
+                            count += frozen.getAddresses().size();
+                            count += frozen.getName().getGivenName().length();
+                            Person copy = frozen.thaw();
+                            copy.setAge(j);
+                            copy.getName().setValue("givenName", "Bob");
+                        }
+                        return count;
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(6000, result.get().intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(person, frozen);
+    }
+
+    public void testFreeze() throws Exception {
+        Person person = new Person().setJsonObject(PERSON);
+        person.setCacheEnabled(true);
+        Person frozen = person.freeze();
+        assertNotSame(person, frozen);
+        assertSame(frozen, frozen.freeze());
+        assertEquals(person, frozen);
+        assertEquals(person.hashCode(), frozen.hashCode());
+        assertEquals(person.toString(), frozen.toString());
+        checkFrozen(frozen);
+
+        // The original object is still modifiable
+        assertFalse(person.isFrozen());
+        assertSame(person, person.thaw());
+        person.setAge(34);
+        person.getName().setValue("givenName", "Bob");
+        assertEquals(33, frozen.getAge());
+        assertEquals("John", frozen.getName().getGivenName());
+
+        // Lazy objects are parsed before freezing
+        Person lazy = new Person().setJsonBytes(PERSON
+            .replace('\'', '"')
+            .getBytes("UTF-8"));
+        Person lazyFrozen = lazy.freeze();
+        assertFalse(lazyFrozen.isLazy());
+        checkFrozen(lazyFrozen);
+        assertEquals(new Person().setJsonObject(PERSON), lazyFrozen);
+    }
+
+    public void testNewInstance() throws Exception {
+        DataObject[] objects = {
+            new Person(),
+            new PersonMin(),
+            new Message(),
+            new ActivityEntry(),
+            new Name(),
+            new Patch() };
+        for (DataObject object : objects) {
+            object.setValue("id", "a:b");
+            DataObject frozen = object.freeze();
+            assertSame(object.getClass(), frozen.getClass());
+            assertSame(object.getClass(), frozen.thaw().getClass());
+            assertEquals(object, frozen);
+        }
+
+        // Subclasses have to create their own copies
+        DataObject object = new DataObject() {
+        };
+        try {
+            object.freeze();
+            fail();
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    public void testThaw() throws Exception {
+        Person person = new Person().setJsonObject(PERSON);
+        Person frozen = person.freeze();
+        Person copy = frozen.thaw();
+        assertFalse(copy.isFrozen());
+        assertEquals(frozen, copy);
+
+        copy.setAge(40);
+        copy.getName().setValue("givenName", "Bob");
+        copy.getAddresses().get(1).setValue("locality", "Rome");
+        copy.getTags().add("c");
+        assertEquals(40, copy.getAge());
+        assertEquals("Bob", copy.getName().getGivenName());
+        assertEquals("Rome", copy.getAddresses().get(1).getLocality());
+        assertEquals(3, copy.getTags().size());
+        assertEquals(new Person().setJsonObject(PERSON), frozen);
+
+        // Snapshots of thawed objects share unmodified values
+        Person second = copy.freeze();
+        checkFrozen(second);
+        assertEquals(copy, second);
+        Object tags = frozen.getValue("tags", DataObject.RAW_FACTORY);
+        Person other = frozen.thaw();
+        other.setAge(1);
+        Person third = other.freeze();
+        assertSame(tags, third.getValue("tags", DataObject.RAW_FACTORY));
+        assertSame(
+            frozen.getValue("name", DataObject.RAW_FACTORY),
+            third.getValue("name", DataObject.RAW_FACTORY));
+    }
+
+}
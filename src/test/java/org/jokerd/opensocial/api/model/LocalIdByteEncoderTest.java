@@ -0,0 +1,93 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * @author kotelnikov
+ */
+public class LocalIdByteEncoderTest extends TestCase {
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * @param name
+     */
+    public LocalIdByteEncoderTest(String name) {
+        super(name);
+    }
+
+    public void test() throws Exception {
+        test("");
+        test("abc");
+        test("\"'-é:");
+        test("123abc");
+        test("мама мыла раму");
+        test("http://opensocial-resources.googlecode.com/svn/spec/trunk/Core-Data.xml#Local-Id");
+        test("𝄞 clef");
+        test("smile 😀!");
+        test("😀𝄞");
+    }
+
+    private void test(String str) {
+        LocalIdEncoder stringEncoder = new LocalIdEncoder();
+        LocalIdByteEncoder encoder = new LocalIdByteEncoder();
+        String control = stringEncoder.encode(str);
+        byte[] bytes = str.getBytes(UTF8);
+
+        // Arrays
+        byte[] encoded = new byte[LocalIdByteEncoder
+            .getMaxEncodedLength(bytes.length) + 1];
+        int len = encoder.encode(bytes, 0, bytes.length, encoded, 1);
+        assertEquals(control, new String(encoded, 1, len, UTF8));
+        byte[] decoded = new byte[len];
+        int decodedLen = encoder.decode(encoded, 1, len, decoded, 0);
+        assertTrue(Arrays.equals(
+            bytes,
+            Arrays.copyOfRange(decoded, 0, decodedLen)));
+        assertEquals(str, stringEncoder.decode(new String(
+            encoded,
+            1,
+            len,
+            UTF8)));
+
+        // Buffers
+        ByteBuffer src = ByteBuffer.wrap(bytes);
+        ByteBuffer dst = ByteBuffer.allocateDirect(LocalIdByteEncoder
+            .getMaxEncodedLength(bytes.length));
+        encoder.encode(src, dst);
+        assertFalse(src.hasRemaining());
+        dst.flip();
+        ByteBuffer result = ByteBuffer.allocate(dst.remaining());
+        encoder.decode(dst, result);
+        result.flip();
+        assertEquals(str, UTF8.decode(result).toString());
+    }
+
+    public void testObjectIds() throws Exception {
+        testObjectId("example.org:34KJDCSKJN2HHF0DW20394");
+        testObjectId("34KJDCSKJN2HHF0DW20394");
+        testObjectId("мама.рф:мыла раму");
+        testObjectId("http://example.org/inbox/message/123");
+    }
+
+    private void testObjectId(String str) {
+        byte[] bytes = ("[" + str + "]").getBytes(UTF8);
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        buf.position(1).limit(bytes.length - 1);
+        ObjectId id = LocalIdByteEncoder.getInstance().newObjectId(
+            buf.slice());
+        ObjectId control = new ObjectId(str);
+        assertEquals(control, id);
+        assertEquals(control.getDomainName(), id.getDomainName());
+        assertEquals(control.getLocalId(), id.getLocalId());
+        assertEquals(control.toString(), id.toString());
+    }
+
+}
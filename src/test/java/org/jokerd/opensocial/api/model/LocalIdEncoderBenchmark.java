@@ -0,0 +1,199 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+/**
+ * Compares the performance of the {@link LocalIdEncoder} with the initial
+ * {@link StringBuffer}-based implementation. This is not a unit test: timings
+ * depend on the machine, so the benchmark is not a part of the test suite
+ * and should be launched manually using the {@link #main(String[])} method.
+ * 
+ * @author kotelnikov
+ */
+public class LocalIdEncoderBenchmark {
+
+    /**
+     * A copy of the initial implementation of the encoder used as a reference
+     * for comparisons.
+     */
+    private static class LegacyEncoder {
+
+        private void appendEscaped(StringBuffer buf, int ch) {
+            String str = Integer.toHexString(ch).toUpperCase();
+            buf.append('_');
+            buf.append(str);
+        }
+
+        public String decode(String value) {
+            StringBuffer buf = new StringBuffer();
+            char[] array = value.toCharArray();
+            int ch = 0;
+            int chPos = 0;
+            int chLen = 1;
+            for (int i = 0; i < array.length; i++) {
+                char currentByte = array[i];
+                if (currentByte == '_') {
+                    if (i < array.length - 2) {
+                        String s = new String(array, i + 1, 2);
+                        int code = (char) Integer.parseInt(s, 16);
+                        i += 2;
+                        if (chPos == 0) {
+                            if (code >= 0x00 && code <= 0x7F) {
+                                chLen = 1;
+                                code &= (0xFF >>> 1);
+                            } else if (code >= 0xC2 && code <= 0xDF) {
+                                chLen = 2;
+                                code &= (0xFF >>> 3);
+                            } else if (code >= 0xE0 && code <= 0xEF) {
+                                chLen = 3;
+                                code &= (0xFF >>> 4);
+                            }
+                        } else {
+                            code &= (0xFF >>> 2);
+                        }
+                        if (chPos == chLen - 1) {
+                            ch |= code;
+                        } else if (chPos == chLen - 2) {
+                            ch |= code << 6;
+                        } else if (chPos == chLen - 3) {
+                            ch |= code << 12;
+                        }
+                    }
+                } else {
+                    ch = currentByte;
+                    chLen = 1;
+                }
+                chPos++;
+                if (chPos >= chLen) {
+                    buf.append((char) ch);
+                    ch = 0;
+                    chPos = 0;
+                }
+            }
+            return buf.toString();
+        }
+
+        public String encode(String value) {
+            StringBuffer buf = new StringBuffer();
+            char[] array = value.toCharArray();
+            for (int i = 0; i < array.length; i++) {
+                char ch = array[i];
+                if (ch < 128) {
+                    if ((ch >= 'A' && ch <= 'Z')
+                        || (ch >= 'a' && ch <= 'z')
+                        || (i > 0 && ch >= '0' && ch <= '9')
+                        || ch == '.'
+                        || ch == '-') {
+                        buf.append(ch);
+                    } else {
+                        appendEscaped(buf, ch);
+                    }
+                } else if ((ch > 127) && (ch < 2048)) {
+                    appendEscaped(buf, (ch >>> 6) | 192);
+                    appendEscaped(buf, (ch & 63) | 128);
+                } else {
+                    appendEscaped(buf, (ch >>> 12) | 224);
+                    appendEscaped(buf, ((ch >>> 6) & 63) | 128);
+                    appendEscaped(buf, (ch & 63) | 128);
+                }
+            }
+            return buf.toString();
+        }
+    }
+
+    private final static int ITERATIONS = 20000;
+
+    private final static String[] VALUES = {
+        "facebook.com",
+        "twitter.com",
+        "example.org",
+        "34KJDCSKJN2HHF0DW20394",
+        "john.smith",
+        "мама мыла раму",
+        "http://example.org/inbox/message/42" };
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    public static void main(String[] args) {
+        new LocalIdEncoderBenchmark().run();
+    }
+
+    private long runLegacy(LegacyEncoder encoder) {
+        long start = System.nanoTime();
+        int len = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (String value : VALUES) {
+                String encoded = encoder.encode(value);
+                len += encoder.decode(encoded).length();
+            }
+        }
+        check(len > 0, "Nothing was decoded");
+        return System.nanoTime() - start;
+    }
+
+    private long runNew(LocalIdEncoder encoder) {
+        long start = System.nanoTime();
+        int len = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (String value : VALUES) {
+                String encoded = encoder.encode(value);
+                len += encoder.decode(encoded).length();
+            }
+        }
+        check(len > 0, "Nothing was decoded");
+        return System.nanoTime() - start;
+    }
+
+    private long runNewBuffers(LocalIdEncoder encoder) {
+        char[][] values = new char[VALUES.length][];
+        for (int i = 0; i < VALUES.length; i++) {
+            values[i] = VALUES[i].toCharArray();
+        }
+        char[] encoded = new char[LocalIdEncoder.getMaxEncodedLength(64)];
+        char[] decoded = new char[encoded.length];
+        long start = System.nanoTime();
+        int len = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (char[] value : values) {
+                int n = encoder.encode(value, 0, value.length, encoded, 0);
+                len += encoder.decode(encoded, 0, n, decoded, 0);
+            }
+        }
+        check(len > 0, "Nothing was decoded");
+        return System.nanoTime() - start;
+    }
+
+    public void run() {
+        LegacyEncoder legacy = new LegacyEncoder();
+        LocalIdEncoder encoder = new LocalIdEncoder();
+        for (String value : VALUES) {
+            check(
+                legacy.encode(value).equals(encoder.encode(value)),
+                "Different encoded values for '" + value + "'");
+        }
+
+        // Warm-up
+        runLegacy(legacy);
+        runNew(encoder);
+        runNewBuffers(encoder);
+
+        long legacyTime = runLegacy(legacy);
+        long newTime = runNew(encoder);
+        long buffersTime = runNewBuffers(encoder);
+        System.out.println("LocalIdEncoder: "
+            + (ITERATIONS * VALUES.length)
+            + " encode/decode cycles; legacy: "
+            + (legacyTime / 1000000)
+            + "ms, strings: "
+            + (newTime / 1000000)
+            + "ms, char buffers: "
+            + (buffersTime / 1000000)
+            + "ms");
+    }
+
+}
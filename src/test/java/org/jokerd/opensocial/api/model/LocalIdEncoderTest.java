@@ -19,6 +19,26 @@ public class LocalIdEncoderTest extends TestCase {
         super(name);
     }
 
+    private void checkEncoders(String str) throws Exception {
+        LocalIdEncoder encoder = new LocalIdEncoder();
+        String encoded = encoder.encode(str);
+
+        StringBuilder buf = new StringBuilder();
+        encoder.encode(str, buf);
+        assertEquals(encoded, buf.toString());
+        buf.setLength(0);
+        encoder.decode(encoded, buf);
+        assertEquals(str, buf.toString());
+
+        char[] array = str.toCharArray();
+        char[] out = new char[LocalIdEncoder.getMaxEncodedLength(array.length) + 2];
+        int len = encoder.encode(array, 0, array.length, out, 2);
+        assertEquals(encoded, new String(out, 2, len));
+        char[] decoded = new char[len + 1];
+        len = encoder.decode(out, 2, len, decoded, 1);
+        assertEquals(str, new String(decoded, 1, len));
+    }
+
     public void test() throws Exception {
         test("");
         test("abc");
@@ -26,6 +46,42 @@ public class LocalIdEncoderTest extends TestCase {
         test("123abc");
         test("мама мыла раму");
         test("http://opensocial-resources.googlecode.com/svn/spec/trunk/Core-Data.xml#Local-Id");
+        test("\uD834\uDD1E clef");
+        test("smile \uD83D\uDE00!");
+    }
+
+    public void testBuffers() throws Exception {
+        checkEncoders("");
+        checkEncoders("abc");
+        checkEncoders("\"'-é:");
+        checkEncoders("123abc");
+        checkEncoders("мама мыла раму");
+        checkEncoders("tab\tand\nnew line");
+        checkEncoders("\uD83D\uDE00\uD834\uDD1E");
+    }
+
+    /**
+     * Encoded values should be the same as values produced by the initial
+     * implementation of the encoder.
+     */
+    public void testEncodedFormat() throws Exception {
+        LocalIdEncoder encoder = new LocalIdEncoder();
+        assertEquals("_3123abc", encoder.encode("123abc"));
+        assertEquals("a_20b_3Ac", encoder.encode("a b:c"));
+        assertEquals("_C3_A9t_C3_A9", encoder.encode("été"));
+        assertEquals("_E2_82_AC", encoder.encode("\u20AC"));
+        assertEquals("été", encoder.decode("_C3_A9t_C3_A9"));
+    }
+
+    public void testSafeValues() throws Exception {
+        LocalIdEncoder encoder = new LocalIdEncoder();
+        String str = "facebook.com";
+        assertTrue(encoder.isSafe(str));
+        assertSame(str, encoder.encode(str));
+        assertSame(str, encoder.decode(str));
+        assertFalse(encoder.isSafe("1abc"));
+        assertFalse(encoder.isSafe("a_b"));
+        assertEquals("_09", encoder.encode("\t"));
     }
 
     private void test(String str) {
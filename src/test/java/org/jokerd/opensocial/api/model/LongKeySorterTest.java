@@ -0,0 +1,139 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+/**
+ * @author kotelnikov
+ */
+public class LongKeySorterTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public LongKeySorterTest(String name) {
+        super(name);
+    }
+
+    private List<Message> newMessages(int count) {
+        Random random = new Random(count);
+        List<Message> messages = new ArrayList<Message>();
+        for (int i = 0; i < count; i++) {
+            Message message = new Message();
+            message.setValue("id", "message-" + i);
+            // Some dates are equal to check that the sort is stable
+            long time = 1300000000000L + random.nextInt(count / 2 + 1) * 1000L;
+            if (i % 17 != 0) {
+                message.setValue("updated", EpochDates.format(time, false));
+            }
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    public void testDateCache() throws Exception {
+        Message message = new Message();
+        message.setValue("updated", "2011-02-10T15:04:55Z");
+        message.setValue("timeSent", "2011-02-10T15:00:00Z");
+        long updated = EpochDates.parse("2011-02-10T15:04:55Z");
+        assertEquals(updated, message.getUpdatedMillis());
+        assertEquals(updated, message.getUpdatedMillis());
+        assertEquals(
+            EpochDates.parse("2011-02-10T15:00:00Z"),
+            message.getTimeSentMillis());
+
+        message.setValue("updated", "2012-01-01T00:00:00Z");
+        assertEquals(
+            EpochDates.parse("2012-01-01T00:00:00Z"),
+            message.getUpdatedMillis());
+        message.removeValue("updated");
+        assertEquals(EpochDates.NO_DATE, message.getUpdatedMillis());
+        message.setValue("updated", "not a date");
+        assertEquals(EpochDates.NO_DATE, message.getUpdatedMillis());
+
+        // Replaced JSON objects
+        message.setJsonObject("{'updated':'2011-02-10T15:04:55Z'}");
+        assertEquals(updated, message.getUpdatedMillis());
+
+        ActivityEntry entry = new ActivityEntry();
+        entry.setValue("published", "2011-02-10T15:04:55Z");
+        ActivityEntry frozen = entry.freeze();
+        assertEquals(updated, frozen.getPublishedMillis());
+        assertEquals(updated, frozen.getPublishedMillis());
+        assertEquals(EpochDates.NO_DATE, frozen.getUpdatedMillis());
+
+        ActivityObject object = new ActivityObject();
+        object.setValue("updated", "2011-02-10T15:04:55Z");
+        assertEquals(updated, object.getUpdatedMillis());
+        assertEquals(EpochDates.NO_DATE, object.getPublishedMillis());
+    }
+
+    public void testParallelSort() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int size : new int[] { 10, 100, 1000, 5000 }) {
+                List<Message> control = newMessages(size);
+                List<Message> messages = new ArrayList<Message>(control);
+                Collections.sort(control, Message.COMPARATOR);
+                ParallelLongKeySorter.sort(
+                    messages,
+                    Message.UPDATED_KEY,
+                    true,
+                    executor,
+                    size / 7 + 1);
+                assertEquals(control, messages);
+                assertSameOrder(control, messages);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void assertSameOrder(List<Message> control, List<Message> list) {
+        assertEquals(control.size(), list.size());
+        for (int i = 0; i < control.size(); i++) {
+            assertSame(control.get(i), list.get(i));
+        }
+    }
+
+    public void testSort() throws Exception {
+        for (int size : new int[] { 0, 1, 2, 10, 100, 1000 }) {
+            List<Message> control = newMessages(size);
+            List<Message> messages = new LinkedList<Message>(control);
+            Collections.sort(control, Message.COMPARATOR);
+            LongKeySorter.sort(messages, Message.UPDATED_KEY, true);
+            assertSameOrder(control, messages);
+        }
+
+        List<Long> values = new ArrayList<Long>();
+        Random random = new Random(1);
+        for (int i = 0; i < 500; i++) {
+            values.add(random.nextLong());
+        }
+        values.add(Long.MIN_VALUE);
+        values.add(Long.MAX_VALUE);
+        List<Long> control = new ArrayList<Long>(values);
+        Collections.sort(control);
+        LongKeySorter.ILongKey<Long> key = new LongKeySorter.ILongKey<Long>() {
+            public long getKey(Long value) {
+                return value;
+            }
+        };
+        LongKeySorter.sort(values, key, false);
+        assertEquals(control, values);
+        Collections.reverse(control);
+        LongKeySorter.sort(values, key, true);
+        assertEquals(control, values);
+    }
+
+}
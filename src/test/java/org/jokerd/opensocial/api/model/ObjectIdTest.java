@@ -0,0 +1,88 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import junit.framework.TestCase;
+
+/**
+ * @author kotelnikov
+ */
+public class ObjectIdTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public ObjectIdTest(String name) {
+        super(name);
+    }
+
+    public void testDomainNames() throws Exception {
+        DomainName first = DomainName.valueOf("facebook.com");
+        DomainName second = DomainName.FACTORY.newValue("facebook.com");
+        assertSame(first, second);
+        assertSame(first, new ObjectId("facebook.com:123").getDomainName());
+        assertSame(first, new ObjectId("facebook.com", "456").getDomainName());
+        assertSame(first, new DomainName("facebook.com").intern());
+        assertNotSame(first, DomainName.valueOf("twitter.com"));
+        assertEquals(DomainName.valueOf("my domain"), new DomainName(
+            "my domain"));
+    }
+
+    public void testParsing() throws Exception {
+        StringBuilder buf = new StringBuilder("example.org:34KJDCSKJN2HHF0DW20394");
+        ObjectId id = new ObjectId(buf);
+        buf.setLength(0);
+        assertEquals("example.org:34KJDCSKJN2HHF0DW20394", id.toString());
+        assertEquals("34KJDCSKJN2HHF0DW20394", id.getLocalId());
+        assertSame(id.getLocalId(), id.getLocalId());
+        assertSame(DomainName.valueOf("example.org"), id.getDomainName());
+        assertEquals(id.toString().hashCode(), id.hashCode());
+        assertSame(id.toString(), id.toString());
+
+        ObjectId copy = ObjectId.FACTORY.newValue(id.toString());
+        assertEquals(id, copy);
+        assertEquals(id, new UserId(id));
+        assertEquals(new GroupId(id), copy);
+        assertEquals(
+            new ObjectId("example.org:john.smith"),
+            new ObjectId("example.org", "john.smith"));
+
+        id = new ObjectId("local-only");
+        assertNull(id.getDomainName());
+        assertEquals("local-only", id.getLocalId());
+        assertEquals("local-only", id.toString());
+        assertFalse(id.equals(new ObjectId(":local-only")));
+
+        id = new ObjectId("my domain:мама мыла раму");
+        assertEquals("my_20domain", id.getDomainName().toString());
+        assertEquals("мама мыла раму", id.getLocalId());
+        assertEquals("my_20domain:мама мыла раму", id.toString());
+        assertEquals(id.toString().hashCode(), id.hashCode());
+        assertEquals(id, new ObjectId(new StringBuilder(
+            "my domain:мама мыла раму")));
+        assertSame(id.toString(), id.toString());
+        assertFalse(id.equals(new ObjectId("other:мама мыла раму")));
+        assertFalse(new ObjectId("a:b").equals(new ObjectId("b")));
+
+        id = new ObjectId(DomainName.valueOf("example.org"), "мама");
+        String decoded = id.getLocalIdDecoded();
+        assertEquals("мама", decoded);
+        assertSame(decoded, id.getLocalIdDecoded());
+    }
+
+    public void testReservedIds() throws Exception {
+        assertSame(UserId.ME, UserId.FACTORY.newValue("@me"));
+        assertSame(UserId.OWNER, UserId.valueOf("@owner"));
+        assertSame(UserId.VIEWER, UserId.valueOf("@viewer"));
+        assertSame(GroupId.SELF, GroupId.FACTORY.newValue("@self"));
+        assertSame(GroupId.FRIENDS, GroupId.valueOf("@friends"));
+        assertSame(GroupId.ALL, GroupId.valueOf("@all"));
+
+        UserId id = UserId.valueOf("example.org:123");
+        assertEquals(new UserId("example.org:123"), id);
+        assertEquals("example.org", id.getDomainName().toString());
+        assertEquals("123", id.getLocalId());
+    }
+
+}
@@ -0,0 +1,161 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * @author kotelnikov
+ */
+public class PatchTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public PatchTest(String name) {
+        super(name);
+    }
+
+    private Patch checkDiff(String from, String to) {
+        Person first = new Person().setJsonObject(from);
+        Person second = new Person().setJsonObject(to);
+        Patch patch = Patch.diff(first, second);
+
+        // Patches are applied to copies of nested values
+        Person control = new Person().setJsonObject(from);
+        Person result = patch.apply(first);
+        assertSame(first, result);
+        assertEquals(second, result);
+
+        // Serialized patches give the same results
+        Patch copy = new Patch().setJsonObject(patch.toString());
+        Person test = new Person().setJsonObject(from);
+        copy.apply(test);
+        assertEquals(second, test);
+        assertTrue(Patch.diff(second, test).isEmpty());
+
+        // Nested values shared with other objects are not modified
+        Person shared = new Person().setJsonObject(
+            new LinkedHashMap<Object, Object>((Map<?, ?>) control
+                .getJsonObject()));
+        patch.apply(shared);
+        assertEquals(second, shared);
+        assertEquals(new Person().setJsonObject(from), control);
+        return patch;
+    }
+
+    public void testArrays() throws Exception {
+        checkDiff("{'tags':['a','b','c']}", "{'tags':['a','b','c','d']}");
+        checkDiff("{'tags':['a','b','c']}", "{'tags':['x','a','b','c']}");
+        checkDiff("{'tags':['a','b','c']}", "{'tags':['a','c']}");
+        checkDiff("{'tags':['a','b','c']}", "{'tags':[]}");
+        checkDiff("{'tags':[]}", "{'tags':['a','b']}");
+        checkDiff("{'tags':['a','b','c','d','e']}", "{'tags':['e','c','a','x']}");
+        checkDiff("{'tags':['a','b','c']}", "{'tags':'a'}");
+
+        // Only the modified element is included in the patch
+        Patch patch = checkDiff(
+            "{'emails':["
+                + "{'value':'a@x.org','type':'work','primary':true},"
+                + "{'value':'b@x.org','type':'home'},"
+                + "{'value':'c@x.org','type':'other'}]}",
+            "{'emails':["
+                + "{'value':'a@x.org','type':'work'},"
+                + "{'value':'b@x.org','type':'home','primary':true},"
+                + "{'value':'d@x.org','type':'other'},"
+                + "{'value':'c@x.org','type':'other'}]}");
+        List<PatchOperation> operations = patch.getOperations();
+        assertEquals(3, operations.size());
+        assertEquals(PatchOperation.REMOVE, operations.get(0).getOp());
+        assertEquals("/emails/0/primary", operations.get(0).getPath());
+        assertEquals(PatchOperation.ADD, operations.get(1).getOp());
+        assertEquals("/emails/1/primary", operations.get(1).getPath());
+        assertEquals(PatchOperation.ADD, operations.get(2).getOp());
+        assertEquals("/emails/2", operations.get(2).getPath());
+    }
+
+    public void testErrors() throws Exception {
+        Patch patch = new Patch().addOperation(new PatchOperation(
+            PatchOperation.REPLACE,
+            "/tags/5",
+            "x"));
+        Person person = new Person().setJsonObject("{'tags':['a']}");
+        try {
+            patch.apply(person);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        patch = new Patch().addOperation(new PatchOperation(
+            "move",
+            "/a/b",
+            "x"));
+        person = new Person().setJsonObject("{'a':{}}");
+        try {
+            patch.apply(person);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testFields() throws Exception {
+        Patch patch = checkDiff(
+            "{'id':'a:b','status':'old','age':3,'name':{'givenName':'John'}}",
+            "{'id':'a:b','status':'new','age':3,'name':{'givenName':'John',"
+                + "'familyName':'Smith'},'a/b~c':1}");
+        List<PatchOperation> operations = patch.getOperations();
+        assertEquals(3, operations.size());
+        assertEquals(PatchOperation.REPLACE, operations.get(0).getOp());
+        assertEquals("/status", operations.get(0).getPath());
+        assertEquals("new", operations.get(0).getValue());
+        assertEquals("/name/familyName", operations.get(1).getPath());
+        assertEquals("/a~1b~0c", operations.get(2).getPath());
+
+        checkDiff("{'id':'a:b','status':'old'}", "{'id':'a:b'}");
+        checkDiff("{'id':'a:b'}", "{'id':'a:b'}");
+        Person first = new Person().setJsonObject("{'a':[1,{'b':2}]}");
+        Person second = new Person().setJsonObject("{'a':[1,{'b':2}]}");
+        assertTrue(Patch.diff(first, second).isEmpty());
+
+        // The patch is applied to the live view of plural fields
+        Person person = new Person().setJsonObject("{'tags':['a','b']}");
+        PluralFields<String> tags = person.getTags();
+        assertEquals(2, tags.size());
+        Person update = new Person().setJsonObject("{'tags':['b']}");
+        Patch.diff(person, update).apply(person);
+        assertEquals(1, tags.size());
+        assertEquals("b", tags.get(0));
+    }
+
+    public void testValuesNotShared() throws Exception {
+        Person from = new Person().setJsonObject("{'id':'a:b'}");
+        Person to = new Person().setJsonObject(
+            "{'id':'a:b','name':{'givenName':'John'},'tags':[]}");
+        Patch patch = Patch.diff(from, to);
+        Person first = new Person().setJsonObject("{'id':'a:b'}");
+        Person second = new Person().setJsonObject("{'id':'a:b'}");
+        patch.apply(first);
+        patch.apply(second);
+        first.getName().setGivenName("Changed");
+        first.getTags().add("x");
+        assertEquals("John", second.getName().getGivenName());
+        assertEquals("John", to.getName().getGivenName());
+        assertEquals(0, second.getTags().size());
+        assertEquals(0, to.getTags().size());
+        assertEquals("John", ((Map<?, ?>) patch
+            .getOperations()
+            .get(0)
+            .getValue()).get("givenName"));
+
+        // Changes of the target object do not change the patch
+        to.getName().setGivenName("Other");
+        Person third = new Person().setJsonObject("{'id':'a:b'}");
+        patch.apply(third);
+        assertEquals("John", third.getName().getGivenName());
+    }
+
+}
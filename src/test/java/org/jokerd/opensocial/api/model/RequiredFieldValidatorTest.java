@@ -0,0 +1,149 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.jokerd.opensocial.api.model.RequiredFieldValidator.IViolationListener;
+import org.jokerd.opensocial.api.model.RequiredFieldValidator.Violation;
+import org.jokerd.opensocial.api.model.io.CollectionReader;
+import org.ubimix.commons.json.JsonObject;
+import org.ubimix.commons.json.JsonValue.IJsonValueFactory;
+
+/**
+ * @author kotelnikov
+ */
+public class RequiredFieldValidatorTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public RequiredFieldValidatorTest(String name) {
+        super(name);
+    }
+
+    private List<Person> newPeople(int count) {
+        List<Person> list = new ArrayList<Person>();
+        for (int i = 0; i < count; i++) {
+            String json;
+            if (i % 10 == 3) {
+                json = "{'id':'x:" + i + "'}";
+            } else if (i % 10 == 7) {
+                json = "{'id':'','displayName':'P" + i + "'}";
+            } else {
+                json = "{'id':'x:" + i + "','displayName':'P" + i + "'}";
+            }
+            list.add(Person.FACTORY.newValue(json));
+        }
+        return list;
+    }
+
+    private Object newRaw(String json) {
+        return new JsonObject().setJsonObject(json).getJsonObject();
+    }
+
+    public void testBatch() throws Exception {
+        RequiredFieldValidator validator = RequiredFieldValidator
+            .getValidator(Person.SCHEMA);
+        List<Person> people = newPeople(1000);
+        List<Violation> violations = validator.validate(people);
+        assertEquals(200, violations.size());
+        assertEquals(3, violations.get(0).getIndex());
+        assertEquals("displayName", violations
+            .get(0)
+            .getMissingFields()
+            .get(0));
+        assertEquals(7, violations.get(1).getIndex());
+        assertEquals("id", violations.get(1).getMissingFields().get(0));
+        assertSame(people.get(7), violations.get(1).getObject());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Violation> parallel = validator.validate(people, executor, 64);
+            assertEquals(violations.size(), parallel.size());
+            for (int i = 0; i < parallel.size(); i++) {
+                assertEquals(
+                    violations.get(i).getIndex(),
+                    parallel.get(i).getIndex());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Collection<Person> collection = new Collection<Person>(Person.FACTORY);
+        collection.setEntries(people.subList(0, 10));
+        assertEquals(2, validator.validate(collection).size());
+    }
+
+    public void testParsing() throws Exception {
+        RequiredFieldValidator validator = RequiredFieldValidator
+            .getValidator(Person.SCHEMA);
+        final List<Violation> rejected = new ArrayList<Violation>();
+        IViolationListener listener = new IViolationListener() {
+            public void onViolation(Violation violation) {
+                rejected.add(violation);
+            }
+        };
+        IJsonValueFactory<Person> factory = validator.newFactory(
+            Person.FACTORY,
+            listener);
+        assertNotNull(factory.newValue(newRaw("{'id':'x:a','displayName':'A'}")));
+        assertNull(factory.newValue(newRaw("{'id':'x:a'}")));
+        assertEquals(1, rejected.size());
+
+        rejected.clear();
+        String json = "{'entry':["
+            + "{'id':'x:1','displayName':'A'},"
+            + "{'id':'x:2'},"
+            + "{'displayName':'C'},"
+            + "{'id':'x:4','displayName':'D'}"
+            + "],'totalResults':4}";
+        CollectionReader<Person> reader = new CollectionReader<Person>(
+            new ByteArrayInputStream(json.replace('\'', '"').getBytes("UTF-8")),
+            Person.FACTORY).setValidator(validator, listener);
+        List<String> ids = new ArrayList<String>();
+        while (reader.hasNext()) {
+            ids.add(reader.next().getIdAsString());
+        }
+        assertEquals(2, ids.size());
+        assertEquals("x:4", ids.get(1));
+        assertEquals(2, rejected.size());
+        assertEquals(1, rejected.get(0).getIndex());
+        assertEquals(2, rejected.get(1).getIndex());
+        assertEquals(4, reader.getTotalResults());
+    }
+
+    public void testValidator() throws Exception {
+        RequiredFieldValidator validator = RequiredFieldValidator
+            .getValidator(Person.SCHEMA);
+        assertSame(
+            validator,
+            RequiredFieldValidator.getValidator(Person.SCHEMA));
+        assertTrue(validator.getRequiredFields().contains("id"));
+        assertTrue(validator.getRequiredFields().contains("displayName"));
+        assertTrue(validator.isValid(Person.FACTORY
+            .newValue("{'id':'x:a','displayName':'A'}")));
+        assertFalse(validator.isValid(Person.FACTORY
+            .newValue("{'id':'x:a','displayName':null}")));
+        assertFalse(validator.isValid(null));
+
+        // Lazy objects are not parsed entirely
+        Person lazy = new Person().setJsonBytes("{\"id\":\"x:a\",\"displayName\":\"A\",\"age\":1}"
+            .getBytes("UTF-8"));
+        assertTrue(validator.isValid(lazy));
+        assertTrue(lazy.isLazy());
+
+        validator = RequiredFieldValidator.getValidator(DataObject.SCHEMA);
+        assertTrue(validator.getRequiredFields().isEmpty());
+        assertTrue(validator.isValid(new JsonObject()));
+        assertSame(Person.FACTORY, validator.newFactory(Person.FACTORY, null));
+    }
+
+}
@@ -0,0 +1,146 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.ext;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+/**
+ * @author kotelnikov
+ */
+public class TagCloudAccumulatorTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public TagCloudAccumulatorTest(String name) {
+        super(name);
+    }
+
+    public void testAccumulator() throws Exception {
+        TagCloudAccumulator accumulator = new TagCloudAccumulator(2);
+        accumulator.add("java");
+        accumulator.add("java", 2);
+        accumulator.addAll(Arrays.asList("java", "json", null));
+        TagCloud cloud = new TagCloud();
+        cloud.addTag("rpc", 4);
+        accumulator.addAll(cloud);
+
+        TagWeights weights = accumulator.getTagWeights();
+        assertEquals(4, weights.getWeight("java"));
+        assertEquals(1, weights.getWeight("json"));
+        assertEquals(4, weights.getWeight("rpc"));
+        assertEquals(3, weights.size());
+        TagCloud top = accumulator.toTagCloud(1);
+        assertEquals(4, top.getWeight(new Tag("java")));
+        assertEquals(1, top.getKeys().size());
+
+        weights = accumulator.drain();
+        assertEquals(3, weights.size());
+        assertTrue(accumulator.getTagWeights().isEmpty());
+    }
+
+    public void testConcurrentBatches() throws Exception {
+        final TagCloudAccumulator accumulator = new TagCloudAccumulator();
+        final List<String> batch = Arrays.asList("a", "b", "c");
+        final int count = 20000;
+        int threadCount = 4;
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        final AtomicBoolean consistent = new AtomicBoolean(true);
+        for (int i = 0; i < threadCount; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < count; j++) {
+                            accumulator.addAll(batch);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        TagWeights drained = new TagWeights();
+        while (done.getCount() > 0) {
+            TagWeights snapshot = accumulator.getTagWeights();
+            int a = snapshot.getWeight("a");
+            if (a != snapshot.getWeight("b") || a != snapshot.getWeight("c")) {
+                consistent.set(false);
+            }
+            drained.merge(accumulator.drain());
+        }
+        done.await();
+        drained.merge(accumulator.drain());
+        assertTrue(consistent.get());
+        assertEquals(count * threadCount, drained.getWeight("a"));
+        assertEquals(count * threadCount, drained.getWeight("c"));
+    }
+
+    public void testConcurrentFolding() throws Exception {
+        // Small stripes are queued for folding very often
+        final TagCloudAccumulator accumulator = new TagCloudAccumulator(4, 8);
+        final int count = 20000;
+        int threadCount = 4;
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < count; j++) {
+                            accumulator.add("tag-" + (j % 100));
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        // Counted tags are never lost between snapshots
+        boolean monotonic = true;
+        int last = 0;
+        while (done.getCount() > 0) {
+            int weight = accumulator.getTagWeights().getWeight("tag-0");
+            if (weight < last) {
+                monotonic = false;
+            }
+            last = weight;
+        }
+        done.await();
+        assertTrue(monotonic);
+        TagWeights weights = accumulator.drain();
+        assertEquals(100, weights.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(
+                count / 100 * threadCount,
+                weights.getWeight("tag-" + i));
+        }
+        assertTrue(accumulator.drain().isEmpty());
+    }
+
+    public void testFolding() throws Exception {
+        TagCloudAccumulator accumulator = new TagCloudAccumulator(2, 3);
+        for (int i = 0; i < 100; i++) {
+            accumulator.add("tag-" + (i % 10));
+        }
+        accumulator.addAll(Arrays.asList("a", "b", "c", "d", "e"));
+        TagWeights weights = accumulator.getTagWeights();
+        assertEquals(15, weights.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(10, weights.getWeight("tag-" + i));
+        }
+        assertEquals(1, weights.getWeight("e"));
+        // Snapshots are copies
+        weights.clear();
+        assertEquals(15, accumulator.getTagWeights().size());
+        assertEquals(15, accumulator.drain().size());
+        assertTrue(accumulator.drain().isEmpty());
+    }
+
+}
@@ -0,0 +1,197 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.ext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.ubimix.commons.json.JsonObject;
+
+/**
+ * @author kotelnikov
+ */
+public class TagSketchTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public TagSketchTest(String name) {
+        super(name);
+    }
+
+    private void assertBounds(TagSketch sketch, TagWeights control) {
+        for (String tag : control.getTopTags(control.size())) {
+            int weight = control.getWeight(tag);
+            long estimate = sketch.getWeight(tag);
+            assertTrue(tag, estimate >= weight);
+            assertTrue(tag, estimate - sketch.getError(tag) <= weight);
+        }
+    }
+
+    /**
+     * Returns a stream of tags with a skewed distribution of frequencies.
+     */
+    private List<String> newStream(int size, long seed) {
+        Random random = new Random(seed);
+        List<String> result = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            double value = random.nextDouble();
+            int tag = (int) (1 / (value * value + 0.0005));
+            result.add("tag-" + tag);
+        }
+        return result;
+    }
+
+    private void assertSameSketch(TagSketch expected, TagSketch sketch) {
+        assertEquals(expected.getTotal(), sketch.getTotal());
+        assertEquals(expected.getErrorBound(), sketch.getErrorBound());
+        assertEquals(expected.getCapacity(), sketch.getCapacity());
+        List<String> tags = expected.getTopTags(expected.getCapacity());
+        assertEquals(tags, sketch.getTopTags(sketch.getCapacity()));
+        for (String tag : tags) {
+            assertEquals(expected.getWeight(tag), sketch.getWeight(tag));
+            assertEquals(expected.getError(tag), sketch.getError(tag));
+        }
+        // Weights of tags which are not monitored
+        for (int i = 0; i < 100; i++) {
+            String tag = "unknown-" + i;
+            assertEquals(expected.getWeight(tag), sketch.getWeight(tag));
+        }
+    }
+
+    public void testJson() throws Exception {
+        TagSketch first = new TagSketch(20, 256, 3, 42);
+        TagSketch second = first.newSketch();
+        TagWeights control = new TagWeights();
+        for (String tag : newStream(5000, 1)) {
+            first.add(tag);
+            control.increment(tag);
+        }
+        for (String tag : newStream(5000, 2)) {
+            second.add(tag);
+            control.increment(tag);
+        }
+
+        // Sketches are restored from JSON strings
+        JsonObject json = new JsonObject();
+        json.setJsonObject(first.toJson().toString());
+        TagSketch firstCopy = TagSketch.fromJson(json);
+        json = new JsonObject();
+        json.setJsonObject(second.toJson().toString());
+        TagSketch secondCopy = TagSketch.fromJson(json);
+        assertSameSketch(first, firstCopy);
+        assertSameSketch(second, secondCopy);
+        assertEquals(
+            Long.toString(TagSketch.DEFAULT_SEED),
+            new TagSketch(1).toJson().getString("seed"));
+
+        // Restored sketches are merged as the original ones
+        firstCopy.merge(secondCopy);
+        first.merge(second);
+        assertSameSketch(first, firstCopy);
+        assertBounds(firstCopy, control);
+        firstCopy.merge(new TagSketch(20, 256, 3, 42));
+        assertEquals(first.getTotal(), firstCopy.getTotal());
+
+        json = first.toJson();
+        json.setValue("width", 512);
+        try {
+            TagSketch.fromJson(json);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        json = first.toJson();
+        json.setValue("weights", Arrays.asList(1, 2));
+        try {
+            TagSketch.fromJson(json);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        json = first.toJson();
+        json.setValue("seed", "x");
+        try {
+            TagSketch.fromJson(json);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testMerge() throws Exception {
+        TagSketch sketch = new TagSketch(50);
+        TagWeights control = new TagWeights();
+        List<TagSketch> sketches = new ArrayList<TagSketch>();
+        for (int i = 0; i < 4; i++) {
+            TagSketch local = sketch.newSketch();
+            for (String tag : newStream(20000, i)) {
+                local.add(tag);
+                control.increment(tag);
+            }
+            sketches.add(local);
+        }
+        for (TagSketch local : sketches) {
+            sketch.merge(local);
+        }
+        assertEquals(80000, sketch.getTotal());
+        assertBounds(sketch, control);
+        assertEquals(control.getTopTags(10), sketch.getTopTags(10));
+
+        try {
+            sketch.merge(sketch);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            sketch.merge(new TagSketch(50, 64, 2, 1));
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testSmallStream() throws Exception {
+        TagSketch sketch = new TagSketch(3);
+        sketch.add("a", 5);
+        sketch.add("b", 3);
+        sketch.add("c");
+        sketch.add("b");
+        sketch.add("x", 0);
+        assertEquals(5, sketch.getWeight("a"));
+        assertEquals(0, sketch.getError("a"));
+        assertEquals(4, sketch.getWeight("b"));
+        assertEquals(0, sketch.getWeight("d"));
+        // The lightest tag "c" is replaced; the weight of "d" is limited by
+        // the Count-Min sketch
+        sketch.add("d", 2);
+        assertEquals(2, sketch.getWeight("d"));
+        assertEquals(0, sketch.getError("d"));
+        assertEquals(1, sketch.getWeight("c"));
+        assertEquals(12, sketch.getTotal());
+
+        TagCloud cloud = sketch.toTagCloud(2);
+        assertEquals(2, cloud.getKeys().size());
+        assertEquals(5, cloud.getWeight(new Tag("a")));
+        assertEquals(4, cloud.getWeight(new Tag("b")));
+    }
+
+    public void testStream() throws Exception {
+        TagSketch sketch = new TagSketch(50);
+        TagWeights control = new TagWeights();
+        for (String tag : newStream(100000, 1)) {
+            sketch.add(tag);
+            control.increment(tag);
+        }
+        assertEquals(100000, sketch.getTotal());
+        assertBounds(sketch, control);
+        assertEquals(control.getTopTags(10), sketch.getTopTags(10));
+        for (String tag : sketch.getTopTags(10)) {
+            assertTrue(sketch.getError(tag) <= sketch.getErrorBound());
+        }
+        TagCloud cloud = sketch.toTagCloud(10);
+        assertEquals(10, cloud.getKeys().size());
+    }
+
+}
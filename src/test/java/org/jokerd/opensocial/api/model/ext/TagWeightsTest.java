@@ -0,0 +1,153 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.ext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * @author kotelnikov
+ */
+public class TagWeightsTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public TagWeightsTest(String name) {
+        super(name);
+    }
+
+    private void assertWeights(
+        Map<String, Integer> control,
+        TagWeights weights) {
+        assertEquals(control.size(), weights.size());
+        for (Map.Entry<String, Integer> entry : control.entrySet()) {
+            assertEquals(
+                entry.getValue().intValue(),
+                weights.getWeight(entry.getKey()));
+        }
+        final Map<String, Integer> visited = new HashMap<String, Integer>();
+        weights.visit(new TagWeights.ITagVisitor() {
+            public void visit(String tag, int weight) {
+                assertNull(visited.put(tag, weight));
+            }
+        });
+        assertEquals(control, visited);
+    }
+
+    public void testIncrementAndRemove() throws Exception {
+        TagWeights weights = new TagWeights();
+        assertTrue(weights.isEmpty());
+        assertEquals(-1, weights.getWeight("a"));
+        assertEquals(1, weights.increment("a"));
+        assertEquals(2, weights.increment("a"));
+        assertEquals(5, weights.add("b", 5));
+        assertEquals(2, weights.getWeight("a"));
+        assertTrue(weights.contains("b"));
+        assertEquals(5, weights.remove("b"));
+        assertEquals(-1, weights.remove("b"));
+        assertFalse(weights.contains("b"));
+        assertEquals(1, weights.size());
+
+        // Random operations compared with a hash map
+        Random random = new Random(5);
+        Map<String, Integer> control = new HashMap<String, Integer>();
+        weights.clear();
+        for (int i = 0; i < 20000; i++) {
+            String tag = "tag-" + random.nextInt(500);
+            if (random.nextInt(4) == 0) {
+                Integer prev = control.remove(tag);
+                assertEquals(prev != null ? prev : -1, weights.remove(tag));
+            } else {
+                Integer prev = control.get(tag);
+                int value = (prev != null ? prev : 0) + 1;
+                control.put(tag, value);
+                assertEquals(value, weights.increment(tag));
+            }
+        }
+        assertWeights(control, weights);
+    }
+
+    public void testMerge() throws Exception {
+        TagWeights first = new TagWeights();
+        TagWeights second = new TagWeights();
+        Map<String, Integer> control = new HashMap<String, Integer>();
+        for (int i = 0; i < 100; i++) {
+            first.add("t" + i, i);
+            second.add("t" + (i + 50), 1);
+            control.put("t" + i, i);
+        }
+        for (int i = 50; i < 150; i++) {
+            Integer prev = control.get("t" + i);
+            control.put("t" + i, (prev != null ? prev : 0) + 1);
+        }
+        first.merge(second);
+        assertWeights(control, first);
+        assertEquals(100, second.size());
+    }
+
+    public void testTagCloud() throws Exception {
+        TagWeights weights = new TagWeights();
+        weights.add("java", 10);
+        weights.add("json", 3);
+        weights.add("rpc", 3);
+        weights.add("xml", 1);
+
+        TagCloud cloud = weights.toTagCloud();
+        assertEquals(
+            Arrays.asList("java", "json", "rpc", "xml"),
+            new ArrayList<String>(cloud.getKeys()));
+        assertEquals(10, cloud.getWeight(new Tag("java")));
+        TagCloud copy = TagCloud.FACTORY.newValue(cloud.toString());
+        assertEquals(cloud, copy);
+        TagWeights parsed = copy.getTagWeights();
+        assertEquals(4, parsed.size());
+        assertEquals(3, parsed.getWeight("rpc"));
+
+        TagCloud top = weights.toTagCloud(2);
+        assertEquals(2, top.getKeys().size());
+        assertEquals(3, top.getWeight(new Tag("json")));
+        assertEquals(-1, top.getWeight(new Tag("rpc")));
+
+        parsed.remove("xml");
+        parsed.increment("rpc");
+        cloud.setTagWeights(parsed);
+        assertEquals(3, cloud.getKeys().size());
+        assertEquals(4, cloud.getWeight(new Tag("rpc")));
+        assertEquals(-1, cloud.getWeight(new Tag("xml")));
+    }
+
+    public void testTopTags() throws Exception {
+        Random random = new Random(3);
+        final TagWeights weights = new TagWeights(4);
+        for (int i = 0; i < 50000; i++) {
+            int tag = (int) Math.abs(random.nextGaussian() * 300);
+            weights.increment("tag-" + tag);
+        }
+        List<String> tags = weights.getTopTags(weights.size());
+        assertEquals(weights.size(), tags.size());
+        List<String> control = new ArrayList<String>(tags);
+        Collections.shuffle(control, random);
+        Collections.sort(control, new Comparator<String>() {
+            public int compare(String o1, String o2) {
+                int a = weights.getWeight(o1);
+                int b = weights.getWeight(o2);
+                return a != b ? (a > b ? -1 : 1) : o1.compareTo(o2);
+            }
+        });
+        assertEquals(control, tags);
+        for (int count : new int[] { 0, 1, 10, 100 }) {
+            assertEquals(control.subList(0, count), weights.getTopTags(count));
+        }
+    }
+
+}
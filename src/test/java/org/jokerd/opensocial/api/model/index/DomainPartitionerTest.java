@@ -0,0 +1,168 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.jokerd.opensocial.api.model.DomainName;
+import org.jokerd.opensocial.api.model.ObjectId;
+
+/**
+ * @author kotelnikov
+ */
+public class DomainPartitionerTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public DomainPartitionerTest(String name) {
+        super(name);
+    }
+
+    private List<ObjectId> newIds(int count) {
+        List<ObjectId> ids = new ArrayList<ObjectId>();
+        for (int i = 0; i < count; i++) {
+            ids.add(new ObjectId("domain" + (i % 7) + ".org:user" + i));
+            if (i % 10 == 0) {
+                ids.add(new ObjectId("local" + i));
+            }
+        }
+        return ids;
+    }
+
+    public void testDispatch() throws Exception {
+        List<ObjectId> ids = newIds(1000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final Map<DomainName, List<ObjectId>> result = new HashMap<DomainName, List<ObjectId>>();
+            DomainPartitioner<ObjectId> partitioner = new DomainPartitioner<ObjectId>(
+                executor,
+                4,
+                13);
+            partitioner.dispatch(
+                ids.iterator(),
+                10,
+                new DomainPartitioner.IBatchHandler<ObjectId>() {
+                    public void onBatch(
+                        DomainName domain,
+                        List<ObjectId> batch) {
+                        assertTrue(batch.size() > 0);
+                        assertTrue(batch.size() <= 10);
+                        synchronized (result) {
+                            List<ObjectId> list = result.get(domain);
+                            if (list == null) {
+                                list = new ArrayList<ObjectId>();
+                                result.put(domain, list);
+                            }
+                            for (ObjectId id : batch) {
+                                assertEquals(domain, id.getDomainName());
+                                list.add(id);
+                            }
+                        }
+                    }
+                });
+            Map<DomainName, Set<ObjectId>> control = ObjectId
+                .groupByDomains(ids);
+            assertEquals(control.size(), result.size());
+            int total = 0;
+            for (Map.Entry<DomainName, List<ObjectId>> entry : result
+                .entrySet()) {
+                List<ObjectId> list = entry.getValue();
+                total += list.size();
+                Set<ObjectId> set = control.get(entry.getKey());
+                assertEquals(set.size(), list.size());
+                assertTrue(set.containsAll(list));
+            }
+            assertEquals(ids.size(), total);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testEmptyDomain() throws Exception {
+        ObjectId local = new ObjectId("a");
+        ObjectId empty = new ObjectId(DomainName.valueOf(""), "b");
+        assertNull(local.getDomainName());
+        assertNotNull(empty.getDomainName());
+        final Map<DomainName, List<ObjectId>> result = new HashMap<DomainName, List<ObjectId>>();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            DomainPartitioner<ObjectId> partitioner = new DomainPartitioner<ObjectId>(
+                executor,
+                2);
+            partitioner.dispatch(
+                Arrays.asList(local, empty).iterator(),
+                10,
+                new DomainPartitioner.IBatchHandler<ObjectId>() {
+                    public void onBatch(
+                        DomainName domain,
+                        List<ObjectId> batch) {
+                        synchronized (result) {
+                            assertNull(result.put(domain, batch));
+                        }
+                    }
+                });
+            assertEquals(2, result.size());
+            assertEquals(Arrays.asList(local), result.get(null));
+            assertEquals(
+                Arrays.asList(empty),
+                result.get(DomainName.valueOf("")));
+            assertEquals(2, partitioner
+                .groupByDomains(Arrays.asList(local, empty).iterator())
+                .size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testGroupByDomains() throws Exception {
+        List<ObjectId> ids = newIds(1000);
+        Map<DomainName, Set<ObjectId>> control = ObjectId.groupByDomains(ids);
+        assertEquals(8, control.size());
+        assertTrue(control.containsKey(null));
+
+        DomainPartitioner<ObjectId> partitioner = new DomainPartitioner<ObjectId>(
+            null,
+            1,
+            17);
+        assertEquals(control, partitioner.groupByDomains(ids.iterator()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            partitioner = new DomainPartitioner<ObjectId>(executor, 4, 17);
+            Map<DomainName, Set<ObjectId>> result = partitioner
+                .groupByDomains(ids.iterator());
+            assertEquals(control, result);
+            for (Map.Entry<DomainName, Set<ObjectId>> entry : control
+                .entrySet()) {
+                Set<ObjectId> set = result.get(entry.getKey());
+                assertEquals(entry.getValue(), set);
+                assertEquals(entry.getValue().hashCode(), set.hashCode());
+            }
+            Set<ObjectId> set = result.get(DomainName.valueOf("domain1.org"));
+            int size = set.size();
+            assertTrue(set.contains(new ObjectId("domain1.org:user1")));
+            assertFalse(set.add(new ObjectId("domain1.org:user1")));
+            assertTrue(set.add(new ObjectId("domain1.org:new")));
+            assertTrue(set.remove(new ObjectId("domain1.org:user1")));
+            assertFalse(set.contains(new ObjectId("domain1.org:user1")));
+            assertEquals(size, set.size());
+            List<ObjectId> empty = Collections.emptyList();
+            assertTrue(partitioner.groupByDomains(empty.iterator()).isEmpty());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
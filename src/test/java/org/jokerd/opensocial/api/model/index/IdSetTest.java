@@ -0,0 +1,70 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.index;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.jokerd.opensocial.api.model.ActivityEntry;
+import org.jokerd.opensocial.api.model.Person;
+
+/**
+ * @author kotelnikov
+ */
+public class IdSetTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public IdSetTest(String name) {
+        super(name);
+    }
+
+    private Person newPerson(String json) {
+        return new Person().setJsonObject(json);
+    }
+
+    public void test() throws Exception {
+        Person a = newPerson("{'id':'x:a','age':1}");
+        Person a2 = newPerson("{'id':'x:a','age':2}");
+        Person b = newPerson("{'id':'x:b'}");
+        Person c = newPerson("{'displayName':'C'}");
+        IdSet<Person> set = new IdSet<Person>(Arrays.asList(a, b, c));
+        assertEquals(3, set.size());
+        assertFalse(set.add(a2));
+        assertTrue(set.contains(a2));
+        assertSame(a, set.get("x:a"));
+        assertTrue(set.containsId("x:b"));
+        assertTrue(set.contains(newPerson("{'displayName':'C'}")));
+        assertFalse(set.contains(newPerson("{'displayName':'D'}")));
+
+        assertSame(a, set.put(a2));
+        assertSame(a2, set.get("x:a"));
+        assertEquals(3, set.size());
+
+        Iterator<Person> iterator = set.iterator();
+        assertSame(a2, iterator.next());
+        assertSame(b, iterator.next());
+        assertTrue(iterator.hasNext());
+        iterator.remove();
+        assertSame(c, iterator.next());
+        assertFalse(iterator.hasNext());
+        iterator.remove();
+        assertEquals(1, set.size());
+        assertFalse(set.containsId("x:b"));
+
+        assertTrue(set.remove(a));
+        assertTrue(set.isEmpty());
+
+        IdSet<ActivityEntry> entries = new IdSet<ActivityEntry>();
+        entries.add(ActivityEntry.FACTORY.newValue("{'id':'x:1'}"));
+        entries.add(ActivityEntry.FACTORY.newValue("{'id':'x:1','verb':'post'}"));
+        assertEquals(1, entries.size());
+        assertSame(entries.get("x:1"), entries.removeId("x:1"));
+        assertTrue(entries.isEmpty());
+    }
+
+}
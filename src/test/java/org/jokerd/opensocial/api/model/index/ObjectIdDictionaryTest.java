@@ -0,0 +1,121 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.index;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jokerd.opensocial.api.model.DataObject;
+import org.jokerd.opensocial.api.model.ObjectId;
+import org.jokerd.opensocial.api.model.UserId;
+import org.ubimix.commons.json.JsonValue.IJsonValueFactory;
+
+/**
+ * @author kotelnikov
+ */
+public class ObjectIdDictionaryTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public ObjectIdDictionaryTest(String name) {
+        super(name);
+    }
+
+    public void test() throws Exception {
+        ObjectIdDictionary dictionary = new ObjectIdDictionary(2);
+        ObjectId a = new ObjectId("example.org:a");
+        ObjectId b = new UserId("example.org:b");
+        ObjectId c = new ObjectId("c");
+        assertEquals(-1, dictionary.getOrdinal(a));
+        assertEquals(0, dictionary.addId(a));
+        assertEquals(1, dictionary.addId(b));
+        assertEquals(2, dictionary.addId(c));
+        assertEquals(0, dictionary.addId(new UserId("example.org:a")));
+        assertEquals(3, dictionary.size());
+        assertEquals(1, dictionary.getOrdinal(new ObjectId("example.org:b")));
+        assertSame(c, dictionary.getId(2));
+        assertNull(dictionary.getId(3));
+    }
+
+    public void testFactories() throws Exception {
+        ObjectIdDictionary dictionary = new ObjectIdDictionary();
+        IJsonValueFactory<UserId> factory = dictionary
+            .newFactory(UserId.FACTORY);
+        DataObject object = new DataObject();
+        object.setValue("ids", new String[] {
+            "example.org:a",
+            "example.org:b",
+            "example.org:a" });
+        List<UserId> ids = object.getList("ids", factory);
+        assertEquals(3, ids.size());
+        assertSame(ids.get(0), ids.get(2));
+        assertEquals(2, dictionary.size());
+
+        List<Integer> ordinals = object.getList("ids", dictionary
+            .newOrdinalFactory(UserId.FACTORY));
+        assertEquals(0, ordinals.get(0).intValue());
+        assertEquals(1, ordinals.get(1).intValue());
+        assertEquals(0, ordinals.get(2).intValue());
+    }
+
+    public void testFailedNotification() throws Exception {
+        final boolean[] fail = { false };
+        ObjectIdDictionary dictionary = new ObjectIdDictionary() {
+            @Override
+            protected void onAdd(ObjectId id, int ordinal) {
+                if (fail[0]) {
+                    throw new IllegalStateException("Can not store " + id);
+                }
+            }
+        };
+        assertEquals(0, dictionary.addId(new ObjectId("a")));
+        fail[0] = true;
+        try {
+            dictionary.addId(new ObjectId("b"));
+            fail();
+        } catch (IllegalStateException e) {
+        }
+        assertEquals(1, dictionary.size());
+        assertEquals(-1, dictionary.getOrdinal(new ObjectId("b")));
+        assertNull(dictionary.getId(1));
+        fail[0] = false;
+        assertEquals(1, dictionary.addId(new ObjectId("c")));
+        assertEquals(2, dictionary.addId(new ObjectId("b")));
+    }
+
+    public void testPersistence() throws Exception {
+        File file = File.createTempFile("ids", ".dict");
+        file.delete();
+        try {
+            MappedObjectIdDictionary dictionary = new MappedObjectIdDictionary(
+                file);
+            for (int i = 0; i < 10000; i++) {
+                dictionary.addId(new ObjectId("my domain.org:id-" + i));
+            }
+            dictionary.addId(new ObjectId("мама:мыла раму"));
+            dictionary.close();
+
+            dictionary = new MappedObjectIdDictionary(file);
+            assertEquals(10001, dictionary.size());
+            assertEquals(42, dictionary.getOrdinal(new ObjectId(
+                "my domain.org:id-42")));
+            assertEquals(
+                new ObjectId("мама:мыла раму"),
+                dictionary.getId(10000));
+            assertEquals(10001, dictionary.addId(new ObjectId("x")));
+            dictionary.close();
+
+            dictionary = new MappedObjectIdDictionary(file);
+            assertEquals(10002, dictionary.size());
+            assertEquals(new ObjectId("x"), dictionary.getId(10001));
+            dictionary.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+import org.jokerd.opensocial.api.model.ActivityEntry;
+import org.jokerd.opensocial.api.model.Message;
+import org.jokerd.opensocial.api.model.Person;
+import org.ubimix.commons.json.JsonObject;
+import org.ubimix.commons.json.JsonValue.IJsonValueFactory;
+
+/**
+ * Compares sizes and encoding/decoding times of the {@link BinaryCodec} with
+ * the JSON text representation of model objects. The JSON path uses the same
+ * methods as services: {@link JsonObject#toString()} to serialize objects and
+ * {@link JsonObject#setJsonObject(Object)} to parse them; UTF-8 bytes are
+ * encoded and decoded using buffers reused by all iterations. This is not a
+ * unit test: timings depend on the machine, so the benchmark is not a part of
+ * the test suite and should be launched manually using the
+ * {@link #main(String[])} method.
+ * 
+ * @author kotelnikov
+ */
+public class BinaryCodecBenchmark {
+
+    private final static IJsonValueFactory<?>[] FACTORIES = {
+        Person.FACTORY,
+        ActivityEntry.FACTORY,
+        Message.FACTORY };
+
+    private final static int ITERATIONS = 5000;
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    private final static JsonObject[] VALUES = {
+        new Person().setJsonObject("{"
+            + "'id':'example.org:john.smith',"
+            + "'displayName':'John Smith',"
+            + "'name':{'formatted':'John Smith',"
+            + "'familyName':'Smith','givenName':'John'},"
+            + "'age':33,"
+            + "'updated':'2011-02-10T15:04:55Z',"
+            + "'emails':[{'value':'john@example.org','type':'work',"
+            + "'primary':true},{'value':'js@example.com','type':'home'}],"
+            + "'addresses':[{'formatted':'1 Main St, Springfield',"
+            + "'locality':'Springfield','country':'US','primary':true}],"
+            + "'tags':['java','json','opensocial']"
+            + "}"),
+        new ActivityEntry().setJsonObject("{"
+            + "'id':'example.org:activity:1234567',"
+            + "'verb':'post',"
+            + "'title':'John posted a photo',"
+            + "'published':'2011-02-10T15:04:55.123Z',"
+            + "'updated':'2011-02-10T16:00:00Z',"
+            + "'actor':{'id':'example.org:john.smith',"
+            + "'objectType':'person','displayName':'John Smith'},"
+            + "'object':{'id':'example.org:photo:42','objectType':'photo',"
+            + "'image':{'url':'http://example.org/42.jpg',"
+            + "'width':640,'height':480}}"
+            + "}"),
+        new Message().setJsonObject("{"
+            + "'id':'example.org:message:99',"
+            + "'title':'Hello',"
+            + "'body':'How are you doing? Let us meet tomorrow.',"
+            + "'senderId':'example.org:john.smith',"
+            + "'recipients':['example.org:jane','example.org:bob'],"
+            + "'timeSent':'2011-02-10T15:04:55Z',"
+            + "'updated':'2011-02-10T15:05:00Z',"
+            + "'status':'new','type':'email'"
+            + "}") };
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new BinaryCodecBenchmark().run();
+    }
+
+    private final ByteBuffer fBytes = ByteBuffer.allocate(4096);
+
+    private final CharBuffer fChars = CharBuffer.allocate(4096);
+
+    private final CharsetDecoder fDecoder = UTF8.newDecoder();
+
+    private final CharsetEncoder fEncoder = UTF8.newEncoder();
+
+    /**
+     * Converts the given JSON object to UTF-8 bytes stored in the reused byte
+     * buffer and parses these bytes back, exactly as a service would do.
+     */
+    private Object jsonCycle(JsonObject value, IJsonValueFactory<?> factory) {
+        String text = value.toString();
+        fBytes.clear();
+        fEncoder.reset();
+        CoderResult result = fEncoder.encode(
+            CharBuffer.wrap(text),
+            fBytes,
+            true);
+        check(!result.isOverflow(), "The byte buffer is too small");
+        fEncoder.flush(fBytes);
+        fBytes.flip();
+
+        fChars.clear();
+        fDecoder.reset();
+        result = fDecoder.decode(fBytes, fChars, true);
+        check(!result.isOverflow(), "The char buffer is too small");
+        fDecoder.flush(fChars);
+        fChars.flip();
+        JsonObject json = new JsonObject().setJsonObject(fChars.toString());
+        return factory.newValue(json.getJsonObject());
+    }
+
+    public void run() throws Exception {
+        BinaryCodec codec = BinaryCodec.getInstance();
+        StringBuilder sizes = new StringBuilder();
+        for (int i = 0; i < VALUES.length; i++) {
+            JsonObject value = VALUES[i];
+            byte[] data = codec.encode(value);
+            byte[] raw = codec.encodeValue(value.getJsonObject());
+            byte[] json = value.toString().getBytes(UTF8);
+            check(
+                value.equals(codec.decode(data, FACTORIES[i])),
+                "Bad binary round trip");
+            check(
+                value.equals(jsonCycle(value, FACTORIES[i])),
+                "Bad JSON round trip");
+            if (sizes.length() > 0) {
+                sizes.append(", ");
+            }
+            sizes.append(value.getClass().getSimpleName());
+            sizes.append(": json ").append(json.length);
+            sizes.append(", binary ").append(raw.length);
+            sizes.append(", with schema ").append(data.length);
+        }
+
+        // Warm-up
+        runBinary(codec);
+        runJson();
+
+        long binaryTime = runBinary(codec);
+        long jsonTime = runJson();
+        System.out.println("BinaryCodec: sizes (bytes) "
+            + sizes
+            + "; "
+            + (ITERATIONS * VALUES.length)
+            + " encode/decode cycles; json: "
+            + (jsonTime / 1000000)
+            + "ms, binary: "
+            + (binaryTime / 1000000)
+            + "ms");
+    }
+
+    private long runBinary(BinaryCodec codec) throws Exception {
+        long start = System.nanoTime();
+        int count = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (int j = 0; j < VALUES.length; j++) {
+                byte[] data = codec.encode(VALUES[j]);
+                if (codec.decode(data, FACTORIES[j]) != null) {
+                    count++;
+                }
+            }
+        }
+        check(count > 0, "Nothing was decoded");
+        return System.nanoTime() - start;
+    }
+
+    private long runJson() {
+        long start = System.nanoTime();
+        int count = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (int j = 0; j < VALUES.length; j++) {
+                if (jsonCycle(VALUES[j], FACTORIES[j]) != null) {
+                    count++;
+                }
+            }
+        }
+        check(count > 0, "Nothing was decoded");
+        return System.nanoTime() - start;
+    }
+
+}
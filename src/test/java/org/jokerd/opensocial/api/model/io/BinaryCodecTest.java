@@ -0,0 +1,286 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.jokerd.opensocial.api.model.ActivityEntry;
+import org.jokerd.opensocial.api.model.ActivityObject;
+import org.jokerd.opensocial.api.model.DataObject;
+import org.jokerd.opensocial.api.model.DataSchema;
+import org.jokerd.opensocial.api.model.Person;
+import org.ubimix.commons.json.JsonObject;
+import org.ubimix.commons.json.JsonValue.IJsonValueFactory;
+
+/**
+ * @author kotelnikov
+ */
+public class BinaryCodecTest extends TestCase {
+
+    /**
+     * The first version of a nested model class.
+     */
+    public static class NestedV1 extends DataObject {
+
+        public static IJsonValueFactory<NestedV1> FACTORY = new IJsonValueFactory<NestedV1>() {
+            @Override
+            public NestedV1 newValue(Object object) {
+                return new NestedV1().setJsonObject(object);
+            }
+        };
+
+        public final static DataSchema SCHEMA = new DataSchema(NestedV1.class)
+            .add("a", "b");
+
+        @Override
+        public DataSchema getSchema() {
+            return SCHEMA;
+        }
+
+        @Override
+        protected DataObject newInstance() {
+            return new NestedV1();
+        }
+
+    }
+
+    /**
+     * The second version of the nested model class: fields are reordered.
+     */
+    public static class NestedV2 extends DataObject {
+
+        public static IJsonValueFactory<NestedV2> FACTORY = new IJsonValueFactory<NestedV2>() {
+            @Override
+            public NestedV2 newValue(Object object) {
+                return new NestedV2().setJsonObject(object);
+            }
+        };
+
+        public final static DataSchema SCHEMA = new DataSchema(NestedV2.class)
+            .add("b", "a");
+
+        @Override
+        public DataSchema getSchema() {
+            return SCHEMA;
+        }
+
+        @Override
+        protected DataObject newInstance() {
+            return new NestedV2();
+        }
+
+    }
+
+    /**
+     * A model class containing the first version of the nested class.
+     */
+    public static class ParentV1 extends DataObject {
+
+        public static IJsonValueFactory<ParentV1> FACTORY = new IJsonValueFactory<ParentV1>() {
+            @Override
+            public ParentV1 newValue(Object object) {
+                return new ParentV1().setJsonObject(object);
+            }
+        };
+
+        public final static DataSchema SCHEMA = new DataSchema(ParentV1.class)
+            .add("x")
+            .addObject("child", NestedV1.FACTORY);
+
+        @Override
+        public DataSchema getSchema() {
+            return SCHEMA;
+        }
+
+        @Override
+        protected DataObject newInstance() {
+            return new ParentV1();
+        }
+
+    }
+
+    /**
+     * The same model class containing the second version of the nested
+     * class.
+     */
+    public static class ParentV2 extends DataObject {
+
+        public static IJsonValueFactory<ParentV2> FACTORY = new IJsonValueFactory<ParentV2>() {
+            @Override
+            public ParentV2 newValue(Object object) {
+                return new ParentV2().setJsonObject(object);
+            }
+        };
+
+        public final static DataSchema SCHEMA = new DataSchema(ParentV2.class)
+            .add("x")
+            .addObject("child", NestedV2.FACTORY);
+
+        @Override
+        public DataSchema getSchema() {
+            return SCHEMA;
+        }
+
+        @Override
+        protected DataObject newInstance() {
+            return new ParentV2();
+        }
+
+    }
+
+    /**
+     * @param name
+     */
+    public BinaryCodecTest(String name) {
+        super(name);
+    }
+
+    private void checkRoundTrip(String json) throws IOException {
+        JsonObject object = new JsonObject().setJsonObject(json);
+        BinaryCodec codec = BinaryCodec.getInstance();
+        byte[] data = codec.encode(object);
+        JsonObject test = codec.decode(data, JsonObject.FACTORY);
+        assertEquals(object, test);
+        assertEquals(object.toString(), test.toString());
+    }
+
+    public void testErrors() throws Exception {
+        BinaryCodec codec = BinaryCodec.getInstance();
+        byte[] data = codec.encode(new JsonObject()
+            .setJsonObject("{'a':'b'}"));
+        byte[] truncated = new byte[data.length - 1];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        try {
+            codec.decode(truncated);
+            fail();
+        } catch (IOException e) {
+        }
+        data[0] = 100;
+        try {
+            codec.decode(data);
+            fail();
+        } catch (IOException e) {
+        }
+    }
+
+    public void testSchemas() throws Exception {
+        Person person = new Person().setJsonObject("{"
+            + "'id':'example.org:john',"
+            + "'displayName':'John',"
+            + "'name':{'familyName':'Smith','givenName':'John'},"
+            + "'emails':[{'value':'a@example.org','type':'work'},"
+            + "{'value':'b@example.org','type':'home'}],"
+            + "'customField':'x',"
+            + "'other':{'customField':'y'}"
+            + "}");
+        BinaryCodec codec = BinaryCodec.getInstance();
+        byte[] data = codec.encode(person);
+        byte[] raw = codec.encodeValue(person.getJsonObject());
+        // Names of known fields are written as positions in schemas
+        assertTrue(data.length < raw.length);
+        assertEquals(person, codec.decode(data, Person.FACTORY));
+        assertEquals(person, codec.decode(raw, Person.FACTORY));
+        assertEquals(
+            person,
+            new JsonObject().setJsonObject(codec.decode(raw)));
+
+        // Values encoded with a schema require the same schema
+        try {
+            codec.decode(data);
+            fail();
+        } catch (IOException e) {
+        }
+        try {
+            codec.decode(data, ActivityEntry.FACTORY);
+            fail();
+        } catch (IOException e) {
+        }
+
+        // Values of the first version (without schema signatures)
+        byte[] old = new byte[raw.length - 1];
+        System.arraycopy(raw, 2, old, 1, raw.length - 2);
+        old[0] = 1;
+        assertEquals(person, codec.decode(old, Person.FACTORY));
+    }
+
+    public void testNestedSchemaChanges() throws Exception {
+        // Top-level fields are the same; nested fields are reordered
+        assertFalse(ParentV1.SCHEMA.getSignature() == ParentV2.SCHEMA
+            .getSignature());
+        ParentV1 value = new ParentV1()
+            .setJsonObject("{'x':'1','child':{'a':'A','b':'B'}}");
+        BinaryCodec codec = BinaryCodec.getInstance();
+        byte[] data = codec.encode(value);
+        assertEquals(value, codec.decode(data, ParentV1.FACTORY));
+        try {
+            // Without nested signatures 'a' and 'b' would be swapped
+            codec.decode(data, ParentV2.FACTORY);
+            fail();
+        } catch (IOException e) {
+        }
+        // Signatures of recursive schemas are defined
+        assertEquals(
+            ActivityObject.SCHEMA.getSignature(),
+            ActivityObject.SCHEMA.getSignature());
+        assertFalse(ActivityEntry.SCHEMA.getSignature() == Person.SCHEMA
+            .getSignature());
+    }
+
+    public void testRoundTrip() throws Exception {
+        checkRoundTrip("{}");
+        checkRoundTrip("{'a':null,'b':true,'c':false,'d':[]}");
+        checkRoundTrip("{'n':[0,1,-1,2147483647,-2147483648,"
+            + "2147483648,-9223372036854775808,9223372036854775807,"
+            + "1.5,-0.25,1.0E300]}");
+        checkRoundTrip("{'s':['','\\u00e9t\\u00e9','\\ud83d\\ude00',"
+            + "'\\\"quoted\\\"']}");
+        // Dates are stored as numbers only if they can be restored exactly
+        checkRoundTrip("{'d':['2011-02-10T15:04:55Z',"
+            + "'2011-02-10T15:04:55.123Z',"
+            + "'2011-02-10T15:04:55+01:00',"
+            + "'2011-02-10T15:04:55.1Z',"
+            + "'2011-02-10T15:04:60Z',"
+            + "'2011-02-30T15:04:55Z',"
+            + "'2011-02-10 15:04:55Z']}");
+        checkRoundTrip("{'x':{'x':{'x':{'y':[{'x':1},{'y':2}]}}},'y':3}");
+    }
+
+    public void testModelObjects() throws Exception {
+        Person person = new Person().setJsonObject("{"
+            + "'id':'example.org:john',"
+            + "'displayName':'John',"
+            + "'age':33,"
+            + "'updated':'2011-02-10T15:04:55Z',"
+            + "'emails':['a@example.org','b@example.org'],"
+            + "'addresses':[{'formatted':'A','primary':true},"
+            + "{'formatted':'B','primary':false}],"
+            + "'customField':{'unknown':[1,2,3]}"
+            + "}");
+        BinaryCodec codec = BinaryCodec.getInstance();
+        byte[] data = codec.encode(person);
+        assertTrue(data.length < person.toString().getBytes("UTF-8").length);
+        Person test = codec.decode(data, Person.FACTORY);
+        assertEquals(person, test);
+        assertEquals(person.getAddresses(), test.getAddresses());
+        assertEquals(
+            person.getValue("customField", JsonObject.FACTORY),
+            test.getValue("customField", JsonObject.FACTORY));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ActivityEntry entry = new ActivityEntry().setJsonObject("{"
+            + "'id':'example.org:1','verb':'post',"
+            + "'published':'2011-02-10T15:04:55.123Z'}");
+        codec.write(person, out);
+        codec.write(entry, out);
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals(person, codec.read(in, Person.FACTORY));
+        assertEquals(entry, codec.read(in, ActivityEntry.FACTORY));
+        assertEquals(-1, in.read());
+    }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+
+import org.jokerd.opensocial.api.model.ActivityEntry;
+import org.jokerd.opensocial.api.model.Collection;
+import org.jokerd.opensocial.api.model.DataObject;
+import org.jokerd.opensocial.api.model.Person;
+import org.ubimix.commons.json.JsonObject;
+
+/**
+ * @author kotelnikov
+ */
+public class CollectionReaderTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public CollectionReaderTest(String name) {
+        super(name);
+    }
+
+    private byte[] getBytes(String json) throws IOException {
+        JsonObject object = new JsonObject().setJsonObject(json);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonStreamWriter(out).write(object).flush();
+        return out.toByteArray();
+    }
+
+    public void testEmpty() throws Exception {
+        CollectionReader<Person> reader = new CollectionReader<Person>(
+            new ByteArrayInputStream(getBytes("{'entry':[],'totalResults':0}")),
+            Person.FACTORY);
+        assertFalse(reader.hasNext());
+        assertEquals(0, reader.getTotalResults());
+        try {
+            reader.next();
+            fail();
+        } catch (NoSuchElementException e) {
+        }
+        reader.close();
+    }
+
+    public void testNumbers() throws Exception {
+        String json = "{'entry':[{'id':'a:b','age':3,'big':12345678901,"
+            + "'ratio':2.5,'exp':1e3,'negative':-7}]}";
+        CollectionReader<Person> reader = new CollectionReader<Person>(
+            new ByteArrayInputStream(getBytes(json)),
+            Person.FACTORY);
+        Person streamed = reader.next();
+        reader.close();
+        // The same entry as a parsed and as a lazy object
+        Person parsed = Collection
+            .getCollectionFactory(Person.FACTORY)
+            .newValue(json)
+            .getEntries()
+            .get(0);
+        Person lazy = new Person().setJsonBytes(getBytes(parsed.toString()));
+        for (String key : new String[] {
+            "age",
+            "big",
+            "ratio",
+            "exp",
+            "negative" }) {
+            Object value = parsed.getValue(key, DataObject.RAW_FACTORY);
+            assertEquals(key, value, streamed.getValue(
+                key,
+                DataObject.RAW_FACTORY));
+            assertEquals(
+                key,
+                value,
+                lazy.getValue(key, DataObject.RAW_FACTORY));
+        }
+    }
+
+    public void testReader() throws Exception {
+        StringBuilder buf = new StringBuilder();
+        buf.append("{'startIndex':10,'itemsPerPage':1000,'entry':[");
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                buf.append(",");
+            }
+            buf.append("{'id':'example.org:" + i + "',");
+            buf.append("'title':'Entry \\\"" + i + "\\\" \\u00e9',");
+            buf.append("'object':{'displayName':'x','tags':[1,2.5,true,null]}}");
+        }
+        buf.append("],'totalResults':12345,'sorted':true}");
+        String json = buf.toString();
+        Collection<ActivityEntry> control = Collection
+            .getCollectionFactory(ActivityEntry.FACTORY)
+            .newValue(json);
+
+        CollectionReader<ActivityEntry> reader = new CollectionReader<ActivityEntry>(
+            new ByteArrayInputStream(getBytes(json)),
+            ActivityEntry.FACTORY);
+        // Fields preceding entries are available before iteration
+        assertEquals(10, reader.getStartIndex());
+        assertEquals(1000, reader.getItemsPerPage());
+        assertEquals(0, reader.getTotalResults());
+
+        List<ActivityEntry> entries = new ArrayList<ActivityEntry>();
+        while (reader.hasNext()) {
+            entries.add(reader.next());
+        }
+        assertEquals(control.getEntries(), entries);
+        // Fields following entries are available after iteration
+        assertEquals(12345, reader.getTotalResults());
+        assertTrue(reader.getHeader().getBoolean("sorted", false));
+        reader.close();
+    }
+
+}
@@ -0,0 +1,81 @@
+/**
+ * 
+ */
+package org.jokerd.opensocial.api.model.io;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+
+import junit.framework.TestCase;
+
+import org.jokerd.opensocial.api.model.Collection;
+import org.jokerd.opensocial.api.model.Person;
+import org.ubimix.commons.json.JsonObject;
+
+/**
+ * @author kotelnikov
+ */
+public class JsonStreamWriterTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public JsonStreamWriterTest(String name) {
+        super(name);
+    }
+
+    private Collection<Person> newCollection(int count) {
+        StringBuilder buf = new StringBuilder();
+        buf.append("{'totalResults':").append(count).append(",'entry':[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                buf.append(",");
+            }
+            buf.append("{'id':'example.org:").append(i).append("',");
+            buf.append("'displayName':'\\u00c9l\\u00e8ve \\\"").append(i);
+            buf.append("\\\"\\n\\ud83d\\ude00',");
+            buf.append("'age':").append(i).append(",");
+            buf.append("'connected':").append(i % 2 == 0).append(",");
+            buf.append("'emails':['a").append(i).append("@example.org'],");
+            buf.append("'nickname':null}");
+        }
+        buf.append("]}");
+        return Collection
+            .getCollectionFactory(Person.FACTORY)
+            .newValue(buf.toString());
+    }
+
+    public void testChannel() throws Exception {
+        Collection<Person> collection = newCollection(10);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonStreamWriter writer = new JsonStreamWriter(
+            Channels.newChannel(out),
+            16);
+        writer.write(collection).flush();
+        JsonObject control = new JsonObject().setJsonObject(collection
+            .toString());
+        JsonObject test = new JsonObject().setJsonObject(out
+            .toString("UTF-8"));
+        assertEquals(control, test);
+    }
+
+    public void testStream() throws Exception {
+        Collection<Person> collection = newCollection(100);
+        JsonObject control = new JsonObject().setJsonObject(collection
+            .toString());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonStreamWriter writer = new JsonStreamWriter(out, 16);
+        writer.write(collection).flush();
+        String str = out.toString("UTF-8");
+        assertEquals(control, new JsonObject().setJsonObject(str));
+
+        // The same buffer is re-used for the next output
+        out = new ByteArrayOutputStream();
+        writer.reset(out);
+        writer.write(collection.getEntries().get(1)).flush();
+        assertEquals(
+            collection.getEntries().get(1),
+            new Person().setJsonObject(out.toString("UTF-8")));
+    }
+
+}